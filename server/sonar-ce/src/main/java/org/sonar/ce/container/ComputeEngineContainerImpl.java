@@ -133,6 +133,7 @@ import org.sonar.server.setting.DatabaseSettingsEnabler;
 import org.sonar.server.setting.ThreadLocalSettings;
 import org.sonar.server.startup.LogServerId;
 import org.sonar.server.test.index.TestIndexer;
+import org.sonar.server.user.AuthorizationCache;
 import org.sonar.server.user.DefaultUserFinder;
 import org.sonar.server.user.DeprecatedUserFinder;
 import org.sonar.server.user.index.UserIndex;
@@ -318,6 +319,7 @@ public class ComputeEngineContainerImpl implements ComputeEngineContainer {
       DefaultUserFinder.class,
       UserIndexer.class,
       UserIndex.class,
+      AuthorizationCache.class, // used by PermissionUpdater, PermissionTemplateService and ComponentCleanerService
 
       // permissions
       DefaultTemplatesResolverImpl.class,
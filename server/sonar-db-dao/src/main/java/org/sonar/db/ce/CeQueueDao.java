@@ -20,7 +20,9 @@
 package org.sonar.db.ce;
 
 import com.google.common.base.Optional;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.Nullable;
 import org.apache.ibatis.session.RowBounds;
 import org.sonar.api.utils.System2;
@@ -33,7 +35,7 @@ import static org.sonar.db.ce.CeQueueDto.Status.PENDING;
 
 public class CeQueueDao implements Dao {
 
-  private static final RowBounds ONE_ROW_LIMIT = new RowBounds(0, 1);
+  private static final int MAX_PEEK_CANDIDATES = 10;
 
   private final System2 system2;
 
@@ -108,14 +110,29 @@ public class CeQueueDao implements Dao {
     return mapper(dbSession).countByStatusAndComponentUuid(status, componentUuid);
   }
 
+  /**
+   * Claims the oldest pending task which can be executed, ie. a task whose component has no other task in progress.
+   * <p>
+   * The claim is an update conditioned by the status of the task, so that concurrent workers, in the same process or
+   * not, can't claim the same task. When the claim of a task is lost, the other tasks of the same component are
+   * not candidates anymore as the task which won is in progress.
+   * </p>
+   */
   public Optional<CeQueueDto> peek(DbSession session) {
-    List<String> taskUuids = mapper(session).selectEligibleForPeek(ONE_ROW_LIMIT);
-    if (taskUuids.isEmpty()) {
-      return Optional.absent();
+    List<CeQueueDto> eligibles = mapper(session).selectEligibleForPeek(new RowBounds(0, MAX_PEEK_CANDIDATES));
+    Set<String> triedComponentUuids = new HashSet<>();
+    for (CeQueueDto eligible : eligibles) {
+      String componentUuid = eligible.getComponentUuid();
+      if (componentUuid != null && !triedComponentUuids.add(componentUuid)) {
+        // only the oldest pending task of a component can be peeked
+        continue;
+      }
+      Optional<CeQueueDto> peeked = tryToPeek(session, eligible.getUuid());
+      if (peeked.isPresent()) {
+        return peeked;
+      }
     }
-
-    String taskUuid = taskUuids.get(0);
-    return tryToPeek(session, taskUuid);
+    return Optional.absent();
   }
 
   private Optional<CeQueueDto> tryToPeek(DbSession session, String taskUuid) {
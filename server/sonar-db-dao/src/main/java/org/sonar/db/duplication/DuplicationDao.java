@@ -22,6 +22,7 @@ package org.sonar.db.duplication;
 import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 
@@ -38,6 +39,22 @@ public class DuplicationDao implements Dao {
       partition -> session.getMapper(DuplicationMapper.class).selectCandidates(analysisUuid, language, partition));
   }
 
+  /**
+   * Scrolls the hashes of the rows having an id greater than {@code afterId}, as {@link DuplicationHashDto}.
+   * Rows of files without language are ignored.
+   */
+  public void scrollHashes(DbSession session, long afterId, ResultHandler handler) {
+    session.getMapper(DuplicationMapper.class).scrollHashes(afterId, handler);
+  }
+
+  /**
+   * Greatest id of table DUPLICATIONS_INDEX, or zero if table is empty
+   */
+  public long selectMaxId(DbSession session) {
+    Long maxId = session.getMapper(DuplicationMapper.class).selectMaxId();
+    return maxId == null ? 0L : maxId;
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
@@ -0,0 +1,57 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.duplication;
+
+/**
+ * Hash of a row of table DUPLICATIONS_INDEX, with the language of its file.
+ */
+public class DuplicationHashDto {
+
+  private long id;
+  private String hash;
+  private String language;
+
+  public long getId() {
+    return id;
+  }
+
+  DuplicationHashDto setId(long id) {
+    this.id = id;
+    return this;
+  }
+
+  public String getHash() {
+    return hash;
+  }
+
+  DuplicationHashDto setHash(String hash) {
+    this.hash = hash;
+    return this;
+  }
+
+  public String getLanguage() {
+    return language;
+  }
+
+  DuplicationHashDto setLanguage(String language) {
+    this.language = language;
+    return this;
+  }
+}
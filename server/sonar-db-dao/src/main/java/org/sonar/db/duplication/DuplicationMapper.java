@@ -21,8 +21,10 @@ package org.sonar.db.duplication;
 
 import java.util.Collection;
 import java.util.List;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 public interface DuplicationMapper {
 
@@ -31,6 +33,11 @@ public interface DuplicationMapper {
     @Param("language") String language,
     @Param("hashes") Collection<String> hashes);
 
+  void scrollHashes(@Param("afterId") long afterId, ResultHandler resultHandler);
+
+  @CheckForNull
+  Long selectMaxId();
+
   void batchInsert(DuplicationUnitDto unit);
 
 }
@@ -31,6 +31,7 @@ import org.sonar.db.component.ComponentDto;
 
 import static java.util.Collections.emptyList;
 import static org.sonar.db.DatabaseUtils.executeLargeInputs;
+import static org.sonar.db.DatabaseUtils.executeLargeInputsWithoutOutput;
 
 public class MeasureDao implements Dao {
 
@@ -85,13 +86,19 @@ public class MeasureDao implements Dao {
     mapper(dbSession).selectTreeByQuery(query, baseComponent.uuid(), query.getUuidPath(baseComponent), resultHandler);
   }
 
-  public List<PastMeasureDto> selectPastMeasures(DbSession dbSession, String componentUuid, String analysisUuid, Collection<Integer> metricIds) {
+  /**
+   * Streams the measures of all the components of an analysis, for a list of metrics. Measures on developers
+   * are ignored.
+   * Loading the past measures of a whole component tree this way requires a single query per partition of
+   * metric ids, instead of one query per component.
+   */
+  public void selectPastMeasures(DbSession dbSession, String analysisUuid, Collection<Integer> metricIds, ResultHandler resultHandler) {
     if (metricIds.isEmpty()) {
-      return emptyList();
+      return;
     }
-    return executeLargeInputs(
+    executeLargeInputsWithoutOutput(
       metricIds,
-      ids -> mapper(dbSession).selectPastMeasuresOnSingleAnalysis(componentUuid, analysisUuid, ids));
+      ids -> mapper(dbSession).selectPastMeasuresOnAnalysis(analysisUuid, ids, resultHandler));
   }
 
   /**
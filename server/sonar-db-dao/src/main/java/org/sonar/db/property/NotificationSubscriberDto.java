@@ -0,0 +1,51 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.property;
+
+/**
+ * Subscription of a user to the notifications of a component
+ */
+public class NotificationSubscriberDto {
+  private String componentKey;
+  private String login;
+
+  public String getComponentKey() {
+    return componentKey;
+  }
+
+  public NotificationSubscriberDto setComponentKey(String componentKey) {
+    this.componentKey = componentKey;
+    return this;
+  }
+
+  public String getLogin() {
+    return login;
+  }
+
+  public NotificationSubscriberDto setLogin(String login) {
+    this.login = login;
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "NotificationSubscriberDto{componentKey='" + componentKey + "', login='" + login + "'}";
+  }
+}
@@ -32,6 +32,7 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.api.resources.Scopes;
 import org.sonar.api.utils.System2;
+import org.sonar.core.util.Uuids;
 import org.sonar.db.Dao;
 import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbSession;
@@ -39,6 +40,7 @@ import org.sonar.db.MyBatis;
 import org.sonar.db.WildcardPosition;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.commons.lang.StringUtils.defaultString;
 import static org.sonar.db.DaoDatabaseUtils.buildLikeValue;
 import static org.sonar.db.DatabaseUtils.executeLargeInputs;
 import static org.sonar.db.DatabaseUtils.executeLargeInputsWithoutOutput;
@@ -46,6 +48,10 @@ import static org.sonar.db.DatabaseUtils.executeLargeInputsWithoutOutput;
 public class PropertiesDao implements Dao {
 
   private static final String NOTIFICATION_PREFIX = "notification.";
+  /**
+   * Key of the internal property which value changes whenever global properties are changed
+   */
+  private static final String GLOBAL_PROPERTIES_VERSION = "globalProperties.version";
   private static final int VARCHAR_MAXSIZE = 4000;
 
   private final MyBatis mybatis;
@@ -74,6 +80,20 @@ public class PropertiesDao implements Dao {
     }
   }
 
+  /**
+   * Returns the users who have specifically subscribed for the given components to the given notification dispatcher
+   * with the given notification channel, with a single request for all the components. Global subscriptions are
+   * not returned, see {@link #selectNotificationSubscribers(String, String, String)}.
+   */
+  public List<NotificationSubscriberDto> selectNotificationSubscribersOfComponents(String notificationDispatcherKey, String notificationChannelKey,
+    Collection<String> componentKeys) {
+    String propertyKey = NOTIFICATION_PREFIX + notificationDispatcherKey + "." + notificationChannelKey;
+    try (DbSession session = mybatis.openSession(false)) {
+      PropertiesMapper mapper = getMapper(session);
+      return executeLargeInputs(componentKeys, partition -> mapper.selectNotificationSubscribersOfComponents(propertyKey, partition));
+    }
+  }
+
   public boolean hasProjectNotificationSubscribersForDispatchers(String projectUuid, Collection<String> dispatcherKeys) {
     try (DbSession session = mybatis.openSession(false);
       Connection connection = session.getConnection();
@@ -110,6 +130,32 @@ public class PropertiesDao implements Dao {
     return getMapper(session).selectGlobalProperties();
   }
 
+  /**
+   * Cheap way to know whether global properties have been changed since the previous call, for example to
+   * refresh a cache of {@link #selectGlobalProperties(DbSession)}. The version is an opaque value, stored in
+   * table INTERNAL_PROPERTIES, which is changed by every write of this DAO which may affect global properties,
+   * whatever the process which makes it. Global properties written without this DAO don't change the version.
+   *
+   * @return the version, or an empty string if global properties have never been written by this DAO
+   */
+  public String selectGlobalPropertiesVersion(DbSession session) {
+    InternalPropertyDto dto = session.getMapper(InternalPropertiesMapper.class).selectAsText(GLOBAL_PROPERTIES_VERSION);
+    return dto == null ? "" : defaultString(dto.getValue());
+  }
+
+  /**
+   * The row is updated in place, so that concurrent writers don't conflict. A unique value is used rather
+   * than an incremented number, so that two writers can't set the same version.
+   */
+  private void changeGlobalPropertiesVersion(DbSession session) {
+    InternalPropertiesMapper mapper = session.getMapper(InternalPropertiesMapper.class);
+    String version = Uuids.create();
+    long now = system2.now();
+    if (mapper.updateAsText(GLOBAL_PROPERTIES_VERSION, version, now) == 0) {
+      mapper.insertAsText(GLOBAL_PROPERTIES_VERSION, version, now);
+    }
+  }
+
   @CheckForNull
   public PropertyDto selectGlobalProperty(DbSession session, String propertyKey) {
     return getMapper(session).selectByKey(new PropertyDto().setKey(propertyKey));
@@ -187,6 +233,13 @@ public class PropertiesDao implements Dao {
    */
   public void saveProperty(DbSession session, PropertyDto property) {
     save(getMapper(session), property.getKey(), property.getUserId(), property.getResourceId(), property.getValue());
+    if (isGlobal(property.getUserId(), property.getResourceId())) {
+      changeGlobalPropertiesVersion(session);
+    }
+  }
+
+  private static boolean isGlobal(@Nullable Integer userId, @Nullable Long componentId) {
+    return userId == null && componentId == null;
   }
 
   private void save(PropertiesMapper mapper,
@@ -232,11 +285,19 @@ public class PropertiesDao implements Dao {
    * Used by Governance.
    */
   public int deleteByQuery(DbSession dbSession, PropertyQuery query) {
-    return getMapper(dbSession).deleteByQuery(query);
+    int deleted = getMapper(dbSession).deleteByQuery(query);
+    if (deleted > 0 && isGlobal(query.userId(), query.componentId())) {
+      changeGlobalPropertiesVersion(dbSession);
+    }
+    return deleted;
   }
 
   public int delete(DbSession dbSession, PropertyDto dto) {
-    return getMapper(dbSession).delete(dto.getKey(), dto.getUserId(), dto.getResourceId());
+    int deleted = getMapper(dbSession).delete(dto.getKey(), dto.getUserId(), dto.getResourceId());
+    if (deleted > 0 && isGlobal(dto.getUserId(), dto.getResourceId())) {
+      changeGlobalPropertiesVersion(dbSession);
+    }
+    return deleted;
   }
 
   public void deleteProjectProperty(String key, Long projectId) {
@@ -262,7 +323,9 @@ public class PropertiesDao implements Dao {
   }
 
   public void deleteGlobalProperty(String key, DbSession session) {
-    getMapper(session).deleteGlobalProperty(key);
+    if (getMapper(session).deleteGlobalProperty(key) > 0) {
+      changeGlobalPropertiesVersion(session);
+    }
   }
 
   public void deleteGlobalProperty(String key) {
@@ -284,6 +347,7 @@ public class PropertiesDao implements Dao {
 
   public void deleteByKeyAndValue(DbSession dbSession, String key, String value){
     getMapper(dbSession).deleteByKeyAndValue(key, value);
+    changeGlobalPropertiesVersion(dbSession);
   }
 
   public void saveGlobalProperties(Map<String, String> properties) {
@@ -293,6 +357,7 @@ public class PropertiesDao implements Dao {
         mapper.deleteGlobalProperty(entry.getKey());
         save(mapper, entry.getKey(), null, null, entry.getValue());
       });
+      changeGlobalPropertiesVersion(session);
       session.commit();
     }
   }
@@ -303,7 +368,9 @@ public class PropertiesDao implements Dao {
 
     if (!newKey.equals(oldKey)) {
       try (DbSession session = mybatis.openSession(false)) {
-        getMapper(session).renamePropertyKey(oldKey, newKey);
+        if (getMapper(session).renamePropertyKey(oldKey, newKey) > 0) {
+          changeGlobalPropertiesVersion(session);
+        }
         session.commit();
       }
     }
@@ -29,6 +29,8 @@ public interface PropertiesMapper {
 
   List<String> findNotificationSubscribers(@Param("propKey") String propertyKey, @Nullable @Param("componentKey") String componentKey);
 
+  List<NotificationSubscriberDto> selectNotificationSubscribersOfComponents(@Param("propKey") String propertyKey, @Param("componentKeys") List<String> componentKeys);
+
   List<PropertyDto> selectGlobalProperties();
 
   List<PropertyDto> selectProjectProperties(String resourceKey);
@@ -31,8 +31,10 @@ import java.util.function.Function;
 import javax.annotation.CheckForNull;
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
+import org.sonar.db.protobuf.DbFileSources;
 import org.sonar.db.source.FileSourceDto.Type;
 
 public class FileSourceDao implements Dao {
@@ -44,6 +46,31 @@ public class FileSourceDao implements Dao {
     return mapper(session).select(fileUuid, Type.SOURCE);
   }
 
+  /**
+   * Streams the sources of all the files of a project in a single query. Only the columns required to read
+   * the binary data and to compare the source hash are loaded.
+   * Each row is a {@link FileSourceDto} passed to the given {@link ResultHandler}.
+   */
+  public void scrollSourcesOfProject(DbSession session, String projectUuid, ResultHandler handler) {
+    mapper(session).scrollSourcesOfProject(projectUuid, Type.SOURCE, handler);
+  }
+
+  /**
+   * Lines of source file in the range {@code [from, toInclusive]}. Only the blocks of column BINARY_DATA
+   * which contain these lines are decompressed.
+   *
+   * @return {@code null} if the file has no sources
+   * @see FileSourceDto#getSourceLines(int, int)
+   */
+  @CheckForNull
+  public List<DbFileSources.Line> selectSourceLines(DbSession session, String fileUuid, int from, int toInclusive) {
+    FileSourceDto dto = mapper(session).selectBinaryData(fileUuid, Type.SOURCE);
+    if (dto == null) {
+      return null;
+    }
+    return dto.getSourceLines(from, toInclusive);
+  }
+
   @CheckForNull
   public FileSourceDto selectTest(DbSession dbSession, String fileUuid) {
     return mapper(dbSession).select(fileUuid, Type.TEST);
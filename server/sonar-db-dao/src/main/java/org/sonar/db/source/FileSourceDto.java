@@ -23,8 +23,10 @@ import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.CheckForNull;
@@ -41,6 +43,17 @@ public class FileSourceDto {
   private static final String SIZE_LIMIT_EXCEEDED_EXCEPTION_MESSAGE = "Protocol message was too large.  May be malicious.  " +
     "Use CodedInputStream.setSizeLimit() to increase the size limit.";
 
+  /**
+   * First bytes of the column BINARY_DATA when source data is stored as blocks of lines. Data stored
+   * before this layout starts with the magic of {@link LZ4BlockOutputStream} and is still supported.
+   */
+  private static final int LINE_BLOCKS_MAGIC = 0x534C4231;
+  private static final int LINES_PER_BLOCK = 256;
+  // magic and number of blocks
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+  // first line, last line and size in bytes of each block
+  private static final int BLOCK_HEADER_SIZE = 3 * Integer.BYTES;
+
   private Long id;
   private String projectUuid;
   private String fileUuid;
@@ -95,27 +108,97 @@ public class FileSourceDto {
 
   public DbFileSources.Data decodeSourceData(byte[] binaryData) {
     try {
-      return decodeRegularSourceData(binaryData);
+      if (!isLineBlocks(binaryData)) {
+        return decodeRegularSourceData(binaryData, 0, binaryData.length);
+      }
+      DbFileSources.Data.Builder data = DbFileSources.Data.newBuilder();
+      for (LineBlock block : readLineBlocks(binaryData)) {
+        data.addAllLines(decodeRegularSourceData(binaryData, block.offset, block.length).getLinesList());
+      }
+      return data.build();
     } catch (IOException e) {
-      throw new IllegalStateException(
-        format("Fail to decompress and deserialize source data [id=%s,fileUuid=%s,projectUuid=%s]", id, fileUuid, projectUuid),
-        e);
+      throw failToDecodeSourceData(e);
+    }
+  }
+
+  /**
+   * Decompress and deserialize only the lines of column BINARY_DATA which are in the range {@code [from, toInclusive]}.
+   * When data is stored as blocks of lines, blocks which are out of range are neither decompressed nor parsed.
+   *
+   * @param from starts from 1
+   * @param toInclusive starts from 1, must be greater than or equal param {@code from}
+   */
+  public List<DbFileSources.Line> decodeSourceLines(byte[] binaryData, int from, int toInclusive) {
+    try {
+      List<DbFileSources.Line> lines = new ArrayList<>();
+      if (!isLineBlocks(binaryData)) {
+        addLinesInRange(decodeRegularSourceData(binaryData, 0, binaryData.length), from, toInclusive, lines);
+        return lines;
+      }
+      for (LineBlock block : readLineBlocks(binaryData)) {
+        if (block.lastLine >= from && block.firstLine <= toInclusive) {
+          addLinesInRange(decodeRegularSourceData(binaryData, block.offset, block.length), from, toInclusive, lines);
+        }
+      }
+      return lines;
+    } catch (IOException e) {
+      throw failToDecodeSourceData(e);
+    }
+  }
+
+  private IllegalStateException failToDecodeSourceData(IOException e) {
+    return new IllegalStateException(
+      format("Fail to decompress and deserialize source data [id=%s,fileUuid=%s,projectUuid=%s]", id, fileUuid, projectUuid),
+      e);
+  }
+
+  private static void addLinesInRange(DbFileSources.Data data, int from, int toInclusive, List<DbFileSources.Line> lines) {
+    for (DbFileSources.Line line : data.getLinesList()) {
+      if (line.hasLine() && line.getLine() >= from && line.getLine() <= toInclusive) {
+        lines.add(line);
+      }
+    }
+  }
+
+  private static boolean isLineBlocks(byte[] binaryData) {
+    return binaryData.length >= HEADER_SIZE && ByteBuffer.wrap(binaryData).getInt(0) == LINE_BLOCKS_MAGIC;
+  }
+
+  private static List<LineBlock> readLineBlocks(byte[] binaryData) throws IOException {
+    ByteBuffer header = ByteBuffer.wrap(binaryData);
+    header.position(Integer.BYTES);
+    int blockCount = header.getInt();
+    if (blockCount < 0 || (long) HEADER_SIZE + (long) blockCount * BLOCK_HEADER_SIZE > binaryData.length) {
+      throw new IOException(format("Invalid number of blocks of lines: %d", blockCount));
+    }
+    List<LineBlock> blocks = new ArrayList<>(blockCount);
+    int offset = HEADER_SIZE + blockCount * BLOCK_HEADER_SIZE;
+    for (int i = 0; i < blockCount; i++) {
+      int firstLine = header.getInt();
+      int lastLine = header.getInt();
+      int length = header.getInt();
+      if (length < 0 || (long) offset + length > binaryData.length) {
+        throw new IOException(format("Invalid size of block of lines #%d: %d", i, length));
+      }
+      blocks.add(new LineBlock(firstLine, lastLine, offset, length));
+      offset += length;
     }
+    return blocks;
   }
 
-  private static DbFileSources.Data decodeRegularSourceData(byte[] binaryData) throws IOException {
-    try (LZ4BlockInputStream lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData))) {
+  private static DbFileSources.Data decodeRegularSourceData(byte[] binaryData, int offset, int length) throws IOException {
+    try (LZ4BlockInputStream lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData, offset, length))) {
       return DbFileSources.Data.parseFrom(lz4Input);
     } catch (InvalidProtocolBufferException e) {
       if (SIZE_LIMIT_EXCEEDED_EXCEPTION_MESSAGE.equals(e.getMessage())) {
-        return decodeHugeSourceData(binaryData);
+        return decodeHugeSourceData(binaryData, offset, length);
       }
       throw e;
     }
   }
 
-  private static DbFileSources.Data decodeHugeSourceData(byte[] binaryData) throws IOException {
-    try (LZ4BlockInputStream lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData))) {
+  private static DbFileSources.Data decodeHugeSourceData(byte[] binaryData, int offset, int length) throws IOException {
+    try (LZ4BlockInputStream lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData, offset, length))) {
       CodedInputStream input = CodedInputStream.newInstance(lz4Input);
       input.setSizeLimit(Integer.MAX_VALUE);
       return DbFileSources.Data.parseFrom(input);
@@ -125,16 +208,56 @@ public class FileSourceDto {
   /**
    * Serialize and compress protobuf message {@link org.sonar.db.protobuf.DbFileSources.Data}
    * in the column BINARY_DATA.
+   * <p>
+   * Lines are split into blocks of {@link #LINES_PER_BLOCK} lines which are compressed independently. The column
+   * starts with a header giving the range of lines and the size of each block, so that a range of lines can be
+   * read without decompressing the whole file (see {@link #decodeSourceLines(byte[], int, int)}).
    */
   public static byte[] encodeSourceData(DbFileSources.Data data) {
+    List<DbFileSources.Line> lines = data.getLinesList();
+    int blockCount = (lines.size() + LINES_PER_BLOCK - 1) / LINES_PER_BLOCK;
+    List<byte[]> blocks = new ArrayList<>(blockCount);
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(byteOutput)) {
+      output.writeInt(LINE_BLOCKS_MAGIC);
+      output.writeInt(blockCount);
+      for (int i = 0; i < blockCount; i++) {
+        List<DbFileSources.Line> blockLines = lines.subList(i * LINES_PER_BLOCK, Math.min(lines.size(), (i + 1) * LINES_PER_BLOCK));
+        byte[] block = encodeRegularSourceData(DbFileSources.Data.newBuilder().addAllLines(blockLines).build());
+        blocks.add(block);
+        writeBlockHeader(blockLines, block, output);
+      }
+      for (byte[] block : blocks) {
+        output.write(block);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to serialize and compress source data", e);
+    }
+    return byteOutput.toByteArray();
+  }
+
+  private static void writeBlockHeader(List<DbFileSources.Line> blockLines, byte[] block, DataOutputStream output) throws IOException {
+    // lines without number are never returned by a range, so they do not extend the range of the block
+    int firstLine = Integer.MAX_VALUE;
+    int lastLine = 0;
+    for (DbFileSources.Line line : blockLines) {
+      if (line.hasLine()) {
+        firstLine = Math.min(firstLine, line.getLine());
+        lastLine = Math.max(lastLine, line.getLine());
+      }
+    }
+    output.writeInt(firstLine);
+    output.writeInt(lastLine);
+    output.writeInt(block.length);
+  }
+
+  private static byte[] encodeRegularSourceData(DbFileSources.Data data) throws IOException {
     ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
     LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput);
     try {
       data.writeTo(compressedOutput);
       compressedOutput.close();
       return byteOutput.toByteArray();
-    } catch (IOException e) {
-      throw new IllegalStateException("Fail to serialize and compress source data", e);
     } finally {
       IOUtils.closeQuietly(compressedOutput);
     }
@@ -212,6 +335,14 @@ public class FileSourceDto {
     return decodeSourceData(binaryData);
   }
 
+  /**
+   * Lines of the protobuf message {@link org.sonar.db.protobuf.DbFileSources.Data} in the range {@code [from, toInclusive]}
+   * @see #decodeSourceLines(byte[], int, int)
+   */
+  public List<DbFileSources.Line> getSourceLines(int from, int toInclusive) {
+    return decodeSourceLines(binaryData, from, toInclusive);
+  }
+
   public FileSourceDto setSourceData(DbFileSources.Data data) {
     this.dataType = Type.SOURCE;
     this.binaryData = encodeSourceData(data);
@@ -290,6 +421,20 @@ public class FileSourceDto {
     return this;
   }
 
+  private static class LineBlock {
+    private final int firstLine;
+    private final int lastLine;
+    private final int offset;
+    private final int length;
+
+    private LineBlock(int firstLine, int lastLine, int offset, int length) {
+      this.firstLine = firstLine;
+      this.lastLine = lastLine;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
   public static class Type {
     public static final String SOURCE = "SOURCE";
     public static final String TEST = "TEST";
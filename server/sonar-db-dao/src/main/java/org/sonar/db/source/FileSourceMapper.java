@@ -22,14 +22,20 @@ package org.sonar.db.source;
 import java.util.List;
 import javax.annotation.CheckForNull;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 public interface FileSourceMapper {
 
   List<FileSourceDto> selectHashesForProject(@Param("projectUuid") String projectUuid, @Param("dataType") String dataType);
 
+  void scrollSourcesOfProject(@Param("projectUuid") String projectUuid, @Param("dataType") String dataType, ResultHandler resultHandler);
+
   @CheckForNull
   FileSourceDto select(@Param("fileUuid") String fileUuid, @Param("dataType") String dataType);
 
+  @CheckForNull
+  FileSourceDto selectBinaryData(@Param("fileUuid") String fileUuid, @Param("dataType") String dataType);
+
   void insert(FileSourceDto dto);
 
   void update(FileSourceDto dto);
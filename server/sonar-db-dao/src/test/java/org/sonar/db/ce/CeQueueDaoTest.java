@@ -30,6 +30,7 @@ import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 
 import static com.google.common.collect.FluentIterable.from;
@@ -182,6 +183,38 @@ public class CeQueueDaoTest {
     assertThat(peek.get().getUuid()).isEqualTo(TASK_UUID_2);
   }
 
+  @Test
+  public void peek_oldest_pending_of_another_project_when_a_project_has_a_task_in_progress() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, IN_PROGRESS);
+    system2.setNow(INIT_TIME + 1_000_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 2_000_000);
+    insert(TASK_UUID_3, COMPONENT_UUID_2, PENDING);
+
+    Optional<CeQueueDto> peek = underTest.peek(db.getSession());
+    assertThat(peek.isPresent()).isTrue();
+    assertThat(peek.get().getUuid()).isEqualTo(TASK_UUID_3);
+    verifyCeQueueStatuses(TASK_UUID_1, IN_PROGRESS, TASK_UUID_2, PENDING, TASK_UUID_3, IN_PROGRESS);
+  }
+
+  @Test
+  public void workers_with_their_own_session_do_not_peek_multiple_tasks_on_same_project() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 1_000_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 2_000_000);
+    insert(TASK_UUID_3, COMPONENT_UUID_2, PENDING);
+
+    try (DbSession worker1 = db.getDbClient().openSession(false);
+      DbSession worker2 = db.getDbClient().openSession(false);
+      DbSession worker3 = db.getDbClient().openSession(false)) {
+      assertThat(underTest.peek(worker1).get().getUuid()).isEqualTo(TASK_UUID_1);
+      assertThat(underTest.peek(worker2).get().getUuid()).isEqualTo(TASK_UUID_3);
+      assertThat(underTest.peek(worker3).isPresent()).isFalse();
+    }
+    verifyCeQueueStatuses(TASK_UUID_1, IN_PROGRESS, TASK_UUID_2, PENDING, TASK_UUID_3, IN_PROGRESS);
+  }
+
   @Test
   public void select_by_query() {
     // task status not in query
@@ -25,10 +25,12 @@ import org.sonar.api.utils.System2;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 
 public class DuplicationDaoTest {
@@ -61,6 +63,30 @@ public class DuplicationDaoTest {
     assertThat(blocks).hasSize(2);
   }
 
+  @Test
+  public void scroll_hashes_after_id() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    List<DuplicationHashDto> hashes = new ArrayList<>();
+    dao.scrollHashes(dbSession, 4L, context -> hashes.add((DuplicationHashDto) context.getResultObject()));
+
+    assertThat(hashes).extracting(DuplicationHashDto::getId, DuplicationHashDto::getHash, DuplicationHashDto::getLanguage).containsOnly(
+      tuple(5L, "aa", "java"),
+      tuple(6L, "aa", "java"),
+      tuple(7L, "aa", "grvy"));
+  }
+
+  @Test
+  public void select_max_id() {
+    assertThat(dao.selectMaxId(dbSession)).isEqualTo(0L);
+
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    assertThat(dao.selectMaxId(dbSession)).isEqualTo(7L);
+  }
+
   @Test
   public void insert() {
     db.prepareDbUnit(getClass(), "insert.xml");
@@ -43,6 +43,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.sonar.api.resources.Qualifiers.FILE;
 import static org.sonar.api.resources.Qualifiers.PROJECT;
 import static org.sonar.api.resources.Qualifiers.UNIT_TEST_FILE;
@@ -373,6 +374,43 @@ public class MeasureDaoTest {
     assertThat(result).hasSize(2).extracting(MeasureDto::getData).containsOnly("PROJECT_M1", "PROJECT_M2");
   }
 
+  @Test
+  public void select_past_measures_of_all_components_of_an_analysis() {
+    ComponentDto project = db.components().insertProject();
+    insertAnalysis(LAST_ANALYSIS_UUID, project.uuid(), true);
+    insertAnalysis(OTHER_ANALYSIS_UUID, project.uuid(), false);
+    insertMeasure("PROJECT_M1", OTHER_ANALYSIS_UUID, project.uuid(), NCLOC_METRIC_ID);
+    insertMeasure("PROJECT_M2", OTHER_ANALYSIS_UUID, project.uuid(), COVERAGE_METRIC_ID);
+    insertMeasure("PROJECT_M3", OTHER_ANALYSIS_UUID, project.uuid(), COMPLEXITY_METRIC_ID);
+    insertMeasure("DIR_M1", OTHER_ANALYSIS_UUID, "DIR", NCLOC_METRIC_ID);
+    insertMeasureOnPerson("DIR_M2", OTHER_ANALYSIS_UUID, "DIR", COVERAGE_METRIC_ID, A_PERSON_ID);
+    insertMeasure("LAST_M1", LAST_ANALYSIS_UUID, project.uuid(), NCLOC_METRIC_ID);
+    db.commit();
+
+    List<PastMeasureDto> result = new ArrayList<>();
+    underTest.selectPastMeasures(db.getSession(), OTHER_ANALYSIS_UUID, asList(NCLOC_METRIC_ID, COVERAGE_METRIC_ID),
+      context -> result.add((PastMeasureDto) context.getResultObject()));
+
+    assertThat(result).extracting(PastMeasureDto::getComponentUuid, PastMeasureDto::getMetricId).containsOnly(
+      tuple(project.uuid(), NCLOC_METRIC_ID),
+      tuple(project.uuid(), COVERAGE_METRIC_ID),
+      tuple("DIR", NCLOC_METRIC_ID));
+    assertThat(result).extracting(PastMeasureDto::getPersonId).containsOnly((Long) null);
+  }
+
+  @Test
+  public void select_past_measures_of_an_analysis_does_nothing_when_no_metrics() {
+    ComponentDto project = db.components().insertProject();
+    insertAnalysis(OTHER_ANALYSIS_UUID, project.uuid(), false);
+    insertMeasure("PROJECT_M1", OTHER_ANALYSIS_UUID, project.uuid(), NCLOC_METRIC_ID);
+    db.commit();
+
+    List<PastMeasureDto> result = new ArrayList<>();
+    underTest.selectPastMeasures(db.getSession(), OTHER_ANALYSIS_UUID, emptyList(), context -> result.add((PastMeasureDto) context.getResultObject()));
+
+    assertThat(result).isEmpty();
+  }
+
   @Test
   public void selectByComponentsAndMetrics() {
     ComponentDto project1 = db.components().insertProject(db.getDefaultOrganization(), "P1");
@@ -491,6 +529,4 @@ public class MeasureDaoTest {
       .setLast(isLast));
   }
 
-  // TODO test selectPastMeasures
-
 }
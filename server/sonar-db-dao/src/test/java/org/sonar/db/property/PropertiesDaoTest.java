@@ -47,6 +47,7 @@ import org.sonar.db.user.UserTesting;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.newHashSet;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.groups.Tuple.tuple;
@@ -148,6 +149,34 @@ public class PropertiesDaoTest {
       .containsOnly("user1", "user2");
   }
 
+  @Test
+  public void selectNotificationSubscribersOfComponents() throws SQLException {
+    int userId1 = insertUser("user1");
+    int userId2 = insertUser("user2");
+    int userId3 = insertUser("user3");
+    ComponentDto projectA = insertProject("PROJECT_A");
+    ComponentDto projectB = insertProject("PROJECT_B");
+    ComponentDto projectC = insertProject("PROJECT_C");
+    insertProperty("notification.NewIssues.Email", "true", projectA.getId(), userId1);
+    insertProperty("notification.NewIssues.Email", "true", projectB.getId(), userId1);
+    insertProperty("notification.NewIssues.Email", "true", projectB.getId(), userId2);
+    // other project, other channel, disabled subscription or global subscription
+    insertProperty("notification.NewIssues.Email", "true", projectC.getId(), userId3);
+    insertProperty("notification.NewIssues.Twitter", "true", projectA.getId(), userId3);
+    insertProperty("notification.NewIssues.Email", "false", projectA.getId(), userId2);
+    insertProperty("notification.NewIssues.Email", "true", null, userId3);
+
+    List<NotificationSubscriberDto> subscribers = underTest.selectNotificationSubscribersOfComponents("NewIssues", "Email", Arrays.asList(projectA.key(), projectB.key(), "unknown"));
+
+    assertThat(subscribers)
+      .extracting(NotificationSubscriberDto::getComponentKey, NotificationSubscriberDto::getLogin)
+      .containsOnly(
+        tuple(projectA.key(), "user1"),
+        tuple(projectB.key(), "user1"),
+        tuple(projectB.key(), "user2"));
+    assertThat(underTest.selectNotificationSubscribersOfComponents("NewIssues", "Email", emptyList())).isEmpty();
+  }
+
   @Test
   public void hasNotificationSubscribers() throws SQLException {
     int userId1 = insertUser("user1");
@@ -206,6 +235,38 @@ public class PropertiesDaoTest {
       .hasValue("two");
   }
 
+  @Test
+  public void selectGlobalPropertiesVersion_changes_when_global_properties_change() {
+    assertThat(underTest.selectGlobalPropertiesVersion(session)).isEmpty();
+
+    underTest.saveProperty(new PropertyDto().setKey("global.one").setValue("one"));
+    String v1 = underTest.selectGlobalPropertiesVersion(session);
+    assertThat(v1).isNotEmpty();
+
+    // updating a value changes the version
+    underTest.saveProperty(new PropertyDto().setKey("global.one").setValue("two"));
+    String v2 = underTest.selectGlobalPropertiesVersion(session);
+    assertThat(v2).isNotEqualTo(v1);
+
+    // component and user properties are ignored
+    underTest.saveProperty(new PropertyDto().setKey("component.one").setValue("one").setResourceId(10L));
+    underTest.saveProperty(new PropertyDto().setKey("user.one").setValue("one").setUserId(100));
+    assertThat(underTest.selectGlobalPropertiesVersion(session)).isEqualTo(v2);
+
+    underTest.deleteGlobalProperty("global.one");
+    assertThat(underTest.selectGlobalPropertiesVersion(session)).isNotEqualTo(v2);
+  }
+
+  @Test
+  public void selectGlobalPropertiesVersion_changes_when_a_key_is_renamed() throws SQLException {
+    insertProperty("old_name", "doc1", null, null);
+    String before = underTest.selectGlobalPropertiesVersion(session);
+
+    underTest.renamePropertyKey("old_name", "new_name");
+
+    assertThat(underTest.selectGlobalPropertiesVersion(session)).isNotEqualTo(before);
+  }
+
   @Test
   @UseDataProvider("allValuesForSelect")
   public void selectGlobalProperties_supports_all_values(String dbValue, String expected) throws SQLException {
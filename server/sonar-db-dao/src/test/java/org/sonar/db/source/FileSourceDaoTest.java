@@ -21,6 +21,8 @@ package org.sonar.db.source;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.apache.commons.io.IOUtils;
@@ -29,6 +31,7 @@ import org.junit.Test;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
+import org.sonar.db.protobuf.DbFileSources;
 import org.sonar.db.source.FileSourceDto.Type;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -59,6 +62,45 @@ public class FileSourceDaoTest {
     assertThat(fileSourceDto.getRevision()).isEqualTo("123456789");
   }
 
+  @Test
+  public void select_source_lines() {
+    DbFileSources.Data.Builder data = DbFileSources.Data.newBuilder();
+    for (int line = 1; line <= 1000; line++) {
+      data.addLines(DbFileSources.Line.newBuilder().setLine(line).setSource("SOURCE_" + line));
+    }
+    underTest.insert(session, new FileSourceDto()
+      .setProjectUuid("PRJ_UUID")
+      .setFileUuid("FILE_UUID")
+      .setSourceData(data.build())
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000000L));
+    session.commit();
+
+    assertThat(underTest.selectSourceLines(session, "FILE_UUID", 510, 513))
+      .extracting(DbFileSources.Line::getSource)
+      .containsExactly("SOURCE_510", "SOURCE_511", "SOURCE_512", "SOURCE_513");
+    assertThat(underTest.selectSourceLines(session, "unknown", 1, 10)).isNull();
+  }
+
+  @Test
+  public void scroll_sources_of_project() {
+    insertSource("PRJ_UUID", "FILE1_UUID", Type.SOURCE, "FILE1_HASH");
+    insertSource("PRJ_UUID", "FILE2_UUID", Type.SOURCE, "FILE2_HASH");
+    insertSource("PRJ_UUID", "TEST_UUID", Type.TEST, "TEST_HASH");
+    insertSource("OTHER_PRJ_UUID", "OTHER_FILE_UUID", Type.SOURCE, "OTHER_HASH");
+
+    List<FileSourceDto> dtos = new ArrayList<>();
+    underTest.scrollSourcesOfProject(session, "PRJ_UUID", context -> dtos.add((FileSourceDto) context.getResultObject()));
+
+    assertThat(dtos).extracting(FileSourceDto::getFileUuid).containsOnly("FILE1_UUID", "FILE2_UUID");
+    assertThat(dtos).extracting(FileSourceDto::getSrcHash).containsOnly("FILE1_HASH", "FILE2_HASH");
+    assertThat(dtos.get(0).getSourceData().getLinesList()).extracting(DbFileSources.Line::getScmRevision).containsExactly("REV");
+
+    dtos.clear();
+    underTest.scrollSourcesOfProject(session, "unknown", context -> dtos.add((FileSourceDto) context.getResultObject()));
+    assertThat(dtos).isEmpty();
+  }
+
   @Test
   public void select_line_hashes() {
     dbTester.prepareDbUnit(getClass(), "shared.xml");
@@ -193,4 +235,18 @@ public class FileSourceDaoTest {
       }
     }
   }
+
+  private void insertSource(String projectUuid, String fileUuid, String dataType, String srcHash) {
+    underTest.insert(session, new FileSourceDto()
+      .setProjectUuid(projectUuid)
+      .setFileUuid(fileUuid)
+      .setSourceData(DbFileSources.Data.newBuilder()
+        .addLines(DbFileSources.Line.newBuilder().setLine(1).setSource("SOURCE").setScmRevision("REV"))
+        .build())
+      .setSrcHash(srcHash)
+      .setDataType(dataType)
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000000L));
+    session.commit();
+  }
 }
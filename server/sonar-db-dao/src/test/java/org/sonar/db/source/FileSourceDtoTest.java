@@ -19,8 +19,11 @@
  */
 package org.sonar.db.source;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -80,6 +83,86 @@ public class FileSourceDtoTest {
     assertThat(data.getLinesCount()).isEqualTo(build.getLinesCount());
   }
 
+  @Test
+  public void encode_and_decode_source_data_of_several_blocks_of_lines() {
+    DbFileSources.Data data = createData(1, 1000);
+
+    FileSourceDto underTest = new FileSourceDto().setSourceData(data);
+
+    assertThat(underTest.getSourceData()).isEqualTo(data);
+  }
+
+  @Test
+  public void encode_and_decode_empty_source_data() {
+    DbFileSources.Data data = DbFileSources.Data.newBuilder().build();
+
+    FileSourceDto underTest = new FileSourceDto().setSourceData(data);
+
+    assertThat(underTest.getSourceData().getLinesCount()).isZero();
+    assertThat(underTest.getSourceLines(1, 10)).isEmpty();
+  }
+
+  @Test
+  public void getSourceLines_returns_range_of_lines_across_blocks() {
+    FileSourceDto underTest = new FileSourceDto().setSourceData(createData(1, 1000));
+
+    List<DbFileSources.Line> lines = underTest.getSourceLines(250, 260);
+
+    assertThat(lines).extracting(DbFileSources.Line::getLine).containsExactly(250, 251, 252, 253, 254, 255, 256, 257, 258, 259, 260);
+    assertThat(lines.get(0).getSource()).isEqualTo("SOURCE_250");
+    assertThat(underTest.getSourceLines(999, Integer.MAX_VALUE)).extracting(DbFileSources.Line::getLine).containsExactly(999, 1000);
+    assertThat(underTest.getSourceLines(1001, 2000)).isEmpty();
+  }
+
+  @Test
+  public void getSourceLines_ignores_lines_without_number() {
+    DbFileSources.Data data = DbFileSources.Data.newBuilder()
+      .addLines(DbFileSources.Line.newBuilder().setSource("no number"))
+      .addLines(DbFileSources.Line.newBuilder().setLine(1).setSource("SOURCE_1"))
+      .build();
+    FileSourceDto underTest = new FileSourceDto().setSourceData(data);
+
+    assertThat(underTest.getSourceLines(1, 10)).extracting(DbFileSources.Line::getSource).containsExactly("SOURCE_1");
+  }
+
+  @Test
+  public void decode_source_data_stored_as_a_single_compressed_message() throws IOException {
+    DbFileSources.Data data = createData(1, 300);
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    try (LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput)) {
+      data.writeTo(compressedOutput);
+    }
+
+    FileSourceDto underTest = new FileSourceDto().setBinaryData(byteOutput.toByteArray());
+
+    assertThat(underTest.getSourceData()).isEqualTo(data);
+    assertThat(underTest.getSourceLines(299, 310)).extracting(DbFileSources.Line::getLine).containsExactly(299, 300);
+  }
+
+  @Test
+  public void getSourceLines_throws_ISE_when_blocks_of_lines_are_truncated() {
+    byte[] bytes = FileSourceDto.encodeSourceData(createData(1, 1000));
+    FileSourceDto underTest = new FileSourceDto()
+      .setBinaryData(Arrays.copyOf(bytes, bytes.length / 2))
+      .setFileUuid("file uuid");
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Fail to decompress and deserialize source data [id=null,fileUuid=file uuid,projectUuid=null]");
+
+    underTest.getSourceLines(990, 1000);
+  }
+
+  private static DbFileSources.Data createData(int firstLine, int lastLine) {
+    DbFileSources.Data.Builder dataBuilder = DbFileSources.Data.newBuilder();
+    for (int i = firstLine; i <= lastLine; i++) {
+      dataBuilder.addLines(DbFileSources.Line.newBuilder()
+        .setLine(i)
+        .setSource("SOURCE_" + i)
+        .setScmRevision("REVISION_" + i));
+    }
+    return dataBuilder.build();
+  }
+
   private static DbFileSources.Data createOver64MBDataStructure() {
     DbFileSources.Data.Builder dataBuilder = DbFileSources.Data.newBuilder();
     DbFileSources.Line.Builder lineBuilder = DbFileSources.Line.newBuilder();
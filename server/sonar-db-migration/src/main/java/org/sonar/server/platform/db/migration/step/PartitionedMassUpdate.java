@@ -0,0 +1,320 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.db.migration.step;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.util.ProgressLogger;
+import org.sonar.db.Database;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+
+/**
+ * Variant of {@link MassUpdate} for very large tables. The range of keys (ids or uuids) of the table is split into
+ * chunks, which are processed concurrently by {@link #threads(int)} partitions. Each partition has its own pair of
+ * read and write connections, commits its updates by batches and logs its own progress.
+ * <p>
+ * The SELECT request must have exactly two parameters, which are bound to the first and last keys (both inclusive)
+ * of each chunk. For example:
+ * </p>
+ * <pre>
+ * PartitionedMassUpdate massUpdate = context.preparePartitionedMassUpdate();
+ * massUpdate.partitionById("SELECT min(id), max(id) FROM issues");
+ * massUpdate.select("SELECT id, tags FROM issues WHERE id &gt;= ? AND id &lt;= ? AND tags IS NOT NULL");
+ * massUpdate.update("UPDATE issues SET tags=? WHERE id=?");
+ * massUpdate.rowPluralName("issues");
+ * massUpdate.execute((row, update) -&gt; { ... });
+ * </pre>
+ * <p>
+ * Handlers are called concurrently by the different partitions, so they must be thread-safe. Rows
+ * must not move from a chunk to another one while being updated, so the updated columns must not
+ * include the key.
+ * </p>
+ */
+public class PartitionedMassUpdate {
+
+  private static final Logger LOG = Loggers.get(PartitionedMassUpdate.class);
+  private static final int DEFAULT_CHUNK_SIZE = 10_000;
+
+  private final Database db;
+  private final Connection readConnection;
+  private final AtomicLong counter = new AtomicLong(0L);
+  private final List<String> updateSqls = new ArrayList<>(1);
+
+  private List<Chunk> chunks;
+  private String selectSql;
+  private String pluralLabel = "rows";
+  private int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  PartitionedMassUpdate(Database db, Connection readConnection) {
+    this.db = db;
+    this.readConnection = readConnection;
+  }
+
+  /**
+   * Number of keys per chunk. Must be called before {@link #partitionById(String)} or {@link #partitionByKey(String)}.
+   * Default is 10'000.
+   */
+  public PartitionedMassUpdate chunkSize(int i) {
+    checkArgument(i > 0, "Chunk size must be positive");
+    checkState(chunks == null, "Chunk size must be defined before partitions");
+    this.chunkSize = i;
+    return this;
+  }
+
+  /**
+   * Number of partitions processed concurrently, each one with its own read and write connections.
+   * Default is the number of processors, with a maximum of 4.
+   */
+  public PartitionedMassUpdate threads(int i) {
+    checkArgument(i > 0, "Number of threads must be positive");
+    this.threads = i;
+    return this;
+  }
+
+  /**
+   * Splits the range of numeric ids returned by the request, which must return the min and max ids,
+   * in chunks of {@link #chunkSize(int)} ids.
+   */
+  public PartitionedMassUpdate partitionById(String minMaxSql) throws SQLException {
+    long[] minMax = SelectImpl.create(db, readConnection, minMaxSql).get(row -> {
+      Long min = row.getNullableLong(1);
+      Long max = row.getNullableLong(2);
+      return min == null || max == null ? null : new long[] {min, max};
+    });
+    List<Chunk> res = new ArrayList<>();
+    if (minMax != null) {
+      for (long first = minMax[0]; first <= minMax[1]; first += chunkSize) {
+        long firstId = first;
+        long lastId = Math.min(minMax[1], first + chunkSize - 1);
+        res.add(select -> select.setLong(1, firstId).setLong(2, lastId));
+        if (lastId == Long.MAX_VALUE) {
+          break;
+        }
+      }
+    }
+    this.chunks = res;
+    return this;
+  }
+
+  /**
+   * Splits the keys returned by the request, which must return all the keys (for example uuids) sorted in
+   * ascending order, in chunks of {@link #chunkSize(int)} keys. Keys are compared by the database, so that
+   * chunks are consistent with the collation of the column.
+   */
+  public PartitionedMassUpdate partitionByKey(String sortedKeysSql) throws SQLException {
+    List<Chunk> res = new ArrayList<>();
+    String[] firstKey = new String[1];
+    String[] lastKey = new String[1];
+    AtomicLong keys = new AtomicLong();
+    SelectImpl.create(db, readConnection, sortedKeysSql).scroll(row -> {
+      String key = row.getString(1);
+      if (firstKey[0] == null) {
+        firstKey[0] = key;
+      }
+      lastKey[0] = key;
+      if (keys.incrementAndGet() % chunkSize == 0) {
+        res.add(keyChunk(firstKey[0], key));
+        firstKey[0] = null;
+      }
+    });
+    if (firstKey[0] != null) {
+      res.add(keyChunk(firstKey[0], lastKey[0]));
+    }
+    this.chunks = res;
+    return this;
+  }
+
+  private static Chunk keyChunk(String firstKey, String lastKey) {
+    return select -> select.setString(1, firstKey).setString(2, lastKey);
+  }
+
+  /**
+   * @see PartitionedMassUpdate for the parameters of the request
+   */
+  public PartitionedMassUpdate select(String sql) {
+    this.selectSql = sql;
+    return this;
+  }
+
+  public PartitionedMassUpdate update(String sql) {
+    this.updateSqls.add(sql);
+    return this;
+  }
+
+  public PartitionedMassUpdate rowPluralName(String s) {
+    this.pluralLabel = s;
+    return this;
+  }
+
+  public void execute(MassUpdate.Handler handler) throws SQLException {
+    checkState(selectSql != null && !updateSqls.isEmpty(), "SELECT or UPDATE requests are not defined");
+    checkState(updateSqls.size() == 1, "There should be only one update when using a " + MassUpdate.Handler.class.getName());
+    doExecute((row, updates) -> {
+      UpsertImpl update = updates.get(0);
+      if (handler.handle(row, update)) {
+        update.addBatch();
+      }
+    });
+  }
+
+  public void execute(MassUpdate.MultiHandler handler) throws SQLException {
+    checkState(selectSql != null && !updateSqls.isEmpty(), "SELECT or UPDATE(s) requests are not defined");
+    doExecute((row, updates) -> {
+      for (int i = 0; i < updates.size(); i++) {
+        UpsertImpl update = updates.get(i);
+        if (handler.handle(row, update, i)) {
+          update.addBatch();
+        }
+      }
+    });
+  }
+
+  private void doExecute(RowConsumer consumer) throws SQLException {
+    checkState(chunks != null, "Partitions are not defined");
+    int partitions = Math.max(1, Math.min(threads, chunks.size()));
+    LOG.info("Processing {} chunks of {} {} with {} partitions", chunks.size(), chunkSize, pluralLabel, partitions);
+
+    AtomicInteger nextChunk = new AtomicInteger();
+    AtomicBoolean failed = new AtomicBoolean(false);
+    ExecutorService executor = Executors.newFixedThreadPool(partitions,
+      new ThreadFactoryBuilder().setNameFormat("MassUpdate-partition-%d").setDaemon(true).build());
+    try {
+      List<Future<Void>> futures = new ArrayList<>(partitions);
+      for (int i = 0; i < partitions; i++) {
+        Partition partition = new Partition(i + 1, partitions, nextChunk, failed, consumer);
+        futures.add(executor.submit(partition));
+      }
+      for (Future<Void> future : futures) {
+        waitFor(future);
+      }
+      LOG.info("{} {} processed", counter.get(), pluralLabel);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void waitFor(Future<Void> future) throws SQLException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for partitions of mass update", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private class Partition implements Callable<Void> {
+    private final int index;
+    private final int count;
+    private final AtomicInteger nextChunk;
+    private final AtomicBoolean failed;
+    private final RowConsumer consumer;
+    private final AtomicLong partitionCounter = new AtomicLong(0L);
+
+    private Partition(int index, int count, AtomicInteger nextChunk, AtomicBoolean failed, RowConsumer consumer) {
+      this.index = index;
+      this.count = count;
+      this.nextChunk = nextChunk;
+      this.failed = failed;
+      this.consumer = consumer;
+    }
+
+    @Override
+    public Void call() throws SQLException {
+      ProgressLogger progress = new ProgressLogger(format("ProgressLogger[MassUpdate partition %d]", index), partitionCounter, LOG)
+        .setPluralLabel(format("%s in partition %d/%d", pluralLabel, index, count));
+      progress.start();
+      try (Connection partitionReadConnection = DataChange.createReadUncommittedConnection(db);
+        Connection partitionWriteConnection = DataChange.createDdlConnection(db)) {
+        List<UpsertImpl> updates = new ArrayList<>(updateSqls.size());
+        try {
+          for (String updateSql : updateSqls) {
+            updates.add(UpsertImpl.create(partitionWriteConnection, updateSql));
+          }
+          processChunks(partitionReadConnection, updates);
+        } finally {
+          updates.forEach(UpsertImpl::close);
+        }
+        progress.log();
+        return null;
+      } catch (SQLException | RuntimeException e) {
+        failed.set(true);
+        throw e;
+      } finally {
+        progress.stop();
+      }
+    }
+
+    private void processChunks(Connection partitionReadConnection, List<UpsertImpl> updates) throws SQLException {
+      int chunkIndex = nextChunk.getAndIncrement();
+      while (chunkIndex < chunks.size() && !failed.get()) {
+        SelectImpl select = SelectImpl.create(db, partitionReadConnection, selectSql);
+        chunks.get(chunkIndex).bind(select);
+        select.scroll(row -> {
+          consumer.accept(row, updates);
+          partitionCounter.getAndIncrement();
+          counter.getAndIncrement();
+        });
+        // commit the remaining rows of the chunk
+        for (UpsertImpl update : updates) {
+          if (update.getBatchCount() > 0L) {
+            update.execute().commit();
+          }
+        }
+        chunkIndex = nextChunk.getAndIncrement();
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface Chunk {
+    void bind(Select select) throws SQLException;
+  }
+
+  @FunctionalInterface
+  private interface RowConsumer {
+    void accept(Select.Row row, List<UpsertImpl> updates) throws SQLException;
+  }
+}
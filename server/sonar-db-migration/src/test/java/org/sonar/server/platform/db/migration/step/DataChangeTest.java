@@ -426,6 +426,155 @@ public class DataChangeTest {
     }
   }
 
+  @Test
+  public void partitioned_mass_update_by_id() throws Exception {
+    db.prepareDbUnit(getClass(), "persons.xml");
+
+    new DataChange(db.database()) {
+      @Override
+      public void execute(Context context) throws SQLException {
+        PartitionedMassUpdate massUpdate = context.preparePartitionedMassUpdate()
+          .chunkSize(1)
+          .threads(2);
+        massUpdate.partitionById("select min(id), max(id) from persons");
+        massUpdate.select("select id from persons where id>=2 and id>=? and id<=?");
+        massUpdate.update("update persons set login=?, age=? where id=?");
+        massUpdate.execute((row, update) -> {
+          long id = row.getNullableLong(1);
+          update
+            .setString(1, "login" + id)
+            .setInt(2, 10 + (int) id)
+            .setLong(3, id);
+          return true;
+        });
+      }
+    }.execute();
+
+    db.assertDbUnit(getClass(), "mass-update-result.xml", "persons");
+  }
+
+  @Test
+  public void partitioned_mass_update_by_key() throws Exception {
+    db.prepareDbUnit(getClass(), "persons.xml");
+
+    new DataChange(db.database()) {
+      @Override
+      public void execute(Context context) throws SQLException {
+        PartitionedMassUpdate massUpdate = context.preparePartitionedMassUpdate()
+          .chunkSize(2)
+          .threads(2);
+        massUpdate.partitionByKey("select login from persons order by login");
+        massUpdate.select("select id from persons where login>=? and login<=?");
+        massUpdate.update("update persons set age=? where id=?");
+        massUpdate.execute((row, update) -> {
+          long id = row.getNullableLong(1);
+          update
+            .setInt(1, 100 + (int) id)
+            .setLong(2, id);
+          return true;
+        });
+      }
+    }.execute();
+
+    assertThat(db.select("select age as \"AGE\" from persons order by id"))
+      .extracting(row -> ((Number) row.get("AGE")).intValue())
+      .containsExactly(101, 102, 103);
+  }
+
+  @Test
+  public void partitioned_mass_update_processes_each_row_once() throws Exception {
+    db.executeUpdateSql("truncate table persons");
+    int count = MAX_BATCH_SIZE * 3 + 10;
+    for (int i = 1; i <= count; i++) {
+      db.executeInsert("persons", "ID", i, "LOGIN", "login" + i, "AGE", 0, "ENABLED", true, "COEFF", 1.0);
+    }
+
+    new DataChange(db.database()) {
+      @Override
+      public void execute(Context context) throws SQLException {
+        PartitionedMassUpdate massUpdate = context.preparePartitionedMassUpdate()
+          .chunkSize(7)
+          .threads(3);
+        massUpdate.partitionById("select min(id), max(id) from persons");
+        massUpdate.select("select id, age from persons where id>=? and id<=?");
+        massUpdate.update("update persons set age=? where id=?");
+        massUpdate.rowPluralName("persons");
+        massUpdate.execute((row, update) -> {
+          update
+            .setInt(1, row.getInt(2) + 1)
+            .setLong(2, row.getLong(1));
+          return true;
+        });
+      }
+    }.execute();
+
+    assertThat(db.countSql("select count(1) from persons where age=1")).isEqualTo(count);
+  }
+
+  @Test
+  public void partitioned_mass_update_of_empty_table() throws Exception {
+    db.executeUpdateSql("truncate table persons");
+
+    new DataChange(db.database()) {
+      @Override
+      public void execute(Context context) throws SQLException {
+        PartitionedMassUpdate massUpdate = context.preparePartitionedMassUpdate();
+        massUpdate.partitionById("select min(id), max(id) from persons");
+        massUpdate.select("select id from persons where id>=? and id<=?");
+        massUpdate.update("update persons set age=? where id=?");
+        massUpdate.execute((row, update) -> {
+          throw new IllegalStateException("No rows expected");
+        });
+      }
+    }.execute();
+
+    assertThat(db.countRowsOfTable("persons")).isEqualTo(0);
+  }
+
+  @Test
+  public void display_current_row_details_if_error_during_partitioned_mass_update() throws Exception {
+    db.prepareDbUnit(getClass(), "persons.xml");
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Error during processing of row: [id=3]");
+
+    new DataChange(db.database()) {
+      @Override
+      public void execute(Context context) throws SQLException {
+        PartitionedMassUpdate massUpdate = context.preparePartitionedMassUpdate()
+          .chunkSize(1)
+          .threads(2);
+        massUpdate.partitionById("select min(id), max(id) from persons");
+        massUpdate.select("select id from persons where id>=? and id<=?");
+        massUpdate.update("update persons set login=?, age=? where id=?");
+        massUpdate.execute((row, update) -> {
+          if (row.getLong(1) == 3L) {
+            throw new IllegalStateException("Unexpected error");
+          }
+          return false;
+        });
+      }
+    }.execute();
+  }
+
+  @Test
+  public void fail_if_partitioned_mass_update_has_no_partitions() throws Exception {
+    DataChange change = new DataChange(db.database()) {
+      @Override
+      public void execute(Context context) throws SQLException {
+        PartitionedMassUpdate massUpdate = context.preparePartitionedMassUpdate();
+        massUpdate.select("select id from persons where id>=? and id<=?");
+        massUpdate.update("update persons set login=?, age=? where id=?");
+        massUpdate.execute((row, update) -> false);
+      }
+    };
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Partitions are not defined");
+
+    change.execute();
+  }
+
   @Test
   public void read_not_null_fields() throws Exception {
     db.prepareDbUnit(getClass(), "persons.xml");
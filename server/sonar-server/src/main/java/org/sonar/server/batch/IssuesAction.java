@@ -21,9 +21,12 @@ package org.sonar.server.batch;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Scopes;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
@@ -31,6 +34,7 @@ import org.sonar.api.server.ws.WebService;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTreeQuery;
 import org.sonar.scanner.protocol.input.ScannerInput;
 import org.sonar.server.component.ComponentFinder;
 import org.sonar.server.issue.index.IssueDoc;
@@ -39,13 +43,20 @@ import org.sonar.server.user.UserSession;
 import org.sonarqube.ws.MediaTypes;
 
 import static com.google.common.collect.Maps.newHashMap;
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toCollection;
 import static org.sonar.api.web.UserRole.USER;
 import static org.sonar.core.util.Protobuf.setNullable;
+import static org.sonar.db.component.ComponentTreeQuery.Strategy.LEAVES;
+import static org.sonar.server.ws.WsUtils.checkRequest;
 import static org.sonar.server.ws.KeyExamples.KEY_PROJECT_EXAMPLE_001;
 
 public class IssuesAction implements BatchWsAction {
 
   private static final String PARAM_KEY = "key";
+  private static final String PARAM_FILES = "files";
+  static final int MAX_FILES = 100;
 
   private final DbClient dbClient;
   private final IssueIndex issueIndex;
@@ -73,6 +84,13 @@ public class IssuesAction implements BatchWsAction {
       .setRequired(true)
       .setDescription("Project, module or file key")
       .setExampleValue(KEY_PROJECT_EXAMPLE_001);
+
+    action
+      .createParam(PARAM_FILES)
+      .setDescription(format("Comma-separated list of keys of files of the project. When set, only the issues of these files " +
+        "and of the components which are not files (project, modules and directories) are returned. Number of files is limited to %s.", MAX_FILES))
+      .setSince("6.4")
+      .setExampleValue("my_project:/src/foo/Bar.java,my_project:/src/foo/Baz.java");
   }
 
   @Override
@@ -84,15 +102,43 @@ public class IssuesAction implements BatchWsAction {
       ComponentDto component = componentFinder.getByKey(session, componentKey);
       userSession.checkComponentPermission(USER, component);
 
+      Set<String> componentUuids = null;
+      List<String> fileKeys = request.paramAsStrings(PARAM_FILES);
+      if (fileKeys != null) {
+        checkRequest(fileKeys.size() <= MAX_FILES, "Number of files is limited to %s, got %s", MAX_FILES, fileKeys.size());
+        componentUuids = componentUuids(session, component, fileKeys);
+      }
+
       Map<String, String> keysByUUid = keysByUUid(session, component);
 
       ScannerInput.ServerIssue.Builder issueBuilder = ScannerInput.ServerIssue.newBuilder();
-      for (Iterator<IssueDoc> issueDocIterator = issueIndex.selectIssuesForBatch(component); issueDocIterator.hasNext();) {
+      for (Iterator<IssueDoc> issueDocIterator = issueIndex.selectIssuesForBatch(component, componentUuids); issueDocIterator.hasNext();) {
         handleIssue(issueDocIterator.next(), issueBuilder, keysByUUid, response.stream().output());
       }
     }
   }
 
+  /**
+   * Uuids of the requested files, and of all the components of the project that are not files (project,
+   * modules and directories), so that issues of these components can still be tracked by the scanner.
+   */
+  private Set<String> componentUuids(DbSession session, ComponentDto component, List<String> fileKeys) {
+    Set<String> uuids = dbClient.componentDao().selectByKeys(session, fileKeys).stream()
+      .filter(file -> Scopes.FILE.equals(file.scope()) && component.projectUuid().equals(file.projectUuid()))
+      .map(ComponentDto::uuid)
+      .collect(toCollection(HashSet::new));
+    if (Scopes.PROJECT.equals(component.scope())) {
+      uuids.add(component.uuid());
+      ComponentTreeQuery query = ComponentTreeQuery.builder()
+        .setBaseUuid(component.uuid())
+        .setStrategy(LEAVES)
+        .setQualifiers(asList(Qualifiers.MODULE, Qualifiers.DIRECTORY))
+        .build();
+      dbClient.componentDao().selectDescendants(session, query).forEach(c -> uuids.add(c.uuid()));
+    }
+    return uuids;
+  }
+
   private static void handleIssue(IssueDoc issue, ScannerInput.ServerIssue.Builder issueBuilder, Map<String, String> keysByUUid, OutputStream out) {
     issueBuilder.setKey(issue.key());
     issueBuilder.setModuleKey(keysByUUid.get(issue.moduleUuid()));
@@ -127,7 +173,7 @@ public class IssuesAction implements BatchWsAction {
     } else {
       String moduleUuid = component.moduleUuid();
       if (moduleUuid == null) {
-        throw new IllegalArgumentException(String.format("The component '%s' has no module uuid", component.uuid()));
+        throw new IllegalArgumentException(format("The component '%s' has no module uuid", component.uuid()));
       }
       ComponentDto module = dbClient.componentDao().selectOrFailByUuid(session, moduleUuid);
       keysByUUid.put(module.uuid(), module.key());
@@ -39,6 +39,7 @@ public class ProjectAction implements BatchWsAction {
   private static final String PARAM_KEY = "key";
   private static final String PARAM_PROFILE = "profile";
   private static final String PARAM_ISSUES_MODE = "issues_mode";
+  private static final String PARAM_FILE_DATA_VERSION = "file_data_version";
 
   private final ProjectDataLoader projectDataLoader;
 
@@ -71,6 +72,13 @@ public class ProjectAction implements BatchWsAction {
       .setDescription("Issues mode or not")
       .setDefaultValue(false)
       .setBooleanPossibleValues();
+
+    action
+      .createParam(PARAM_FILE_DATA_VERSION)
+      .setDescription("Version of the file data already known by client. If it is still the current version, " +
+        "then file data is not returned and the field 'fileDataUnchanged' is true.")
+      .setSince("6.4")
+      .setExampleValue("AU-Tpxb--iU5OvuD2FLy");
   }
 
   @Override
@@ -78,7 +86,8 @@ public class ProjectAction implements BatchWsAction {
     ProjectRepositories data = projectDataLoader.load(ProjectDataQuery.create()
       .setModuleKey(wsRequest.mandatoryParam(PARAM_KEY))
       .setProfileName(wsRequest.param(PARAM_PROFILE))
-      .setIssuesMode(wsRequest.mandatoryParamAsBoolean(PARAM_ISSUES_MODE)));
+      .setIssuesMode(wsRequest.mandatoryParamAsBoolean(PARAM_ISSUES_MODE))
+      .setFileDataVersion(wsRequest.param(PARAM_FILE_DATA_VERSION)));
 
     WsProjectResponse projectResponse = buildResponse(data);
     writeProtobuf(projectResponse, wsRequest, wsResponse);
@@ -88,6 +97,8 @@ public class ProjectAction implements BatchWsAction {
     WsProjectResponse.Builder response = WsProjectResponse.newBuilder();
     setNullable(data.lastAnalysisDate(), response::setLastAnalysisDate, Date::getTime);
     response.setTimestamp(data.timestamp());
+    setNullable(data.fileDataVersion(), response::setFileDataVersion);
+    response.setFileDataUnchanged(data.isFileDataUnchanged());
     response.getMutableFileDataByModuleAndPath()
       .putAll(buildFileDataByModuleAndPath(data));
     response.getMutableSettingsByModule()
@@ -26,6 +26,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Scopes;
 import org.sonar.api.server.ServerSide;
@@ -33,6 +35,7 @@ import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.db.component.FilePathWithHashDto;
+import org.sonar.db.component.SnapshotDto;
 import org.sonar.db.property.PropertyDto;
 import org.sonar.scanner.protocol.input.FileData;
 import org.sonar.scanner.protocol.input.ProjectRepositories;
@@ -83,8 +86,19 @@ public class ProjectDataLoader {
       TreeModuleSettings treeModuleSettings = new TreeModuleSettings(moduleUuidsByKey, moduleIdsByKey, modulesTree, modulesTreeSettings);
 
       addSettingsToChildrenModules(data, query.getModuleKey(), Maps.<String, String>newHashMap(), treeModuleSettings, hasScanPerm);
-      List<FilePathWithHashDto> files = searchFilesWithHashAndRevision(session, module);
-      addFileData(data, modulesTree, files);
+
+      // hashes and revisions of files are updated only by analyses, so they don't need to be loaded again
+      // if client already knows the version of the last analysis
+      String fileDataVersion = dbClient.snapshotDao().selectLastAnalysisByRootComponentUuid(session, project.uuid())
+        .map(analysis -> fileDataVersion(analysis, modulesTree))
+        .orElse(null);
+      data.setFileDataVersion(fileDataVersion);
+      if (fileDataVersion != null && fileDataVersion.equals(query.getFileDataVersion())) {
+        data.setFileDataUnchanged(true);
+      } else {
+        List<FilePathWithHashDto> files = searchFilesWithHashAndRevision(session, module);
+        addFileData(data, modulesTree, files);
+      }
 
       // FIXME need real value but actually only used to know if there is a previous analysis in local issue tracking mode so any value is
       // ok
@@ -94,6 +108,18 @@ public class ProjectDataLoader {
     }
   }
 
+  /**
+   * File data are grouped by module key, and module keys can be updated without new analysis, so they
+   * are part of the version.
+   */
+  private static String fileDataVersion(SnapshotDto analysis, List<ComponentDto> modulesTree) {
+    String moduleKeys = modulesTree.stream()
+      .map(ComponentDto::getKey)
+      .sorted()
+      .collect(Collectors.joining(","));
+    return analysis.getUuid() + "-" + DigestUtils.md5Hex(moduleKeys);
+  }
+
   private static boolean isProjectOrModule(ComponentDto module) {
     if (!Scopes.PROJECT.equals(module.scope())) {
       return false;
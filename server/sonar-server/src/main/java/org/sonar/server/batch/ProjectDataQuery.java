@@ -27,6 +27,7 @@ public class ProjectDataQuery {
   private String projectOrModuleKey;
   private String profileName;
   private boolean issuesMode;
+  private String fileDataVersion;
 
   private ProjectDataQuery() {
     // No direct call
@@ -60,6 +61,19 @@ public class ProjectDataQuery {
     return this;
   }
 
+  /**
+   * Version of the file data already known by client
+   */
+  @CheckForNull
+  public String getFileDataVersion() {
+    return fileDataVersion;
+  }
+
+  public ProjectDataQuery setFileDataVersion(@Nullable String fileDataVersion) {
+    this.fileDataVersion = fileDataVersion;
+    return this;
+  }
+
   public static ProjectDataQuery create() {
     return new ProjectDataQuery();
   }
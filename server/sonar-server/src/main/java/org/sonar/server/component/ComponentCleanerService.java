@@ -30,6 +30,7 @@ import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.server.es.ProjectIndexer;
+import org.sonar.server.user.AuthorizationCache;
 
 import static java.util.Arrays.asList;
 
@@ -39,11 +40,13 @@ public class ComponentCleanerService {
 
   private final DbClient dbClient;
   private final ResourceTypes resourceTypes;
+  private final AuthorizationCache authorizationCache;
   private final Collection<ProjectIndexer> projectIndexers;
 
-  public ComponentCleanerService(DbClient dbClient, ResourceTypes resourceTypes, ProjectIndexer... projectIndexers) {
+  public ComponentCleanerService(DbClient dbClient, ResourceTypes resourceTypes, AuthorizationCache authorizationCache, ProjectIndexer... projectIndexers) {
     this.dbClient = dbClient;
     this.resourceTypes = resourceTypes;
+    this.authorizationCache = authorizationCache;
     this.projectIndexers = asList(projectIndexers);
   }
 
@@ -59,6 +62,7 @@ public class ComponentCleanerService {
     }
     dbClient.purgeDao().deleteProject(dbSession, project.uuid());
     dbSession.commit();
+    authorizationCache.invalidate();
 
     deleteFromIndices(project.uuid());
   }
@@ -22,7 +22,11 @@ package org.sonar.server.computation.task.projectanalysis;
 import org.sonar.server.computation.queue.ReportSubmitter;
 import org.sonar.core.platform.Module;
 import org.sonar.server.computation.task.projectanalysis.container.ContainerFactoryImpl;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationHashIndexImpl;
 import org.sonar.server.computation.task.projectanalysis.taskprocessor.ReportTaskProcessor;
+import org.sonar.server.computation.task.projectanalysis.webhook.WebhookCallerImpl;
+import org.sonar.server.computation.task.projectanalysis.webhook.WebhookDeliveryDispatcher;
+import org.sonar.server.computation.task.projectanalysis.webhook.WebhookDeliveryStorage;
 import org.sonar.server.computation.task.step.ComputationStepExecutor;
 
 public class ProjectAnalysisTaskModule extends Module {
@@ -33,6 +37,12 @@ public class ProjectAnalysisTaskModule extends Module {
       ContainerFactoryImpl.class,
       ComputationStepExecutor.class,
       ReportTaskProcessor.class,
-      ReportSubmitter.class);
+      ReportSubmitter.class,
+
+      // shared by all the tasks
+      CrossProjectDuplicationHashIndexImpl.class,
+      WebhookCallerImpl.class,
+      WebhookDeliveryStorage.class,
+      WebhookDeliveryDispatcher.class);
   }
 }
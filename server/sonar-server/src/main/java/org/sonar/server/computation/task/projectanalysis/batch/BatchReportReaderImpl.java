@@ -20,11 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.batch;
 
 import com.google.common.base.Optional;
-import com.google.common.base.Throwables;
-import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.Parser;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
@@ -33,11 +29,18 @@ import javax.annotation.CheckForNull;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.core.util.LineReaderIterator;
+import org.sonar.scanner.protocol.output.FileStructure;
+import org.sonar.scanner.protocol.output.ReadStatistics;
 import org.sonar.scanner.protocol.output.ScannerReport;
 
-public class BatchReportReaderImpl implements BatchReportReader {
+public class BatchReportReaderImpl implements BatchReportReader, Startable {
+
+  private static final Logger LOGGER = Loggers.get(BatchReportReaderImpl.class);
 
   private final BatchReportDirectoryHolder batchReportDirectoryHolder;
   private org.sonar.scanner.protocol.output.ScannerReportReader delegate;
@@ -48,14 +51,36 @@ public class BatchReportReaderImpl implements BatchReportReader {
     this.batchReportDirectoryHolder = batchReportDirectoryHolder;
   }
 
-  private void ensureInitialized() {
+  @Override
+  public void start() {
+    // report is read lazily
+  }
+
+  /**
+   * Logs the read throughput of each domain of the report, once the task is processed
+   */
+  @Override
+  public synchronized void stop() {
+    if (delegate == null || !LOGGER.isDebugEnabled()) {
+      return;
+    }
+    ReadStatistics statistics = delegate.getReadStatistics();
+    for (FileStructure.Domain domain : FileStructure.Domain.values()) {
+      if (statistics.getFiles(domain) > 0) {
+        LOGGER.debug("Read {} from report: {} files, {} bytes, {} ms, {} bytes/s", domain, statistics.getFiles(domain),
+          statistics.getBytes(domain), statistics.getTimeMs(domain), statistics.getThroughput(domain));
+      }
+    }
+  }
+
+  private synchronized void ensureInitialized() {
     if (this.delegate == null) {
       this.delegate = new org.sonar.scanner.protocol.output.ScannerReportReader(batchReportDirectoryHolder.getDirectory());
     }
   }
 
   @Override
-  public ScannerReport.Metadata readMetadata() {
+  public synchronized ScannerReport.Metadata readMetadata() {
     ensureInitialized();
     if (this.metadata == null) {
       this.metadata = delegate.readMetadata();
@@ -186,35 +211,13 @@ public class BatchReportReaderImpl implements BatchReportReader {
   @Override
   public CloseableIterator<ScannerReport.Test> readTests(int testFileRef) {
     ensureInitialized();
-    File file = delegate.readTests(testFileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(ScannerReport.Test.parser(), FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
-      return CloseableIterator.emptyCloseableIterator();
-    }
+    return delegate.readComponentTests(testFileRef);
   }
 
   @Override
   public CloseableIterator<ScannerReport.CoverageDetail> readCoverageDetails(int testFileRef) {
     ensureInitialized();
-    File file = delegate.readCoverageDetails(testFileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(ScannerReport.CoverageDetail.parser(), FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
-      return CloseableIterator.emptyCloseableIterator();
-    }
+    return delegate.readComponentCoverageDetails(testFileRef);
   }
 
   @Override
@@ -222,30 +225,4 @@ public class BatchReportReaderImpl implements BatchReportReader {
     ensureInitialized();
     return delegate.readContextProperties();
   }
-
-  private static class ParserCloseableIterator<T> extends CloseableIterator<T> {
-    private final Parser<T> parser;
-    private final FileInputStream fileInputStream;
-
-    public ParserCloseableIterator(Parser<T> parser, FileInputStream fileInputStream) {
-      this.parser = parser;
-      this.fileInputStream = fileInputStream;
-    }
-
-    @Override
-    protected T doNext() {
-      try {
-        return parser.parseDelimitedFrom(fileInputStream);
-      } catch (InvalidProtocolBufferException e) {
-        Throwables.propagate(e);
-        // actually never reached
-        return null;
-      }
-    }
-
-    @Override
-    protected void doClose() throws Exception {
-      fileInputStream.close();
-    }
-  }
 }
@@ -34,12 +34,18 @@ public class FileAttributes {
   @CheckForNull
   private final String languageKey;
   private final int lines;
+  private final boolean reused;
 
   public FileAttributes(boolean unitTest, @Nullable String languageKey, int lines) {
+    this(unitTest, languageKey, lines, false);
+  }
+
+  public FileAttributes(boolean unitTest, @Nullable String languageKey, int lines, boolean reused) {
     this.unitTest = unitTest;
     this.languageKey = languageKey;
     checkArgument(lines > 0, "Number of lines must be greater than zero");
     this.lines = lines;
+    this.reused = reused;
   }
 
   public boolean isUnitTest() {
@@ -58,12 +64,25 @@ public class FileAttributes {
     return lines;
   }
 
+  /**
+   * The file did not change since the last analysis and was not analyzed by the scanner, so the results of the
+   * last analysis (issues, measures, sources) are reused.
+   * <p>
+   * Limitations: coverage of the file, including coverage on new code, is the one of the last analysis, even if
+   * tests changed since then. Duplications with changed files are not detected.
+   * </p>
+   */
+  public boolean isReused() {
+    return reused;
+  }
+
   @Override
   public String toString() {
     return "FileAttributes{" +
       "languageKey='" + languageKey + '\'' +
       ", unitTest=" + unitTest +
       ", lines=" + lines +
+      ", reused=" + reused +
       '}';
   }
 }
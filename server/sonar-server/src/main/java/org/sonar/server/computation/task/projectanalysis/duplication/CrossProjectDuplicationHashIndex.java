@@ -0,0 +1,46 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.duplication;
+
+/**
+ * Index of the hashes of the cross project duplication blocks stored in table DUPLICATIONS_INDEX, by language.
+ *
+ * It is shared by all the tasks processed by the Compute Engine and is used to know that a file can't have any
+ * cross project duplication without querying the database. False positives are possible, false negatives are not.
+ */
+public interface CrossProjectDuplicationHashIndex {
+
+  /**
+   * Reads the blocks inserted in table DUPLICATIONS_INDEX by other Compute Engine processes since the last call.
+   * Must be called by each task before looking up hashes.
+   */
+  void refresh();
+
+  /**
+   * @return {@code false} if no block of the specified language has this hash
+   */
+  boolean mightContain(String language, String hash);
+
+  /**
+   * Must be called for every block inserted in table DUPLICATIONS_INDEX, before the transaction is committed.
+   */
+  void add(String language, String hash);
+
+}
@@ -0,0 +1,355 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.duplication;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.Funnels;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.log.Profiler;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.duplication.DuplicationHashDto;
+import org.sonar.server.platform.ServerFileSystem;
+import org.sonar.server.property.InternalProperties;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Keeps one Bloom filter per language. Filters are loaded from the database on first use, then saved in the data
+ * directory when the Compute Engine stops. The next load only reads the rows of DUPLICATIONS_INDEX inserted since
+ * the filters were saved. Rows removed from the table are never removed from the filters, which only increases
+ * the rate of false positives. Deleting the file forces a rebuild from the database.
+ * <p>
+ * Rows can be inserted by other Compute Engine processes, for example in cluster mode, so the rows inserted since
+ * the last scan are read again on {@link #refresh()}. As a row with a lower id can be committed after a row with a
+ * greater id, the scan does not start from the greatest loaded id, but from the greatest id loaded at least
+ * {@link #REFRESH_TOLERANCE_MS} ago. Rows read twice are ignored by the filters.
+ * </p>
+ * <p>
+ * The saved filters are trusted only if they have been built from the same database, identified by the uuid of the
+ * default organization, and if the table still contains the rows saved in the filters. Otherwise, for example when
+ * the database is restored from a backup, rows could be missing from the filters, and they are rebuilt.
+ * </p>
+ * <p>
+ * Lookups can be executed concurrently. They are blocked only while hashes are added.
+ * </p>
+ */
+public class CrossProjectDuplicationHashIndexImpl implements CrossProjectDuplicationHashIndex, Startable {
+
+  private static final Logger LOGGER = Loggers.get(CrossProjectDuplicationHashIndexImpl.class);
+  private static final int FILE_VERSION = 3;
+  private static final int DEFAULT_INITIAL_EXPECTED_INSERTIONS = 100_000;
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.01D;
+  private static final Funnel<CharSequence> FUNNEL = Funnels.unencodedCharsFunnel();
+  @VisibleForTesting
+  static final long REFRESH_TOLERANCE_MS = TimeUnit.MINUTES.toMillis(10);
+
+  private final DbClient dbClient;
+  private final System2 system2;
+  private final File file;
+  private final int initialExpectedInsertions;
+  private final Map<String, LanguageFilter> filtersByLanguage = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile boolean loaded = false;
+  private String databaseUuid = "";
+  private long maxLoadedId = 0L;
+  private long savedRescanFromId = 0L;
+  /**
+   * Greatest loaded id after each scan, by date of scan. The first one is the id from which rows are read again.
+   */
+  private final Deque<Watermark> watermarks = new ArrayDeque<>();
+
+  public CrossProjectDuplicationHashIndexImpl(DbClient dbClient, ServerFileSystem fs, System2 system2) {
+    this(dbClient, system2, new File(fs.getDataDir(), "ce/cpd_hash_index"), DEFAULT_INITIAL_EXPECTED_INSERTIONS);
+  }
+
+  @VisibleForTesting
+  CrossProjectDuplicationHashIndexImpl(DbClient dbClient, System2 system2, File file, int initialExpectedInsertions) {
+    this.dbClient = dbClient;
+    this.system2 = system2;
+    this.file = file;
+    this.initialExpectedInsertions = initialExpectedInsertions;
+  }
+
+  @Override
+  public void start() {
+    // index is loaded on first use, as cross project duplication is disabled by default
+  }
+
+  @Override
+  public void stop() {
+    lock.writeLock().lock();
+    try {
+      if (loaded) {
+        save();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void refresh() {
+    if (!loaded) {
+      ensureLoaded();
+      return;
+    }
+    lock.writeLock().lock();
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      scan(dbSession, rescanFromId());
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean mightContain(String language, String hash) {
+    ensureLoaded();
+    lock.readLock().lock();
+    try {
+      LanguageFilter filter = filtersByLanguage.get(language);
+      return filter != null && filter.mightContain(hash);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void add(String language, String hash) {
+    ensureLoaded();
+    lock.writeLock().lock();
+    try {
+      put(language, hash);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void put(String language, String hash) {
+    filtersByLanguage.computeIfAbsent(language, l -> new LanguageFilter(initialExpectedInsertions)).put(hash);
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        load();
+        loaded = true;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void load() {
+    Profiler profiler = Profiler.create(LOGGER).startInfo("Load cross project duplication hash index");
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      databaseUuid = dbClient.internalPropertiesDao().selectByKey(dbSession, InternalProperties.DEFAULT_ORGANIZATION).orElse("");
+      if (file.exists()) {
+        read();
+        checkSavedFiltersMatchDatabase(dbSession);
+      }
+      // rows saved less than REFRESH_TOLERANCE_MS before the filters were saved are read again
+      watermarks.clear();
+      watermarks.add(new Watermark(0L, savedRescanFromId));
+      scan(dbSession, savedRescanFromId);
+    }
+    profiler.stopInfo();
+  }
+
+  private void scan(DbSession dbSession, long afterId) {
+    dbClient.duplicationDao().scrollHashes(dbSession, afterId, context -> {
+      DuplicationHashDto dto = (DuplicationHashDto) context.getResultObject();
+      put(dto.getLanguage(), dto.getHash());
+      maxLoadedId = Math.max(maxLoadedId, dto.getId());
+    });
+    watermarks.add(new Watermark(system2.now(), maxLoadedId));
+  }
+
+  /**
+   * Greatest id loaded at least {@link #REFRESH_TOLERANCE_MS} ago, or the id of the first scan if no scan is that old.
+   * Rows committed late with a lower id are then read again.
+   */
+  private long rescanFromId() {
+    long limit = system2.now() - REFRESH_TOLERANCE_MS;
+    while (watermarks.size() > 1 && Iterables.get(watermarks, 1).date <= limit) {
+      watermarks.removeFirst();
+    }
+    return watermarks.getFirst().maxId;
+  }
+
+  private void checkSavedFiltersMatchDatabase(DbSession dbSession) {
+    if (maxLoadedId > dbClient.duplicationDao().selectMaxId(dbSession)) {
+      LOGGER.info("Cross project duplication hash index contains rows that are not in database. It will be rebuilt.");
+      filtersByLanguage.clear();
+      maxLoadedId = 0L;
+      savedRescanFromId = 0L;
+    }
+  }
+
+  private void read() {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      int version = in.readInt();
+      if (version != FILE_VERSION) {
+        LOGGER.info("Cross project duplication hash index has an unsupported version {}. It will be rebuilt.", version);
+        return;
+      }
+      String savedDatabaseUuid = in.readUTF();
+      if (!savedDatabaseUuid.equals(databaseUuid)) {
+        LOGGER.info("Cross project duplication hash index has been built from another database. It will be rebuilt.");
+        return;
+      }
+      long maxId = in.readLong();
+      long rescanFromId = in.readLong();
+      int languages = in.readInt();
+      for (int i = 0; i < languages; i++) {
+        String language = in.readUTF();
+        filtersByLanguage.put(language, LanguageFilter.readFrom(in));
+      }
+      maxLoadedId = maxId;
+      savedRescanFromId = rescanFromId;
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Fail to read cross project duplication hash index from " + file.getAbsolutePath() + ". It will be rebuilt.", e);
+      filtersByLanguage.clear();
+      maxLoadedId = 0L;
+      savedRescanFromId = 0L;
+    }
+  }
+
+  private void save() {
+    Path target = file.toPath();
+    Path tmp = target.resolveSibling(file.getName() + ".tmp");
+    try {
+      Files.createDirectories(target.getParent());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(FILE_VERSION);
+        out.writeUTF(databaseUuid);
+        out.writeLong(maxLoadedId);
+        out.writeLong(rescanFromId());
+        out.writeInt(filtersByLanguage.size());
+        for (Map.Entry<String, LanguageFilter> entry : filtersByLanguage.entrySet()) {
+          out.writeUTF(entry.getKey());
+          entry.getValue().writeTo(out);
+        }
+      }
+      Files.move(tmp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOGGER.warn("Fail to save cross project duplication hash index to " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private static class Watermark {
+    private final long date;
+    private final long maxId;
+
+    private Watermark(long date, long maxId) {
+      this.date = date;
+      this.maxId = maxId;
+    }
+  }
+
+  /**
+   * Bloom filters can't grow. When the last filter reaches its expected number of insertions, a new filter twice
+   * as large is added. A hash might be contained as soon as one of the filters might contain it.
+   */
+  private static class LanguageFilter {
+    private final List<BloomFilter<CharSequence>> filters = new ArrayList<>();
+    private int expectedInsertions;
+    private int insertions;
+
+    private LanguageFilter(int initialExpectedInsertions) {
+      this.expectedInsertions = initialExpectedInsertions;
+      this.filters.add(BloomFilter.create(FUNNEL, initialExpectedInsertions, FALSE_POSITIVE_PROBABILITY));
+    }
+
+    private LanguageFilter(int expectedInsertions, int insertions) {
+      this.expectedInsertions = expectedInsertions;
+      this.insertions = insertions;
+    }
+
+    boolean mightContain(String hash) {
+      for (BloomFilter<CharSequence> filter : filters) {
+        if (filter.mightContain(hash)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void put(String hash) {
+      // the same blocks are inserted again on every analysis, they must not be counted twice
+      if (mightContain(hash)) {
+        return;
+      }
+      if (insertions >= expectedInsertions) {
+        expectedInsertions *= 2;
+        insertions = 0;
+        filters.add(BloomFilter.create(FUNNEL, expectedInsertions, FALSE_POSITIVE_PROBABILITY));
+      }
+      filters.get(filters.size() - 1).put(hash);
+      insertions++;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      out.writeInt(expectedInsertions);
+      out.writeInt(insertions);
+      out.writeInt(filters.size());
+      for (BloomFilter<CharSequence> filter : filters) {
+        filter.writeTo(out);
+      }
+    }
+
+    static LanguageFilter readFrom(DataInputStream in) throws IOException {
+      LanguageFilter languageFilter = new LanguageFilter(in.readInt(), in.readInt());
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        languageFilter.filters.add(BloomFilter.readFrom(in, FUNNEL));
+      }
+      return languageFilter;
+    }
+  }
+}
@@ -26,11 +26,14 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
@@ -52,7 +55,6 @@ import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthL
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
-import org.sonar.server.computation.task.projectanalysis.filemove.FileSimilarity.File;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepository;
 import org.sonar.server.computation.task.step.ComputationStep;
 
@@ -120,11 +122,15 @@ public class FileMoveDetectionStep implements ComputationStep {
       return;
     }
 
-    // retrieve file data from report
-    Map<String, File> reportFileSourcesByKey = getReportFileSourcesByKey(reportFilesByKey, addedFileKeys);
+    // retrieve line hashes of added files from report and of removed files from db, equal line hashes being replaced by the same int
+    Map<String, Integer> lineHashIds = new HashMap<>();
+    String[] reportFileKeys = addedFileKeys.toArray(new String[addedFileKeys.size()]);
+    int[][] reportFiles = getReportFilesLineHashes(reportFilesByKey, reportFileKeys, lineHashIds);
+    String[] dbFileKeys = removedFileKeys.toArray(new String[removedFileKeys.size()]);
+    int[][] dbFiles = getDbFilesLineHashes(dbFilesByKey, dbFileKeys, lineHashIds);
 
     // compute score matrix
-    ScoreMatrix scoreMatrix = computeScoreMatrix(dbFilesByKey, removedFileKeys, reportFileSourcesByKey);
+    ScoreMatrix scoreMatrix = computeScoreMatrix(dbFileKeys, dbFiles, reportFileKeys, reportFiles);
     printIfDebug(scoreMatrix);
 
     // not a single match with score higher than MIN_REQUIRED_SCORE => abort
@@ -135,7 +141,7 @@ public class FileMoveDetectionStep implements ComputationStep {
 
     MatchesByScore matchesByScore = MatchesByScore.create(scoreMatrix);
 
-    ElectedMatches electedMatches = electMatches(removedFileKeys, reportFileSourcesByKey, matchesByScore);
+    ElectedMatches electedMatches = electMatches(dbFileKeys.length + reportFileKeys.length, matchesByScore);
 
     registerMatches(dbFilesByKey, reportFilesByKey, electedMatches);
   }
@@ -178,12 +184,12 @@ public class FileMoveDetectionStep implements ComputationStep {
     return builder.build();
   }
 
-  private Map<String, File> getReportFileSourcesByKey(Map<String, Component> reportFilesByKey, Set<String> addedFileKeys) {
-    ImmutableMap.Builder<String, File> builder = ImmutableMap.builder();
-    for (String fileKey : addedFileKeys) {
+  private int[][] getReportFilesLineHashes(Map<String, Component> reportFilesByKey, String[] fileKeys, Map<String, Integer> lineHashIds) {
+    int[][] res = new int[fileKeys.length][];
+    for (int i = 0; i < fileKeys.length; i++) {
       // FIXME computation of sourceHash and lineHashes might be done multiple times for some files: here, in ComputeFileSourceData, in
       // SourceHashRepository
-      Component component = reportFilesByKey.get(fileKey);
+      Component component = reportFilesByKey.get(fileKeys[i]);
       SourceLinesHashesComputer linesHashesComputer = new SourceLinesHashesComputer();
       try (CloseableIterator<String> lineIterator = sourceLinesRepository.readLines(component)) {
         while (lineIterator.hasNext()) {
@@ -191,42 +197,27 @@ public class FileMoveDetectionStep implements ComputationStep {
           linesHashesComputer.addLine(line);
         }
       }
-      builder.put(fileKey, new File(component.getReportAttributes().getPath(), linesHashesComputer.getLineHashes()));
+      res[i] = toIds(linesHashesComputer.getLineHashes(), lineHashIds);
     }
-    return builder.build();
+    return res;
   }
 
-  private ScoreMatrix computeScoreMatrix(Map<String, DbComponent> dtosByKey, Set<String> dbFileKeys, Map<String, File> reportFileSourcesByKey) {
-    int[][] scoreMatrix = new int[dbFileKeys.size()][reportFileSourcesByKey.size()];
-    int maxScore = 0;
-
+  /**
+   * Files without path or without source in db can't be matched, their line hashes are {@code null}.
+   */
+  private int[][] getDbFilesLineHashes(Map<String, DbComponent> dtosByKey, String[] fileKeys, Map<String, Integer> lineHashIds) {
+    int[][] res = new int[fileKeys.length][];
     try (DbSession dbSession = dbClient.openSession(false)) {
-      int dbFileIndex = 0;
-      for (String removedFileKey : dbFileKeys) {
-        File fileInDb = getFile(dbSession, dtosByKey.get(removedFileKey));
-        if (fileInDb == null) {
-          continue;
-        }
-
-        int reportFileIndex = 0;
-        for (Map.Entry<String, File> reportFileSourceAndKey : reportFileSourcesByKey.entrySet()) {
-          File unmatchedFile = reportFileSourceAndKey.getValue();
-          int score = fileSimilarity.score(fileInDb, unmatchedFile);
-          scoreMatrix[dbFileIndex][reportFileIndex] = score;
-          if (score > maxScore) {
-            maxScore = score;
-          }
-          reportFileIndex++;
-        }
-        dbFileIndex++;
+      for (int i = 0; i < fileKeys.length; i++) {
+        List<String> lineHashes = getLineHashes(dbSession, dtosByKey.get(fileKeys[i]));
+        res[i] = lineHashes == null ? null : toIds(lineHashes, lineHashIds);
       }
     }
-
-    return new ScoreMatrix(dbFileKeys, reportFileSourcesByKey, scoreMatrix, maxScore);
+    return res;
   }
 
   @CheckForNull
-  private File getFile(DbSession dbSession, DbComponent dbComponent) {
+  private List<String> getLineHashes(DbSession dbSession, DbComponent dbComponent) {
     if (dbComponent.getPath() == null) {
       return null;
     }
@@ -235,7 +226,33 @@ public class FileMoveDetectionStep implements ComputationStep {
       return null;
     }
     String lineHashes = firstNonNull(fileSourceDto.getLineHashes(), "");
-    return new File(dbComponent.getPath(), LINES_HASHES_SPLITTER.splitToList(lineHashes));
+    return LINES_HASHES_SPLITTER.splitToList(lineHashes);
+  }
+
+  private static int[] toIds(List<String> lineHashes, Map<String, Integer> lineHashIds) {
+    int[] ids = new int[lineHashes.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = lineHashIds.computeIfAbsent(lineHashes.get(i), h -> lineHashIds.size());
+    }
+    return ids;
+  }
+
+  /**
+   * Only the pairs of files selected by {@link MoveCandidates} are scored, concurrently.
+   */
+  private ScoreMatrix computeScoreMatrix(String[] dbFileKeys, int[][] dbFiles, String[] reportFileKeys, int[][] reportFiles) {
+    int[][] candidates = MoveCandidates.select(dbFiles, reportFiles);
+    int[][] scores = new int[dbFiles.length][];
+    IntStream.range(0, dbFiles.length).parallel().forEach(dbFileIndex -> {
+      int[] reportFileIndexes = candidates[dbFileIndex];
+      int[] dbFileScores = new int[reportFileIndexes.length];
+      for (int i = 0; i < reportFileIndexes.length; i++) {
+        dbFileScores[i] = fileSimilarity.score(dbFiles[dbFileIndex], reportFiles[reportFileIndexes[i]], MIN_REQUIRED_SCORE);
+      }
+      scores[dbFileIndex] = dbFileScores;
+    });
+    int maxScore = Arrays.stream(scores).flatMapToInt(Arrays::stream).max().orElse(0);
+    return new ScoreMatrix(dbFileKeys, reportFileKeys, candidates, scores, maxScore);
   }
 
   private static void printIfDebug(ScoreMatrix scoreMatrix) {
@@ -244,8 +261,8 @@ public class FileMoveDetectionStep implements ComputationStep {
     }
   }
 
-  private static ElectedMatches electMatches(Set<String> dbFileKeys, Map<String, File> reportFileSourcesByKey, MatchesByScore matchesByScore) {
-    ElectedMatches electedMatches = new ElectedMatches(matchesByScore, dbFileKeys, reportFileSourcesByKey);
+  private static ElectedMatches electMatches(int fileCount, MatchesByScore matchesByScore) {
+    ElectedMatches electedMatches = new ElectedMatches(matchesByScore, fileCount);
     Multimap<String, Match> matchesPerFileForScore = ArrayListMultimap.create();
     matchesByScore.forEach(matches -> electMatches(matches, electedMatches, matchesPerFileForScore));
     return electedMatches;
@@ -320,9 +337,9 @@ public class FileMoveDetectionStep implements ComputationStep {
     private final List<Match> matches;
     private final Set<String> matchedFileKeys;
 
-    public ElectedMatches(MatchesByScore matchesByScore, Set<String> dbFileKeys, Map<String, File> reportFileSourcesByKey) {
+    public ElectedMatches(MatchesByScore matchesByScore, int fileCount) {
       this.matches = new ArrayList<>(matchesByScore.getSize());
-      this.matchedFileKeys = new HashSet<>(dbFileKeys.size() + reportFileSourcesByKey.size());
+      this.matchedFileKeys = new HashSet<>(fileCount);
     }
 
     public void add(Match match) {
@@ -48,4 +48,10 @@ public interface FileSimilarity {
   }
 
   int score(File file1, File file2);
+
+  /**
+   * Scores the sources of two files whose line hashes have been replaced by ints, the same line hash being replaced by
+   * the same int. See {@link SourceSimilarity#score(int[], int[], int)}.
+   */
+  int score(int[] lineHashes1, int[] lineHashes2, int minScore);
 }
@@ -35,4 +35,9 @@ public class FileSimilarityImpl implements FileSimilarity {
 
     return sourceSimilarity.score(file1.getLineHashes(), file2.getLineHashes());
   }
+
+  @Override
+  public int score(int[] lineHashes1, int[] lineHashes2, int minScore) {
+    return sourceSimilarity.score(lineHashes1, lineHashes2, minScore);
+  }
 }
@@ -0,0 +1,156 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filemove;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Selects the pairs of removed and added files which are worth scoring.
+ * <p>
+ * When there are few pairs, all of them are selected. Otherwise, only the pairs of files which share a band of their
+ * MinHash sketches are selected (Locality Sensitive Hashing). A sketch approximates the Jaccard index of the multisets
+ * of line hashes of two files. As a score of {@link FileMoveDetectionStep#MIN_REQUIRED_SCORE} requires files to share
+ * at least 85% of the lines of the biggest one, their Jaccard index is at least 0.74, and such pairs are selected
+ * with a probability greater than 0.9999.
+ * </p>
+ */
+final class MoveCandidates {
+  static final int MAX_PAIRS_WITHOUT_SKETCHES = 100_000;
+  private static final int BANDS = 32;
+  private static final int ROWS_PER_BAND = 4;
+  private static final int SKETCH_SIZE = BANDS * ROWS_PER_BAND;
+  private static final int[] NO_CANDIDATE = new int[0];
+
+  private MoveCandidates() {
+    // only static methods
+  }
+
+  /**
+   * @param dbFiles line hashes of the removed files, {@code null} when a file has no source
+   * @param reportFiles line hashes of the added files
+   * @return for each removed file, the indexes in {@code reportFiles} of the added files to score it with
+   */
+  static int[][] select(int[][] dbFiles, int[][] reportFiles) {
+    if ((long) dbFiles.length * reportFiles.length <= MAX_PAIRS_WITHOUT_SKETCHES) {
+      return selectAll(dbFiles, reportFiles);
+    }
+    return selectBySketches(dbFiles, reportFiles);
+  }
+
+  private static int[][] selectAll(int[][] dbFiles, int[][] reportFiles) {
+    int[] all = IntStream.range(0, reportFiles.length).toArray();
+    int[][] candidates = new int[dbFiles.length][];
+    for (int i = 0; i < dbFiles.length; i++) {
+      candidates[i] = dbFiles[i] == null ? NO_CANDIDATE : all;
+    }
+    return candidates;
+  }
+
+  private static int[][] selectBySketches(int[][] dbFiles, int[][] reportFiles) {
+    long[][] dbSketches = Arrays.stream(dbFiles).parallel().map(MoveCandidates::sketch).toArray(long[][]::new);
+    long[][] reportSketches = Arrays.stream(reportFiles).parallel().map(MoveCandidates::sketch).toArray(long[][]::new);
+
+    List<Map<Long, List<Integer>>> reportFilesByBand = new ArrayList<>(BANDS);
+    for (int band = 0; band < BANDS; band++) {
+      Map<Long, List<Integer>> reportFilesByBandHash = new HashMap<>();
+      for (int r = 0; r < reportSketches.length; r++) {
+        if (reportSketches[r] != null) {
+          reportFilesByBandHash.computeIfAbsent(bandHash(reportSketches[r], band), k -> new ArrayList<>(1)).add(r);
+        }
+      }
+      reportFilesByBand.add(reportFilesByBandHash);
+    }
+
+    int[][] candidates = new int[dbFiles.length][];
+    int[] selectedBy = new int[reportFiles.length];
+    Arrays.fill(selectedBy, -1);
+    for (int d = 0; d < dbFiles.length; d++) {
+      candidates[d] = dbSketches[d] == null ? NO_CANDIDATE : candidatesOf(d, dbSketches[d], reportFilesByBand, selectedBy);
+    }
+    return candidates;
+  }
+
+  private static int[] candidatesOf(int dbFile, long[] dbSketch, List<Map<Long, List<Integer>>> reportFilesByBand, int[] selectedBy) {
+    List<Integer> candidates = new ArrayList<>();
+    for (int band = 0; band < BANDS; band++) {
+      List<Integer> reportFiles = reportFilesByBand.get(band).get(bandHash(dbSketch, band));
+      if (reportFiles == null) {
+        continue;
+      }
+      for (Integer reportFile : reportFiles) {
+        if (selectedBy[reportFile] != dbFile) {
+          selectedBy[reportFile] = dbFile;
+          candidates.add(reportFile);
+        }
+      }
+    }
+    return candidates.stream().mapToInt(Integer::intValue).sorted().toArray();
+  }
+
+  /**
+   * MinHash sketch of the multiset of line hashes, each occurrence of a line hash being considered as a distinct
+   * element. Files without lines never match, so they have no sketch.
+   */
+  @CheckForNull
+  private static long[] sketch(@Nullable int[] lineHashes) {
+    if (lineHashes == null || lineHashes.length == 0) {
+      return null;
+    }
+    long[] sketch = new long[SKETCH_SIZE];
+    Arrays.fill(sketch, Long.MAX_VALUE);
+    Map<Integer, Integer> occurrences = new HashMap<>();
+    for (int lineHash : lineHashes) {
+      int occurrence = occurrences.merge(lineHash, 1, Integer::sum);
+      long element = mix(((long) lineHash << 32) | occurrence);
+      for (int i = 0; i < SKETCH_SIZE; i++) {
+        long value = mix(element + i * 0x9E3779B97F4A7C15L);
+        if (value < sketch[i]) {
+          sketch[i] = value;
+        }
+      }
+    }
+    return sketch;
+  }
+
+  private static long bandHash(long[] sketch, int band) {
+    long hash = band;
+    for (int i = band * ROWS_PER_BAND; i < (band + 1) * ROWS_PER_BAND; i++) {
+      hash = mix(hash * 31 + sketch[i]);
+    }
+    return hash;
+  }
+
+  /**
+   * Finalizer of SplitMix64.
+   */
+  private static long mix(long value) {
+    long z = value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -19,33 +19,37 @@
  */
 package org.sonar.server.computation.task.projectanalysis.filemove;
 
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.Arrays;
 
 final class ScoreMatrix {
-  private final Set<String> dbFileKeys;
-  private final Map<String, FileSimilarity.File> reportFileSourcesByKey;
+  private final String[] dbFileKeys;
+  private final String[] reportFileKeys;
+  private final int[][] scoredReportFiles;
   private final int[][] scores;
   private final int maxScore;
 
-  public ScoreMatrix(Set<String> dbFileKeys, Map<String, FileSimilarity.File> reportFileSourcesByKey, int[][] scores, int maxScore) {
+  /**
+   * @param scoredReportFiles for each db file, the indexes in {@code reportFileKeys} of the report files it has been scored with
+   * @param scores for each db file, its scores with the report files of {@code scoredReportFiles}. Pairs of files which
+   *               have not been scored are considered as having a score of 0.
+   */
+  public ScoreMatrix(String[] dbFileKeys, String[] reportFileKeys, int[][] scoredReportFiles, int[][] scores, int maxScore) {
     this.dbFileKeys = dbFileKeys;
-    this.reportFileSourcesByKey = reportFileSourcesByKey;
+    this.reportFileKeys = reportFileKeys;
+    this.scoredReportFiles = scoredReportFiles;
     this.scores = scores;
     this.maxScore = maxScore;
   }
 
+  /**
+   * Visits the pairs of files which have been scored.
+   */
   public void accept(ScoreMatrixVisitor visitor) {
-    int dbFileIndex = 0;
-    for (String dbFileKey : dbFileKeys) {
-      int reportFileIndex = 0;
-      for (Map.Entry<String, FileSimilarity.File> reportFileSourceAndKey : reportFileSourcesByKey.entrySet()) {
-        int score = scores[dbFileIndex][reportFileIndex];
-        visitor.visit(dbFileKey, reportFileSourceAndKey.getKey(), score);
-        reportFileIndex++;
+    for (int dbFileIndex = 0; dbFileIndex < dbFileKeys.length; dbFileIndex++) {
+      int[] reportFileIndexes = scoredReportFiles[dbFileIndex];
+      for (int i = 0; i < reportFileIndexes.length; i++) {
+        visitor.visit(dbFileKeys[dbFileIndex], reportFileKeys[reportFileIndexes[i]], scores[dbFileIndex][i]);
       }
-      dbFileIndex++;
     }
   }
 
@@ -53,22 +57,22 @@ final class ScoreMatrix {
     StringBuilder res = new StringBuilder();
     // first row: empty column, then one column for each report file (its key)
     res.append(separator);
-    for (Map.Entry<String, FileSimilarity.File> reportEntry : reportFileSourcesByKey.entrySet()) {
-      res.append(reportEntry.getKey()).append(separator);
+    for (String reportFileKey : reportFileKeys) {
+      res.append(reportFileKey).append(separator);
     }
     // rows with data: column with db file (its key), then one column for each value
-    accept(new ScoreMatrixVisitor() {
-      private String previousDbFileKey = null;
-
-      @Override
-      public void visit(String dbFileKey, String reportFileKey, int score) {
-        if (!Objects.equals(previousDbFileKey, dbFileKey)) {
-          res.append('\n').append(dbFileKey).append(separator);
-          previousDbFileKey = dbFileKey;
-        }
+    int[] row = new int[reportFileKeys.length];
+    for (int dbFileIndex = 0; dbFileIndex < dbFileKeys.length; dbFileIndex++) {
+      Arrays.fill(row, 0);
+      int[] reportFileIndexes = scoredReportFiles[dbFileIndex];
+      for (int i = 0; i < reportFileIndexes.length; i++) {
+        row[reportFileIndexes[i]] = scores[dbFileIndex][i];
+      }
+      res.append('\n').append(dbFileKeys[dbFileIndex]).append(separator);
+      for (int score : row) {
         res.append(score).append(separator);
       }
-    });
+    }
     return res.toString();
   }
 
@@ -28,4 +28,12 @@ public interface SourceSimilarity {
    * Range: between 0 and 100
    */
   <T extends Object> int score(List<T> left, List<T> right);
+
+  /**
+   * Same as {@link #score(List, List)} on sources whose lines have been replaced by ints, equal lines being replaced by
+   * the same int.
+   * Computation stops as soon as the score can't reach {@code minScore}, in which case the returned score is only
+   * guaranteed to be lower than {@code minScore}.
+   */
+  int score(int[] left, int[] right, int minScore);
 }
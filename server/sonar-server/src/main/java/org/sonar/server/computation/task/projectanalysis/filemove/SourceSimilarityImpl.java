@@ -32,7 +32,89 @@ public class SourceSimilarityImpl implements SourceSimilarity {
       return 0;
     }
     int distance = levenshteinDistance(left, right);
-    return (int) (100 * (1.0 - ((double) distance) / (max(left.size(), right.size()))));
+    return toScore(distance, max(left.size(), right.size()));
+  }
+
+  @Override
+  public int score(int[] left, int[] right, int minScore) {
+    if (left.length == 0 && right.length == 0) {
+      return 0;
+    }
+    int maxLength = max(left.length, right.length);
+    int maxDistance = maxDistance(maxLength, minScore);
+    int distance = levenshteinDistance(left, right, maxDistance);
+    if (distance > maxDistance) {
+      return 0;
+    }
+    return toScore(distance, maxLength);
+  }
+
+  private static int toScore(int distance, int maxLength) {
+    return (int) (100 * (1.0 - ((double) distance) / maxLength));
+  }
+
+  /**
+   * Greatest distance giving a score of at least {@code minScore}, computed with the same rounding as {@link #toScore(int, int)}.
+   */
+  private static int maxDistance(int maxLength, int minScore) {
+    int distance = min(maxLength, (int) ((100L - minScore) * maxLength / 100));
+    while (distance > 0 && toScore(distance, maxLength) < minScore) {
+      distance--;
+    }
+    while (distance < maxLength && toScore(distance + 1, maxLength) >= minScore) {
+      distance++;
+    }
+    return distance;
+  }
+
+  /**
+   * Levenshtein distance restricted to the diagonal band of width {@code maxDistance}, as any path leaving that band
+   * costs more than {@code maxDistance}. Returns {@code maxDistance + 1} as soon as the distance is known to be greater
+   * than {@code maxDistance}.
+   */
+  private static int levenshteinDistance(int[] left, int[] right, int maxDistance) {
+    int tooFar = maxDistance + 1;
+    if (Math.abs(left.length - right.length) > maxDistance) {
+      return tooFar;
+    }
+    int len0 = left.length + 1;
+    int len1 = right.length + 1;
+
+    int[] cost = new int[len0];
+    int[] newcost = new int[len0];
+    for (int i = 0; i < len0; i++) {
+      cost[i] = i <= maxDistance ? i : tooFar;
+    }
+
+    for (int j = 1; j < len1; j++) {
+      int from = max(1, j - maxDistance);
+      int to = min(len0 - 1, j + maxDistance);
+      // cells outside of the band are never cheaper than tooFar
+      newcost[from - 1] = from == 1 ? min(j, tooFar) : tooFar;
+      if (to + 1 < len0) {
+        newcost[to + 1] = tooFar;
+      }
+
+      int rowMin = newcost[from - 1];
+      int rightValue = right[j - 1];
+      for (int i = from; i <= to; i++) {
+        int match = left[i - 1] == rightValue ? 0 : 1;
+        int costReplace = cost[i - 1] + match;
+        int costInsert = cost[i] + 1;
+        int costDelete = newcost[i - 1] + 1;
+        int value = min(min(costInsert, costDelete), costReplace);
+        newcost[i] = value;
+        rowMin = min(rowMin, value);
+      }
+      if (rowMin > maxDistance) {
+        return tooFar;
+      }
+
+      int[] swap = cost;
+      cost = newcost;
+      newcost = swap;
+    }
+    return min(cost[len0 - 1], tooFar);
   }
 
   private static <T> int levenshteinDistance(List<T> left, List<T> right) {
@@ -20,7 +20,9 @@
 package org.sonar.server.computation.task.projectanalysis.issue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.RuleStatus;
@@ -29,9 +31,18 @@ import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.issue.IssueDto;
 import org.sonar.db.issue.IssueMapper;
+import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
+import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.qualityprofile.ActiveRulesHolder;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.sonar.db.DatabaseUtils.executeLargeInputsWithoutOutput;
+import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
+
 /**
  * Loads all the project open issues from database, including manual issues.
  *
@@ -43,6 +54,8 @@ public class BaseIssuesLoader {
   private final RuleRepository ruleRepository;
   private final ActiveRulesHolder activeRulesHolder;
 
+  private Map<String, List<DefaultIssue>> issuesOfReusedFiles;
+
   public BaseIssuesLoader(TreeRootHolder treeRootHolder,
     DbClient dbClient, RuleRepository ruleRepository, ActiveRulesHolder activeRulesHolder) {
     this.activeRulesHolder = activeRulesHolder;
@@ -54,21 +67,60 @@ public class BaseIssuesLoader {
   public List<DefaultIssue> loadForComponentUuid(String componentUuid) {
     try (DbSession dbSession = dbClient.openSession(false)) {
       List<DefaultIssue> result = new ArrayList<>();
-      dbSession.getMapper(IssueMapper.class).selectNonClosedByComponentUuid(componentUuid, resultContext -> {
-        DefaultIssue issue = ((IssueDto) resultContext.getResultObject()).toDefaultIssue();
+      dbSession.getMapper(IssueMapper.class).selectNonClosedByComponentUuid(componentUuid,
+        resultContext -> result.add(toBaseIssue((IssueDto) resultContext.getResultObject())));
+      return result;
+    }
+  }
 
-        // TODO this field should be set outside this class
-        if (!isActive(issue.ruleKey()) || ruleRepository.getByKey(issue.ruleKey()).getStatus() == RuleStatus.REMOVED) {
-          issue.setOnDisabledRule(true);
-          // TODO to be improved, why setOnDisabledRule(true) is not enough ?
-          issue.setBeingClosed(true);
+  /**
+   * Open issues of a file reused from the last analysis (see {@link FileAttributes#isReused()}). The issues of all
+   * the reused files of the project are loaded at once when the first one is requested, then each file is
+   * expected to be requested only once.
+   */
+  public synchronized List<DefaultIssue> loadForReusedFile(Component file) {
+    checkArgument(file.getType() == Component.Type.FILE && file.getFileAttributes().isReused(), "Component '%s' is not a reused file", file.getKey());
+    if (issuesOfReusedFiles == null) {
+      issuesOfReusedFiles = loadForReusedFiles();
+    }
+    List<DefaultIssue> issues = issuesOfReusedFiles.remove(file.getUuid());
+    return issues == null ? new ArrayList<>() : issues;
+  }
+
+  private Map<String, List<DefaultIssue>> loadForReusedFiles() {
+    List<String> fileUuids = new ArrayList<>();
+    new DepthTraversalTypeAwareCrawler(new TypeAwareVisitorAdapter(CrawlerDepthLimit.FILE, PRE_ORDER) {
+      @Override
+      public void visitFile(Component file) {
+        if (file.getFileAttributes().isReused()) {
+          fileUuids.add(file.getUuid());
         }
-        // FIXME
-        issue.setSelectedAt(System.currentTimeMillis());
-        result.add(issue);
-      });
-      return result;
+      }
+    }).visit(treeRootHolder.getRoot());
+
+    Map<String, List<DefaultIssue>> issuesByFileUuid = new HashMap<>();
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      IssueMapper mapper = dbSession.getMapper(IssueMapper.class);
+      executeLargeInputsWithoutOutput(fileUuids, uuids -> mapper.selectNonClosedByComponentUuids(uuids, resultContext -> {
+        DefaultIssue issue = toBaseIssue((IssueDto) resultContext.getResultObject());
+        issuesByFileUuid.computeIfAbsent(issue.componentUuid(), uuid -> new ArrayList<>()).add(issue);
+      }));
+    }
+    return issuesByFileUuid;
+  }
+
+  private DefaultIssue toBaseIssue(IssueDto dto) {
+    DefaultIssue issue = dto.toDefaultIssue();
+
+    // TODO this field should be set outside this class
+    if (!isActive(issue.ruleKey()) || ruleRepository.getByKey(issue.ruleKey()).getStatus() == RuleStatus.REMOVED) {
+      issue.setOnDisabledRule(true);
+      // TODO to be improved, why setOnDisabledRule(true) is not enough ?
+      issue.setBeingClosed(true);
     }
+    // FIXME
+    issue.setSelectedAt(System.currentTimeMillis());
+    return issue;
   }
 
   private boolean isActive(RuleKey ruleKey) {
@@ -29,7 +29,6 @@ import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.filemove.MovedFilesRepository;
-import org.sonar.server.util.cache.DiskCache;
 
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.POST_ORDER;
 
@@ -71,7 +70,7 @@ public class IntegrateIssuesVisitor extends TypeAwareVisitorAdapter {
   }
 
   private void processIssues(Component component) {
-    DiskCache<DefaultIssue>.DiskAppender cacheAppender = issueCache.newAppender();
+    IssueCache.Appender cacheAppender = issueCache.newAppender();
     try {
       Tracking<DefaultIssue, DefaultIssue> tracking = tracker.track(component);
       issueVisitors.beforeComponent(component);
@@ -86,14 +85,14 @@ public class IntegrateIssuesVisitor extends TypeAwareVisitorAdapter {
     }
   }
 
-  private void fillNewOpenIssues(Component component, Tracking<DefaultIssue, DefaultIssue> tracking, DiskCache<DefaultIssue>.DiskAppender cacheAppender) {
+  private void fillNewOpenIssues(Component component, Tracking<DefaultIssue, DefaultIssue> tracking, IssueCache.Appender cacheAppender) {
     for (DefaultIssue issue : tracking.getUnmatchedRaws()) {
       issueLifecycle.initNewOpenIssue(issue);
       process(component, issue, cacheAppender);
     }
   }
 
-  private void fillExistingOpenIssues(Component component, Tracking<DefaultIssue, DefaultIssue> tracking, DiskCache<DefaultIssue>.DiskAppender cacheAppender) {
+  private void fillExistingOpenIssues(Component component, Tracking<DefaultIssue, DefaultIssue> tracking, IssueCache.Appender cacheAppender) {
     for (Map.Entry<DefaultIssue, DefaultIssue> entry : tracking.getMatchedRaws().entrySet()) {
       DefaultIssue raw = entry.getKey();
       DefaultIssue base = entry.getValue();
@@ -102,7 +101,7 @@ public class IntegrateIssuesVisitor extends TypeAwareVisitorAdapter {
     }
   }
 
-  private void closeUnmatchedBaseIssues(Component component, Tracking<DefaultIssue, DefaultIssue> tracking, DiskCache<DefaultIssue>.DiskAppender cacheAppender) {
+  private void closeUnmatchedBaseIssues(Component component, Tracking<DefaultIssue, DefaultIssue> tracking, IssueCache.Appender cacheAppender) {
     for (DefaultIssue issue : tracking.getUnmatchedBases()) {
       // TODO should replace flag "beingClosed" by express call to transition "automaticClose"
       issue.setBeingClosed(true);
@@ -111,7 +110,7 @@ public class IntegrateIssuesVisitor extends TypeAwareVisitorAdapter {
     }
   }
 
-  private void process(Component component, DefaultIssue issue, DiskCache<DefaultIssue>.DiskAppender cacheAppender) {
+  private void process(Component component, DefaultIssue issue, IssueCache.Appender cacheAppender) {
     issueLifecycle.doAutomaticTransition(issue);
     issueVisitors.onIssue(component, issue);
     cacheAppender.append(issue);
@@ -19,24 +19,252 @@
  */
 package org.sonar.server.computation.task.projectanalysis.issue;
 
+import com.google.protobuf.CodedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TempFolder;
 import org.sonar.core.issue.DefaultIssue;
-import org.sonar.server.util.cache.DiskCache;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.core.util.MappedByteBuffers;
+import org.sonar.server.protobuf.CeIssueCache;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.nullToEmpty;
 
 /**
  * Cache of all the issues involved in the analysis. Their state is as it will be
  * persisted in database (after issue tracking, auto-assignment, ...)
+ * <p>
+ * Issues are stored in a file as protobuf records prefixed by their size. Records of the issues of
+ * a component are written in contiguous segments, which are indexed in memory, so that the issues of
+ * a component can be read without traversing the whole file (see {@link #traverse(String)}).
+ * Segments are memory-mapped when traversed, and unmapped as soon as they are read or the traversal is closed.
+ * </p>
+ * <p>
+ * Issues are visible to traversals once the appender which added them is closed. Only one appender
+ * can be opened at a time.
+ * </p>
  */
-public class IssueCache extends DiskCache<DefaultIssue> {
+public class IssueCache {
+
+  /**
+   * Segments are split when they exceed this size, so that they can be memory-mapped by chunks.
+   */
+  static final long MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+  private final File file;
+  private final System2 system2;
+  private final List<Segment> segments = new ArrayList<>();
+  private final Map<String, List<Segment>> segmentsByComponentUuid = new HashMap<>();
+  private long size = 0L;
+  private boolean appending = false;
 
   // this constructor is used by picocontainer
   public IssueCache(TempFolder tempFolder, System2 system2) {
-    super(tempFolder.newFile("issues", ".dat"), system2);
+    this(tempFolder.newFile("issues", ".dat"), system2);
   }
 
   public IssueCache(File file, System2 system2) {
-    super(file, system2);
+    this.file = file;
+    this.system2 = system2;
+    // creates or truncates file
+    FileOutputStream output = null;
+    try {
+      output = new FileOutputStream(file);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write into file: " + file, e);
+    } finally {
+      if (output != null) {
+        system2.close(output);
+      }
+    }
+  }
+
+  public Appender newAppender() {
+    checkState(!appending, "An appender is already opened on file %s", file);
+    appending = true;
+    return new Appender();
+  }
+
+  /**
+   * Traverses all the issues, in the order they were appended.
+   */
+  public CloseableIterator<DefaultIssue> traverse() {
+    return new IssueIterator(segments);
+  }
+
+  /**
+   * Traverses the issues of the specified component, in the order they were appended.
+   */
+  public CloseableIterator<DefaultIssue> traverse(String componentUuid) {
+    List<Segment> componentSegments = segmentsByComponentUuid.get(componentUuid);
+    if (componentSegments == null) {
+      return CloseableIterator.emptyCloseableIterator();
+    }
+    return new IssueIterator(componentSegments);
+  }
+
+  private void index(List<Segment> newSegments) {
+    for (Segment segment : newSegments) {
+      segments.add(segment);
+      segmentsByComponentUuid.computeIfAbsent(segment.componentUuid, k -> new ArrayList<>()).add(segment);
+      size = segment.end;
+    }
+  }
+
+  public class Appender implements AutoCloseable {
+    private final DataOutputStream output;
+    private final List<Segment> newSegments = new ArrayList<>();
+    private Segment currentSegment = null;
+    private long position;
+
+    private Appender() {
+      try {
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        this.position = size;
+      } catch (IOException e) {
+        appending = false;
+        throw new IllegalStateException("Fail to open file " + file, e);
+      }
+    }
+
+    public Appender append(DefaultIssue issue) {
+      CeIssueCache.Issue record = IssueCacheSerializer.toProtobuf(issue);
+      int recordSize = record.getSerializedSize();
+      String componentUuid = nullToEmpty(issue.componentUuid());
+      if (currentSegment == null || !currentSegment.componentUuid.equals(componentUuid)
+        || (currentSegment.end - currentSegment.start + recordSize) > MAX_SEGMENT_SIZE) {
+        currentSegment = new Segment(componentUuid, position);
+        newSegments.add(currentSegment);
+      }
+      try {
+        output.writeInt(recordSize);
+        record.writeTo(output);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to write into file " + file, e);
+      }
+      position += Integer.BYTES + recordSize;
+      currentSegment.end = position;
+      return this;
+    }
+
+    @Override
+    public void close() {
+      try {
+        system2.close(output);
+        index(newSegments);
+      } finally {
+        appending = false;
+      }
+    }
+  }
+
+  /**
+   * Range of the file containing the records of a component
+   */
+  private static class Segment {
+    private final String componentUuid;
+    private final long start;
+    private long end;
+
+    private Segment(String componentUuid, long start) {
+      this.componentUuid = componentUuid;
+      this.start = start;
+      this.end = start;
+    }
+  }
+
+  private class IssueIterator extends CloseableIterator<DefaultIssue> {
+    private final Iterator<Segment> segmentIterator;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private byte[] recordBytes = new byte[1024];
+    private Segment pendingSegment = null;
+    private MappedByteBuffer buffer = null;
+
+    private IssueIterator(List<Segment> segmentsToTraverse) {
+      this.segmentIterator = new ArrayList<>(segmentsToTraverse).iterator();
+      try {
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to traverse file: " + file, e);
+      }
+      this.channel = randomAccessFile.getChannel();
+    }
+
+    @CheckForNull
+    @Override
+    protected DefaultIssue doNext() {
+      while (buffer == null || !buffer.hasRemaining()) {
+        if (!mapNextChunk()) {
+          return null;
+        }
+      }
+      int recordSize = buffer.getInt();
+      if (recordBytes.length < recordSize) {
+        recordBytes = new byte[Math.max(recordSize, 2 * recordBytes.length)];
+      }
+      buffer.get(recordBytes, 0, recordSize);
+      try {
+        return IssueCacheSerializer.toDefaultIssue(CeIssueCache.Issue.parseFrom(CodedInputStream.newInstance(recordBytes, 0, recordSize)));
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to read issue from file " + file, e);
+      }
+    }
+
+    /**
+     * Maps the next adjacent segments, up to {@link #MAX_SEGMENT_SIZE}.
+     */
+    private boolean mapNextChunk() {
+      Segment first = pendingSegment != null ? pendingSegment : nextSegment();
+      pendingSegment = null;
+      if (first == null) {
+        return false;
+      }
+      long start = first.start;
+      long end = first.end;
+      Segment next;
+      while ((next = nextSegment()) != null) {
+        if (next.start != end || (next.end - start) > MAX_SEGMENT_SIZE) {
+          pendingSegment = next;
+          break;
+        }
+        end = next.end;
+      }
+      // records are copied when read, so the previous chunk is not referenced anymore
+      MappedByteBuffers.unmap(buffer);
+      buffer = null;
+      try {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to traverse file: " + file, e);
+      }
+      return true;
+    }
+
+    @CheckForNull
+    private Segment nextSegment() {
+      return segmentIterator.hasNext() ? segmentIterator.next() : null;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+      MappedByteBuffers.unmap(buffer);
+      buffer = null;
+      randomAccessFile.close();
+    }
   }
 }
@@ -0,0 +1,287 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.issue;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.issue.IssueComment;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.db.protobuf.DbIssues;
+import org.sonar.server.protobuf.CeIssueCache;
+
+/**
+ * Converts {@link DefaultIssue} to and from the protobuf records of {@link IssueCache}.
+ * Values of {@link FieldDiffs} are stored as strings, as they are when persisted in database.
+ */
+final class IssueCacheSerializer {
+
+  private IssueCacheSerializer() {
+    // only static methods
+  }
+
+  static CeIssueCache.Issue toProtobuf(DefaultIssue issue) {
+    CeIssueCache.Issue.Builder builder = CeIssueCache.Issue.newBuilder();
+    setNullable(issue.key(), builder::setKey);
+    if (issue.type() != null) {
+      builder.setRuleType(issue.type().getDbConstant());
+    }
+    setNullable(issue.componentUuid(), builder::setComponentUuid);
+    setNullable(issue.componentKey(), builder::setComponentKey);
+    setNullable(issue.moduleUuid(), builder::setModuleUuid);
+    setNullable(issue.moduleUuidPath(), builder::setModuleUuidPath);
+    setNullable(issue.projectUuid(), builder::setProjectUuid);
+    setNullable(issue.projectKey(), builder::setProjectKey);
+    if (issue.ruleKey() != null) {
+      builder.setRuleKey(issue.ruleKey().toString());
+    }
+    setNullable(issue.language(), builder::setLanguage);
+    setNullable(issue.severity(), builder::setSeverity);
+    builder.setManualSeverity(issue.manualSeverity());
+    setNullable(issue.message(), builder::setMessage);
+    setNullable(issue.line(), builder::setLine);
+    setNullable(issue.gap(), builder::setGap);
+    setNullable(issue.effortInMinutes(), builder::setEffort);
+    setNullable(issue.status(), builder::setStatus);
+    setNullable(issue.resolution(), builder::setResolution);
+    setNullable(issue.assignee(), builder::setAssignee);
+    setNullable(issue.checksum(), builder::setChecksum);
+    for (Map.Entry<String, String> attribute : issue.attributes().entrySet()) {
+      builder.addAttributes(CeIssueCache.StringEntry.newBuilder().setKey(attribute.getKey()).setValue(attribute.getValue()));
+    }
+    setNullable(issue.authorLogin(), builder::setAuthorLogin);
+    for (IssueComment comment : issue.comments()) {
+      builder.addComments(toProtobuf((DefaultIssueComment) comment));
+    }
+    builder.addAllTags(issue.tags());
+    DbIssues.Locations locations = issue.getLocations();
+    if (locations != null) {
+      builder.setLocations(locations.toByteString());
+    }
+    setNullable(toTime(issue.creationDate()), builder::setCreationDate);
+    setNullable(toTime(issue.updateDate()), builder::setUpdateDate);
+    setNullable(toTime(issue.closeDate()), builder::setCloseDate);
+    FieldDiffs currentChange = issue.currentChange();
+    for (FieldDiffs change : issue.changes()) {
+      builder.addChanges(toProtobuf(change, change == currentChange));
+    }
+    builder.setIsNew(issue.isNew());
+    builder.setBeingClosed(issue.isBeingClosed());
+    builder.setOnDisabledRule(issue.isOnDisabledRule());
+    builder.setIsChanged(issue.isChanged());
+    builder.setSendNotifications(issue.mustSendNotifications());
+    setNullable(issue.selectedAt(), builder::setSelectedAt);
+    return builder.build();
+  }
+
+  private static CeIssueCache.Comment toProtobuf(DefaultIssueComment comment) {
+    CeIssueCache.Comment.Builder builder = CeIssueCache.Comment.newBuilder();
+    setNullable(comment.key(), builder::setKey);
+    setNullable(comment.issueKey(), builder::setIssueKey);
+    setNullable(comment.userLogin(), builder::setUserLogin);
+    setNullable(comment.markdownText(), builder::setMarkdownText);
+    setNullable(toTime(comment.createdAt()), builder::setCreatedAt);
+    setNullable(toTime(comment.updatedAt()), builder::setUpdatedAt);
+    builder.setIsNew(comment.isNew());
+    return builder.build();
+  }
+
+  private static CeIssueCache.FieldDiffs toProtobuf(FieldDiffs fieldDiffs, boolean isCurrent) {
+    CeIssueCache.FieldDiffs.Builder builder = CeIssueCache.FieldDiffs.newBuilder();
+    setNullable(fieldDiffs.issueKey(), builder::setIssueKey);
+    setNullable(fieldDiffs.userLogin(), builder::setUserLogin);
+    setNullable(toTime(fieldDiffs.creationDate()), builder::setCreationDate);
+    for (Map.Entry<String, FieldDiffs.Diff> diff : fieldDiffs.diffs().entrySet()) {
+      CeIssueCache.Diff.Builder diffBuilder = CeIssueCache.Diff.newBuilder().setField(diff.getKey());
+      setNullable(toString(diff.getValue().oldValue()), diffBuilder::setOldValue);
+      setNullable(toString(diff.getValue().newValue()), diffBuilder::setNewValue);
+      builder.addDiffs(diffBuilder);
+    }
+    builder.setIsCurrent(isCurrent);
+    return builder.build();
+  }
+
+  static DefaultIssue toDefaultIssue(CeIssueCache.Issue record) {
+    DefaultIssue issue = new DefaultIssue();
+    if (record.hasKey()) {
+      issue.setKey(record.getKey());
+    }
+    if (record.hasRuleType()) {
+      issue.setType(RuleType.valueOf(record.getRuleType()));
+    }
+    issue.setComponentUuid(record.hasComponentUuid() ? record.getComponentUuid() : null);
+    if (record.hasComponentKey()) {
+      issue.setComponentKey(record.getComponentKey());
+    }
+    issue.setModuleUuid(record.hasModuleUuid() ? record.getModuleUuid() : null);
+    issue.setModuleUuidPath(record.hasModuleUuidPath() ? record.getModuleUuidPath() : null);
+    issue.setProjectUuid(record.hasProjectUuid() ? record.getProjectUuid() : null);
+    if (record.hasProjectKey()) {
+      issue.setProjectKey(record.getProjectKey());
+    }
+    if (record.hasRuleKey()) {
+      issue.setRuleKey(RuleKey.parse(record.getRuleKey()));
+    }
+    if (record.hasLanguage()) {
+      issue.setLanguage(record.getLanguage());
+    }
+    issue.setSeverity(record.hasSeverity() ? record.getSeverity() : null);
+    issue.setManualSeverity(record.getManualSeverity());
+    issue.setMessage(record.hasMessage() ? record.getMessage() : null);
+    issue.setLine(record.hasLine() ? record.getLine() : null);
+    issue.setGap(record.hasGap() ? record.getGap() : null);
+    issue.setEffort(record.hasEffort() ? Duration.create(record.getEffort()) : null);
+    if (record.hasStatus()) {
+      issue.setStatus(record.getStatus());
+    }
+    issue.setResolution(record.hasResolution() ? record.getResolution() : null);
+    issue.setAssignee(record.hasAssignee() ? record.getAssignee() : null);
+    issue.setChecksum(record.hasChecksum() ? record.getChecksum() : null);
+    if (record.getAttributesCount() > 0) {
+      Map<String, String> attributes = new HashMap<>(record.getAttributesCount());
+      for (CeIssueCache.StringEntry attribute : record.getAttributesList()) {
+        attributes.put(attribute.getKey(), attribute.getValue());
+      }
+      issue.setAttributes(attributes);
+    }
+    issue.setAuthorLogin(record.hasAuthorLogin() ? record.getAuthorLogin() : null);
+    for (CeIssueCache.Comment comment : record.getCommentsList()) {
+      issue.addComment(toDefaultIssueComment(comment));
+    }
+    if (record.getTagsCount() > 0) {
+      issue.setTags(record.getTagsList());
+    }
+    if (record.hasLocations()) {
+      issue.setLocations(parseLocations(record));
+    }
+    if (record.hasCreationDate()) {
+      issue.setCreationDate(new Date(record.getCreationDate()));
+    }
+    issue.setUpdateDate(record.hasUpdateDate() ? new Date(record.getUpdateDate()) : null);
+    issue.setCloseDate(record.hasCloseDate() ? new Date(record.getCloseDate()) : null);
+    setChanges(issue, record.getChangesList());
+    issue.setNew(record.getIsNew());
+    issue.setBeingClosed(record.getBeingClosed());
+    issue.setOnDisabledRule(record.getOnDisabledRule());
+    issue.setChanged(record.getIsChanged());
+    issue.setSendNotifications(record.getSendNotifications());
+    issue.setSelectedAt(record.hasSelectedAt() ? record.getSelectedAt() : null);
+    return issue;
+  }
+
+  private static DbIssues.Locations parseLocations(CeIssueCache.Issue record) {
+    try {
+      return DbIssues.Locations.parseFrom(record.getLocations());
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException("Fail to read locations of issue " + record.getKey(), e);
+    }
+  }
+
+  private static DefaultIssueComment toDefaultIssueComment(CeIssueCache.Comment record) {
+    DefaultIssueComment comment = new DefaultIssueComment();
+    if (record.hasKey()) {
+      comment.setKey(record.getKey());
+    }
+    if (record.hasIssueKey()) {
+      comment.setIssueKey(record.getIssueKey());
+    }
+    comment.setUserLogin(record.hasUserLogin() ? record.getUserLogin() : null);
+    if (record.hasMarkdownText()) {
+      comment.setMarkdownText(record.getMarkdownText());
+    }
+    if (record.hasCreatedAt()) {
+      comment.setCreatedAt(new Date(record.getCreatedAt()));
+    }
+    comment.setUpdatedAt(record.hasUpdatedAt() ? new Date(record.getUpdatedAt()) : null);
+    comment.setNew(record.getIsNew());
+    return comment;
+  }
+
+  /**
+   * The current change of an issue is also part of its list of changes (possibly several times), so
+   * the same instance must be shared.
+   */
+  private static void setChanges(DefaultIssue issue, List<CeIssueCache.FieldDiffs> records) {
+    if (records.isEmpty()) {
+      return;
+    }
+    List<FieldDiffs> changes = new ArrayList<>(records.size());
+    FieldDiffs currentChange = null;
+    for (CeIssueCache.FieldDiffs record : records) {
+      if (record.getIsCurrent()) {
+        if (currentChange == null) {
+          currentChange = toFieldDiffs(record);
+        }
+        changes.add(currentChange);
+      } else {
+        changes.add(toFieldDiffs(record));
+      }
+    }
+    if (currentChange != null) {
+      issue.setCurrentChange(currentChange);
+    }
+    issue.setChanges(changes);
+  }
+
+  private static FieldDiffs toFieldDiffs(CeIssueCache.FieldDiffs record) {
+    FieldDiffs fieldDiffs = new FieldDiffs();
+    if (record.hasIssueKey()) {
+      fieldDiffs.setIssueKey(record.getIssueKey());
+    }
+    fieldDiffs.setUserLogin(record.hasUserLogin() ? record.getUserLogin() : null);
+    if (record.hasCreationDate()) {
+      fieldDiffs.setCreationDate(new Date(record.getCreationDate()));
+    }
+    for (CeIssueCache.Diff diff : record.getDiffsList()) {
+      fieldDiffs.setDiff(diff.getField(),
+        diff.hasOldValue() ? diff.getOldValue() : null,
+        diff.hasNewValue() ? diff.getNewValue() : null);
+    }
+    return fieldDiffs;
+  }
+
+  @CheckForNull
+  private static Long toTime(@Nullable Date date) {
+    return date == null ? null : date.getTime();
+  }
+
+  @CheckForNull
+  private static String toString(@Nullable Serializable value) {
+    return value == null ? null : value.toString();
+  }
+
+  private static <T> void setNullable(@Nullable T value, Function<T, ?> setter) {
+    if (value != null) {
+      setter.apply(value);
+    }
+  }
+}
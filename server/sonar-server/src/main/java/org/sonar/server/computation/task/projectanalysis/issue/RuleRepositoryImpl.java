@@ -87,7 +87,10 @@ public class RuleRepositoryImpl implements RuleRepository {
     requireNonNull(key, "RuleKey can not be null");
   }
 
-  private void ensureInitialized() {
+  /**
+   * Synchronized, as the repository can be read by concurrent computation steps
+   */
+  private synchronized void ensureInitialized() {
     if (rulesByKey == null) {
       try (DbSession dbSession = dbClient.openSession(false)) {
         loadRulesFromDb(dbSession);
@@ -80,6 +80,9 @@ public class TrackerBaseInputFactory {
 
     @Override
     protected List<DefaultIssue> loadIssues() {
+      if (component.getType() == Component.Type.FILE && component.getFileAttributes().isReused()) {
+        return baseIssuesLoader.loadForReusedFile(component);
+      }
       return baseIssuesLoader.loadForComponentUuid(effectiveUuid);
     }
   }
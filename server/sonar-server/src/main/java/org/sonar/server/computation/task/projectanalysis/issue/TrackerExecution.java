@@ -20,6 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.issue;
 
 import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.tracking.Input;
 import org.sonar.core.issue.tracking.Tracker;
 import org.sonar.core.issue.tracking.Tracking;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
@@ -38,6 +39,7 @@ public class TrackerExecution {
   }
 
   public Tracking<DefaultIssue, DefaultIssue> track(Component component) {
-    return tracker.track(rawInputFactory.create(component), baseInputFactory.create(component));
+    Input<DefaultIssue> baseInput = baseInputFactory.create(component);
+    return tracker.track(rawInputFactory.create(component, baseInput), baseInput);
   }
 }
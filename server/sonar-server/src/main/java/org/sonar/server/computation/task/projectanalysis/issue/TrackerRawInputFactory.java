@@ -62,15 +62,21 @@ public class TrackerRawInputFactory {
     this.issueFilter = issueFilter;
   }
 
-  public Input<DefaultIssue> create(Component component) {
-    return new RawLazyInput(component);
+  /**
+   * @param baseInput the base input of the same component. The raw issues of a file reused from the last
+   *                  analysis are copies of its base issues, so that they are loaded only once.
+   */
+  public Input<DefaultIssue> create(Component component, Input<DefaultIssue> baseInput) {
+    return new RawLazyInput(component, baseInput);
   }
 
   private class RawLazyInput extends LazyInput<DefaultIssue> {
     private final Component component;
+    private final Input<DefaultIssue> baseInput;
 
-    private RawLazyInput(Component component) {
+    private RawLazyInput(Component component, Input<DefaultIssue> baseInput) {
       this.component = component;
+      this.baseInput = baseInput;
     }
 
     @Override
@@ -93,6 +99,10 @@ public class TrackerRawInputFactory {
           result.add(init(commonRuleIssue));
         }
       }
+      if (component.getType() == Component.Type.FILE && component.getFileAttributes().isReused()) {
+        loadReusedIssues(result);
+        return result;
+      }
       try (CloseableIterator<ScannerReport.Issue> reportIssues = reportReader.readComponentIssues(component.getReportAttributes().getRef())) {
         // optimization - do not load line hashes if there are no issues -> getLineHashSequence() is executed
         // as late as possible
@@ -112,6 +122,35 @@ public class TrackerRawInputFactory {
       return result;
     }
 
+    /**
+     * The file was not analyzed again by the scanner because it did not change, so the issues
+     * raised by the last analysis are raised again. Issues of common rules are computed above.
+     */
+    private void loadReusedIssues(List<DefaultIssue> result) {
+      for (DefaultIssue baseIssue : baseInput.getIssues()) {
+        if (baseIssue.isOnDisabledRule() || baseIssue.ruleKey().repository().startsWith(CommonRuleKeys.REPOSITORY_PREFIX)) {
+          continue;
+        }
+        DefaultIssue issue = toIssue(baseIssue);
+        if (issueFilter.accept(issue, component)) {
+          result.add(issue);
+        }
+      }
+    }
+
+    private DefaultIssue toIssue(DefaultIssue baseIssue) {
+      DefaultIssue issue = new DefaultIssue();
+      init(issue);
+      issue.setRuleKey(baseIssue.ruleKey());
+      issue.setLine(baseIssue.line());
+      issue.setChecksum(baseIssue.checksum());
+      issue.setMessage(baseIssue.message());
+      issue.setSeverity(baseIssue.severity());
+      issue.setGap(baseIssue.gap());
+      issue.setLocations(baseIssue.getLocations());
+      return issue;
+    }
+
     private boolean isIssueOnUnsupportedCommonRule(ScannerReport.Issue issue) {
       // issues on batch common rules are ignored. This feature
       // is natively supported by compute engine since 5.2.
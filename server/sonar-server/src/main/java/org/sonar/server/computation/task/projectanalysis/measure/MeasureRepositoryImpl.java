@@ -21,7 +21,11 @@ package org.sonar.server.computation.task.projectanalysis.measure;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.SetMultimap;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
@@ -31,6 +35,10 @@ import org.sonar.db.measure.MeasureQuery;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
+import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.measure.MapBasedRawMeasureRepository.OverridePolicy;
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
@@ -38,7 +46,12 @@ import org.sonar.server.computation.task.projectanalysis.metric.ReportMetricVali
 
 import static java.util.Objects.requireNonNull;
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentFunctions.toReportRef;
+import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
+/**
+ * Measures of the report and of the database are loaded lazily. Methods accessing them are synchronized, as
+ * the repository can be read by concurrent computation steps.
+ */
 public class MeasureRepositoryImpl implements MeasureRepository {
   private final MapBasedRawMeasureRepository<Integer> delegate = new MapBasedRawMeasureRepository<>(toReportRef());
   private final DbClient dbClient;
@@ -46,16 +59,21 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   private final BatchMeasureToMeasure batchMeasureToMeasure;
   private final MetricRepository metricRepository;
   private final ReportMetricValidator reportMetricValidator;
+  private final TreeRootHolder treeRootHolder;
 
   private MeasureDtoToMeasure underTest = new MeasureDtoToMeasure();
   private final Set<Integer> loadedComponents = new HashSet<>();
+  private Map<String, List<MeasureDto>> measuresOfReusedFiles;
+  private Map<Integer, Metric> reportMetricsById;
 
-  public MeasureRepositoryImpl(DbClient dbClient, BatchReportReader reportReader, MetricRepository metricRepository, ReportMetricValidator reportMetricValidator) {
+  public MeasureRepositoryImpl(DbClient dbClient, BatchReportReader reportReader, MetricRepository metricRepository, ReportMetricValidator reportMetricValidator,
+    TreeRootHolder treeRootHolder) {
     this.dbClient = dbClient;
     this.reportReader = reportReader;
     this.reportMetricValidator = reportMetricValidator;
     this.batchMeasureToMeasure = new BatchMeasureToMeasure();
     this.metricRepository = metricRepository;
+    this.treeRootHolder = treeRootHolder;
   }
 
   @Override
@@ -75,7 +93,7 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   }
 
   @Override
-  public Optional<Measure> getRawMeasure(Component component, Metric metric) {
+  public synchronized Optional<Measure> getRawMeasure(Component component, Metric metric) {
     Optional<Measure> local = delegate.getRawMeasure(component, metric);
     if (local.isPresent()) {
       return local;
@@ -87,23 +105,23 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   }
 
   @Override
-  public void add(Component component, Metric metric, Measure measure) {
+  public synchronized void add(Component component, Metric metric, Measure measure) {
     delegate.add(component, metric, measure);
   }
 
   @Override
-  public void update(Component component, Metric metric, Measure measure) {
+  public synchronized void update(Component component, Metric metric, Measure measure) {
     delegate.update(component, metric, measure);
   }
 
   @Override
-  public Set<Measure> getRawMeasures(Component component, Metric metric) {
+  public synchronized Set<Measure> getRawMeasures(Component component, Metric metric) {
     loadBatchMeasuresForComponent(component);
     return delegate.getRawMeasures(component, metric);
   }
 
   @Override
-  public SetMultimap<String, Measure> getRawMeasures(Component component) {
+  public synchronized SetMultimap<String, Measure> getRawMeasures(Component component) {
     loadBatchMeasuresForComponent(component);
     return delegate.getRawMeasures(component);
   }
@@ -123,7 +141,78 @@ public class MeasureRepositoryImpl implements MeasureRepository {
         }
       }
     }
+    if (component.getType() == Component.Type.FILE && component.getFileAttributes().isReused()) {
+      loadReusedMeasuresForFile(component);
+    }
     loadedComponents.add(component.getReportAttributes().getRef());
   }
 
+  /**
+   * The file was not analyzed again by the scanner because it did not change, so the measures
+   * computed by the scanner during the last analysis are loaded from db. Measures computed by the
+   * Compute Engine are not loaded, they are computed again.
+   */
+  private void loadReusedMeasuresForFile(Component file) {
+    if (measuresOfReusedFiles == null) {
+      measuresOfReusedFiles = loadMeasuresOfReusedFiles();
+    }
+    List<MeasureDto> measureDtos = measuresOfReusedFiles.remove(file.getUuid());
+    if (measureDtos == null) {
+      return;
+    }
+    for (MeasureDto measureDto : measureDtos) {
+      Metric metric = getReportMetricsById().get(measureDto.getMetricId());
+      // variations and quality gate status are computed again
+      measureDto.setVariation(null).setAlertStatus(null).setAlertText(null);
+      Optional<Measure> measure = underTest.toMeasure(measureDto, metric);
+      if (measure.isPresent()) {
+        delegate.add(file, metric, measure.get(), OverridePolicy.DO_NOT_OVERRIDE);
+      }
+    }
+  }
+
+  /**
+   * Measures of the last analysis of all the reused files, loaded with one query per partition of files
+   * instead of one query per file.
+   */
+  private Map<String, List<MeasureDto>> loadMeasuresOfReusedFiles() {
+    List<String> fileUuids = new ArrayList<>();
+    new DepthTraversalTypeAwareCrawler(new TypeAwareVisitorAdapter(CrawlerDepthLimit.FILE, PRE_ORDER) {
+      @Override
+      public void visitFile(Component file) {
+        if (file.getFileAttributes().isReused()) {
+          fileUuids.add(file.getUuid());
+        }
+      }
+    }).visit(treeRootHolder.getRoot());
+
+    // metric may have been disabled since the last analysis
+    List<Integer> metricIds = new ArrayList<>(getReportMetricsById().keySet());
+    Map<String, List<MeasureDto>> measuresByFileUuid = new HashMap<>();
+    if (fileUuids.isEmpty() || metricIds.isEmpty()) {
+      return measuresByFileUuid;
+    }
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      for (MeasureDto measureDto : dbClient.measureDao().selectByComponentsAndMetrics(dbSession, fileUuids, metricIds)) {
+        measuresByFileUuid.computeIfAbsent(measureDto.getComponentUuid(), uuid -> new ArrayList<>()).add(measureDto);
+      }
+    }
+    return measuresByFileUuid;
+  }
+
+  /**
+   * Metrics which values can be pushed by the scanner
+   */
+  private Map<Integer, Metric> getReportMetricsById() {
+    if (reportMetricsById == null) {
+      reportMetricsById = new HashMap<>();
+      for (Metric metric : metricRepository.getAll()) {
+        if (reportMetricValidator.validate(metric.getKey())) {
+          reportMetricsById.put(metric.getId(), metric);
+        }
+      }
+    }
+    return reportMetricsById;
+  }
+
 }
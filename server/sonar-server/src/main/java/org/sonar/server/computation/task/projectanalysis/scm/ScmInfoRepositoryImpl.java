@@ -22,6 +22,8 @@ package org.sonar.server.computation.task.projectanalysis.scm;
 import com.google.common.base.Optional;
 import java.util.HashMap;
 import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.db.DbClient;
@@ -31,30 +33,39 @@ import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
+import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.source.SourceHashRepository;
 
 import static java.util.Objects.requireNonNull;
+import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.POST_ORDER;
 
 public class ScmInfoRepositoryImpl implements ScmInfoRepository {
 
   private static final Logger LOGGER = Loggers.get(ScmInfoRepositoryImpl.class);
 
   private final BatchReportReader batchReportReader;
+  private final TreeRootHolder treeRootHolder;
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final DbClient dbClient;
   private final SourceHashRepository sourceHashRepository;
 
   private final Map<Component, ScmInfo> scmInfoCache = new HashMap<>();
+  private boolean loaded = false;
 
-  public ScmInfoRepositoryImpl(BatchReportReader batchReportReader, AnalysisMetadataHolder analysisMetadataHolder, DbClient dbClient, SourceHashRepository sourceHashRepository) {
+  public ScmInfoRepositoryImpl(BatchReportReader batchReportReader, TreeRootHolder treeRootHolder, AnalysisMetadataHolder analysisMetadataHolder, DbClient dbClient,
+    SourceHashRepository sourceHashRepository) {
     this.batchReportReader = batchReportReader;
+    this.treeRootHolder = treeRootHolder;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.dbClient = dbClient;
     this.sourceHashRepository = sourceHashRepository;
   }
 
   @Override
-  public Optional<ScmInfo> getScmInfo(Component component) {
+  public synchronized Optional<ScmInfo> getScmInfo(Component component) {
     requireNonNull(component, "Component cannot be bull");
     return initializeScmInfoForComponent(component);
   }
@@ -63,12 +74,16 @@ public class ScmInfoRepositoryImpl implements ScmInfoRepository {
     if (component.getType() != Component.Type.FILE) {
       return Optional.absent();
     }
+    if (!loaded) {
+      loadScmInfoOfFiles();
+      loaded = true;
+    }
     ScmInfo scmInfo = scmInfoCache.get(component);
     if (scmInfo != null) {
       return optionalOf(scmInfo);
     }
 
-    scmInfo = getScmInfoForComponent(component);
+    scmInfo = getScmInfoForComponent(component, readChangesets(component));
     scmInfoCache.put(component, scmInfo);
     return optionalOf(scmInfo);
   }
@@ -80,8 +95,53 @@ public class ScmInfoRepositoryImpl implements ScmInfoRepository {
     return Optional.of(scmInfo);
   }
 
-  private ScmInfo getScmInfoForComponent(Component component) {
-    ScannerReport.Changesets changesets = batchReportReader.readChangesets(component.getReportAttributes().getRef());
+  /**
+   * Populates the cache with the SCM info of all the files of the project. SCM info of the files which have not changed
+   * since the previous analysis is read from a single stream of FILE_SOURCES instead of one query per file. Only
+   * the changesets are kept in memory, the other data of sources is dropped as soon as each row is read.
+   */
+  private void loadScmInfoOfFiles() {
+    boolean hasPreviousAnalysis = !analysisMetadataHolder.isFirstAnalysis();
+    Map<String, Component> unchangedFilesByUuid = new HashMap<>();
+    new DepthTraversalTypeAwareCrawler(
+      new TypeAwareVisitorAdapter(CrawlerDepthLimit.FILE, POST_ORDER) {
+        @Override
+        public void visitFile(Component file) {
+          ScannerReport.Changesets changesets = readChangesets(file);
+          if (changesets != null && changesets.getCopyFromPrevious() && hasPreviousAnalysis) {
+            LOGGER.trace("Reading SCM info from db for file '{}'", file.getKey());
+            unchangedFilesByUuid.put(file.getUuid(), file);
+          } else {
+            scmInfoCache.put(file, getScmInfoForComponent(file, changesets));
+          }
+        }
+      }).visit(treeRootHolder.getRoot());
+
+    if (!unchangedFilesByUuid.isEmpty()) {
+      loadScmInfoFromDb(unchangedFilesByUuid);
+    }
+  }
+
+  private void loadScmInfoFromDb(Map<String, Component> filesByUuid) {
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      dbClient.fileSourceDao().scrollSourcesOfProject(dbSession, treeRootHolder.getRoot().getUuid(), context -> {
+        FileSourceDto dto = (FileSourceDto) context.getResultObject();
+        Component file = filesByUuid.remove(dto.getFileUuid());
+        if (file != null) {
+          scmInfoCache.put(file, toScmInfo(file, dto));
+        }
+      });
+    }
+    // files which have no sources in db
+    filesByUuid.values().forEach(file -> scmInfoCache.put(file, NoScmInfo.INSTANCE));
+  }
+
+  @CheckForNull
+  private ScannerReport.Changesets readChangesets(Component file) {
+    return batchReportReader.readChangesets(file.getReportAttributes().getRef());
+  }
+
+  private ScmInfo getScmInfoForComponent(Component component, @Nullable ScannerReport.Changesets changesets) {
     if (changesets == null) {
       LOGGER.trace("No SCM info for file '{}'", component.getKey());
       return NoScmInfo.INSTANCE;
@@ -100,11 +160,18 @@ public class ScmInfoRepositoryImpl implements ScmInfoRepository {
     LOGGER.trace("Reading SCM info from db for file '{}'", file.getKey());
     try (DbSession dbSession = dbClient.openSession(false)) {
       FileSourceDto dto = dbClient.fileSourceDao().selectSourceByFileUuid(dbSession, file.getUuid());
-      if (dto == null || !sourceHashRepository.getRawSourceHash(file).equals(dto.getSrcHash())) {
+      if (dto == null) {
         return NoScmInfo.INSTANCE;
       }
-      return DbScmInfo.create(file, dto.getSourceData().getLinesList()).or(NoScmInfo.INSTANCE);
+      return toScmInfo(file, dto);
+    }
+  }
+
+  private ScmInfo toScmInfo(Component file, FileSourceDto dto) {
+    if (!sourceHashRepository.getRawSourceHash(file).equals(dto.getSrcHash())) {
+      return NoScmInfo.INSTANCE;
     }
+    return DbScmInfo.create(file, dto.getSourceData().getLinesList()).or(NoScmInfo.INSTANCE);
   }
 
   private static ScmInfo getScmInfoFromReport(Component file, ScannerReport.Changesets changesets) {
@@ -41,7 +41,7 @@ public class SourceHashRepositoryImpl implements SourceHashRepository {
   }
 
   @Override
-  public String getRawSourceHash(Component file) {
+  public synchronized String getRawSourceHash(Component file) {
     checkComponentArgument(file);
     if (rawSourceHashesByKey.containsKey(file.getKey())) {
       return checkSourceHash(file.getKey(), rawSourceHashesByKey.get(file.getKey()));
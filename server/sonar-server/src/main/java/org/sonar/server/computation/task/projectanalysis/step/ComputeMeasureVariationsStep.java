@@ -43,14 +43,12 @@ import org.sonar.server.computation.task.projectanalysis.measure.MeasureKey;
 import org.sonar.server.computation.task.projectanalysis.measure.MeasureRepository;
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
-import org.sonar.server.computation.task.projectanalysis.period.Period;
 import org.sonar.server.computation.task.projectanalysis.period.PeriodHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
-import static java.util.function.Function.identity;
-import static org.sonar.core.util.stream.MoreCollectors.uniqueIndex;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.DIRECTORY;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.SUBVIEW;
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
@@ -63,6 +61,9 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
  */
 public class ComputeMeasureVariationsStep implements ComputationStep {
 
+  // measures on files are currently purged, so past measures are not available on files
+  private static final CrawlerDepthLimit VISITED_DEPTH = CrawlerDepthLimit.reportMaxDepth(DIRECTORY).withViewsMaxDepth(SUBVIEW);
+
   private final DbClient dbClient;
   private final TreeRootHolder treeRootHolder;
   private final PeriodHolder periodHolder;
@@ -82,22 +83,49 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
   public void execute() {
     try (DbSession dbSession = dbClient.openSession(false)) {
       List<Metric> metrics = StreamSupport.stream(metricRepository.getAll().spliterator(), false).filter(isNumeric()).collect(MoreCollectors.toList());
-      new DepthTraversalTypeAwareCrawler(new VariationMeasuresVisitor(dbSession, metrics))
+      PastMeasures pastMeasures = loadPastMeasures(dbSession, metrics);
+      new DepthTraversalTypeAwareCrawler(new VariationMeasuresVisitor(pastMeasures, metrics))
         .visit(treeRootHolder.getRoot());
     }
   }
 
+  /**
+   * Loads the past measures of all the visited components with a single scroll over the measures of the period's
+   * analysis, rather than one query per component.
+   */
+  private PastMeasures loadPastMeasures(DbSession dbSession, List<Metric> metrics) {
+    ComponentIndexVisitor componentIndexVisitor = new ComponentIndexVisitor();
+    PastMeasures pastMeasures = new PastMeasures(componentIndexVisitor.indexByUuid);
+    if (periodHolder.hasPeriod()) {
+      new DepthTraversalTypeAwareCrawler(componentIndexVisitor).visit(treeRootHolder.getRoot());
+      Set<Integer> metricIds = metrics.stream().map(Metric::getId).collect(MoreCollectors.toSet());
+      dbClient.measureDao().selectPastMeasures(dbSession, periodHolder.getPeriod().getAnalysisUuid(), metricIds,
+        context -> pastMeasures.add((PastMeasureDto) context.getResultObject()));
+    }
+    return pastMeasures;
+  }
+
+  private static final class ComponentIndexVisitor extends TypeAwareVisitorAdapter {
+    private final Map<String, Integer> indexByUuid = new HashMap<>();
+
+    ComponentIndexVisitor() {
+      super(VISITED_DEPTH, PRE_ORDER);
+    }
+
+    @Override
+    public void visitAny(Component component) {
+      indexByUuid.put(component.getUuid(), indexByUuid.size());
+    }
+  }
+
   private class VariationMeasuresVisitor extends TypeAwareVisitorAdapter {
 
-    private final DbSession session;
-    private final Set<Integer> metricIds;
+    private final PastMeasures pastMeasures;
     private final List<Metric> metrics;
 
-    VariationMeasuresVisitor(DbSession session, List<Metric> metrics) {
-      // measures on files are currently purged, so past measures are not available on files
-      super(CrawlerDepthLimit.reportMaxDepth(DIRECTORY).withViewsMaxDepth(SUBVIEW), PRE_ORDER);
-      this.session = session;
-      this.metricIds = metrics.stream().map(Metric::getId).collect(MoreCollectors.toSet());
+    VariationMeasuresVisitor(PastMeasures pastMeasures, List<Metric> metrics) {
+      super(VISITED_DEPTH, PRE_ORDER);
+      this.pastMeasures = pastMeasures;
       this.metrics = metrics;
     }
 
@@ -110,23 +138,17 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
     private MeasuresWithVariationRepository computeMeasuresWithVariations(Component component) {
       MeasuresWithVariationRepository measuresWithVariationRepository = new MeasuresWithVariationRepository();
       if (periodHolder.hasPeriod()) {
-        Period period = periodHolder.getPeriod();
-        List<PastMeasureDto> pastMeasures = dbClient.measureDao()
-          .selectPastMeasures(session, component.getUuid(), period.getAnalysisUuid(), metricIds);
-        setVariationMeasures(component, pastMeasures, measuresWithVariationRepository);
+        setVariationMeasures(component, measuresWithVariationRepository);
       }
       return measuresWithVariationRepository;
     }
 
-    private void setVariationMeasures(Component component, List<PastMeasureDto> pastMeasures, MeasuresWithVariationRepository measuresWithVariationRepository) {
-      Map<MeasureKey, PastMeasureDto> pastMeasuresByMeasureKey = pastMeasures
-        .stream()
-        .collect(uniqueIndex(m -> new MeasureKey(metricRepository.getById((long) m.getMetricId()).getKey(), null), identity()));
+    private void setVariationMeasures(Component component, MeasuresWithVariationRepository measuresWithVariationRepository) {
+      int componentIndex = pastMeasures.indexOf(component);
       for (Metric metric : metrics) {
         Optional<Measure> measure = measureRepository.getRawMeasure(component, metric);
         if (measure.isPresent() && !measure.get().hasVariation()) {
-          PastMeasureDto pastMeasure = pastMeasuresByMeasureKey.get(new MeasureKey(metric.getKey(), null));
-          double pastValue = (pastMeasure != null && pastMeasure.hasValue()) ? pastMeasure.getValue() : 0d;
+          double pastValue = pastMeasures.getValue(componentIndex, metric.getId());
           measuresWithVariationRepository.add(metric, measure.get(), computeVariation(measure.get(), pastValue));
         }
       }
@@ -158,6 +180,91 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
     }
   }
 
+  /**
+   * Past values of the visited components, keyed by component index and metric id. Missing measures and measures
+   * without value are not stored, as both are considered as having a past value of 0.
+   * Keys and values are kept in primitive arrays with open addressing, so that trees with tens of thousands of
+   * directories don't allocate one object per measure.
+   */
+  private static final class PastMeasures {
+    private static final long FREE = 0L;
+
+    private final Map<String, Integer> componentIndexByUuid;
+    private long[] keys = new long[1024];
+    private double[] values = new double[1024];
+    private int size = 0;
+
+    PastMeasures(Map<String, Integer> componentIndexByUuid) {
+      this.componentIndexByUuid = componentIndexByUuid;
+    }
+
+    int indexOf(Component component) {
+      Integer index = componentIndexByUuid.get(component.getUuid());
+      checkState(index != null, "Component %s has not been indexed", component);
+      return index;
+    }
+
+    void add(PastMeasureDto dto) {
+      Integer componentIndex = componentIndexByUuid.get(dto.getComponentUuid());
+      // measures of components deeper than the visited ones (ie. files of a previous analysis) are ignored
+      if (componentIndex != null && dto.hasValue()) {
+        put(key(componentIndex, dto.getMetricId()), dto.getValue());
+      }
+    }
+
+    double getValue(int componentIndex, int metricId) {
+      long key = key(componentIndex, metricId);
+      int mask = keys.length - 1;
+      for (int i = hash(key) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+        if (keys[i] == key) {
+          return values[i];
+        }
+      }
+      return 0d;
+    }
+
+    private void put(long key, double value) {
+      if (2 * (size + 1) > keys.length) {
+        rehash(keys.length * 2);
+      }
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (keys[i] != FREE && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      if (keys[i] == FREE) {
+        size++;
+      }
+      keys[i] = key;
+      values[i] = value;
+    }
+
+    private void rehash(int capacity) {
+      long[] oldKeys = keys;
+      double[] oldValues = values;
+      keys = new long[capacity];
+      values = new double[capacity];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != FREE) {
+          put(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    /**
+     * Component indexes are shifted by one so that no valid key equals {@link #FREE}.
+     */
+    private static long key(int componentIndex, int metricId) {
+      return ((long) (componentIndex + 1) << 32) | (metricId & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+
   private static final class MeasuresWithVariationRepository {
 
     private final Map<MeasureKey, MeasureWithVariation> measuresWithVariations = new HashMap<>();
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.base.Optional;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
@@ -43,7 +44,8 @@ import static org.sonar.api.measures.CoreMetrics.DUPLICATIONS_DATA_KEY;
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
 /**
- * Compute duplication data measures on files, based on the {@link DuplicationRepository}
+ * Compute duplication data measures on files, based on the {@link DuplicationRepository}. The measures of the last analysis
+ * are kept on files reused from the last analysis.
  */
 public class DuplicationDataMeasuresStep implements ComputationStep {
 
@@ -75,6 +77,14 @@ public class DuplicationDataMeasuresStep implements ComputationStep {
 
     @Override
     public void visitFile(Component file) {
+      if (file.getFileAttributes().isReused()) {
+        // file was not analyzed again, duplications of the last analysis are kept
+        Optional<Measure> baseMeasure = measureRepository.getBaseMeasure(file, duplicationDataMetric);
+        if (baseMeasure.isPresent()) {
+          measureRepository.add(file, duplicationDataMetric, Measure.newMeasureBuilder().create(baseMeasure.get().getStringValue()));
+        }
+        return;
+      }
       Iterable<Duplication> duplications = duplicationRepository.getDuplications(file);
       if (!isEmpty(duplications)) {
         computeDuplications(file, duplications);
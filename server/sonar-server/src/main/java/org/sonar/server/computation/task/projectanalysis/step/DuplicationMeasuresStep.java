@@ -98,12 +98,14 @@ public class DuplicationMeasuresStep implements ComputationStep {
   private static class DuplicationCounter implements Counter<DuplicationCounter> {
     @CheckForNull
     private final DuplicationRepository duplicationRepository;
+    private final DuplicationFormula formula;
     private int fileCount = 0;
     private int blockCount = 0;
     private int lineCount = 0;
 
-    private DuplicationCounter(@Nullable DuplicationRepository duplicationRepository) {
+    private DuplicationCounter(@Nullable DuplicationRepository duplicationRepository, DuplicationFormula formula) {
       this.duplicationRepository = duplicationRepository;
+      this.formula = formula;
     }
 
     @Override
@@ -124,6 +126,10 @@ public class DuplicationMeasuresStep implements ComputationStep {
     }
 
     private void initializeForFile(Component file) {
+      if (file.getFileAttributes().isReused()) {
+        initializeForReusedFile(file);
+        return;
+      }
       Iterable<Duplication> duplications = requireNonNull(this.duplicationRepository, "DuplicationRepository missing")
         .getDuplications(file);
       if (isEmpty(duplications)) {
@@ -147,6 +153,16 @@ public class DuplicationMeasuresStep implements ComputationStep {
       this.lineCount += duplicatedLineNumbers.size();
     }
 
+    /**
+     * The file was not analyzed again, so there is no duplication in the report. Duplications
+     * of the last analysis are kept.
+     */
+    private void initializeForReusedFile(Component file) {
+      fileCount += formula.getBaseMeasure(file, formula.duplicatedFilesMetric);
+      blockCount += formula.getBaseMeasure(file, formula.duplicatedBlocksMetric);
+      lineCount += formula.getBaseMeasure(file, formula.duplicatedLinesMetric);
+    }
+
     private static void addLines(TextBlock textBlock, Set<Integer> duplicatedLineNumbers) {
       for (int i = textBlock.getStart(); i <= textBlock.getEnd(); i++) {
         duplicatedLineNumbers.add(i);
@@ -175,6 +191,9 @@ public class DuplicationMeasuresStep implements ComputationStep {
     private final Metric nclocMetric;
     private final Metric linesMetric;
     private final Metric commentLinesMetric;
+    private final Metric duplicatedFilesMetric;
+    private final Metric duplicatedBlocksMetric;
+    private final Metric duplicatedLinesMetric;
 
     private DuplicationFormula(MetricRepository metricRepository, MeasureRepository measureRepository, @Nullable DuplicationRepository duplicationRepository) {
       this.measureRepository = measureRepository;
@@ -182,11 +201,22 @@ public class DuplicationMeasuresStep implements ComputationStep {
       this.nclocMetric = metricRepository.getByKey(NCLOC_KEY);
       this.linesMetric = metricRepository.getByKey(LINES_KEY);
       this.commentLinesMetric = metricRepository.getByKey(COMMENT_LINES_KEY);
+      this.duplicatedFilesMetric = metricRepository.getByKey(DUPLICATED_FILES_KEY);
+      this.duplicatedBlocksMetric = metricRepository.getByKey(DUPLICATED_BLOCKS_KEY);
+      this.duplicatedLinesMetric = metricRepository.getByKey(DUPLICATED_LINES_KEY);
     }
 
     @Override
     public DuplicationCounter createNewCounter() {
-      return new DuplicationCounter(duplicationRepository);
+      return new DuplicationCounter(duplicationRepository, this);
+    }
+
+    private int getBaseMeasure(Component component, Metric metric) {
+      Optional<Measure> measure = measureRepository.getBaseMeasure(component, metric);
+      if (measure.isPresent()) {
+        return measure.get().getIntValue();
+      }
+      return 0;
     }
 
     @Override
@@ -19,11 +19,14 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
 import org.sonar.core.util.UuidFactory;
+import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.task.projectanalysis.analysis.MutableAnalysisMetadataHolder;
-import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ConcurrentComputationStep;
 
-public class GenerateAnalysisUuid implements ComputationStep {
+public class GenerateAnalysisUuid implements ConcurrentComputationStep {
 
   private final UuidFactory uuidFactory;
   private final MutableAnalysisMetadataHolder analysisMetadataHolder;
@@ -38,6 +41,16 @@ public class GenerateAnalysisUuid implements ComputationStep {
     analysisMetadataHolder.setUuid(uuidFactory.create());
   }
 
+  @Override
+  public Set<Class<?>> readDependencies() {
+    return ImmutableSet.of();
+  }
+
+  @Override
+  public Set<Class<?>> writeDependencies() {
+    return ImmutableSet.of(AnalysisMetadataHolder.class);
+  }
+
   @Override
   public String getDescription() {
     return "Generate analysis UUID";
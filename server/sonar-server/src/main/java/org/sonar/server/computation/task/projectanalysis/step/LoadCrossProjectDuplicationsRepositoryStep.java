@@ -20,11 +20,21 @@
 package org.sonar.server.computation.task.projectanalysis.step;
 
 import com.google.common.base.Function;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.util.stream.MoreCollectors;
+import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.duplication.DuplicationUnitDto;
@@ -38,6 +48,7 @@ import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthL
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationHashIndex;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
 import org.sonar.server.computation.task.projectanalysis.duplication.IntegrateCrossProjectDuplications;
 import org.sonar.server.computation.task.projectanalysis.analysis.Analysis;
@@ -58,28 +69,38 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
 
   private static final Logger LOGGER = Loggers.get(LoadCrossProjectDuplicationsRepositoryStep.class);
 
+  // candidates of pending files are selected as soon as their hashes fill a partition of the IN clause
+  private static final int MAX_HASHES_PER_QUERY = DatabaseUtils.PARTITION_SIZE_FOR_ORACLE;
+
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final IntegrateCrossProjectDuplications integrateCrossProjectDuplications;
   private final CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder;
+  private final CrossProjectDuplicationHashIndex hashIndex;
   private final DbClient dbClient;
 
   public LoadCrossProjectDuplicationsRepositoryStep(TreeRootHolder treeRootHolder, BatchReportReader reportReader,
     AnalysisMetadataHolder analysisMetadataHolder, CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder,
-    IntegrateCrossProjectDuplications integrateCrossProjectDuplications, DbClient dbClient) {
+    IntegrateCrossProjectDuplications integrateCrossProjectDuplications, CrossProjectDuplicationHashIndex hashIndex, DbClient dbClient) {
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.integrateCrossProjectDuplications = integrateCrossProjectDuplications;
     this.crossProjectDuplicationStatusHolder = crossProjectDuplicationStatusHolder;
+    this.hashIndex = hashIndex;
     this.dbClient = dbClient;
   }
 
   @Override
   public void execute() {
     if (crossProjectDuplicationStatusHolder.isEnabled()) {
-      new DepthTraversalTypeAwareCrawler(new CrossProjectDuplicationVisitor()).visit(treeRootHolder.getRoot());
+      hashIndex.refresh();
+      try (DbSession dbSession = dbClient.openSession(false)) {
+        CrossProjectDuplicationVisitor visitor = new CrossProjectDuplicationVisitor(dbSession);
+        new DepthTraversalTypeAwareCrawler(visitor).visit(treeRootHolder.getRoot());
+        visitor.flush();
+      }
     }
   }
 
@@ -88,48 +109,104 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
     return "Compute cross project duplications";
   }
 
+  /**
+   * Files having at least one hash in {@link CrossProjectDuplicationHashIndex} are grouped by language, and their
+   * candidates are selected once the group holds enough hashes. Other files can't have any cross project duplication.
+   */
   private class CrossProjectDuplicationVisitor extends TypeAwareVisitorAdapter {
 
-    private CrossProjectDuplicationVisitor() {
+    private final DbSession dbSession;
+    @CheckForNull
+    private final String baseAnalysisUuid;
+    private final Map<String, PendingFiles> pendingFilesByLanguage = new HashMap<>();
+
+    private CrossProjectDuplicationVisitor(DbSession dbSession) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
+      this.dbSession = dbSession;
+      Analysis baseAnalysis = analysisMetadataHolder.getBaseAnalysis();
+      this.baseAnalysisUuid = baseAnalysis == null ? null : baseAnalysis.getUuid();
     }
 
     @Override
     public void visitFile(Component file) {
       List<CpdTextBlock> cpdTextBlocks = newArrayList(reportReader.readCpdTextBlocks(file.getReportAttributes().getRef()));
       LOGGER.trace("Found {} cpd blocks on file {}", cpdTextBlocks.size(), file.getKey());
-      if (cpdTextBlocks.isEmpty()) {
+      String language = file.getFileAttributes().getLanguageKey();
+      if (cpdTextBlocks.isEmpty() || language == null) {
         return;
       }
 
-      Collection<String> hashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toList();
-      List<DuplicationUnitDto> dtos = selectDuplicates(file, hashes);
-      if (dtos.isEmpty()) {
+      Set<String> hashes = cpdTextBlocks.stream()
+        .map(CpdTextBlock::getHash)
+        .filter(hash -> hashIndex.mightContain(language, hash))
+        .collect(MoreCollectors.toSet());
+      if (hashes.isEmpty()) {
+        LOGGER.trace("No cross project duplication candidate for file {}", file.getKey());
         return;
       }
 
-      Collection<Block> duplicatedBlocks = from(dtos).transform(DtoToBlock.INSTANCE).toList();
-      Collection<Block> originBlocks = from(cpdTextBlocks).transform(new CpdTextBlockToBlock(file.getKey())).toList();
-      LOGGER.trace("Found {} duplicated cpd blocks on file {}", duplicatedBlocks.size(), file.getKey());
+      PendingFiles pendingFiles = pendingFilesByLanguage.computeIfAbsent(language, PendingFiles::new);
+      pendingFiles.add(new PendingFile(file, cpdTextBlocks, hashes));
+      if (pendingFiles.hashes.size() >= MAX_HASHES_PER_QUERY) {
+        pendingFilesByLanguage.remove(language);
+        computeCpd(pendingFiles);
+      }
+    }
 
-      integrateCrossProjectDuplications.computeCpd(file, originBlocks, duplicatedBlocks);
+    private void flush() {
+      pendingFilesByLanguage.values().forEach(this::computeCpd);
+      pendingFilesByLanguage.clear();
     }
 
-    private List<DuplicationUnitDto> selectDuplicates(Component file, Collection<String> hashes) {
-      try (DbSession dbSession = dbClient.openSession(false)) {
-        Analysis projectAnalysis = analysisMetadataHolder.getBaseAnalysis();
-        String analysisUuid = projectAnalysis == null ? null : projectAnalysis.getUuid();
-        return dbClient.duplicationDao().selectCandidates(dbSession, analysisUuid, file.getFileAttributes().getLanguageKey(), hashes);
+    private void computeCpd(PendingFiles pendingFiles) {
+      List<DuplicationUnitDto> dtos = dbClient.duplicationDao().selectCandidates(dbSession, baseAnalysisUuid, pendingFiles.language, pendingFiles.hashes);
+      if (dtos.isEmpty()) {
+        return;
+      }
+
+      Multimap<String, DuplicationUnitDto> dtosByHash = Multimaps.index(dtos, DuplicationUnitDto::getHash);
+      for (PendingFile pendingFile : pendingFiles.files) {
+        List<DuplicationUnitDto> fileDtos = pendingFile.hashes.stream()
+          .flatMap(hash -> dtosByHash.get(hash).stream())
+          .collect(MoreCollectors.toList());
+        if (fileDtos.isEmpty()) {
+          continue;
+        }
+
+        Component file = pendingFile.file;
+        Collection<Block> duplicatedBlocks = from(fileDtos).transform(DtoToBlock.INSTANCE).toList();
+        Collection<Block> originBlocks = from(pendingFile.cpdTextBlocks).transform(new CpdTextBlockToBlock(file.getKey())).toList();
+        LOGGER.trace("Found {} duplicated cpd blocks on file {}", duplicatedBlocks.size(), file.getKey());
+
+        integrateCrossProjectDuplications.computeCpd(file, originBlocks, duplicatedBlocks);
       }
     }
   }
 
-  private enum CpdTextBlockToHash implements Function<CpdTextBlock, String> {
-    INSTANCE;
+  private static final class PendingFiles {
+    private final String language;
+    private final List<PendingFile> files = new ArrayList<>();
+    private final Set<String> hashes = new HashSet<>();
 
-    @Override
-    public String apply(@Nonnull CpdTextBlock duplicationBlock) {
-      return duplicationBlock.getHash();
+    private PendingFiles(String language) {
+      this.language = language;
+    }
+
+    private void add(PendingFile file) {
+      files.add(file);
+      hashes.addAll(file.hashes);
+    }
+  }
+
+  private static final class PendingFile {
+    private final Component file;
+    private final List<CpdTextBlock> cpdTextBlocks;
+    private final Set<String> hashes;
+
+    private PendingFile(Component file, List<CpdTextBlock> cpdTextBlocks, Set<String> hashes) {
+      this.file = file;
+      this.cpdTextBlocks = cpdTextBlocks;
+      this.hashes = hashes;
     }
   }
 
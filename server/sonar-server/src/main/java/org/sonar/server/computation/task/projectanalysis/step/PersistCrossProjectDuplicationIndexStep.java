@@ -19,9 +19,12 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.duplication.DuplicationDao;
 import org.sonar.db.duplication.DuplicationUnitDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
@@ -31,30 +34,33 @@ import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthL
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationHashIndex;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
-import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ConcurrentComputationStep;
 
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
 /**
  * Persist cross project duplications text blocks into DUPLICATIONS_INDEX table
  */
-public class PersistCrossProjectDuplicationIndexStep implements ComputationStep {
+public class PersistCrossProjectDuplicationIndexStep implements ConcurrentComputationStep {
 
   private final DbClient dbClient;
   private final TreeRootHolder treeRootHolder;
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final BatchReportReader reportReader;
   private final CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder;
+  private final CrossProjectDuplicationHashIndex hashIndex;
 
   public PersistCrossProjectDuplicationIndexStep(CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder, DbClient dbClient,
     TreeRootHolder treeRootHolder, AnalysisMetadataHolder analysisMetadataHolder,
-    BatchReportReader reportReader) {
+    BatchReportReader reportReader, CrossProjectDuplicationHashIndex hashIndex) {
     this.dbClient = dbClient;
     this.treeRootHolder = treeRootHolder;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.reportReader = reportReader;
     this.crossProjectDuplicationStatusHolder = crossProjectDuplicationStatusHolder;
+    this.hashIndex = hashIndex;
   }
 
   @Override
@@ -87,6 +93,7 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
     }
 
     private void visitComponent(Component component) {
+      String language = component.getFileAttributes().getLanguageKey();
       int indexInFile = 0;
       CloseableIterator<ScannerReport.CpdTextBlock> blocks = reportReader.readCpdTextBlocks(component.getReportAttributes().getRef());
       try {
@@ -101,6 +108,9 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
               .setIndexInFile(indexInFile)
               .setAnalysisUuid(analysisUuid)
               .setComponentUuid(component.getUuid()));
+          if (language != null) {
+            hashIndex.add(language, block.getHash());
+          }
           indexInFile++;
         }
       } finally {
@@ -109,6 +119,16 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
     }
   }
 
+  @Override
+  public Set<Class<?>> readDependencies() {
+    return ImmutableSet.of(CrossProjectDuplicationStatusHolder.class, AnalysisMetadataHolder.class, TreeRootHolder.class, BatchReportReader.class);
+  }
+
+  @Override
+  public Set<Class<?>> writeDependencies() {
+    return ImmutableSet.of(DuplicationDao.class, CrossProjectDuplicationHashIndex.class);
+  }
+
   @Override
   public String getDescription() {
     return "Persist cross project duplications index";
@@ -19,7 +19,9 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -27,6 +29,7 @@ import org.sonar.api.utils.System2;
 import org.sonar.core.util.UuidFactory;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.event.EventDao;
 import org.sonar.db.event.EventDto;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
@@ -36,9 +39,9 @@ import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolde
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.event.Event;
 import org.sonar.server.computation.task.projectanalysis.event.EventRepository;
-import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ConcurrentComputationStep;
 
-public class PersistEventsStep implements ComputationStep {
+public class PersistEventsStep implements ConcurrentComputationStep {
 
   private final DbClient dbClient;
   private final System2 system2;
@@ -67,6 +70,16 @@ public class PersistEventsStep implements ComputationStep {
     }
   }
 
+  @Override
+  public Set<Class<?>> readDependencies() {
+    return ImmutableSet.of(TreeRootHolder.class, AnalysisMetadataHolder.class, EventRepository.class);
+  }
+
+  @Override
+  public Set<Class<?>> writeDependencies() {
+    return ImmutableSet.of(EventDao.class);
+  }
+
   @Override
   public String getDescription() {
     return "Persist events";
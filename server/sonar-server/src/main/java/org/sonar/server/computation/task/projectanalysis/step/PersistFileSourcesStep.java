@@ -21,10 +21,12 @@ package org.sonar.server.computation.task.projectanalysis.step;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -34,6 +36,7 @@ import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.db.source.FileSourceDao;
 import org.sonar.db.source.FileSourceDto;
 import org.sonar.db.source.FileSourceDto.Type;
 import org.sonar.scanner.protocol.output.ScannerReport;
@@ -54,13 +57,14 @@ import org.sonar.server.computation.task.projectanalysis.source.HighlightingLine
 import org.sonar.server.computation.task.projectanalysis.source.LineReader;
 import org.sonar.server.computation.task.projectanalysis.source.RangeOffsetConverter;
 import org.sonar.server.computation.task.projectanalysis.source.ScmLineReader;
+import org.sonar.server.computation.task.projectanalysis.source.SourceHashRepository;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepository;
 import org.sonar.server.computation.task.projectanalysis.source.SymbolsLineReader;
-import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ConcurrentComputationStep;
 
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
-public class PersistFileSourcesStep implements ComputationStep {
+public class PersistFileSourcesStep implements ConcurrentComputationStep {
 
   private final DbClient dbClient;
   private final System2 system2;
@@ -114,6 +118,10 @@ public class PersistFileSourcesStep implements ComputationStep {
 
     @Override
     public void visitFile(Component file) {
+      if (file.getFileAttributes().isReused() && previousFileSourcesByUuid.containsKey(file.getUuid())) {
+        // file was not analyzed again, highlighting, symbols and duplications of the last analysis are kept
+        return;
+      }
       CloseableIterator<String> linesIterator = sourceLinesRepository.readLines(file);
       LineReaders lineReaders = new LineReaders(reportReader, scmInfoRepository, duplicationRepository, file);
       try {
@@ -231,6 +239,17 @@ public class PersistFileSourcesStep implements ComputationStep {
     }
   }
 
+  @Override
+  public Set<Class<?>> readDependencies() {
+    return ImmutableSet.of(TreeRootHolder.class, BatchReportReader.class, SourceLinesRepository.class, ScmInfoRepository.class,
+      SourceHashRepository.class, DuplicationRepository.class);
+  }
+
+  @Override
+  public Set<Class<?>> writeDependencies() {
+    return ImmutableSet.of(FileSourceDao.class);
+  }
+
   @Override
   public String getDescription() {
     return "Persist sources";
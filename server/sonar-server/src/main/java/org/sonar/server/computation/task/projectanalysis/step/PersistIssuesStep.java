@@ -19,6 +19,8 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
 import org.sonar.api.issue.IssueComment;
 import org.sonar.api.utils.System2;
 import org.sonar.core.issue.DefaultIssue;
@@ -27,16 +29,18 @@ import org.sonar.core.issue.FieldDiffs;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.issue.IssueChangeDao;
 import org.sonar.db.issue.IssueChangeDto;
 import org.sonar.db.issue.IssueChangeMapper;
+import org.sonar.db.issue.IssueDao;
 import org.sonar.db.issue.IssueDto;
 import org.sonar.db.issue.IssueMapper;
 import org.sonar.server.computation.task.projectanalysis.issue.IssueCache;
 import org.sonar.server.computation.task.projectanalysis.issue.RuleRepository;
 import org.sonar.server.computation.task.projectanalysis.issue.UpdateConflictResolver;
-import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ConcurrentComputationStep;
 
-public class PersistIssuesStep implements ComputationStep {
+public class PersistIssuesStep implements ConcurrentComputationStep {
 
   private final DbClient dbClient;
   private final System2 system2;
@@ -115,6 +119,16 @@ public class PersistIssuesStep implements ComputationStep {
     }
   }
 
+  @Override
+  public Set<Class<?>> readDependencies() {
+    return ImmutableSet.of(IssueCache.class, RuleRepository.class);
+  }
+
+  @Override
+  public Set<Class<?>> writeDependencies() {
+    return ImmutableSet.of(IssueDao.class, IssueChangeDao.class);
+  }
+
   @Override
   public String getDescription() {
     return "Persist issues";
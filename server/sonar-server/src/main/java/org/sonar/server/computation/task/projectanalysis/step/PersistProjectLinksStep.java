@@ -20,6 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.step;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -28,6 +29,7 @@ import java.util.Set;
 import org.sonar.api.i18n.I18n;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.component.ComponentLinkDao;
 import org.sonar.db.component.ComponentLinkDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.scanner.protocol.output.ScannerReport.ComponentLink.ComponentLinkType;
@@ -37,7 +39,7 @@ import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthL
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
-import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ConcurrentComputationStep;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
@@ -45,7 +47,7 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
 /**
  * Persist project and module links
  */
-public class PersistProjectLinksStep implements ComputationStep {
+public class PersistProjectLinksStep implements ConcurrentComputationStep {
 
   private final DbClient dbClient;
   private final I18n i18n;
@@ -147,6 +149,16 @@ public class PersistProjectLinksStep implements ComputationStep {
     }
   }
 
+  @Override
+  public Set<Class<?>> readDependencies() {
+    return ImmutableSet.of(TreeRootHolder.class, BatchReportReader.class);
+  }
+
+  @Override
+  public Set<Class<?>> writeDependencies() {
+    return ImmutableSet.of(ComponentLinkDao.class);
+  }
+
   @Override
   public String getDescription() {
     return "Persist project links";
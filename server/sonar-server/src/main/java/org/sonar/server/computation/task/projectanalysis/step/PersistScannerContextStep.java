@@ -19,16 +19,19 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
 import org.sonar.ce.queue.CeTask;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.ce.CeScannerContextDao;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
-import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ConcurrentComputationStep;
 
 import static java.util.Collections.singleton;
 
-public class PersistScannerContextStep implements ComputationStep {
+public class PersistScannerContextStep implements ConcurrentComputationStep {
   private final BatchReportReader reportReader;
   private final DbClient dbClient;
   private final CeTask ceTask;
@@ -39,6 +42,16 @@ public class PersistScannerContextStep implements ComputationStep {
     this.ceTask = ceTask;
   }
 
+  @Override
+  public Set<Class<?>> readDependencies() {
+    return ImmutableSet.of(CeTask.class, BatchReportReader.class);
+  }
+
+  @Override
+  public Set<Class<?>> writeDependencies() {
+    return ImmutableSet.of(CeScannerContextDao.class);
+  }
+
   @Override
   public String getDescription() {
     return "Persist scanner context";
@@ -0,0 +1,214 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.webhook;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.picocontainer.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Sends webhooks in background, so that Compute Engine workers do not wait for the
+ * remote servers.
+ * <ul>
+ *   <li>the number of pending deliveries is bounded. Webhooks are dropped when the limit is reached</li>
+ *   <li>connectivity errors and server errors (HTTP 5xx) are retried, with an exponential backoff</li>
+ *   <li>the final result of each delivery is persisted with {@link WebhookDeliveryStorage}, by batches</li>
+ *   <li>pending deliveries are completed when stopping the Compute Engine, within a timeout of 10 seconds</li>
+ * </ul>
+ * Shared by all the Compute Engine tasks.
+ */
+@ComputeEngineSide
+public class WebhookDeliveryDispatcher implements Startable {
+
+  private static final Logger LOGGER = Loggers.get(WebhookDeliveryDispatcher.class);
+  private static final String THREAD_NAME_PREFIX = "webhook-delivery-";
+
+  private static final int DEFAULT_THREADS = 2;
+  private static final int DEFAULT_MAX_PENDING = 1_000;
+  private static final int DEFAULT_MAX_ATTEMPTS = 3;
+  private static final long DEFAULT_INITIAL_BACKOFF_MS = 1_000L;
+  private static final long DEFAULT_FLUSH_DELAY_MS = 1_000L;
+  private static final long STOP_TIMEOUT_MS = 10_000L;
+
+  private final WebhookCaller caller;
+  private final WebhookDeliveryStorage deliveryStorage;
+  private final int threads;
+  private final int maxPending;
+  private final int maxAttempts;
+  private final long initialBackoffMs;
+  private final long flushDelayMs;
+  private final AtomicInteger pending = new AtomicInteger(0);
+  private final Object lock = new Object();
+  private final Queue<WebhookDelivery> toPersist = new ConcurrentLinkedQueue<>();
+
+  private ScheduledExecutorService executorService;
+
+  public WebhookDeliveryDispatcher(WebhookCaller caller, WebhookDeliveryStorage deliveryStorage) {
+    this(caller, deliveryStorage, DEFAULT_THREADS, DEFAULT_MAX_PENDING, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_FLUSH_DELAY_MS);
+  }
+
+  @VisibleForTesting
+  WebhookDeliveryDispatcher(WebhookCaller caller, WebhookDeliveryStorage deliveryStorage, int threads, int maxPending, int maxAttempts,
+    long initialBackoffMs, long flushDelayMs) {
+    this.caller = caller;
+    this.deliveryStorage = deliveryStorage;
+    this.threads = threads;
+    this.maxPending = maxPending;
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMs = initialBackoffMs;
+    this.flushDelayMs = flushDelayMs;
+  }
+
+  @Override
+  public void start() {
+    executorService = Executors.newScheduledThreadPool(threads,
+      new ThreadFactoryBuilder()
+        .setNameFormat(THREAD_NAME_PREFIX + "%d")
+        .setDaemon(true)
+        .build());
+    executorService.scheduleWithFixedDelay(this::flushSafely, flushDelayMs, flushDelayMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    try {
+      if (!awaitPendingDeliveries()) {
+        LOGGER.warn("{} webhook deliveries are still pending and are abandoned", pending.get());
+      }
+    } catch (InterruptedException e) {
+      LOGGER.error("Error during stop of webhook delivery", e);
+      Thread.currentThread().interrupt();
+    }
+    executorService.shutdownNow();
+    flushSafely();
+  }
+
+  private boolean awaitPendingDeliveries() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MS;
+    synchronized (lock) {
+      long remaining = STOP_TIMEOUT_MS;
+      while (pending.get() > 0 && remaining > 0) {
+        lock.wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+    }
+    return pending.get() == 0;
+  }
+
+  /**
+   * Sends the webhook in background. The method does not wait for the HTTP request.
+   */
+  public void dispatch(Webhook webhook, WebhookPayload payload) {
+    checkState(executorService != null, "Webhook delivery is not started");
+    if (pending.incrementAndGet() > maxPending) {
+      pending.decrementAndGet();
+      LOGGER.warn("Webhook '{}' is not sent, too many deliveries are pending | url={}", webhook.getName(), webhook.getUrl());
+      return;
+    }
+    schedule(webhook, payload, 1, 0L);
+  }
+
+  private void schedule(Webhook webhook, WebhookPayload payload, int attempt, long delayMs) {
+    try {
+      executorService.schedule(() -> send(webhook, payload, attempt), delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      delivered();
+      LOGGER.warn("Webhook '{}' is not sent, server is stopping | url={}", webhook.getName(), webhook.getUrl());
+    }
+  }
+
+  private void send(Webhook webhook, WebhookPayload payload, int attempt) {
+    try {
+      WebhookDelivery delivery = caller.call(webhook, payload);
+      if (attempt < maxAttempts && isRetryable(delivery) && !executorService.isShutdown()) {
+        long backoffMs = initialBackoffMs << (attempt - 1);
+        LOGGER.debug("Failed to send webhook '{}' | url={} | attempt={} | retry in {}ms", webhook.getName(), webhook.getUrl(), attempt, backoffMs);
+        // the delivery stays pending until the last attempt
+        schedule(webhook, payload, attempt + 1, backoffMs);
+        return;
+      }
+      log(delivery);
+      toPersist.add(delivery);
+      delivered();
+    } catch (RuntimeException e) {
+      delivered();
+      LOGGER.error("Fail to send webhook '{}' | url={}", webhook.getName(), webhook.getUrl(), e);
+    }
+  }
+
+  private void delivered() {
+    if (pending.decrementAndGet() == 0) {
+      synchronized (lock) {
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private static boolean isRetryable(WebhookDelivery delivery) {
+    Optional<Integer> httpStatus = delivery.getHttpStatus();
+    return !httpStatus.isPresent() || httpStatus.get() >= 500;
+  }
+
+  private void flushSafely() {
+    try {
+      flush();
+    } catch (Exception e) {
+      LOGGER.error("Fail to persist webhook deliveries", e);
+    }
+  }
+
+  private void flush() {
+    List<WebhookDelivery> batch = new ArrayList<>();
+    WebhookDelivery delivery = toPersist.poll();
+    while (delivery != null) {
+      batch.add(delivery);
+      delivery = toPersist.poll();
+    }
+    if (!batch.isEmpty()) {
+      deliveryStorage.persist(batch);
+    }
+  }
+
+  private static void log(WebhookDelivery delivery) {
+    Optional<String> error = delivery.getErrorMessage();
+    if (error.isPresent()) {
+      LOGGER.debug("Failed to send webhook '{}' | url={} | message={}",
+        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), error.get());
+    } else {
+      LOGGER.debug("Sent webhook '{}' | url={} | time={}ms | status={}",
+        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), delivery.getDurationInMs().orElse(-1), delivery.getHttpStatus().orElse(-1));
+    }
+  }
+}
@@ -22,11 +22,8 @@ package org.sonar.server.computation.task.projectanalysis.webhook;
 import com.google.common.collect.Iterables;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.config.Settings;
-import org.sonar.api.utils.log.Logger;
-import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.config.WebhookProperties;
 import org.sonar.core.util.stream.MoreCollectors;
 import org.sonar.server.computation.task.projectanalysis.component.SettingsRepository;
@@ -37,20 +34,18 @@ import static org.sonar.core.config.WebhookProperties.MAX_WEBHOOKS_PER_TYPE;
 
 public class WebhookPostTask implements PostProjectAnalysisTask {
 
-  private static final Logger LOGGER = Loggers.get(WebhookPostTask.class);
-
   private final TreeRootHolder rootHolder;
   private final SettingsRepository settingsRepository;
   private final WebhookPayloadFactory payloadFactory;
-  private final WebhookCaller caller;
+  private final WebhookDeliveryDispatcher dispatcher;
   private final WebhookDeliveryStorage deliveryStorage;
 
   public WebhookPostTask(TreeRootHolder rootHolder, SettingsRepository settingsRepository, WebhookPayloadFactory payloadFactory,
-    WebhookCaller caller, WebhookDeliveryStorage deliveryStorage) {
+    WebhookDeliveryDispatcher dispatcher, WebhookDeliveryStorage deliveryStorage) {
     this.rootHolder = rootHolder;
     this.settingsRepository = settingsRepository;
     this.payloadFactory = payloadFactory;
-    this.caller = caller;
+    this.dispatcher = dispatcher;
     this.deliveryStorage = deliveryStorage;
   }
 
@@ -83,21 +78,9 @@ public class WebhookPostTask implements PostProjectAnalysisTask {
       // as webhooks are defined as property sets, we can't ensure validity of fields on creation.
       if (name != null && url != null) {
         Webhook webhook = new Webhook(analysis.getProject().getUuid(), analysis.getCeTask().getId(), name, url);
-        WebhookDelivery delivery = caller.call(webhook, payload);
-        log(delivery);
-        deliveryStorage.persist(delivery);
+        // sent and persisted in background
+        dispatcher.dispatch(webhook, payload);
       }
     }
   }
-
-  private static void log(WebhookDelivery delivery) {
-    Optional<String> error = delivery.getErrorMessage();
-    if (error.isPresent()) {
-      LOGGER.debug("Failed to send webhook '{}' | url={} | message={}",
-        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), error.get());
-    } else {
-      LOGGER.debug("Sent webhook '{}' | url={} | time={}ms | status={}",
-        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), delivery.getDurationInMs().orElse(-1), delivery.getHttpStatus().orElse(-1));
-    }
-  }
 }
@@ -19,14 +19,34 @@
  */
 package org.sonar.server.computation.task.step;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.slf4j.MDC;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.logs.Profiler;
 
+/**
+ * Executes the steps in the order defined by {@link ComputationSteps#instances()}.
+ * <p>
+ * Consecutive {@link ConcurrentComputationStep}s which don't conflict with each other are executed
+ * concurrently, on a pool of at most {@link #MAX_CONCURRENT_STEPS} threads. Other steps are executed one after the
+ * other by the calling thread, once all the previous steps are finished.
+ * </p>
+ */
 public final class ComputationStepExecutor {
   private static final Logger LOGGER = Loggers.get(ComputationStepExecutor.class);
+  static final int MAX_CONCURRENT_STEPS = 4;
+  private static final String THREAD_NAME_PREFIX = "ce-step-";
 
   private final ComputationSteps steps;
   @CheckForNull
@@ -59,10 +79,126 @@ public final class ComputationStepExecutor {
   }
 
   private void executeSteps(Profiler stepProfiler) {
-    for (ComputationStep step : steps.instances()) {
-      stepProfiler.start();
-      step.execute();
-      stepProfiler.stopDebug(step.getDescription());
+    try (ConcurrentGroupExecutor groupExecutor = new ConcurrentGroupExecutor()) {
+      List<ConcurrentComputationStep> group = new ArrayList<>();
+      for (ComputationStep step : steps.instances()) {
+        if (step instanceof ConcurrentComputationStep && !conflictsWithAny((ConcurrentComputationStep) step, group)) {
+          group.add((ConcurrentComputationStep) step);
+          continue;
+        }
+        groupExecutor.execute(group, stepProfiler);
+        group.clear();
+        if (step instanceof ConcurrentComputationStep) {
+          group.add((ConcurrentComputationStep) step);
+        } else {
+          executeStep(step, stepProfiler);
+        }
+      }
+      groupExecutor.execute(group, stepProfiler);
+    }
+  }
+
+  private static void executeStep(ComputationStep step, Profiler stepProfiler) {
+    stepProfiler.start();
+    step.execute();
+    stepProfiler.stopDebug(step.getDescription());
+  }
+
+  private static boolean conflictsWithAny(ConcurrentComputationStep step, List<ConcurrentComputationStep> group) {
+    for (ConcurrentComputationStep other : group) {
+      if (!Collections.disjoint(step.writeDependencies(), other.readDependencies())
+        || !Collections.disjoint(step.writeDependencies(), other.writeDependencies())
+        || !Collections.disjoint(step.readDependencies(), other.writeDependencies())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Executes groups of steps concurrently. The thread pool is created when first needed.
+   */
+  private static class ConcurrentGroupExecutor implements AutoCloseable {
+    @CheckForNull
+    private ExecutorService pool = null;
+
+    /**
+     * Executes the steps of the group concurrently and waits for all of them to be finished, even if one of them fails.
+     */
+    void execute(List<ConcurrentComputationStep> group, Profiler stepProfiler) {
+      if (group.isEmpty()) {
+        return;
+      }
+      if (group.size() == 1) {
+        executeStep(group.get(0), stepProfiler);
+        return;
+      }
+
+      Profiler groupProfiler = Profiler.create(LOGGER).start();
+      // logs of the steps must be associated to the task, as if they were executed by the calling thread
+      Map<String, String> mdc = MDC.getCopyOfContextMap();
+      List<Future<?>> futures = new ArrayList<>(group.size());
+      for (ConcurrentComputationStep step : group) {
+        futures.add(pool().submit(() -> executeStepWithMdc(step, mdc)));
+      }
+      Throwable failure = null;
+      for (Future<?> future : futures) {
+        Throwable stepFailure = waitFor(future);
+        if (failure == null) {
+          failure = stepFailure;
+        }
+      }
+      groupProfiler.stopDebug(group.size() + " concurrent steps");
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (failure != null) {
+        throw new IllegalStateException("Fail to execute computation steps", failure);
+      }
+    }
+
+    private ExecutorService pool() {
+      if (pool == null) {
+        pool = Executors.newFixedThreadPool(MAX_CONCURRENT_STEPS, new ThreadFactoryBuilder()
+          .setNameFormat(THREAD_NAME_PREFIX + "%d")
+          .setDaemon(true)
+          .build());
+      }
+      return pool;
+    }
+
+    @Override
+    public void close() {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
+    }
+  }
+
+  private static void executeStepWithMdc(ComputationStep step, @Nullable Map<String, String> mdc) {
+    if (mdc != null) {
+      MDC.setContextMap(mdc);
+    }
+    try {
+      executeStep(step, Profiler.create(LOGGER));
+    } finally {
+      MDC.clear();
+    }
+  }
+
+  @CheckForNull
+  private static Throwable waitFor(Future<?> future) {
+    try {
+      future.get();
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return e;
     }
   }
 
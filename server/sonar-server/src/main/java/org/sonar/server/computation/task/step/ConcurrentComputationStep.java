@@ -0,0 +1,48 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.step;
+
+import java.util.Set;
+
+/**
+ * A {@link ComputationStep} which declares the data it reads and writes, so that {@link ComputationStepExecutor}
+ * can execute it concurrently with the adjacent steps it doesn't conflict with.
+ * <p>
+ * Data are identified by the class of the component which holds them, for example {@code TreeRootHolder.class} or
+ * {@code MeasureRepository.class}. Data persisted in database are identified by the class of the DAO, for example
+ * {@code FileSourceDao.class}.
+ * </p>
+ * <p>
+ * Two steps conflict when one of them writes data read or written by the other one. Components declared as
+ * read dependencies must support being read by several threads at the same time: components which load data
+ * lazily on first read, like {@code MeasureRepositoryImpl} or {@code RuleRepositoryImpl}, must synchronize this loading.
+ * </p>
+ * <p>
+ * Read dependencies must include the components used indirectly through other components, for example
+ * {@code SourceHashRepository}, which is used by {@code ScmInfoRepository}.
+ * </p>
+ */
+public interface ConcurrentComputationStep extends ComputationStep {
+
+  Set<Class<?>> readDependencies();
+
+  Set<Class<?>> writeDependencies();
+
+}
@@ -20,11 +20,27 @@
 package org.sonar.server.es;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
@@ -39,6 +55,8 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
 import org.elasticsearch.search.sort.SortOrder;
@@ -52,8 +70,14 @@ import static java.lang.String.format;
 /**
  * Helper to bulk requests in an efficient way :
  * <ul>
- *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
- *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
+ *   <li>bulk request is sent on the wire when its size is higher than the flush size. Unless it is
+ *   forced by {@link #setFlushByteSize(long)}, the flush size adapts to the latency of Elasticsearch
+ *   responses, between 256Kb and 8Mb</li>
+ *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled, more
+ *   requests are executed concurrently and documents are loaded in a dedicated thread
+ *   (see {@link #addAll(Iterator, Function)})</li>
+ *   <li>deletions by query are executed concurrently. Requests added afterwards are executed once
+ *   the deletions are completed, and deletion failures are raised by {@link #stop()}</li>
  *   <li>index refresh is optional (enabled by default)</li>
  * </ul>
  */
@@ -61,18 +85,30 @@ public class BulkIndexer implements Startable {
 
   private static final Logger LOGGER = Loggers.get(BulkIndexer.class);
   private static final long FLUSH_BYTE_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB).bytes();
+  private static final long MIN_FLUSH_BYTE_SIZE = new ByteSizeValue(256, ByteSizeUnit.KB).bytes();
+  private static final long MAX_FLUSH_BYTE_SIZE = new ByteSizeValue(8, ByteSizeUnit.MB).bytes();
+  private static final long TARGET_LATENCY_MS = 1_000L;
+  private static final int PRODUCER_BATCH_SIZE = 100;
+  private static final int PRODUCER_QUEUE_SIZE = 100;
+  private static final TimeValue SCROLL_TIME = TimeValue.timeValueMinutes(5);
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
   private static final String ALREADY_STARTED_MESSAGE = "Bulk indexing is already started";
 
   private final EsClient client;
   private final String indexName;
   private Size size = Size.REGULAR;
-  private long flushByteSize = FLUSH_BYTE_SIZE;
+  private volatile long flushByteSize = FLUSH_BYTE_SIZE;
+  private boolean adaptiveFlushByteSize = true;
   private BulkRequestBuilder bulkRequest = null;
   private Map<String, Object> largeInitialSettings = null;
   private final AtomicLong counter = new AtomicLong(0L);
-  private final int concurrentRequests;
-  private final Semaphore semaphore;
+  private final AtomicLong bytesInFlight = new AtomicLong(0L);
+  private final AtomicLong rejectedRequests = new AtomicLong(0L);
+  private final Phaser pendingDeletions = new Phaser(1);
+  private final AtomicReference<Throwable> deletionFailure = new AtomicReference<>();
+  private int concurrentRequests;
+  private Semaphore semaphore;
+  private long startedAt;
   private final ProgressLogger progress;
 
   public BulkIndexer(EsClient client, String indexName) {
@@ -80,10 +116,6 @@ public class BulkIndexer implements Startable {
     this.indexName = indexName;
     this.progress = new ProgressLogger(format("Progress[BulkIndexer[%s]]", indexName), counter, LOGGER)
       .setPluralLabel("requests");
-
-    // see https://jira.sonarsource.com/browse/SONAR-8075
-    this.concurrentRequests = Math.max(1, Runtime.getRuntime().availableProcessors() / 5);
-    this.semaphore = new Semaphore(concurrentRequests);
   }
 
   public enum Size {
@@ -104,14 +136,19 @@ public class BulkIndexer implements Startable {
     return this;
   }
 
+  /**
+   * Forces the size of bulk requests. It does not adapt anymore to the latency of Elasticsearch.
+   */
   public BulkIndexer setFlushByteSize(long flushByteSize) {
     this.flushByteSize = flushByteSize;
+    this.adaptiveFlushByteSize = false;
     return this;
   }
 
   @Override
   public void start() {
     Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
+    int processors = Runtime.getRuntime().availableProcessors();
     if (size == Size.LARGE) {
       largeInitialSettings = Maps.newHashMap();
       Map<String, Object> bulkSettings = Maps.newHashMap();
@@ -130,50 +167,107 @@ public class BulkIndexer implements Startable {
       bulkSettings.put(REFRESH_INTERVAL_SETTING, "-1");
 
       updateSettings(bulkSettings);
+
+      // the flush size is reduced if Elasticsearch gets overloaded, so more requests can be executed than
+      // the regular limit
+      this.concurrentRequests = Math.max(1, processors / 2);
+    } else {
+      // see https://jira.sonarsource.com/browse/SONAR-8075
+      this.concurrentRequests = Math.max(1, processors / 5);
     }
+    this.semaphore = new Semaphore(concurrentRequests);
     bulkRequest = client.prepareBulk().setRefresh(false);
     counter.set(0L);
+    rejectedRequests.set(0L);
+    deletionFailure.set(null);
+    startedAt = System.currentTimeMillis();
     progress.start();
   }
 
   public void add(ActionRequest<?> request) {
+    if (pendingDeletions.getRegisteredParties() > 1) {
+      // the request may update a document that is being deleted
+      awaitDeletions();
+    }
     bulkRequest.request().add(request);
     if (bulkRequest.request().estimatedSizeInBytes() >= flushByteSize) {
       executeBulk();
     }
   }
 
+  /**
+   * Adds the requests of all the given documents. On {@link Size#LARGE} indexing, documents are
+   * loaded by a dedicated thread while the current thread converts them to requests and sends them
+   * to Elasticsearch. In all cases, the iterator is not used anymore when this method returns.
+   */
+  public <D> void addAll(Iterator<D> docs, Function<D, ActionRequest<?>> toRequest) {
+    if (size == Size.REGULAR) {
+      while (docs.hasNext()) {
+        add(toRequest.apply(docs.next()));
+      }
+      return;
+    }
+    ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+      .setNameFormat(format("BulkIndexer[%s]-loader", indexName))
+      .setDaemon(true)
+      .build());
+    try {
+      DocumentLoader<D> loader = new DocumentLoader<>(docs);
+      executor.execute(loader);
+      for (List<D> batch = loader.take(); !batch.isEmpty(); batch = loader.take()) {
+        for (D doc : batch) {
+          add(toRequest.apply(doc));
+        }
+      }
+      loader.checkSucceeded();
+    } catch (RuntimeException | Error e) {
+      // the failure of the termination of the loader must not hide the primary failure
+      try {
+        terminate(executor);
+      } catch (RuntimeException terminationFailure) {
+        e.addSuppressed(terminationFailure);
+      }
+      throw e;
+    }
+    terminate(executor);
+  }
+
+  private static void terminate(ExecutorService executor) {
+    executor.shutdownNow();
+    awaitTermination(executor);
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        throw new IllegalStateException("Documents are still being loaded after 1 minute");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for documents to be loaded", e);
+    }
+  }
+
+  /**
+   * Deletes the documents matching the search request. The request is non-blocking, so that
+   * several deletions can be executed concurrently. Requests that are added afterwards wait
+   * for the completion of deletions, so they can't be overridden by them. Failure of deletion
+   * is raised by {@link #stop()}.
+   */
   public void addDeletion(SearchRequestBuilder searchRequest) {
     searchRequest
       .addSort("_doc", SortOrder.ASC)
-      .setScroll(TimeValue.timeValueMinutes(5))
+      .setScroll(SCROLL_TIME)
       .setSize(100)
       // load only doc ids, not _source fields
       .setFetchSource(false);
 
-    // this search is synchronous. An optimization would be to be non-blocking,
-    // but it requires to tracking pending requests in close().
-    // Same semaphore can't be reused because of potential deadlock (requires to acquire
-    // two locks)
-    SearchResponse searchResponse = searchRequest.get();
-
-    while (true) {
-      SearchHit[] hits = searchResponse.getHits().getHits();
-      for (SearchHit hit : hits) {
-        SearchHitField routing = hit.field("_routing");
-        DeleteRequestBuilder deleteRequestBuilder = client.prepareDelete(hit.index(), hit.type(), hit.getId());
-        if (routing != null) {
-          deleteRequestBuilder.setRouting(routing.getValue());
-        }
-        add(deleteRequestBuilder.request());
-      }
-
-      String scrollId = searchResponse.getScrollId();
-      searchResponse = client.prepareSearchScroll(scrollId).setScroll(TimeValue.timeValueMinutes(5)).get();
-      if (hits.length == 0) {
-        client.nativeClient().prepareClearScroll().addScrollId(scrollId).get();
-        break;
-      }
+    pendingDeletions.register();
+    try {
+      searchRequest.execute(new ScrollDeletionListener());
+    } catch (RuntimeException e) {
+      pendingDeletions.arriveAndDeregister();
+      throw e;
     }
   }
 
@@ -200,6 +294,7 @@ public class BulkIndexer implements Startable {
 
   @Override
   public void stop() {
+    awaitDeletions();
     if (bulkRequest.numberOfActions() > 0) {
       executeBulk();
     }
@@ -211,6 +306,8 @@ public class BulkIndexer implements Startable {
       throw new IllegalStateException("Elasticsearch bulk requests still being executed after 10 minutes", e);
     }
     progress.stop();
+    LOGGER.debug("Bulk indexing of {} completed: {} documents, {} docs/s, {} rejected, flush size of {} bytes",
+      indexName, counter.get(), getDocsPerSecond(), rejectedRequests.get(), flushByteSize);
     client.prepareRefresh(indexName).get();
     if (size == Size.LARGE) {
       // optimize lucene segments and revert index settings
@@ -221,6 +318,47 @@ public class BulkIndexer implements Startable {
       updateSettings(largeInitialSettings);
     }
     bulkRequest = null;
+    Throwable failure = deletionFailure.get();
+    if (failure != null) {
+      throw new IllegalStateException("Fail to delete documents of index " + indexName, failure);
+    }
+  }
+
+  private void awaitDeletions() {
+    try {
+      pendingDeletions.awaitAdvanceInterruptibly(pendingDeletions.arrive(), 10, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for Elasticsearch deletions", e);
+    } catch (TimeoutException e) {
+      throw new IllegalStateException("Elasticsearch deletions still being executed after 10 minutes", e);
+    }
+  }
+
+  /**
+   * Number of documents processed by Elasticsearch per second since start
+   */
+  public long getDocsPerSecond() {
+    long durationMs = Math.max(1L, System.currentTimeMillis() - startedAt);
+    return counter.get() * 1_000L / durationMs;
+  }
+
+  /**
+   * Size of the bulk requests that are sent but not acknowledged yet
+   */
+  public long getBytesInFlight() {
+    return bytesInFlight.get();
+  }
+
+  /**
+   * Number of documents rejected by Elasticsearch because its queues are full
+   */
+  public long getRejectedRequests() {
+    return rejectedRequests.get();
+  }
+
+  public long getFlushByteSize() {
+    return flushByteSize;
   }
 
   private void updateSettings(Map<String, Object> settings) {
@@ -233,32 +371,199 @@ public class BulkIndexer implements Startable {
     final BulkRequestBuilder req = this.bulkRequest;
     this.bulkRequest = client.prepareBulk().setRefresh(false);
     semaphore.acquireUninterruptibly();
-    req.execute(new BulkResponseActionListener(req));
+    execute(req, semaphore::release, e -> {
+      // failure is logged only
+    });
+  }
+
+  /**
+   * Non-blocking execution of bulk request
+   *
+   * @param onCompletion executed when the response, successful or not, is received
+   * @param onFailure executed when the request fails, before {@code onCompletion}
+   */
+  private void execute(BulkRequestBuilder req, Runnable onCompletion, Consumer<Throwable> onFailure) {
+    long bytes = req.request().estimatedSizeInBytes();
+    bytesInFlight.addAndGet(bytes);
+    req.execute(new BulkResponseActionListener(req, bytes, onCompletion, onFailure));
+  }
+
+  /**
+   * Flush size is halved when Elasticsearch rejects requests, reduced when requests are slower than
+   * the target latency, and increased when they are much faster.
+   */
+  private void adaptFlushByteSize(long latencyMs, boolean rejected) {
+    if (!adaptiveFlushByteSize) {
+      return;
+    }
+    long current = flushByteSize;
+    long adapted;
+    if (rejected) {
+      adapted = current / 2;
+    } else if (latencyMs > TARGET_LATENCY_MS) {
+      adapted = current * 3 / 4;
+    } else if (latencyMs < TARGET_LATENCY_MS / 2) {
+      adapted = current * 5 / 4;
+    } else {
+      return;
+    }
+    flushByteSize = Math.max(MIN_FLUSH_BYTE_SIZE, Math.min(MAX_FLUSH_BYTE_SIZE, adapted));
   }
 
   private class BulkResponseActionListener implements ActionListener<BulkResponse> {
     private final BulkRequestBuilder req;
+    private final long bytes;
+    private final Runnable onCompletion;
+    private final Consumer<Throwable> onFailure;
+    private final long startedAtNanos = System.nanoTime();
 
-    BulkResponseActionListener(BulkRequestBuilder req) {
+    BulkResponseActionListener(BulkRequestBuilder req, long bytes, Runnable onCompletion, Consumer<Throwable> onFailure) {
       this.req = req;
+      this.bytes = bytes;
+      this.onCompletion = onCompletion;
+      this.onFailure = onFailure;
     }
 
     @Override
     public void onResponse(BulkResponse response) {
-      semaphore.release();
+      complete();
       counter.addAndGet(response.getItems().length);
 
+      long rejected = 0L;
       for (BulkItemResponse item : response.getItems()) {
         if (item.isFailed()) {
+          if (item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+            rejected++;
+          }
           LOGGER.error("index [{}], type [{}], id [{}], message [{}]", item.getIndex(), item.getType(), item.getId(), item.getFailureMessage());
         }
       }
+      rejectedRequests.addAndGet(rejected);
+      adaptFlushByteSize(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos), rejected > 0);
     }
 
     @Override
     public void onFailure(Throwable e) {
-      semaphore.release();
+      onFailure.accept(e);
+      complete();
+      boolean rejected = ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException;
+      if (rejected) {
+        rejectedRequests.addAndGet(req.numberOfActions());
+      }
+      adaptFlushByteSize(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos), rejected);
       LOGGER.error("Fail to execute bulk index request: " + req, e);
     }
+
+    private void complete() {
+      bytesInFlight.addAndGet(-bytes);
+      onCompletion.run();
+    }
+  }
+
+  /**
+   * Deletes the documents of each page of the scroll, then requests the next page. Requests are
+   * chained in Elasticsearch threads, so the semaphore of bulk requests is not used.
+   */
+  private class ScrollDeletionListener implements ActionListener<SearchResponse> {
+    @Override
+    public void onResponse(SearchResponse searchResponse) {
+      SearchHit[] hits = searchResponse.getHits().getHits();
+      String scrollId = searchResponse.getScrollId();
+      if (hits.length == 0) {
+        client.nativeClient().prepareClearScroll().addScrollId(scrollId).execute();
+        pendingDeletions.arriveAndDeregister();
+        return;
+      }
+
+      BulkRequestBuilder deletions = client.prepareBulk().setRefresh(false);
+      for (SearchHit hit : hits) {
+        SearchHitField routing = hit.field("_routing");
+        DeleteRequestBuilder deleteRequestBuilder = client.prepareDelete(hit.index(), hit.type(), hit.getId());
+        if (routing != null) {
+          deleteRequestBuilder.setRouting(routing.getValue());
+        }
+        deletions.add(deleteRequestBuilder.request());
+      }
+      execute(deletions, () -> requestNextPage(scrollId), this::recordFailure);
+    }
+
+    private void requestNextPage(String scrollId) {
+      try {
+        client.prepareSearchScroll(scrollId).setScroll(SCROLL_TIME).execute(this);
+      } catch (RuntimeException e) {
+        onFailure(e);
+      }
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+      LOGGER.error("Fail to delete documents of index " + indexName, e);
+      recordFailure(e);
+      pendingDeletions.arriveAndDeregister();
+    }
+
+    private void recordFailure(Throwable e) {
+      deletionFailure.compareAndSet(null, e);
+    }
+  }
+
+  /**
+   * Loads documents by batches in a bounded queue. An empty batch marks the end of documents.
+   */
+  private static class DocumentLoader<D> implements Runnable {
+    private final Iterator<D> docs;
+    private final BlockingQueue<List<D>> queue = new ArrayBlockingQueue<>(PRODUCER_QUEUE_SIZE);
+    private volatile Throwable failure = null;
+
+    DocumentLoader(Iterator<D> docs) {
+      this.docs = docs;
+    }
+
+    @Override
+    public void run() {
+      try {
+        List<D> batch = new ArrayList<>(PRODUCER_BATCH_SIZE);
+        while (docs.hasNext()) {
+          batch.add(docs.next());
+          if (batch.size() == PRODUCER_BATCH_SIZE) {
+            queue.put(batch);
+            batch = new ArrayList<>(PRODUCER_BATCH_SIZE);
+          }
+        }
+        if (!batch.isEmpty()) {
+          queue.put(batch);
+        }
+      } catch (InterruptedException e) {
+        // indexing is aborted
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException | Error e) {
+        failure = e;
+      }
+      putEnd();
+    }
+
+    private void putEnd() {
+      try {
+        queue.put(Collections.emptyList());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    List<D> take() {
+      try {
+        return queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while loading documents", e);
+      }
+    }
+
+    void checkSucceeded() {
+      if (failure != null) {
+        Throwables.propagateIfPossible(failure);
+      }
+    }
   }
 }
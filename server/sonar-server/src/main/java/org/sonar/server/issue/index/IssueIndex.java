@@ -660,9 +660,20 @@ public class IssueIndex {
    * Only fields needed for the batch are returned.
    */
   public Iterator<IssueDoc> selectIssuesForBatch(ComponentDto component) {
+    return selectIssuesForBatch(component, null);
+  }
+
+  /**
+   * Same as {@link #selectIssuesForBatch(ComponentDto)}, but if {@code componentUuids} is not {@code null}, only
+   * the issues of these components are returned.
+   */
+  public Iterator<IssueDoc> selectIssuesForBatch(ComponentDto component, @Nullable Collection<String> componentUuids) {
     BoolQueryBuilder filter = boolQuery()
       .must(createAuthorizationFilter(true))
       .mustNot(termsQuery(IssueIndexDefinition.FIELD_ISSUE_STATUS, Issue.STATUS_CLOSED));
+    if (componentUuids != null) {
+      filter.must(termsQuery(IssueIndexDefinition.FIELD_ISSUE_COMPONENT_UUID, componentUuids));
+    }
 
     switch (component.scope()) {
       case Scopes.PROJECT:
@@ -116,10 +116,7 @@ public class IssueIndexer implements ProjectIndexer, NeedAuthorizationIndexer, S
 
   private static void doIndex(BulkIndexer bulk, Iterator<IssueDoc> issues) {
     bulk.start();
-    while (issues.hasNext()) {
-      IssueDoc issue = issues.next();
-      bulk.add(newIndexRequest(issue));
-    }
+    bulk.addAll(issues, IssueIndexer::newIndexRequest);
     bulk.stop();
   }
 
@@ -103,10 +103,7 @@ public class ProjectMeasuresIndexer implements ProjectIndexer, NeedAuthorization
 
   private static void doIndex(BulkIndexer bulk, Iterator<ProjectMeasures> docs) {
     bulk.start();
-    while (docs.hasNext()) {
-      ProjectMeasures doc = docs.next();
-      bulk.add(newIndexRequest(toProjectMeasuresDoc(doc)));
-    }
+    bulk.addAll(docs, doc -> newIndexRequest(toProjectMeasuresDoc(doc)));
     bulk.stop();
   }
 
@@ -53,6 +53,7 @@ import org.sonar.db.component.ComponentDto;
 import org.sonar.db.component.ComponentTreeQuery;
 import org.sonar.db.component.SnapshotDto;
 import org.sonar.db.measure.MeasureDto;
+import org.sonar.db.measure.MeasureQuery;
 import org.sonar.db.measure.MeasureTreeQuery;
 import org.sonar.db.metric.MetricDto;
 import org.sonar.db.metric.MetricDtoFunctions;
@@ -66,6 +67,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.String.format;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
 import static org.sonar.api.utils.Paging.offset;
 import static org.sonar.server.component.ComponentFinder.ParamNames.BASE_COMPONENT_ID_AND_KEY;
@@ -106,15 +108,16 @@ public class ComponentTreeDataLoader {
       ComponentTreeQuery componentTreeQuery = toComponentTreeQuery(wsRequest, baseComponent);
       List<ComponentDto> components = searchComponents(dbSession, componentTreeQuery);
       List<MetricDto> metrics = searchMetrics(dbSession, wsRequest);
-      Table<String, MetricDto, Measure> measuresByComponentUuidAndMetric = searchMeasuresByComponentUuidAndMetric(dbSession, baseComponent, componentTreeQuery,
-        components,
-        metrics, developerId);
+      Table<String, MetricDto, Measure> measuresOfMetricToSort = searchMeasuresOfMetricToSort(dbSession, baseComponent, componentTreeQuery, components, metrics,
+        developerId, wsRequest);
 
-      components = filterComponents(components, measuresByComponentUuidAndMetric, metrics, wsRequest);
-      components = sortComponents(components, wsRequest, metrics, measuresByComponentUuidAndMetric);
+      components = filterComponents(components, measuresOfMetricToSort, metrics, wsRequest);
+      components = sortComponents(components, wsRequest, metrics, measuresOfMetricToSort);
 
       int componentCount = components.size();
       components = paginateComponents(components, wsRequest);
+      Table<String, MetricDto, Measure> measuresByComponentUuidAndMetric = searchMeasuresByComponentUuidAndMetric(dbSession, baseComponent, components, metrics,
+        developerId);
 
       return ComponentTreeData.builder()
         .setBaseComponent(baseComponent)
@@ -178,28 +181,61 @@ public class ComponentTreeDataLoader {
     return metrics;
   }
 
-  private Table<String, MetricDto, Measure> searchMeasuresByComponentUuidAndMetric(DbSession dbSession, ComponentDto baseComponent,
-    ComponentTreeQuery componentTreeQuery,
-    List<ComponentDto> components, List<MetricDto> metrics, @Nullable Long developerId) {
+  /**
+   * Measures of the metric used to sort or filter components. They are required for all the components of the tree,
+   * whereas the measures of the other metrics are loaded only for the requested page.
+   * Table is empty if components are not sorted by metric.
+   */
+  private Table<String, MetricDto, Measure> searchMeasuresOfMetricToSort(DbSession dbSession, ComponentDto baseComponent, ComponentTreeQuery componentTreeQuery,
+    List<ComponentDto> components, List<MetricDto> metrics, @Nullable Long developerId, ComponentTreeWsRequest wsRequest) {
+    String metricKeyToSort = wsRequest.getMetricSort();
+    Optional<MetricDto> metricToSort = metrics.stream().filter(m -> m.getKey().equals(metricKeyToSort)).findFirst();
+    if (!metricToSort.isPresent()) {
+      return HashBasedTable.create();
+    }
 
-    Map<Integer, MetricDto> metricsById = Maps.uniqueIndex(metrics, MetricDto::getId);
+    MetricDto metric = metricToSort.get();
     MeasureTreeQuery measureQuery = MeasureTreeQuery.builder()
       .setStrategy(MeasureTreeQuery.Strategy.valueOf(componentTreeQuery.getStrategy().name()))
       .setNameOrKeyQuery(componentTreeQuery.getNameOrKeyQuery())
       .setQualifiers(componentTreeQuery.getQualifiers())
       .setPersonId(developerId)
-      .setMetricIds(new ArrayList<>(metricsById.keySet()))
+      .setMetricIds(singletonList(metric.getId()))
       .build();
 
-    Table<String, MetricDto, Measure> measuresByComponentUuidAndMetric = HashBasedTable.create(components.size(), metrics.size());
+    Table<String, MetricDto, Measure> measuresByComponentUuidAndMetric = HashBasedTable.create(components.size(), 1);
     dbClient.measureDao().selectTreeByQuery(dbSession, baseComponent, measureQuery, result -> {
       MeasureDto measureDto = (MeasureDto) result.getResultObject();
-      measuresByComponentUuidAndMetric.put(
-        measureDto.getComponentUuid(),
-        metricsById.get(measureDto.getMetricId()),
-        Measure.createFromMeasureDto(measureDto));
+      measuresByComponentUuidAndMetric.put(measureDto.getComponentUuid(), metric, Measure.createFromMeasureDto(measureDto));
     });
 
+    addBestValuesToMeasures(measuresByComponentUuidAndMetric, components, singletonList(metric));
+
+    return measuresByComponentUuidAndMetric;
+  }
+
+  /**
+   * Measures of the base component and of the components of the page
+   */
+  private Table<String, MetricDto, Measure> searchMeasuresByComponentUuidAndMetric(DbSession dbSession, ComponentDto baseComponent, List<ComponentDto> components,
+    List<MetricDto> metrics, @Nullable Long developerId) {
+
+    Map<Integer, MetricDto> metricsById = Maps.uniqueIndex(metrics, MetricDto::getId);
+    List<String> componentUuids = new ArrayList<>(components.size() + 1);
+    componentUuids.add(baseComponent.uuid());
+    components.forEach(component -> componentUuids.add(component.uuid()));
+    MeasureQuery measureQuery = MeasureQuery.builder()
+      .setComponentUuids(baseComponent.projectUuid(), componentUuids)
+      .setPersonId(developerId)
+      .setMetricIds(new ArrayList<>(metricsById.keySet()))
+      .build();
+
+    Table<String, MetricDto, Measure> measuresByComponentUuidAndMetric = HashBasedTable.create(componentUuids.size(), metrics.size());
+    dbClient.measureDao().selectByQuery(dbSession, measureQuery).forEach(measureDto -> measuresByComponentUuidAndMetric.put(
+      measureDto.getComponentUuid(),
+      metricsById.get(measureDto.getMetricId()),
+      Measure.createFromMeasureDto(measureDto)));
+
     addBestValuesToMeasures(measuresByComponentUuidAndMetric, components, metrics);
 
     return measuresByComponentUuidAndMetric;
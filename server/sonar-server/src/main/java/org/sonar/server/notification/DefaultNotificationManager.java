@@ -20,14 +20,23 @@
 package org.sonar.server.notification;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.SetMultimap;
 import java.io.IOException;
 import java.io.InvalidClassException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import javax.annotation.Nullable;
 import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
@@ -36,8 +45,11 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.db.notification.NotificationQueueDao;
 import org.sonar.db.notification.NotificationQueueDto;
+import org.sonar.db.property.NotificationSubscriberDto;
 import org.sonar.db.property.PropertiesDao;
 
+import static java.util.stream.Collectors.toSet;
+
 public class DefaultNotificationManager implements NotificationManager {
 
   private static final Logger LOG = Loggers.get(DefaultNotificationManager.class);
@@ -48,6 +60,8 @@ public class DefaultNotificationManager implements NotificationManager {
   private NotificationQueueDao notificationQueueDao;
   private PropertiesDao propertiesDao;
 
+  private final ThreadLocal<SubscribersBatch> subscribersBatch = new ThreadLocal<>();
+
   private boolean alreadyLoggedDeserializationIssue = false;
 
   /**
@@ -91,13 +105,33 @@ public class DefaultNotificationManager implements NotificationManager {
     }
     notificationQueueDao.delete(notificationDtos);
 
-    return convertToNotification(notificationDtos);
+    return convertToNotification(notificationDtos.get(0));
   }
 
-  private Notification convertToNotification(List<NotificationQueueDto> notifications) {
+  /**
+   * Give the oldest notifications of the queue so that they can be processed. Notifications which can't be
+   * read are ignored.
+   */
+  public List<Notification> getFromQueue(int batchSize) {
+    List<NotificationQueueDto> notificationDtos = notificationQueueDao.selectOldest(batchSize);
+    if (notificationDtos.isEmpty()) {
+      return Collections.emptyList();
+    }
+    notificationQueueDao.delete(notificationDtos);
+
+    List<Notification> notifications = new ArrayList<>(notificationDtos.size());
+    for (NotificationQueueDto notificationDto : notificationDtos) {
+      Notification notification = convertToNotification(notificationDto);
+      if (notification != null) {
+        notifications.add(notification);
+      }
+    }
+    return notifications;
+  }
+
+  private Notification convertToNotification(NotificationQueueDto notification) {
     try {
-      // If batchSize is increased then we should return a list instead of a single element
-      return notifications.get(0).toNotification();
+      return notification.toNotification();
     } catch (InvalidClassException e) {
       // SONAR-4739
       if (!alreadyLoggedDeserializationIssue) {
@@ -119,6 +153,23 @@ public class DefaultNotificationManager implements NotificationManager {
     return notificationQueueDao.count();
   }
 
+  /**
+   * Until {@link #stopSubscribersBatch()} is called, subscribers requested by the current thread through
+   * {@link #findNotificationSubscribers(NotificationDispatcher, String)} are loaded with a single request
+   * per dispatcher and channel for all the projects of the given notifications.
+   */
+  public void startSubscribersBatch(Collection<Notification> notifications) {
+    Set<String> projectKeys = notifications.stream()
+      .map(notification -> notification.getFieldValue("projectKey"))
+      .filter(Objects::nonNull)
+      .collect(toSet());
+    subscribersBatch.set(new SubscribersBatch(projectKeys));
+  }
+
+  public void stopSubscribersBatch() {
+    subscribersBatch.remove();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -147,9 +198,13 @@ public class DefaultNotificationManager implements NotificationManager {
   public Multimap<String, NotificationChannel> findNotificationSubscribers(NotificationDispatcher dispatcher, @Nullable String componentKey) {
     String dispatcherKey = dispatcher.getKey();
 
+    SubscribersBatch batch = subscribersBatch.get();
     SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationChannel channel : notificationChannels) {
-      addUsersToRecipientListForChannel(propertiesDao.selectNotificationSubscribers(dispatcherKey, channel.getKey(), componentKey), recipients, channel);
+      List<String> users = batch != null && batch.contains(componentKey)
+        ? batch.selectNotificationSubscribers(dispatcherKey, channel.getKey(), componentKey)
+        : propertiesDao.selectNotificationSubscribers(dispatcherKey, channel.getKey(), componentKey);
+      addUsersToRecipientListForChannel(users, recipients, channel);
     }
 
     return recipients;
@@ -166,4 +221,38 @@ public class DefaultNotificationManager implements NotificationManager {
     }
   }
 
+  /**
+   * Subscribers of a batch of notifications, loaded lazily for each pair of dispatcher and channel
+   */
+  private class SubscribersBatch {
+    private final Set<String> projectKeys;
+    private final Map<String, List<String>> globalSubscribers = new HashMap<>();
+    private final Map<String, ListMultimap<String, String>> projectSubscribers = new HashMap<>();
+
+    private SubscribersBatch(Set<String> projectKeys) {
+      this.projectKeys = projectKeys;
+    }
+
+    boolean contains(@Nullable String projectKey) {
+      return projectKey == null || projectKeys.contains(projectKey);
+    }
+
+    List<String> selectNotificationSubscribers(String dispatcherKey, String channelKey, @Nullable String projectKey) {
+      String key = dispatcherKey + "." + channelKey;
+      List<String> global = globalSubscribers.computeIfAbsent(key, k -> propertiesDao.selectNotificationSubscribers(dispatcherKey, channelKey, null));
+      if (projectKey == null) {
+        return global;
+      }
+      ListMultimap<String, String> byProject = projectSubscribers.computeIfAbsent(key, k -> {
+        ListMultimap<String, String> res = ArrayListMultimap.create();
+        for (NotificationSubscriberDto subscriber : propertiesDao.selectNotificationSubscribersOfComponents(dispatcherKey, channelKey, projectKeys)) {
+          res.put(subscriber.getComponentKey(), subscriber.getLogin());
+        }
+        return res;
+      });
+      List<String> users = new ArrayList<>(global);
+      users.addAll(byProject.get(projectKey));
+      return users;
+    }
+  }
 }
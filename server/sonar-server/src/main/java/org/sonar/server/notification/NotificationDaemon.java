@@ -21,6 +21,12 @@ package org.sonar.server.notification;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -48,6 +54,9 @@ import org.sonar.api.utils.log.Loggers;
 @ServerSide
 public class NotificationDaemon implements Startable {
   private static final String THREAD_NAME_PREFIX = "sq-notification-service-";
+  private static final String DELIVERY_THREAD_NAME_PREFIX = "sq-notification-delivery-";
+  private static final int BATCH_SIZE = 100;
+  private static final int DELIVERY_THREADS = 4;
 
   private static final Logger LOG = Loggers.get(NotificationDaemon.class);
 
@@ -59,8 +68,12 @@ public class NotificationDaemon implements Startable {
   private final DefaultNotificationManager manager;
   private final NotificationService service;
 
+  // notifications which are removed from the queue but not delivered yet
+  private final Set<Notification> undelivered = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
   private ScheduledExecutorService executorService;
-  private boolean stopping = false;
+  private ExecutorService deliveryExecutorService;
+  private volatile boolean stopping = false;
 
   public NotificationDaemon(Settings settings, DefaultNotificationManager manager, NotificationService service) {
     this.delayInSeconds = settings.getLong(PROPERTY_DELAY);
@@ -71,6 +84,12 @@ public class NotificationDaemon implements Startable {
 
   @Override
   public void start() {
+    // channels are called concurrently, but each channel is called by a single thread at a time
+    deliveryExecutorService = Executors.newFixedThreadPool(DELIVERY_THREADS,
+      new ThreadFactoryBuilder()
+        .setNameFormat(DELIVERY_THREAD_NAME_PREFIX + "%d")
+        .setPriority(Thread.MIN_PRIORITY)
+        .build());
     executorService = Executors.newSingleThreadScheduledExecutor(
       new ThreadFactoryBuilder()
         .setNameFormat(THREAD_NAME_PREFIX + "%d")
@@ -86,12 +105,24 @@ public class NotificationDaemon implements Startable {
     LOG.info("Notification service started (delay {} sec.)", delayInSeconds);
   }
 
+  /**
+   * The batch being delivered is given 5 seconds to complete. Then deliveries are interrupted and the
+   * notifications which are not delivered to all their recipients are put back in the queue, so they are
+   * sent when the server restarts. Some recipients may then receive them twice.
+   */
   @Override
   public void stop() {
     try {
       stopping = true;
       executorService.shutdown();
-      executorService.awaitTermination(5, TimeUnit.SECONDS);
+      deliveryExecutorService.shutdown();
+      if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+        executorService.shutdownNow();
+        deliveryExecutorService.shutdownNow();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+      }
+      requeueUndelivered();
+      deliveryExecutorService.awaitTermination(5, TimeUnit.SECONDS);
     } catch (InterruptedException e) {
       LOG.error("Error during stop of notification service", e);
       Thread.currentThread().interrupt();
@@ -99,16 +130,28 @@ public class NotificationDaemon implements Startable {
     LOG.info("Notification service stopped");
   }
 
+  private void requeueUndelivered() {
+    List<Notification> notifications;
+    synchronized (undelivered) {
+      notifications = new ArrayList<>(undelivered);
+      undelivered.clear();
+    }
+    if (!notifications.isEmpty()) {
+      manager.scheduleForSending(notifications);
+      LOG.info("{} notifications not delivered yet are put back in queue", notifications.size());
+    }
+  }
+
   @VisibleForTesting
   synchronized void processQueue() {
     long start = now();
     long lastLog = start;
     long notifSentCount = 0;
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      service.deliver(notifToSend);
-      notifSentCount++;
+    List<Notification> notifications = manager.getFromQueue(BATCH_SIZE);
+    while (!notifications.isEmpty()) {
+      deliver(notifications);
+      notifSentCount += notifications.size();
       if (stopping) {
         break;
       }
@@ -119,7 +162,20 @@ public class NotificationDaemon implements Startable {
         long spentTimeInMinutes = (now - start) / (60 * 1000);
         log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
       }
-      notifToSend = manager.getFromQueue();
+      notifications = manager.getFromQueue(BATCH_SIZE);
+    }
+    if (notifSentCount > 0 && LOG.isDebugEnabled()) {
+      LOG.debug("{} notifications sent in {} ms and {} still waiting to be sent", notifSentCount, now() - start, manager.count());
+    }
+  }
+
+  private void deliver(List<Notification> notifications) {
+    undelivered.addAll(notifications);
+    manager.startSubscribersBatch(notifications);
+    try {
+      service.deliver(notifications, deliveryExecutorService, undelivered::remove);
+    } finally {
+      manager.stopSubscribersBatch();
     }
   }
 
@@ -26,9 +26,16 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.SetMultimap;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.notifications.Notification;
@@ -65,7 +72,74 @@ public class NotificationService {
   }
 
   public void deliver(Notification notification) {
-    final SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
+    SetMultimap<String, NotificationChannel> recipients = findRecipients(notification);
+    for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
+      String username = entry.getKey();
+      Collection<NotificationChannel> userChannels = entry.getValue();
+      LOG.debug("For user {} via {}", username, userChannels);
+      for (NotificationChannel channel : userChannels) {
+        deliver(notification, username, channel);
+      }
+    }
+  }
+
+  /**
+   * Delivers a batch of notifications. Recipients are resolved by the calling thread, then the deliveries
+   * of each channel are executed by a single task of the given executor. Different channels are called
+   * concurrently, but a channel is never called by two threads at the same time, as implementations
+   * of {@link NotificationChannel} are not required to be thread-safe. Returns when all the deliveries
+   * are done, or as soon as the executor is shut down or the current thread is interrupted.
+   *
+   * @param onDelivered called once all the recipients of a notification have been processed
+   */
+  public void deliver(Collection<Notification> notifications, ExecutorService executor, Consumer<Notification> onDelivered) {
+    Map<NotificationChannel, List<Runnable>> deliveriesByChannel = new LinkedHashMap<>();
+    for (Notification notification : notifications) {
+      SetMultimap<String, NotificationChannel> recipients = findRecipients(notification);
+      if (recipients.isEmpty()) {
+        onDelivered.accept(notification);
+      }
+      AtomicInteger remainingRecipients = new AtomicInteger(recipients.size());
+      for (Map.Entry<String, NotificationChannel> entry : recipients.entries()) {
+        deliveriesByChannel.computeIfAbsent(entry.getValue(), c -> new ArrayList<>()).add(() -> {
+          deliver(notification, entry.getKey(), entry.getValue());
+          if (remainingRecipients.decrementAndGet() == 0) {
+            onDelivered.accept(notification);
+          }
+        });
+      }
+    }
+
+    List<Future<?>> deliveries = new ArrayList<>();
+    try {
+      for (List<Runnable> channelDeliveries : deliveriesByChannel.values()) {
+        deliveries.add(executor.submit(() -> {
+          for (Runnable delivery : channelDeliveries) {
+            if (Thread.currentThread().isInterrupted()) {
+              return;
+            }
+            delivery.run();
+          }
+        }));
+      }
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Delivery of notifications is stopped", e);
+    }
+    for (Future<?> delivery : deliveries) {
+      try {
+        delivery.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        // not expected as all exceptions are caught when delivering
+        LOG.warn("Unable to deliver notification", e);
+      }
+    }
+  }
+
+  private SetMultimap<String, NotificationChannel> findRecipients(Notification notification) {
+    SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationDispatcher dispatcher : dispatchers) {
       NotificationDispatcher.Context context = new ContextImpl(recipients);
       try {
@@ -75,22 +149,15 @@ public class NotificationService {
         LOG.warn(String.format("Unable to dispatch notification %s using %s", notification, dispatcher), e);
       }
     }
-    dispatch(notification, recipients);
+    return recipients;
   }
 
-  private void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
-    for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
-      String username = entry.getKey();
-      Collection<NotificationChannel> userChannels = entry.getValue();
-      LOG.debug("For user {} via {}", username, userChannels);
-      for (NotificationChannel channel : userChannels) {
-        try {
-          channel.deliver(notification, username);
-        } catch (Exception e) {
-          // catch all exceptions in order to deliver via other channels
-          LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
-        }
-      }
+  private static void deliver(Notification notification, String username, NotificationChannel channel) {
+    try {
+      channel.deliver(notification, username);
+    } catch (Exception e) {
+      // catch all exceptions in order to deliver via other channels
+      LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
     }
   }
 
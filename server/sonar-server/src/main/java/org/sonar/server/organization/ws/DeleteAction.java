@@ -34,6 +34,7 @@ import org.sonar.server.organization.DefaultOrganization;
 import org.sonar.server.organization.DefaultOrganizationProvider;
 import org.sonar.server.organization.OrganizationFlags;
 import org.sonar.server.qualityprofile.QProfileFactory;
+import org.sonar.server.user.AuthorizationCache;
 import org.sonar.server.user.UserSession;
 import org.sonar.server.user.index.UserIndexer;
 
@@ -54,9 +55,11 @@ public class DeleteAction implements OrganizationsWsAction {
   private final OrganizationFlags organizationFlags;
   private final UserIndexer userIndexer;
   private final QProfileFactory qProfileFactory;
+  private final AuthorizationCache authorizationCache;
 
   public DeleteAction(UserSession userSession, DbClient dbClient, DefaultOrganizationProvider defaultOrganizationProvider,
-    ComponentCleanerService componentCleanerService, OrganizationFlags organizationFlags, UserIndexer userIndexer, QProfileFactory qProfileFactory) {
+    ComponentCleanerService componentCleanerService, OrganizationFlags organizationFlags, UserIndexer userIndexer, QProfileFactory qProfileFactory,
+    AuthorizationCache authorizationCache) {
     this.userSession = userSession;
     this.dbClient = dbClient;
     this.defaultOrganizationProvider = defaultOrganizationProvider;
@@ -64,6 +67,7 @@ public class DeleteAction implements OrganizationsWsAction {
     this.organizationFlags = organizationFlags;
     this.userIndexer = userIndexer;
     this.qProfileFactory = qProfileFactory;
+    this.authorizationCache = authorizationCache;
   }
 
   @Override
@@ -126,6 +130,7 @@ public class DeleteAction implements OrganizationsWsAction {
     dbSession.commit();
     dbClient.groupPermissionDao().deleteByOrganization(dbSession, organization.getUuid());
     dbSession.commit();
+    authorizationCache.invalidate();
   }
 
   private void deleteGroups(DbSession dbSession, OrganizationDto organization) {
@@ -147,6 +152,7 @@ public class DeleteAction implements OrganizationsWsAction {
     dbClient.organizationMemberDao().deleteByOrganizationUuid(dbSession, organization.getUuid());
     dbClient.organizationDao().deleteByUuid(dbSession, organization.getUuid());
     dbSession.commit();
+    authorizationCache.invalidate();
     userIndexer.index(logins);
   }
 
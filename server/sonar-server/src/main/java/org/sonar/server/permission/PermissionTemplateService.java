@@ -46,6 +46,7 @@ import org.sonar.db.permission.template.PermissionTemplateUserDto;
 import org.sonar.server.permission.index.PermissionIndexer;
 import org.sonar.server.permission.ws.template.DefaultTemplatesResolver;
 import org.sonar.server.permission.ws.template.DefaultTemplatesResolverImpl;
+import org.sonar.server.user.AuthorizationCache;
 import org.sonar.server.user.UserSession;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -61,13 +62,15 @@ public class PermissionTemplateService {
   private final PermissionIndexer permissionIndexer;
   private final UserSession userSession;
   private final DefaultTemplatesResolver defaultTemplatesResolver;
+  private final AuthorizationCache authorizationCache;
 
   public PermissionTemplateService(DbClient dbClient, PermissionIndexer permissionIndexer, UserSession userSession,
-    DefaultTemplatesResolver defaultTemplatesResolver) {
+    DefaultTemplatesResolver defaultTemplatesResolver, AuthorizationCache authorizationCache) {
     this.dbClient = dbClient;
     this.permissionIndexer = permissionIndexer;
     this.userSession = userSession;
     this.defaultTemplatesResolver = defaultTemplatesResolver;
+    this.authorizationCache = authorizationCache;
   }
   
   public boolean wouldUserHaveScanPermissionWithDefaultTemplate(DbSession dbSession,
@@ -103,6 +106,7 @@ public class PermissionTemplateService {
       copyPermissions(dbSession, template, project, null);
     }
     dbSession.commit();
+    authorizationCache.invalidate();
     indexProjectPermissions(dbSession, projects.stream().map(ComponentDto::uuid).collect(MoreCollectors.toList()));
   }
 
@@ -116,6 +120,7 @@ public class PermissionTemplateService {
     checkArgument(template != null, "Cannot retrieve default permission template");
     copyPermissions(dbSession, template, component, projectCreatorUserId);
     dbSession.commit();
+    authorizationCache.invalidate();
     indexProjectPermissions(dbSession, asList(component.uuid()));
   }
 
@@ -194,6 +194,7 @@ import org.sonar.server.ui.PageDecorations;
 import org.sonar.server.ui.PageRepository;
 import org.sonar.server.ui.ws.NavigationWsModule;
 import org.sonar.server.updatecenter.UpdateCenterModule;
+import org.sonar.server.user.AuthorizationCache;
 import org.sonar.server.user.DefaultUserFinder;
 import org.sonar.server.user.DeprecatedUserFinder;
 import org.sonar.server.user.NewUserNotifier;
@@ -337,6 +338,7 @@ public class PlatformLevel4 extends PlatformLevel {
 
       // users
       UserSessionFactoryImpl.class,
+      AuthorizationCache.class,
       SecurityRealmFactory.class,
       DeprecatedUserFinder.class,
       NewUserNotifier.class,
@@ -20,15 +20,26 @@
 package org.sonar.server.setting;
 
 import com.google.common.collect.ImmutableMap;
+import java.util.HashMap;
+import java.util.Map;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
-import org.sonar.db.property.PropertyDto;
 
 import static org.apache.commons.lang.StringUtils.defaultString;
 
+/**
+ * Loads the global properties stored in db.
+ * <p>
+ * Properties are kept in an immutable snapshot shared by all the threads of the process. Each call checks the
+ * version of global properties in db (see {@link org.sonar.db.property.PropertiesDao#selectGlobalPropertiesVersion(DbSession)}),
+ * which is a single lookup by primary key, and reloads the snapshot only when properties have been changed, either by
+ * the current process or by another one (web server or Compute Engine).
+ * </p>
+ */
 public class DatabaseSettingLoader implements SettingLoader {
 
   private final DbClient dbClient;
+  private volatile Snapshot snapshot;
 
   public DatabaseSettingLoader(DbClient dbClient) {
     this.dbClient = dbClient;
@@ -36,19 +47,37 @@ public class DatabaseSettingLoader implements SettingLoader {
 
   @Override
   public String load(String key) {
-    PropertyDto dto = dbClient.propertiesDao().selectGlobalProperty(key);
-    if (dto != null) {
-      return defaultString(dto.getValue());
-    }
-    return null;
+    return getSnapshot().properties.get(key);
   }
 
   @Override
   public void loadAll(ImmutableMap.Builder<String, String> appendTo) {
+    appendTo.putAll(getSnapshot().properties);
+  }
+
+  private Snapshot getSnapshot() {
     try (DbSession dbSession = dbClient.openSession(false)) {
-      dbClient.propertiesDao().selectGlobalProperties(dbSession)
-        .forEach(p -> appendTo.put(p.getKey(), defaultString(p.getValue())));
+      String version = dbClient.propertiesDao().selectGlobalPropertiesVersion(dbSession);
+      Snapshot current = snapshot;
+      if (current == null || !current.version.equals(version)) {
+        // properties are loaded after the version, so they can't be older than the version
+        Map<String, String> properties = new HashMap<>();
+        dbClient.propertiesDao().selectGlobalProperties(dbSession)
+          .forEach(p -> properties.put(p.getKey(), defaultString(p.getValue())));
+        current = new Snapshot(version, ImmutableMap.copyOf(properties));
+        snapshot = current;
+      }
+      return current;
     }
   }
 
+  private static final class Snapshot {
+    private final String version;
+    private final ImmutableMap<String, String> properties;
+
+    private Snapshot(String version, ImmutableMap<String, String> properties) {
+      this.version = version;
+      this.properties = properties;
+    }
+  }
 }
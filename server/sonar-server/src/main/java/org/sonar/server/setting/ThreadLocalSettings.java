@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import javax.annotation.CheckForNull;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.Encryption;
@@ -48,13 +49,19 @@ import static com.google.common.base.Preconditions.checkState;
  * been called. That allows to remove complexity with handling of cleanup of thread-local cache
  * on daemon threads (notifications) or startup "main" thread.
  * </p>
+ *
+ * <p>
+ * When enabled, the thread-local cache gets all the db properties from {@link SettingLoader#loadAll(ImmutableMap.Builder)}
+ * on the first read, so that values are consistent until {@link #unload()} and that missing keys do not
+ * require any additional request.
+ * </p>
  */
 @ComputeEngineSide
 @ServerSide
 public class ThreadLocalSettings extends Settings {
 
   private final Properties systemProps;
-  private static final ThreadLocal<Map<String, String>> CACHE = new ThreadLocal<>();
+  private static final ThreadLocal<ThreadCache> CACHE = new ThreadLocal<>();
   private SettingLoader settingLoader;
 
   public ThreadLocalSettings(PropertyDefinitions definitions, Properties props) {
@@ -92,39 +99,28 @@ public class ThreadLocalSettings extends Settings {
       return Optional.of(value);
     }
 
-    Map<String, String> dbProps = CACHE.get();
+    ThreadCache cache = CACHE.get();
     // caching is disabled
-    if (dbProps == null) {
+    if (cache == null) {
       return Optional.ofNullable(settingLoader.load(key));
     }
-
-    String loadedValue;
-    if (dbProps.containsKey(key)) {
-      // property may not exist in db. In this case key is present
-      // in cache but value is null
-      loadedValue = dbProps.get(key);
-    } else {
-      // cache the effective value (null if the property
-      // is not persisted)
-      loadedValue = settingLoader.load(key);
-      dbProps.put(key, loadedValue);
-    }
-    return Optional.ofNullable(loadedValue);
+    return Optional.ofNullable(cache.get(key, settingLoader));
   }
 
   @Override
   protected void set(String key, String value) {
-    Map<String, String> dbProps = CACHE.get();
-    if (dbProps != null) {
-      dbProps.put(key, value);
+    ThreadCache cache = CACHE.get();
+    if (cache != null) {
+      cache.changes.put(key, value);
     }
   }
 
   @Override
   protected void remove(String key) {
-    Map<String, String> dbProps = CACHE.get();
-    if (dbProps != null) {
-      dbProps.remove(key);
+    ThreadCache cache = CACHE.get();
+    if (cache != null) {
+      // property may still exist in the db properties loaded by this thread
+      cache.changes.put(key, null);
     }
   }
 
@@ -136,7 +132,7 @@ public class ThreadLocalSettings extends Settings {
   public void load() {
     checkState(CACHE.get() == null,
       "load called twice for thread '%s' or state wasn't cleared last time it was used", Thread.currentThread().getName());
-    CACHE.set(new HashMap<>());
+    CACHE.set(new ThreadCache());
   }
 
   /**
@@ -153,4 +149,23 @@ public class ThreadLocalSettings extends Settings {
     systemProps.entrySet().forEach(entry -> builder.put((String) entry.getKey(), (String) entry.getValue()));
     return builder.build();
   }
+
+  private static final class ThreadCache {
+    // values changed by the current thread, null if removed
+    private final Map<String, String> changes = new HashMap<>();
+    private Map<String, String> dbProps;
+
+    @CheckForNull
+    private String get(String key, SettingLoader settingLoader) {
+      if (changes.containsKey(key)) {
+        return changes.get(key);
+      }
+      if (dbProps == null) {
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        settingLoader.loadAll(builder);
+        dbProps = builder.build();
+      }
+      return dbProps.get(key);
+    }
+  }
 }
@@ -19,13 +19,13 @@
  */
 package org.sonar.server.source;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 import org.sonar.core.util.stream.MoreCollectors;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.protobuf.DbFileSources;
-import org.sonar.db.source.FileSourceDto;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -63,15 +63,13 @@ public class SourceService {
   private <E> Optional<Iterable<E>> getLines(DbSession dbSession, String fileUuid, int from, int toInclusive, Function<DbFileSources.Line, E> function) {
     verifyLine(from);
     checkArgument(toInclusive >= from, String.format("Line number must greater than or equal to %d, got %d", from, toInclusive));
-    FileSourceDto dto = dbClient.fileSourceDao().selectSourceByFileUuid(dbSession, fileUuid);
-    if (dto == null) {
+    List<DbFileSources.Line> lines = dbClient.fileSourceDao().selectSourceLines(dbSession, fileUuid, from, toInclusive);
+    if (lines == null) {
       return Optional.empty();
     }
-    return Optional.of(dto.getSourceData().getLinesList().stream()
-      .filter(line -> line.hasLine() && line.getLine() >= from)
-      .limit((toInclusive - from) + 1L)
+    return Optional.of(lines.stream()
       .map(function)
-      .collect(MoreCollectors.toList()));
+      .collect(MoreCollectors.toList(lines.size())));
   }
 
   private static void verifyLine(int line) {
@@ -0,0 +1,209 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.user;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.permission.OrganizationPermission;
+import org.sonar.db.user.GroupDto;
+
+/**
+ * Permissions loaded by {@link ServerUserSession}, shared by all the web requests.
+ * <p>
+ * Permissions are cached by {@link Subject}, i.e. by user and groups the user is member of, so that changes
+ * of group membership do not require any invalidation. Any other change of permissions, for example
+ * when a permission is granted or when a permission template is applied, must be followed by a call to
+ * {@link #invalidate()} once the change is committed.
+ * </p>
+ * <p>
+ * Entries are tagged with the version of the cache at the time loading started. An entry loaded concurrently
+ * with an invalidation is ignored, so that stale permissions can't be read after {@link #invalidate()} returns.
+ * </p>
+ * <p>
+ * Changes made by another process, for instance by the Compute Engine, can't invalidate the cache of the
+ * web server. Entries expire after {@link #EXPIRATION_IN_MINUTES} minutes so that such changes are eventually visible.
+ * </p>
+ */
+@ServerSide
+@ComputeEngineSide
+public class AuthorizationCache {
+
+  private static final int MAX_SIZE = 50_000;
+  private static final int EXPIRATION_IN_MINUTES = 5;
+
+  private final AtomicLong version = new AtomicLong();
+  private final Cache<PermissionsKey, VersionedValue> permissions;
+  private final Cache<String, String> projectUuidByComponentUuid;
+
+  public AuthorizationCache() {
+    this(MAX_SIZE);
+  }
+
+  AuthorizationCache(int maxSize) {
+    this.permissions = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .expireAfterWrite(EXPIRATION_IN_MINUTES, TimeUnit.MINUTES)
+      .build();
+    this.projectUuidByComponentUuid = CacheBuilder.newBuilder()
+      .maximumSize(maxSize)
+      .build();
+  }
+
+  public Set<OrganizationPermission> getOrganizationPermissions(Subject subject, String organizationUuid, Supplier<Set<OrganizationPermission>> loader) {
+    return get(new PermissionsKey(subject, organizationUuid, true), loader);
+  }
+
+  public Set<String> getProjectPermissions(Subject subject, String projectUuid, Supplier<Set<String>> loader) {
+    return get(new PermissionsKey(subject, projectUuid, false), loader);
+  }
+
+  /**
+   * The project of a component never changes, so the mapping is kept as long as the component is not deleted.
+   */
+  public Optional<String> getProjectUuid(String componentUuid, Supplier<Optional<String>> loader) {
+    long loadedVersion = version.get();
+    String projectUuid = projectUuidByComponentUuid.getIfPresent(componentUuid);
+    if (projectUuid != null) {
+      return Optional.of(projectUuid);
+    }
+    Optional<String> loaded = loader.get();
+    if (loaded.isPresent() && loadedVersion == version.get()) {
+      projectUuidByComponentUuid.put(componentUuid, loaded.get());
+    }
+    return loaded;
+  }
+
+  /**
+   * Must be called after the commit of any change of permissions or any deletion of components.
+   */
+  public void invalidate() {
+    version.incrementAndGet();
+    permissions.invalidateAll();
+    projectUuidByComponentUuid.invalidateAll();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T get(PermissionsKey key, Supplier<T> loader) {
+    long currentVersion = version.get();
+    VersionedValue cached = permissions.getIfPresent(key);
+    if (cached != null && cached.version == currentVersion) {
+      return (T) cached.value;
+    }
+    T loaded = loader.get();
+    permissions.put(key, new VersionedValue(currentVersion, loaded));
+    return loaded;
+  }
+
+  /**
+   * The user and the groups the user is member of. Anonymous is represented by a {@code null} user id
+   * and no groups.
+   */
+  @Immutable
+  public static final class Subject {
+    private static final Subject ANONYMOUS = new Subject(null, new int[0]);
+
+    @CheckForNull
+    private final Integer userId;
+    private final int[] sortedGroupIds;
+
+    private Subject(@Nullable Integer userId, int[] sortedGroupIds) {
+      this.userId = userId;
+      this.sortedGroupIds = sortedGroupIds;
+    }
+
+    public static Subject anonymous() {
+      return ANONYMOUS;
+    }
+
+    public static Subject of(int userId, Collection<GroupDto> groups) {
+      int[] groupIds = groups.stream().mapToInt(GroupDto::getId).sorted().toArray();
+      return new Subject(userId, groupIds);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Subject that = (Subject) o;
+      return Objects.equals(userId, that.userId) && Arrays.equals(sortedGroupIds, that.sortedGroupIds);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Objects.hashCode(userId) + Arrays.hashCode(sortedGroupIds);
+    }
+  }
+
+  private static final class PermissionsKey {
+    private final Subject subject;
+    private final String uuid;
+    private final boolean organization;
+
+    private PermissionsKey(Subject subject, String uuid, boolean organization) {
+      this.subject = subject;
+      this.uuid = uuid;
+      this.organization = organization;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      PermissionsKey that = (PermissionsKey) o;
+      return organization == that.organization && uuid.equals(that.uuid) && subject.equals(that.subject);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(subject, uuid, organization);
+    }
+  }
+
+  private static final class VersionedValue {
+    private final long version;
+    private final Object value;
+
+    private VersionedValue(long version, Object value) {
+      this.version = version;
+      this.value = value;
+    }
+  }
+}
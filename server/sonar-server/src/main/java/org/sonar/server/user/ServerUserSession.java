@@ -50,20 +50,30 @@ public class ServerUserSession extends AbstractUserSession {
   private final DbClient dbClient;
   private final OrganizationFlags organizationFlags;
   private final DefaultOrganizationProvider defaultOrganizationProvider;
+  private final AuthorizationCache authorizationCache;
   private final Supplier<Collection<GroupDto>> groups = Suppliers.memoize(this::loadGroups);
+  private final Supplier<AuthorizationCache.Subject> subject = Suppliers.memoize(this::loadSubject);
   private final Supplier<Boolean> isSystemAdministratorSupplier = Suppliers.memoize(this::loadIsSystemAdministrator);
   private final Map<String, String> projectUuidByComponentUuid = newHashMap();
   private Map<String, Set<OrganizationPermission>> permissionsByOrganizationUuid;
   private Map<String, Set<String>> permissionsByProjectUuid;
 
   ServerUserSession(DbClient dbClient, OrganizationFlags organizationFlags,
-    DefaultOrganizationProvider defaultOrganizationProvider, @Nullable UserDto userDto) {
+    DefaultOrganizationProvider defaultOrganizationProvider, AuthorizationCache authorizationCache, @Nullable UserDto userDto) {
     this.dbClient = dbClient;
     this.organizationFlags = organizationFlags;
     this.defaultOrganizationProvider = defaultOrganizationProvider;
+    this.authorizationCache = authorizationCache;
     this.userDto = userDto;
   }
 
+  private AuthorizationCache.Subject loadSubject() {
+    if (userDto != null && userDto.getId() != null) {
+      return AuthorizationCache.Subject.of(userDto.getId(), getGroups());
+    }
+    return AuthorizationCache.Subject.anonymous();
+  }
+
   private Collection<GroupDto> loadGroups() {
     if (this.userDto == null) {
       return Collections.emptyList();
@@ -111,7 +121,8 @@ public class ServerUserSession extends AbstractUserSession {
     if (permissionsByOrganizationUuid == null) {
       permissionsByOrganizationUuid = new HashMap<>();
     }
-    Set<OrganizationPermission> permissions = permissionsByOrganizationUuid.computeIfAbsent(organizationUuid, this::loadOrganizationPermissions);
+    Set<OrganizationPermission> permissions = permissionsByOrganizationUuid.computeIfAbsent(organizationUuid,
+      uuid -> authorizationCache.getOrganizationPermissions(subject.get(), uuid, () -> loadOrganizationPermissions(uuid)));
     return permissions.contains(permission);
   }
 
@@ -135,14 +146,18 @@ public class ServerUserSession extends AbstractUserSession {
     if (projectUuid != null) {
       return Optional.of(projectUuid);
     }
+    Optional<String> loaded = authorizationCache.getProjectUuid(componentUuid, () -> loadProjectUuid(componentUuid));
+    loaded.ifPresent(uuid -> projectUuidByComponentUuid.put(componentUuid, uuid));
+    return loaded;
+  }
+
+  private Optional<String> loadProjectUuid(String componentUuid) {
     try (DbSession dbSession = dbClient.openSession(false)) {
       com.google.common.base.Optional<ComponentDto> component = dbClient.componentDao().selectByUuid(dbSession, componentUuid);
       if (!component.isPresent()) {
         return Optional.empty();
       }
-      projectUuid = component.get().projectUuid();
-      projectUuidByComponentUuid.put(componentUuid, projectUuid);
-      return Optional.of(projectUuid);
+      return Optional.of(component.get().projectUuid());
     }
   }
 
@@ -151,7 +166,8 @@ public class ServerUserSession extends AbstractUserSession {
     if (permissionsByProjectUuid == null) {
       permissionsByProjectUuid = new HashMap<>();
     }
-    Set<String> permissions = permissionsByProjectUuid.computeIfAbsent(projectUuid, this::loadProjectPermissions);
+    Set<String> permissions = permissionsByProjectUuid.computeIfAbsent(projectUuid,
+      uuid -> authorizationCache.getProjectPermissions(subject.get(), uuid, () -> loadProjectPermissions(uuid)));
     return permissions.contains(permission);
   }
 
@@ -33,22 +33,24 @@ public class UserSessionFactoryImpl implements UserSessionFactory {
   private final DbClient dbClient;
   private final DefaultOrganizationProvider defaultOrganizationProvider;
   private final OrganizationFlags organizationFlags;
+  private final AuthorizationCache authorizationCache;
 
   public UserSessionFactoryImpl(DbClient dbClient, DefaultOrganizationProvider defaultOrganizationProvider,
-    OrganizationFlags organizationFlags) {
+    OrganizationFlags organizationFlags, AuthorizationCache authorizationCache) {
     this.dbClient = dbClient;
     this.defaultOrganizationProvider = defaultOrganizationProvider;
     this.organizationFlags = organizationFlags;
+    this.authorizationCache = authorizationCache;
   }
 
   @Override
   public ServerUserSession create(UserDto user) {
     requireNonNull(user, "UserDto must not be null");
-    return new ServerUserSession(dbClient, organizationFlags, defaultOrganizationProvider, user);
+    return new ServerUserSession(dbClient, organizationFlags, defaultOrganizationProvider, authorizationCache, user);
   }
 
   @Override
   public ServerUserSession createAnonymous() {
-    return new ServerUserSession(dbClient, organizationFlags, defaultOrganizationProvider, null);
+    return new ServerUserSession(dbClient, organizationFlags, defaultOrganizationProvider, authorizationCache, null);
   }
 }
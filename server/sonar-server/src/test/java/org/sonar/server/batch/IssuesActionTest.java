@@ -21,6 +21,10 @@ package org.sonar.server.batch;
 
 import com.google.common.base.Throwables;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -36,6 +40,7 @@ import org.sonar.scanner.protocol.Constants.Severity;
 import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
 import org.sonar.server.component.ComponentFinder;
 import org.sonar.server.es.EsTester;
+import org.sonar.server.exceptions.BadRequestException;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.issue.index.IssueIndex;
 import org.sonar.server.issue.index.IssueIndexDefinition;
@@ -47,8 +52,10 @@ import org.sonar.server.tester.UserSessionRule;
 import org.sonar.server.ws.TestResponse;
 import org.sonar.server.ws.WsActionTester;
 
+import static java.lang.String.join;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.sonar.api.rules.RuleType.BUG;
+import static org.sonar.db.component.ComponentTesting.newDirectory;
 import static org.sonar.db.component.ComponentTesting.newFileDto;
 import static org.sonar.db.component.ComponentTesting.newModuleDto;
 import static org.sonar.db.component.ComponentTesting.newProjectDto;
@@ -295,6 +302,82 @@ public class IssuesActionTest {
     assertThat(serverIssue.getModuleKey()).isEqualTo(MODULE_KEY);
   }
 
+  @Test
+  public void return_only_issues_of_requested_files_and_of_components_which_are_not_files() throws Exception {
+    ComponentDto project = db.components().insertComponent(newProjectDto(db.getDefaultOrganization(), PROJECT_UUID).setKey(PROJECT_KEY));
+    ComponentDto module = db.components().insertComponent(newModuleDto(MODULE_UUID, project).setKey(MODULE_KEY));
+    ComponentDto directory = db.components().insertComponent(newDirectory(module, "src/org/struts"));
+    ComponentDto file = db.components().insertComponent(newFileDto(module, directory, FILE_UUID).setKey(FILE_KEY).setPath("src/org/struts/Action.java"));
+    ComponentDto otherFile = db.components().insertComponent(newFileDto(module, directory, "DEFG").setKey("Other.java").setPath("src/org/struts/Other.java"));
+    db.rules().insert(RULE_DEFINITION);
+    db.issues().insert(RULE_DEFINITION, project, file, issue -> issue.setKee("EFGH").setStatus("OPEN"));
+    db.issues().insert(RULE_DEFINITION, project, otherFile, issue -> issue.setKee("FGHI").setStatus("OPEN"));
+    db.issues().insert(RULE_DEFINITION, project, module, issue -> issue.setKee("GHIJ").setStatus("OPEN"));
+    db.issues().insert(RULE_DEFINITION, project, directory, issue -> issue.setKee("HIJK").setStatus("OPEN"));
+    db.issues().insert(RULE_DEFINITION, project, project, issue -> issue.setKee("IJKL").setStatus("OPEN"));
+    indexIssues(project);
+    addBrowsePermissionOnComponent(project);
+
+    TestResponse response = tester.newRequest()
+      .setParam("key", PROJECT_KEY)
+      .setParam("files", FILE_KEY)
+      .execute();
+
+    assertThat(readIssues(response)).extracting(ServerIssue::getKey).containsOnly("EFGH", "GHIJ", "HIJK", "IJKL");
+  }
+
+  @Test
+  public void return_only_issues_of_components_which_are_not_files_when_requested_files_do_not_exist() throws Exception {
+    ComponentDto project = db.components().insertComponent(newProjectDto(db.getDefaultOrganization(), PROJECT_UUID).setKey(PROJECT_KEY));
+    ComponentDto module = db.components().insertComponent(newModuleDto(MODULE_UUID, project).setKey(MODULE_KEY));
+    ComponentDto file = db.components().insertComponent(newFileDto(module, null, FILE_UUID).setKey(FILE_KEY));
+    db.rules().insert(RULE_DEFINITION);
+    db.issues().insert(RULE_DEFINITION, project, file, issue -> issue.setKee("EFGH").setStatus("OPEN"));
+    db.issues().insert(RULE_DEFINITION, project, module, issue -> issue.setKee("GHIJ").setStatus("OPEN"));
+    indexIssues(project);
+    addBrowsePermissionOnComponent(project);
+
+    TestResponse response = tester.newRequest()
+      .setParam("key", PROJECT_KEY)
+      .setParam("files", "unknown.java")
+      .execute();
+
+    assertThat(readIssues(response)).extracting(ServerIssue::getKey).containsExactly("GHIJ");
+  }
+
+  @Test
+  public void return_only_issues_of_components_which_are_not_files_when_no_files_are_requested() throws Exception {
+    ComponentDto project = db.components().insertComponent(newProjectDto(db.getDefaultOrganization(), PROJECT_UUID).setKey(PROJECT_KEY));
+    ComponentDto module = db.components().insertComponent(newModuleDto(MODULE_UUID, project).setKey(MODULE_KEY));
+    ComponentDto file = db.components().insertComponent(newFileDto(module, null, FILE_UUID).setKey(FILE_KEY));
+    db.rules().insert(RULE_DEFINITION);
+    db.issues().insert(RULE_DEFINITION, project, file, issue -> issue.setKee("EFGH").setStatus("OPEN"));
+    db.issues().insert(RULE_DEFINITION, project, module, issue -> issue.setKee("GHIJ").setStatus("OPEN"));
+    indexIssues(project);
+    addBrowsePermissionOnComponent(project);
+
+    TestResponse response = tester.newRequest()
+      .setParam("key", PROJECT_KEY)
+      .setParam("files", "")
+      .execute();
+
+    assertThat(readIssues(response)).extracting(ServerIssue::getKey).containsExactly("GHIJ");
+  }
+
+  @Test
+  public void fail_when_too_many_files_are_requested() throws Exception {
+    ComponentDto project = db.components().insertComponent(newProjectDto(db.getDefaultOrganization(), PROJECT_UUID).setKey(PROJECT_KEY));
+    addBrowsePermissionOnComponent(project);
+
+    thrown.expect(BadRequestException.class);
+    thrown.expectMessage("Number of files is limited to 100, got 101");
+
+    tester.newRequest()
+      .setParam("key", PROJECT_KEY)
+      .setParam("files", join(",", Collections.nCopies(IssuesAction.MAX_FILES + 1, FILE_KEY)))
+      .execute();
+  }
+
   @Test
   public void fail_without_browse_permission_on_file() throws Exception {
     ComponentDto project = db.components().insertProject();
@@ -314,6 +397,16 @@ public class IssuesActionTest {
     userSessionRule.addProjectUuidPermissions(UserRole.USER, project.uuid());
   }
 
+  private static List<ServerIssue> readIssues(TestResponse response) throws IOException {
+    List<ServerIssue> issues = new ArrayList<>();
+    InputStream input = response.getInputStream();
+    ServerIssue issue;
+    while ((issue = ServerIssue.parseDelimitedFrom(input)) != null) {
+      issues.add(issue);
+    }
+    return issues;
+  }
+
   private ServerIssue call(String componentKey) {
     try {
       TestResponse response = tester.newRequest().setParam("key", componentKey).execute();
@@ -82,4 +82,20 @@ public class ProjectActionTest {
       .executeProtobuf(WsProjectResponse.class);
     assertThat(wsProjectResponse.getFileDataByModuleAndPath()).isEmpty();
   }
+
+  @Test
+  public void pass_version_of_file_data_known_by_client() throws Exception {
+    ProjectRepositories projectRepositories = new ProjectRepositories().setFileDataVersion("ANALYSIS_UUID").setFileDataUnchanged(true);
+    ArgumentCaptor<ProjectDataQuery> queryArgumentCaptor = ArgumentCaptor.forClass(ProjectDataQuery.class);
+    when(projectDataLoader.load(queryArgumentCaptor.capture())).thenReturn(projectRepositories);
+
+    WsProjectResponse wsProjectResponse = ws.newRequest()
+      .setParam("key", "org.codehaus.sonar:sonar")
+      .setParam("file_data_version", "ANALYSIS_UUID")
+      .executeProtobuf(WsProjectResponse.class);
+
+    assertThat(queryArgumentCaptor.getValue().getFileDataVersion()).isEqualTo("ANALYSIS_UUID");
+    assertThat(wsProjectResponse.getFileDataVersion()).isEqualTo("ANALYSIS_UUID");
+    assertThat(wsProjectResponse.getFileDataUnchanged()).isTrue();
+  }
 }
@@ -32,7 +32,9 @@ import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.SnapshotDto;
 import org.sonar.db.organization.OrganizationDto;
+import org.sonar.db.source.FileSourceDto;
 import org.sonar.scanner.protocol.input.ProjectRepositories;
 import org.sonar.server.exceptions.BadRequestException;
 import org.sonar.server.exceptions.ForbiddenException;
@@ -40,6 +42,9 @@ import org.sonar.server.exceptions.NotFoundException;
 import org.sonar.server.tester.UserSessionRule;
 
 import static java.lang.String.format;
+import static org.sonar.db.component.ComponentTesting.newFileDto;
+import static org.sonar.db.component.ComponentTesting.newModuleDto;
+import static org.sonar.db.component.ComponentTesting.newProjectDto;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.sonar.db.permission.OrganizationPermission.SCAN;
@@ -179,4 +184,89 @@ public class ProjectDataLoaderTest {
 
     assertThat(repositories).isNotNull();
   }
+
+  @Test
+  public void return_version_of_file_data() {
+    ComponentDto project = newProjectDto(dbTester.getDefaultOrganization());
+    SnapshotDto analysis = dbTester.components().insertProjectAndSnapshot(project);
+    ComponentDto file = insertFileWithSource(project);
+    userSession.logIn().addProjectUuidPermissions(GlobalPermissions.SCAN_EXECUTION, project.uuid());
+
+    ProjectRepositories repositories = underTest.load(ProjectDataQuery.create().setModuleKey(project.key()));
+
+    assertThat(repositories.fileDataVersion()).startsWith(analysis.getUuid());
+    assertThat(repositories.isFileDataUnchanged()).isFalse();
+    assertThat(repositories.fileData(project.key(), file.path()).hash()).isEqualTo("123456");
+  }
+
+  @Test
+  public void do_not_return_file_data_if_version_known_by_client_is_the_current_one() {
+    ComponentDto project = newProjectDto(dbTester.getDefaultOrganization());
+    dbTester.components().insertProjectAndSnapshot(project);
+    insertFileWithSource(project);
+    userSession.logIn().addProjectUuidPermissions(GlobalPermissions.SCAN_EXECUTION, project.uuid());
+    String version = underTest.load(ProjectDataQuery.create().setModuleKey(project.key())).fileDataVersion();
+
+    ProjectRepositories repositories = underTest.load(ProjectDataQuery.create().setModuleKey(project.key()).setFileDataVersion(version));
+
+    assertThat(repositories.fileDataVersion()).isEqualTo(version);
+    assertThat(repositories.isFileDataUnchanged()).isTrue();
+    assertThat(repositories.fileDataByModuleAndPath()).isEmpty();
+  }
+
+  @Test
+  public void return_file_data_if_version_known_by_client_is_outdated() {
+    ComponentDto project = newProjectDto(dbTester.getDefaultOrganization());
+    SnapshotDto analysis = dbTester.components().insertProjectAndSnapshot(project);
+    ComponentDto file = insertFileWithSource(project);
+    userSession.logIn().addProjectUuidPermissions(GlobalPermissions.SCAN_EXECUTION, project.uuid());
+
+    ProjectRepositories repositories = underTest.load(ProjectDataQuery.create().setModuleKey(project.key()).setFileDataVersion("old_analysis"));
+
+    assertThat(repositories.fileDataVersion()).startsWith(analysis.getUuid());
+    assertThat(repositories.isFileDataUnchanged()).isFalse();
+    assertThat(repositories.fileData(project.key(), file.path())).isNotNull();
+  }
+
+  @Test
+  public void return_file_data_if_key_of_module_changed_since_version_known_by_client() {
+    ComponentDto project = newProjectDto(dbTester.getDefaultOrganization());
+    dbTester.components().insertProjectAndSnapshot(project);
+    ComponentDto module = dbTester.components().insertComponent(newModuleDto(project));
+    ComponentDto file = insertFileWithSource(module);
+    userSession.logIn().addProjectUuidPermissions(GlobalPermissions.SCAN_EXECUTION, project.uuid());
+    String version = underTest.load(ProjectDataQuery.create().setModuleKey(project.key())).fileDataVersion();
+
+    dbTester.executeUpdateSql("update projects set kee=? where uuid=?", "renamed_module", module.uuid());
+    ProjectRepositories repositories = underTest.load(ProjectDataQuery.create().setModuleKey(project.key()).setFileDataVersion(version));
+
+    assertThat(repositories.fileDataVersion()).isNotEqualTo(version);
+    assertThat(repositories.isFileDataUnchanged()).isFalse();
+    assertThat(repositories.fileData("renamed_module", file.path())).isNotNull();
+  }
+
+  @Test
+  public void no_version_of_file_data_if_project_has_never_been_analyzed() {
+    ComponentDto project = dbTester.components().insertProject();
+    userSession.logIn().addProjectUuidPermissions(GlobalPermissions.SCAN_EXECUTION, project.uuid());
+
+    ProjectRepositories repositories = underTest.load(ProjectDataQuery.create().setModuleKey(project.key()).setFileDataVersion("any"));
+
+    assertThat(repositories.fileDataVersion()).isNull();
+    assertThat(repositories.isFileDataUnchanged()).isFalse();
+  }
+
+  private ComponentDto insertFileWithSource(ComponentDto project) {
+    ComponentDto file = dbTester.components().insertComponent(newFileDto(project, null));
+    dbClient.fileSourceDao().insert(dbSession, new FileSourceDto()
+      .setFileUuid(file.uuid())
+      .setProjectUuid(project.uuid())
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setSrcHash("123456")
+      .setRevision("123456789")
+      .setCreatedAt(1_500_000_000_000L)
+      .setUpdatedAt(1_500_000_000_000L));
+    dbSession.commit();
+    return file;
+  }
 }
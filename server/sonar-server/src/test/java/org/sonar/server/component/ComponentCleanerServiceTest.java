@@ -38,6 +38,7 @@ import org.sonar.db.issue.IssueTesting;
 import org.sonar.db.rule.RuleDefinitionDto;
 import org.sonar.db.rule.RuleTesting;
 import org.sonar.server.es.ProjectIndexer;
+import org.sonar.server.user.AuthorizationCache;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -63,7 +64,8 @@ public class ComponentCleanerServiceTest {
   private DbSession dbSession = db.getSession();
   private ProjectIndexer projectIndexer = mock(ProjectIndexer.class);
   private ResourceTypes mockResourceTypes = mock(ResourceTypes.class);
-  private ComponentCleanerService underTest = new ComponentCleanerService(dbClient, mockResourceTypes, projectIndexer);
+  private AuthorizationCache authorizationCache = mock(AuthorizationCache.class);
+  private ComponentCleanerService underTest = new ComponentCleanerService(dbClient, mockResourceTypes, authorizationCache, projectIndexer);
 
   @Test
   public void delete_project_from_db_and_index() {
@@ -74,6 +76,7 @@ public class ComponentCleanerServiceTest {
 
     assertNotExists(data1);
     assertExists(data2);
+    verify(authorizationCache).invalidate();
   }
 
   @Test
@@ -26,6 +26,8 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.internal.JUnitTempFolder;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.scanner.protocol.output.ScannerReportWriter;
@@ -54,6 +56,8 @@ public class BatchReportReaderImplTest {
 
   @Rule
   public JUnitTempFolder tempFolder = new JUnitTempFolder();
+  @Rule
+  public LogTester logTester = new LogTester();
 
   private ScannerReportWriter writer;
   private BatchReportReaderImpl underTest;
@@ -288,6 +292,27 @@ public class BatchReportReaderImplTest {
     res.close();
   }
 
+  @Test
+  public void stop_logs_read_statistics_of_domains_in_debug() {
+    logTester.setLevel(LoggerLevel.DEBUG);
+    writer.writeComponentIssues(COMPONENT_REF, of(ISSUE));
+    assertThat(underTest.readComponentIssues(COMPONENT_REF)).hasSize(1);
+
+    underTest.stop();
+
+    assertThat(logTester.logs(LoggerLevel.DEBUG)).hasSize(1);
+    assertThat(logTester.logs(LoggerLevel.DEBUG).get(0)).startsWith("Read ISSUES from report: 1 files, ");
+  }
+
+  @Test
+  public void stop_does_not_log_if_report_was_not_read() {
+    logTester.setLevel(LoggerLevel.DEBUG);
+
+    underTest.stop();
+
+    assertThat(logTester.logs()).isEmpty();
+  }
+
   @Test
   public void readTests_returns_empty_CloseableIterator_when_file_does_not_exist() {
     assertThat(underTest.readTests(COMPONENT_REF)).isEmpty();
@@ -489,6 +489,12 @@ public class ComponentRootBuilderTest {
     assertThat(createFileAttributes(newBuilder().setType(FILE).setLines(10).build()).getLines()).isEqualTo(10);
   }
 
+  @Test
+  public void createFileAttributes_sets_reused_from_Scanner_Component() {
+    assertThat(createFileAttributes(newBuilder().setType(FILE).setLines(1).build()).isReused()).isFalse();
+    assertThat(createFileAttributes(newBuilder().setType(FILE).setIsReused(true).setLines(1).build()).isReused()).isTrue();
+  }
+
   @Test
   public void fail_with_IAE_when_createFileAttributes_lines_is_not_set() throws Exception {
     expectedException.expect(IllegalArgumentException.class);
@@ -0,0 +1,223 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.duplication;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.duplication.DuplicationUnitDto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.db.component.ComponentTesting.newFileDto;
+
+public class CrossProjectDuplicationHashIndexImplTest {
+
+  private static final String JAVA = "java";
+  private static final String XOO = "xoo";
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  private TestSystem2 system2 = new TestSystem2().setNow(1_000_000L);
+  private DbClient dbClient = db.getDbClient();
+  private ComponentDto project;
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    project = db.components().insertProject();
+    file = new File(temp.newFolder(), "cpd_hash_index");
+  }
+
+  @Test
+  public void load_hashes_from_database_by_language() {
+    insertBlock(JAVA, "aa");
+    insertBlock(XOO, "bb");
+
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+
+    assertThat(underTest.mightContain(JAVA, "aa")).isTrue();
+    assertThat(underTest.mightContain(XOO, "bb")).isTrue();
+    assertThat(underTest.mightContain(JAVA, "bb")).isFalse();
+    assertThat(underTest.mightContain("php", "aa")).isFalse();
+  }
+
+  @Test
+  public void added_hashes_might_be_contained() {
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+    assertThat(underTest.mightContain(JAVA, "aa")).isFalse();
+
+    underTest.add(JAVA, "aa");
+
+    assertThat(underTest.mightContain(JAVA, "aa")).isTrue();
+  }
+
+  @Test
+  public void grow_when_more_hashes_than_expected_are_added() {
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+
+    for (int i = 0; i < 1_000; i++) {
+      underTest.add(JAVA, "hash" + i);
+    }
+
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(underTest.mightContain(JAVA, "hash" + i)).isTrue();
+    }
+  }
+
+  @Test
+  public void save_on_stop_and_load_only_new_rows_of_database() {
+    insertBlock(JAVA, "aa");
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+    underTest.add(JAVA, "not_in_db");
+    underTest.stop();
+    assertThat(file).exists();
+
+    insertBlock(JAVA, "bb");
+    CrossProjectDuplicationHashIndexImpl reloaded = newIndex(10);
+
+    assertThat(reloaded.mightContain(JAVA, "aa")).isTrue();
+    assertThat(reloaded.mightContain(JAVA, "bb")).isTrue();
+    // only in the saved file
+    assertThat(reloaded.mightContain(JAVA, "not_in_db")).isTrue();
+  }
+
+  @Test
+  public void refresh_loads_rows_inserted_by_other_processes() {
+    insertBlock(JAVA, "aa");
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+    assertThat(underTest.mightContain(JAVA, "aa")).isTrue();
+
+    // inserted by another Compute Engine, for example in cluster mode
+    insertBlock(JAVA, "bb");
+    assertThat(underTest.mightContain(JAVA, "bb")).isFalse();
+    underTest.refresh();
+
+    assertThat(underTest.mightContain(JAVA, "bb")).isTrue();
+  }
+
+  @Test
+  public void refresh_loads_rows_committed_after_rows_with_greater_id() {
+    insertBlock(JAVA, "aa");
+    insertBlock(JAVA, "bb");
+    Map<String, Object> lateRow = db.selectFirst("select id as \"id\", analysis_uuid as \"analysisUuid\", component_uuid as \"componentUuid\" " +
+      "from duplications_index where hash='aa'");
+    db.executeUpdateSql("delete from duplications_index where hash='aa'");
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+    assertThat(underTest.mightContain(JAVA, "bb")).isTrue();
+
+    system2.setNow(system2.now() + CrossProjectDuplicationHashIndexImpl.REFRESH_TOLERANCE_MS - 1);
+    db.executeInsert("duplications_index", "id", lateRow.get("id"), "analysis_uuid", lateRow.get("analysisUuid"),
+      "component_uuid", lateRow.get("componentUuid"), "hash", "aa", "index_in_file", 0, "start_line", 1, "end_line", 10);
+    underTest.refresh();
+
+    assertThat(underTest.mightContain(JAVA, "aa")).isTrue();
+  }
+
+  @Test
+  public void do_not_save_if_never_used() {
+    newIndex(10).stop();
+
+    assertThat(file).doesNotExist();
+  }
+
+  @Test
+  public void rebuild_from_database_when_file_has_been_saved_with_another_database() {
+    insertBlock(JAVA, "aa");
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+    underTest.add(JAVA, "not_in_db");
+    underTest.stop();
+
+    dbClient.internalPropertiesDao().save(db.getSession(), "organization.default", "another_database");
+    db.commit();
+    CrossProjectDuplicationHashIndexImpl reloaded = newIndex(10);
+
+    assertThat(reloaded.mightContain(JAVA, "aa")).isTrue();
+    assertThat(reloaded.mightContain(JAVA, "not_in_db")).isFalse();
+  }
+
+  @Test
+  public void rebuild_from_database_when_saved_rows_are_not_in_database_anymore() {
+    insertBlock(JAVA, "aa");
+    insertBlock(JAVA, "bb");
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+    underTest.stop();
+
+    // for example the database has been restored from a backup
+    db.executeUpdateSql("delete from duplications_index where hash='bb'");
+    CrossProjectDuplicationHashIndexImpl reloaded = newIndex(10);
+
+    assertThat(reloaded.mightContain(JAVA, "aa")).isTrue();
+    assertThat(reloaded.mightContain(JAVA, "bb")).isFalse();
+  }
+
+  @Test
+  public void rebuild_from_database_when_file_is_truncated() throws IOException {
+    insertBlock(JAVA, "aa");
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+      out.writeInt(3);
+      out.writeUTF(db.getDefaultOrganization().getUuid());
+      out.writeLong(Long.MAX_VALUE);
+      out.writeLong(Long.MAX_VALUE);
+      out.writeInt(1);
+      out.writeUTF(JAVA);
+    }
+
+    CrossProjectDuplicationHashIndexImpl underTest = newIndex(10);
+
+    assertThat(underTest.mightContain(JAVA, "aa")).isTrue();
+    assertThat(logTester.logs(LoggerLevel.WARN)).hasSize(1);
+  }
+
+  private CrossProjectDuplicationHashIndexImpl newIndex(int initialExpectedInsertions) {
+    CrossProjectDuplicationHashIndexImpl index = new CrossProjectDuplicationHashIndexImpl(dbClient, system2, file, initialExpectedInsertions);
+    index.start();
+    return index;
+  }
+
+  private void insertBlock(String language, String hash) {
+    ComponentDto fileDto = db.components().insertComponent(newFileDto(project).setLanguage(language));
+    dbClient.duplicationDao().insert(db.getSession(), new DuplicationUnitDto()
+      .setHash(hash)
+      .setStartLine(1)
+      .setEndLine(10)
+      .setIndexInFile(0)
+      .setAnalysisUuid("analysis")
+      .setComponentUuid(fileDto.uuid()));
+    db.commit();
+  }
+}
@@ -20,18 +20,11 @@
 package org.sonar.server.computation.task.projectanalysis.filemove;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import org.junit.Test;
 
-import static com.google.common.collect.ImmutableSet.of;
-import static java.util.Collections.emptyList;
-import static java.util.Collections.emptySet;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.sonar.server.computation.task.projectanalysis.filemove.FileMoveDetectionStep.MIN_REQUIRED_SCORE;
 
@@ -41,17 +34,19 @@ public class MatchesByScoreTest {
 
   @Test
   public void creates_returns_always_the_same_instance_of_maxScore_is_less_than_min_required_score() {
-    Set<String> doesNotMatterDbFileKeys = emptySet();
-    Map<String, FileSimilarity.File> doesNotMatterReportFiles = Collections.emptyMap();
+    String[] doesNotMatterDbFileKeys = new String[0];
+    String[] doesNotMatterReportFileKeys = new String[0];
     int[][] doesNotMatterScores = new int[0][0];
 
-    ScoreMatrix scoreMatrix1 = new ScoreMatrix(doesNotMatterDbFileKeys, doesNotMatterReportFiles, doesNotMatterScores, MIN_REQUIRED_SCORE - 1);
+    ScoreMatrix scoreMatrix1 = new ScoreMatrix(doesNotMatterDbFileKeys, doesNotMatterReportFileKeys, doesNotMatterScores, doesNotMatterScores,
+      MIN_REQUIRED_SCORE - 1);
     MatchesByScore matchesByScore = MatchesByScore.create(scoreMatrix1);
 
     assertThat(matchesByScore.getSize()).isEqualTo(0);
     assertThat(matchesByScore).isEmpty();
 
-    ScoreMatrix scoreMatrix2 = new ScoreMatrix(doesNotMatterDbFileKeys, doesNotMatterReportFiles, doesNotMatterScores, MIN_REQUIRED_SCORE - 5);
+    ScoreMatrix scoreMatrix2 = new ScoreMatrix(doesNotMatterDbFileKeys, doesNotMatterReportFileKeys, doesNotMatterScores, doesNotMatterScores,
+      MIN_REQUIRED_SCORE - 5);
     assertThat(MatchesByScore.create(scoreMatrix2)).isSameAs(matchesByScore);
   }
 
@@ -63,8 +58,13 @@ public class MatchesByScoreTest {
       {8},
       {85},
     };
+    int[][] scoredReportFiles = {
+      {0},
+      {0},
+      {0},
+    };
     MatchesByScore matchesByScore = MatchesByScore.create(new ScoreMatrix(
-      of("A", "B", "C"), ImmutableMap.of("1", fileOf("1")), scores, maxScore));
+      new String[] {"A", "B", "C"}, new String[] {"1"}, scoredReportFiles, scores, maxScore));
 
     assertThat(matchesByScore.getSize()).isEqualTo(2);
     assertThat(Lists.newArrayList(matchesByScore)).isEqualTo(Arrays.asList(
@@ -78,8 +78,4 @@ public class MatchesByScoreTest {
       ImmutableList.of(new Match("C", "1")) // 85
     ));
   }
-
-  private static FileSimilarity.File fileOf(String key) {
-    return new FileSimilarity.File("path of " + key, emptyList());
-  }
 }
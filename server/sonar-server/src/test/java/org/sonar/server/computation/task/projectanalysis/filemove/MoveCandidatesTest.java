@@ -0,0 +1,76 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filemove;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MoveCandidatesTest {
+
+  private Random random = new Random(42);
+
+  @Test
+  public void select_all_pairs_when_there_are_few_files() {
+    int[][] dbFiles = {{1, 2, 3}, null, {4}};
+    int[][] reportFiles = {{1, 2, 3}, {5, 6}};
+
+    int[][] candidates = MoveCandidates.select(dbFiles, reportFiles);
+
+    assertThat(candidates[0]).containsExactly(0, 1);
+    assertThat(candidates[1]).isEmpty();
+    assertThat(candidates[2]).containsExactly(0, 1);
+  }
+
+  @Test
+  public void select_only_similar_files_when_there_are_many_files() {
+    int fileCount = 400;
+    int[][] dbFiles = new int[fileCount][];
+    int[][] reportFiles = new int[fileCount][];
+    for (int i = 0; i < fileCount; i++) {
+      dbFiles[i] = randomLines(200);
+      reportFiles[i] = randomLines(200);
+    }
+    // report file i is db file i with 10% of its lines modified
+    for (int i = 0; i < fileCount; i += 2) {
+      reportFiles[i] = dbFiles[i].clone();
+      for (int line = 0; line < 20; line++) {
+        reportFiles[i][random.nextInt(200)] = random.nextInt();
+      }
+    }
+    // db files without source are never selected
+    dbFiles[1] = null;
+
+    int[][] candidates = MoveCandidates.select(dbFiles, reportFiles);
+
+    for (int i = 0; i < fileCount; i += 2) {
+      assertThat(candidates[i]).contains(i);
+    }
+    assertThat(candidates[1]).isEmpty();
+    int candidateCount = Arrays.stream(candidates).mapToInt(c -> c.length).sum();
+    assertThat(candidateCount).isLessThan(2 * fileCount);
+  }
+
+  private int[] randomLines(int lineCount) {
+    return random.ints(lineCount).toArray();
+  }
+}
@@ -19,7 +19,10 @@
  */
 package org.sonar.server.computation.task.projectanalysis.filemove;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -59,4 +62,43 @@ public class SourceSimilarityImplTest {
   public void two_empty_lists_are_not_considered_as_equal() {
     assertThat(underTest.score(emptyList(), emptyList())).isEqualTo(0);
   }
+
+  @Test
+  public void score_int_arrays_like_lists() {
+    assertThat(underTest.score(new int[] {1, 2, 3}, new int[] {1, 2, 3}, 0)).isEqualTo(100);
+    assertThat(underTest.score(new int[] {1, 2, 3, 4}, new int[] {1, 2, 5, 6}, 0)).isEqualTo(50);
+    assertThat(underTest.score(new int[] {1}, new int[] {1, 2, 3}, 0)).isEqualTo(33);
+    assertThat(underTest.score(new int[] {1, 2, 3}, new int[] {4, 5}, 0)).isEqualTo(0);
+    assertThat(underTest.score(new int[0], new int[0], 0)).isEqualTo(0);
+  }
+
+  @Test
+  public void score_int_arrays_having_min_score() {
+    int[] left = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    int[] right = {1, 2, 3, 4, 5, 6, 7, 8, 11, 12};
+
+    assertThat(underTest.score(left, right, 80)).isEqualTo(80);
+    assertThat(underTest.score(left, right, 85)).isLessThan(85);
+    assertThat(underTest.score(left, new int[] {1, 2, 3}, 85)).isLessThan(85);
+  }
+
+  @Test
+  public void score_int_arrays_above_min_score_is_exact() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      int[] left = random.ints(random.nextInt(50) + 1, 0, 10).toArray();
+      int[] right = left.clone();
+      right[random.nextInt(right.length)] = 10;
+      List<Integer> leftList = Arrays.stream(left).boxed().collect(Collectors.toList());
+      List<Integer> rightList = Arrays.stream(right).boxed().collect(Collectors.toList());
+      int expected = underTest.score(leftList, rightList);
+
+      assertThat(underTest.score(left, right, 0)).isEqualTo(expected);
+      if (expected >= 85) {
+        assertThat(underTest.score(left, right, 85)).isEqualTo(expected);
+      } else {
+        assertThat(underTest.score(left, right, 85)).isLessThan(85);
+      }
+    }
+  }
 }
@@ -44,11 +44,13 @@ import org.sonar.scanner.protocol.Constants;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitor;
 import org.sonar.server.computation.task.projectanalysis.filemove.MovedFilesRepository;
 import org.sonar.server.computation.task.projectanalysis.issue.commonrule.CommonRuleEngineImpl;
 import org.sonar.server.computation.task.projectanalysis.issue.filter.IssueFilter;
+import org.sonar.server.computation.task.projectanalysis.qualityprofile.ActiveRule;
 import org.sonar.server.computation.task.projectanalysis.qualityprofile.ActiveRulesHolderRule;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepositoryRule;
 
@@ -59,6 +61,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sonar.server.computation.task.projectanalysis.component.ReportComponent.builder;
@@ -187,6 +190,33 @@ public class IntegrateIssuesVisitorTest {
     assertThat(componentsWithUnprocessedIssues.getUuids()).isEmpty();
   }
 
+  @Test
+  public void reuse_issues_of_last_analysis_on_reused_file() throws Exception {
+    Component reusedFile = builder(Component.Type.FILE, FILE_REF)
+      .setKey(FILE_KEY)
+      .setUuid(FILE_UUID)
+      .setFileAttributes(new FileAttributes(false, "xoo", 1, true))
+      .build();
+    treeRootHolder.setRoot(builder(Component.Type.PROJECT, PROJECT_REF).setKey(PROJECT_KEY).setUuid(PROJECT_UUID).addChildren(reusedFile).build());
+    when(issueFilter.accept(any(DefaultIssue.class), eq(reusedFile))).thenReturn(true);
+    componentsWithUnprocessedIssues.setUuids(newHashSet(FILE_UUID));
+    RuleKey ruleKey = RuleTesting.XOO_X1;
+    addBaseIssue(ruleKey);
+    activeRulesHolderRule.put(new ActiveRule(ruleKey, Severity.MAJOR, Collections.emptyMap(), 1_000L));
+    // the file was not analyzed, issues of the report are ignored
+    reportReader.putIssues(FILE_REF, asList(ScannerReport.Issue.newBuilder().setRuleRepository("xoo").setRuleKey("S001").build()));
+    fileSourceRepository.addLine(FILE_REF, "line1");
+
+    underTest.visitAny(reusedFile);
+
+    ArgumentCaptor<DefaultIssue> baseIssueCaptor = ArgumentCaptor.forClass(DefaultIssue.class);
+    verify(issueLifecycle).mergeExistingOpenIssue(any(DefaultIssue.class), baseIssueCaptor.capture());
+    assertThat(baseIssueCaptor.getValue().key()).isEqualTo("ISSUE");
+    verify(issueLifecycle, never()).initNewOpenIssue(any(DefaultIssue.class));
+    assertThat(newArrayList(issueCache.traverse())).hasSize(1);
+    assertThat(componentsWithUnprocessedIssues.getUuids()).isEmpty();
+  }
+
   @Test
   public void execute_issue_visitors() throws Exception {
     componentsWithUnprocessedIssues.setUuids(Collections.<String>emptySet());
@@ -0,0 +1,231 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.issue;
+
+import java.util.Date;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.System2;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.core.issue.IssueChangeContext;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.protobuf.DbCommons;
+import org.sonar.db.protobuf.DbIssues;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IssueCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private IssueCache underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    underTest = new IssueCache(temp.newFile(), System2.INSTANCE);
+  }
+
+  @Test
+  public void traverse_empty_cache() {
+    try (CloseableIterator<DefaultIssue> issues = underTest.traverse()) {
+      assertThat(issues.hasNext()).isFalse();
+    }
+    try (CloseableIterator<DefaultIssue> issues = underTest.traverse("FILE1")) {
+      assertThat(issues.hasNext()).isFalse();
+    }
+  }
+
+  @Test
+  public void traverse_all_issues_in_order_of_insertion() {
+    underTest.newAppender()
+      .append(newIssue("I1", "FILE1"))
+      .append(newIssue("I2", "FILE1"))
+      .append(newIssue("I3", "FILE2"))
+      .close();
+    underTest.newAppender()
+      .append(newIssue("I4", "FILE1"))
+      .close();
+
+    assertThat(keys(underTest.traverse())).containsExactly("I1", "I2", "I3", "I4");
+  }
+
+  @Test
+  public void traverse_issues_of_component() {
+    underTest.newAppender()
+      .append(newIssue("I1", "FILE1"))
+      .append(newIssue("I2", "FILE2"))
+      .append(newIssue("I3", "FILE1"))
+      .close();
+    underTest.newAppender()
+      .append(newIssue("I4", "FILE1"))
+      .close();
+
+    assertThat(keys(underTest.traverse("FILE1"))).containsExactly("I1", "I3", "I4");
+    assertThat(keys(underTest.traverse("FILE2"))).containsExactly("I2");
+    assertThat(keys(underTest.traverse("FILE3"))).isEmpty();
+  }
+
+  @Test
+  public void issues_are_not_visible_until_appender_is_closed() {
+    IssueCache.Appender appender = underTest.newAppender().append(newIssue("I1", "FILE1"));
+
+    assertThat(keys(underTest.traverse())).isEmpty();
+
+    appender.close();
+    assertThat(keys(underTest.traverse())).containsExactly("I1");
+  }
+
+  @Test
+  public void fail_to_open_two_appenders_at_the_same_time() {
+    underTest.newAppender();
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("An appender is already opened");
+    underTest.newAppender();
+  }
+
+  @Test
+  public void fail_if_file_is_not_writable() throws Exception {
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Fail to write into file");
+
+    new IssueCache(temp.newFolder(), System2.INSTANCE);
+  }
+
+  @Test
+  public void write_and_read_all_fields() {
+    Date date = new Date(1_500_000_000_000L);
+    DbIssues.Locations locations = DbIssues.Locations.newBuilder()
+      .setTextRange(DbCommons.TextRange.newBuilder().setStartLine(1).setEndLine(2))
+      .build();
+    DefaultIssue issue = newIssue("I1", "FILE1")
+      .setType(RuleType.BUG)
+      .setComponentKey("PROJECT:File1")
+      .setModuleUuid("MODULE")
+      .setModuleUuidPath(".MODULE.")
+      .setProjectUuid("PROJECT")
+      .setProjectKey("PROJECT_KEY")
+      .setLanguage("java")
+      .setSeverity(Severity.BLOCKER)
+      .setManualSeverity(true)
+      .setMessage("the message")
+      .setLine(10)
+      .setGap(2.5d)
+      .setEffort(Duration.create(15L))
+      .setStatus("OPEN")
+      .setAssignee("john")
+      .setChecksum("abcde")
+      .setAttribute("jira", "SONAR-1")
+      .setAuthorLogin("steph")
+      .setTags(newArrayList("tag1", "tag2"))
+      .setLocations(locations)
+      .setCreationDate(date)
+      .setUpdateDate(date)
+      .setNew(false)
+      .setChanged(true)
+      .setSendNotifications(true)
+      .setSelectedAt(1_000L)
+      .addComment(DefaultIssueComment.create("I1", "john", "a comment"));
+    issue.setFieldChange(IssueChangeContext.createUser(date, "john"), "severity", Severity.MAJOR, Severity.BLOCKER);
+
+    underTest.newAppender().append(issue).close();
+
+    DefaultIssue read = underTest.traverse().next();
+    assertThat(read.key()).isEqualTo("I1");
+    assertThat(read.type()).isEqualTo(RuleType.BUG);
+    assertThat(read.componentUuid()).isEqualTo("FILE1");
+    assertThat(read.componentKey()).isEqualTo("PROJECT:File1");
+    assertThat(read.moduleUuid()).isEqualTo("MODULE");
+    assertThat(read.moduleUuidPath()).isEqualTo(".MODULE.");
+    assertThat(read.projectUuid()).isEqualTo("PROJECT");
+    assertThat(read.projectKey()).isEqualTo("PROJECT_KEY");
+    assertThat(read.ruleKey()).isEqualTo(RuleKey.of("xoo", "R1"));
+    assertThat(read.language()).isEqualTo("java");
+    assertThat(read.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(read.manualSeverity()).isTrue();
+    assertThat(read.message()).isEqualTo("the message");
+    assertThat(read.line()).isEqualTo(10);
+    assertThat(read.gap()).isEqualTo(2.5d);
+    assertThat(read.effort()).isEqualTo(Duration.create(15L));
+    assertThat(read.status()).isEqualTo("OPEN");
+    assertThat(read.resolution()).isNull();
+    assertThat(read.assignee()).isEqualTo("john");
+    assertThat(read.checksum()).isEqualTo("abcde");
+    assertThat(read.attribute("jira")).isEqualTo("SONAR-1");
+    assertThat(read.authorLogin()).isEqualTo("steph");
+    assertThat(read.tags()).containsExactly("tag1", "tag2");
+    assertThat((DbIssues.Locations) read.getLocations()).isEqualTo(locations);
+    assertThat(read.creationDate()).isEqualTo(date);
+    assertThat(read.updateDate()).isEqualTo(date);
+    assertThat(read.closeDate()).isNull();
+    assertThat(read.isNew()).isFalse();
+    assertThat(read.isChanged()).isTrue();
+    assertThat(read.mustSendNotifications()).isTrue();
+    assertThat(read.isBeingClosed()).isFalse();
+    assertThat(read.isOnDisabledRule()).isFalse();
+    assertThat(read.selectedAt()).isEqualTo(1_000L);
+    assertThat(read.comments()).hasSize(1);
+    DefaultIssueComment comment = (DefaultIssueComment) read.comments().get(0);
+    assertThat(comment.markdownText()).isEqualTo("a comment");
+    assertThat(comment.userLogin()).isEqualTo("john");
+    assertThat(comment.isNew()).isTrue();
+
+    FieldDiffs currentChange = read.currentChange();
+    assertThat(currentChange.userLogin()).isEqualTo("john");
+    assertThat(currentChange.creationDate()).isEqualTo(date);
+    assertThat(currentChange.get("severity").oldValue()).isEqualTo(Severity.MAJOR);
+    assertThat(currentChange.get("severity").newValue()).isEqualTo(Severity.BLOCKER);
+    assertThat(read.changes()).hasSize(issue.changes().size());
+    assertThat(read.changes().get(0)).isSameAs(currentChange);
+  }
+
+  private static DefaultIssue newIssue(String key, String componentUuid) {
+    return new DefaultIssue()
+      .setKey(key)
+      .setComponentUuid(componentUuid)
+      .setRuleKey(RuleKey.of("xoo", "R1"));
+  }
+
+  private static List<String> keys(CloseableIterator<DefaultIssue> issues) {
+    List<String> keys = newArrayList();
+    try {
+      while (issues.hasNext()) {
+        keys.add(issues.next().key());
+      }
+    } finally {
+      issues.close();
+    }
+    return keys;
+  }
+}
@@ -21,6 +21,9 @@ package org.sonar.server.computation.task.projectanalysis.issue;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -85,6 +88,26 @@ public class RuleRepositoryImplTest {
     verifyNoMethodCallTriggersCallToDB();
   }
 
+  @Test
+  public void rules_are_loaded_once_when_repository_is_read_concurrently() throws Exception {
+    when(ruleDao.selectAll(any(DbSession.class), eq(ORGANIZATION_UUID))).thenAnswer(invocation -> {
+      // widen the window during which the other thread may load rules too
+      Thread.sleep(100);
+      return ImmutableList.of(AB_RULE);
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Rule> first = executor.submit(() -> underTest.getByKey(AB_RULE.getKey()));
+      Future<Rule> second = executor.submit(() -> underTest.getByKey(AB_RULE.getKey()));
+
+      assertThat(first.get().getKey()).isEqualTo(AB_RULE.getKey());
+      assertThat(second.get().getKey()).isEqualTo(AB_RULE.getKey());
+    } finally {
+      executor.shutdownNow();
+    }
+    verify(ruleDao, times(1)).selectAll(any(DbSession.class), eq(ORGANIZATION_UUID));
+  }
+
   @Test
   public void first_call_to_findByKey_triggers_call_to_db_and_any_subsequent_get_or_find_call_does_not() {
     underTest.findByKey(AB_RULE.getKey());
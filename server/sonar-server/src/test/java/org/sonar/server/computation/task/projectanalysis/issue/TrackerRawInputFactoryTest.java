@@ -34,6 +34,7 @@ import org.sonar.scanner.protocol.output.ScannerReport.TextRange;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
 import org.sonar.server.computation.task.projectanalysis.issue.commonrule.CommonRuleEngine;
 import org.sonar.server.computation.task.projectanalysis.issue.filter.IssueFilter;
@@ -67,12 +68,14 @@ public class TrackerRawInputFactoryTest {
 
   IssueFilter issueFilter = mock(IssueFilter.class);
 
+  Input<DefaultIssue> baseInput = mock(Input.class);
+
   TrackerRawInputFactory underTest = new TrackerRawInputFactory(treeRootHolder, reportReader, fileSourceRepository, commonRuleEngine, issueFilter);
 
   @Test
   public void load_source_hash_sequences() throws Exception {
     fileSourceRepository.addLines(FILE_REF, "line 1;", "line 2;");
-    Input<DefaultIssue> input = underTest.create(FILE);
+    Input<DefaultIssue> input = underTest.create(FILE, baseInput);
 
     assertThat(input.getLineHashSequence()).isNotNull();
     assertThat(input.getLineHashSequence().getHashForLine(1)).isNotEmpty();
@@ -84,7 +87,7 @@ public class TrackerRawInputFactoryTest {
 
   @Test
   public void load_source_hash_sequences_only_on_files() throws Exception {
-    Input<DefaultIssue> input = underTest.create(PROJECT);
+    Input<DefaultIssue> input = underTest.create(PROJECT, baseInput);
 
     assertThat(input.getLineHashSequence()).isNotNull();
     assertThat(input.getBlockHashSequence()).isNotNull();
@@ -103,7 +106,7 @@ public class TrackerRawInputFactoryTest {
       .setGap(3.14)
       .build();
     reportReader.putIssues(FILE.getReportAttributes().getRef(), asList(reportIssue));
-    Input<DefaultIssue> input = underTest.create(FILE);
+    Input<DefaultIssue> input = underTest.create(FILE, baseInput);
 
     Collection<DefaultIssue> issues = input.getIssues();
     assertThat(issues).hasSize(1);
@@ -136,7 +139,7 @@ public class TrackerRawInputFactoryTest {
       .setGap(3.14)
       .build();
     reportReader.putIssues(FILE.getReportAttributes().getRef(), asList(reportIssue));
-    Input<DefaultIssue> input = underTest.create(FILE);
+    Input<DefaultIssue> input = underTest.create(FILE, baseInput);
 
     Collection<DefaultIssue> issues = input.getIssues();
     assertThat(issues).isEmpty();
@@ -153,7 +156,7 @@ public class TrackerRawInputFactoryTest {
       .build();
     reportReader.putIssues(FILE.getReportAttributes().getRef(), asList(reportIssue));
 
-    Input<DefaultIssue> input = underTest.create(FILE);
+    Input<DefaultIssue> input = underTest.create(FILE, baseInput);
 
     assertThat(input.getIssues()).isEmpty();
   }
@@ -168,7 +171,7 @@ public class TrackerRawInputFactoryTest {
       .setGap(10.0);
     when(commonRuleEngine.process(FILE)).thenReturn(asList(ceIssue));
 
-    Input<DefaultIssue> input = underTest.create(FILE);
+    Input<DefaultIssue> input = underTest.create(FILE, baseInput);
 
     assertThat(input.getIssues()).containsOnly(ceIssue);
     assertInitializedIssue(input.getIssues().iterator().next());
@@ -184,11 +187,47 @@ public class TrackerRawInputFactoryTest {
       .setGap(10.0);
     when(commonRuleEngine.process(FILE)).thenReturn(asList(ceIssue));
 
-    Input<DefaultIssue> input = underTest.create(FILE);
+    Input<DefaultIssue> input = underTest.create(FILE, baseInput);
 
     assertThat(input.getIssues()).isEmpty();
   }
 
+  @Test
+  public void load_issues_of_last_analysis_on_reused_file() throws Exception {
+    Component reusedFile = ReportComponent.builder(Component.Type.FILE, FILE_REF).setKey("FILE_KEY_2").setUuid("FILE_UUID_2")
+      .setFileAttributes(new FileAttributes(false, "java", 2, true))
+      .build();
+    when(issueFilter.accept(any(DefaultIssue.class), eq(reusedFile))).thenReturn(true);
+    DefaultIssue baseIssue = new DefaultIssue()
+      .setKey("ISSUE_KEY")
+      .setRuleKey(RuleKey.of("java", "S001"))
+      .setStatus(Issue.STATUS_CONFIRMED)
+      .setLine(2)
+      .setChecksum("checksum")
+      .setMessage("the message")
+      .setSeverity(Severity.BLOCKER)
+      .setGap(3.14);
+    DefaultIssue issueOnDisabledRule = new DefaultIssue()
+      .setRuleKey(RuleKey.of("java", "S002"))
+      .setOnDisabledRule(true);
+    DefaultIssue issueOnCommonRule = new DefaultIssue()
+      .setRuleKey(RuleKey.of(CommonRuleKeys.commonRepositoryForLang("java"), "InsufficientCoverage"));
+    when(baseInput.getIssues()).thenReturn(asList(baseIssue, issueOnDisabledRule, issueOnCommonRule));
+    // issues of the report are ignored, the file was not analyzed
+    reportReader.putIssues(FILE_REF, asList(ScannerReport.Issue.newBuilder().setRuleRepository("java").setRuleKey("S003").build()));
+
+    Input<DefaultIssue> input = underTest.create(reusedFile, baseInput);
+
+    DefaultIssue issue = Iterators.getOnlyElement(input.getIssues().iterator());
+    assertThat(issue.ruleKey()).isEqualTo(RuleKey.of("java", "S001"));
+    assertThat(issue.line()).isEqualTo(2);
+    assertThat(issue.checksum()).isEqualTo("checksum");
+    assertThat(issue.message()).isEqualTo("the message");
+    assertThat(issue.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(issue.gap()).isEqualTo(3.14);
+    assertInitializedIssue(issue);
+  }
+
   private void assertInitializedIssue(DefaultIssue issue) {
     assertThat(issue.componentKey()).isEqualTo(FILE.getKey());
     assertThat(issue.componentUuid()).isEqualTo(FILE.getUuid());
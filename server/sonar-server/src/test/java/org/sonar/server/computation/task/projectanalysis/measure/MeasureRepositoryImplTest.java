@@ -35,16 +35,20 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.sonar.api.utils.System2;
+import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
+import org.sonar.db.measure.MeasureDao;
 import org.sonar.db.measure.MeasureDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.scanner.protocol.output.ScannerReport.Measure.StringValue;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricImpl;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
@@ -52,10 +56,17 @@ import org.sonar.server.computation.task.projectanalysis.metric.ReportMetricVali
 
 import static com.google.common.collect.FluentIterable.from;
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -70,6 +81,8 @@ public class MeasureRepositoryImplTest {
   public DbTester dbTester = DbTester.create(System2.INSTANCE);
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
   private static final String FILE_COMPONENT_KEY = "file cpt key";
   private static final ReportComponent FILE_COMPONENT = ReportComponent.builder(Component.Type.FILE, 1).setKey(FILE_COMPONENT_KEY).build();
@@ -89,11 +102,12 @@ public class MeasureRepositoryImplTest {
 
   private DbClient dbClient = dbTester.getDbClient();
   private MetricRepository metricRepository = mock(MetricRepository.class);
-  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository, reportMetricValidator);
+  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository, reportMetricValidator, treeRootHolder);
 
   private DbClient mockedDbClient = mock(DbClient.class);
   private BatchReportReader mockBatchReportReader = mock(BatchReportReader.class);
-  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedDbClient, mockBatchReportReader, metricRepository, reportMetricValidator);
+  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedDbClient, mockBatchReportReader, metricRepository, reportMetricValidator,
+    treeRootHolder);
 
   private DbSession dbSession = dbTester.getSession();
 
@@ -415,6 +429,78 @@ public class MeasureRepositoryImplTest {
     assertThat(rawMeasures.get(METRIC_KEY_2)).containsOnly(Measure.newMeasureBuilder().create("some value"));
   }
 
+  @Test
+  public void getRawMeasure_loads_scanner_measures_of_last_analysis_on_reused_file() {
+    Component reusedFile = ReportComponent.builder(Component.Type.FILE, 1).setKey(FILE_COMPONENT_KEY).setUuid("uuid_1")
+      .setFileAttributes(new FileAttributes(false, "java", 10, true))
+      .build();
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 100).setUuid("project_uuid").addChildren(reusedFile).build());
+    when(metric1.getId()).thenReturn(METRIC_ID_1);
+    when(metric2.getId()).thenReturn(METRIC_ID_2);
+    when(metricRepository.getAll()).thenReturn(ImmutableList.of(metric1, metric2));
+    when(reportMetricValidator.validate(METRIC_KEY_1)).thenReturn(true);
+    when(reportMetricValidator.validate(METRIC_KEY_2)).thenReturn(false);
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_1, "uuid_1", LAST_ANALYSIS_UUID));
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_2, "uuid_1", LAST_ANALYSIS_UUID));
+    dbSession.commit();
+
+    Optional<Measure> res = underTest.getRawMeasure(reusedFile, metric1);
+
+    assertThat(res).isPresent();
+    assertThat(res.get().getStringValue()).isEqualTo(SOME_DATA);
+    // metric 2 is computed by Compute Engine
+    assertThat(underTest.getRawMeasure(reusedFile, metric2)).isAbsent();
+  }
+
+  @Test
+  public void getRawMeasure_retrieves_batch_measure_over_measure_of_last_analysis_on_reused_file() {
+    Component reusedFile = ReportComponent.builder(Component.Type.FILE, 1).setKey(FILE_COMPONENT_KEY).setUuid("uuid_1")
+      .setFileAttributes(new FileAttributes(false, "java", 10, true))
+      .build();
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 100).setUuid("project_uuid").addChildren(reusedFile).build());
+    when(metric1.getId()).thenReturn(METRIC_ID_1);
+    when(metricRepository.getAll()).thenReturn(ImmutableList.of(metric1));
+    when(reportMetricValidator.validate(METRIC_KEY_1)).thenReturn(true);
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_1, "uuid_1", LAST_ANALYSIS_UUID));
+    dbSession.commit();
+    reportReader.putMeasures(1, ImmutableList.of(
+      ScannerReport.Measure.newBuilder().setMetricKey(METRIC_KEY_1).setStringValue(StringValue.newBuilder().setValue("value1")).build()));
+
+    Optional<Measure> res = underTest.getRawMeasure(reusedFile, metric1);
+
+    assertThat(res.get().getStringValue()).isEqualTo("value1");
+  }
+
+  @Test
+  public void measures_of_last_analysis_are_loaded_at_once_for_all_reused_files() {
+    Component reusedFile1 = ReportComponent.builder(Component.Type.FILE, 1).setUuid("uuid_1")
+      .setFileAttributes(new FileAttributes(false, "java", 10, true))
+      .build();
+    Component reusedFile2 = ReportComponent.builder(Component.Type.FILE, 2).setUuid("uuid_2")
+      .setFileAttributes(new FileAttributes(false, "java", 10, true))
+      .build();
+    Component changedFile = ReportComponent.builder(Component.Type.FILE, 3).setUuid("uuid_3").build();
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 100).setUuid("project_uuid")
+      .addChildren(reusedFile1, reusedFile2, changedFile).build());
+    when(metric1.getId()).thenReturn(METRIC_ID_1);
+    when(metricRepository.getAll()).thenReturn(ImmutableList.of(metric1));
+    when(reportMetricValidator.validate(METRIC_KEY_1)).thenReturn(true);
+    MeasureDao measureDao = mock(MeasureDao.class);
+    when(mockedDbClient.measureDao()).thenReturn(measureDao);
+    when(mockedDbClient.openSession(false)).thenReturn(mock(DbSession.class));
+    when(measureDao.selectByComponentsAndMetrics(any(DbSession.class), anyListOf(String.class), anyListOf(Integer.class)))
+      .thenReturn(asList(createMeasureDto(METRIC_ID_1, "uuid_1", LAST_ANALYSIS_UUID), createMeasureDto(METRIC_ID_1, "uuid_2", LAST_ANALYSIS_UUID)));
+    when(mockBatchReportReader.readComponentMeasures(anyInt())).thenAnswer(invocation -> CloseableIterator.emptyCloseableIterator());
+
+    assertThat(underTestWithMock.getRawMeasure(reusedFile1, metric1).get().getStringValue()).isEqualTo(SOME_DATA);
+    assertThat(underTestWithMock.getRawMeasure(reusedFile2, metric1).get().getStringValue()).isEqualTo(SOME_DATA);
+    assertThat(underTestWithMock.getRawMeasure(changedFile, metric1)).isAbsent();
+
+    verify(measureDao, times(1)).selectByComponentsAndMetrics(any(DbSession.class), eq(asList("uuid_1", "uuid_2")), eq(asList(METRIC_ID_1)));
+  }
+
   private static MeasureDto createMeasureDto(int metricId, String componentUuid, String analysisUuid) {
     return new MeasureDto()
       .setComponentUuid(componentUuid)
@@ -37,6 +37,7 @@ import org.sonar.core.hash.SourceHashComputer;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbTester;
 import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.db.source.FileSourceDao;
 import org.sonar.db.source.FileSourceDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.analysis.Analysis;
@@ -46,6 +47,8 @@ import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.component.ViewsComponent;
 import org.sonar.server.computation.task.projectanalysis.source.SourceHashRepository;
 import org.sonar.server.computation.task.projectanalysis.source.SourceHashRepositoryImpl;
@@ -53,8 +56,16 @@ import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepos
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 import static org.sonar.api.utils.log.LoggerLevel.TRACE;
 import static org.sonar.server.computation.task.projectanalysis.component.ReportComponent.builder;
 
@@ -63,6 +74,7 @@ public class ScmInfoRepositoryImplTest {
 
   static final int FILE_REF = 1;
   static final Component FILE = builder(Component.Type.FILE, FILE_REF).setKey("FILE_KEY").setUuid("FILE_UUID").build();
+  static final Component PROJECT = builder(Component.Type.PROJECT, 100).setKey("PROJECT_KEY").setUuid("PROJECT_UUID").addChildren(FILE).build();
   static final long DATE_1 = 123456789L;
   static final long DATE_2 = 1234567810L;
 
@@ -79,13 +91,15 @@ public class ScmInfoRepositoryImplTest {
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
   @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule().setRoot(PROJECT);
+  @Rule
   public AnalysisMetadataHolderRule analysisMetadataHolder = new AnalysisMetadataHolderRule();
   @Rule
   public DbTester dbTester = DbTester.create(System2.INSTANCE);
 
   DbClient dbClient = dbTester.getDbClient();
 
-  ScmInfoRepositoryImpl underTest = new ScmInfoRepositoryImpl(reportReader, analysisMetadataHolder, dbClient,
+  ScmInfoRepositoryImpl underTest = new ScmInfoRepositoryImpl(reportReader, treeRootHolder, analysisMetadataHolder, dbClient,
     new SourceHashRepositoryImpl(new SourceLinesRepositoryImpl(reportReader)));
 
   @Test
@@ -207,14 +221,15 @@ public class ScmInfoRepositoryImplTest {
   @UseDataProvider("allTypeComponentButFile")
   public void do_not_query_db_nor_report_if_component_type_is_not_FILE(Component component) {
     BatchReportReader batchReportReader = mock(BatchReportReader.class);
+    TreeRootHolder treeRootHolder = mock(TreeRootHolder.class);
     AnalysisMetadataHolder analysisMetadataHolder = mock(AnalysisMetadataHolder.class);
     DbClient dbClient = mock(DbClient.class);
     SourceHashRepository sourceHashRepository = mock(SourceHashRepository.class);
-    ScmInfoRepositoryImpl underTest = new ScmInfoRepositoryImpl(batchReportReader, analysisMetadataHolder, dbClient, sourceHashRepository);
+    ScmInfoRepositoryImpl underTest = new ScmInfoRepositoryImpl(batchReportReader, treeRootHolder, analysisMetadataHolder, dbClient, sourceHashRepository);
 
     assertThat(underTest.getScmInfo(component)).isAbsent();
 
-    verifyNoMoreInteractions(batchReportReader, analysisMetadataHolder, dbClient, sourceHashRepository);
+    verifyNoMoreInteractions(batchReportReader, treeRootHolder, analysisMetadataHolder, dbClient, sourceHashRepository);
   }
 
   @Test
@@ -231,6 +246,58 @@ public class ScmInfoRepositoryImplTest {
     assertThat(logTester.logs(TRACE)).isEmpty();
   }
 
+  @Test
+  public void read_scm_info_of_all_unchanged_files_from_db_with_a_single_query() {
+    Component file2 = builder(Component.Type.FILE, 2).setKey("FILE2_KEY").setUuid("FILE2_UUID").build();
+    Component file3 = builder(Component.Type.FILE, 3).setKey("FILE3_KEY").setUuid("FILE3_UUID").build();
+    Component file4 = builder(Component.Type.FILE, 4).setKey("FILE4_KEY").setUuid("FILE4_UUID").build();
+    treeRootHolder.setRoot(builder(Component.Type.PROJECT, 100).setUuid("PROJECT_UUID").addChildren(FILE, file2, file3, file4).build());
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+    // unchanged files
+    addFileSourceInDb(FILE, "henry", DATE_1, "rev-1", computeSourceHash(1));
+    addFileSourceInReport(FILE_REF, 1);
+    addCopyFromPreviousChangesetInReport(FILE_REF);
+    addFileSourceInDb(file2, "paul", DATE_2, "rev-2", computeSourceHash(1));
+    addFileSourceInReport(2, 1);
+    addCopyFromPreviousChangesetInReport(2);
+    // unchanged file without sources in db
+    addFileSourceInReport(4, 1);
+    addCopyFromPreviousChangesetInReport(4);
+    // changed file
+    addFileSourceInDb(file3, "henry", DATE_1, "rev-1", computeSourceHash(1));
+    addChangesetInReport(3, "john", DATE_2, "rev-3", false);
+
+    FileSourceDao fileSourceDao = spy(dbClient.fileSourceDao());
+    DbClient spiedDbClient = spy(dbClient);
+    when(spiedDbClient.fileSourceDao()).thenReturn(fileSourceDao);
+    underTest = new ScmInfoRepositoryImpl(reportReader, treeRootHolder, analysisMetadataHolder, spiedDbClient,
+      new SourceHashRepositoryImpl(new SourceLinesRepositoryImpl(reportReader)));
+
+    assertThat(underTest.getScmInfo(FILE).get().getChangesetForLine(1).getAuthor()).isEqualTo("henry");
+    assertThat(underTest.getScmInfo(file2).get().getChangesetForLine(1).getAuthor()).isEqualTo("paul");
+    assertThat(underTest.getScmInfo(file3).get().getChangesetForLine(1).getAuthor()).isEqualTo("john");
+    assertThat(underTest.getScmInfo(file4)).isAbsent();
+
+    verify(fileSourceDao, times(1)).scrollSourcesOfProject(any(), eq("PROJECT_UUID"), any());
+    verify(fileSourceDao, never()).selectSourceByFileUuid(any(), anyString());
+    assertThat(logTester.logs(TRACE)).containsOnly(
+      "Reading SCM info from db for file 'FILE_KEY'",
+      "Reading SCM info from db for file 'FILE2_KEY'",
+      "Reading SCM info from db for file 'FILE4_KEY'",
+      "Reading SCM info from report for file 'FILE3_KEY'");
+  }
+
+  @Test
+  public void read_scm_info_from_db_when_file_is_not_in_the_component_tree() {
+    treeRootHolder.setRoot(builder(Component.Type.PROJECT, 100).setUuid("PROJECT_UUID").build());
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+    addFileSourceInDb("henry", DATE_1, "rev-1", computeSourceHash(1));
+    addFileSourceInReport(1);
+    addCopyFromPreviousChangesetInReport();
+
+    assertThat(underTest.getScmInfo(FILE).get().getChangesetForLine(1).getAuthor()).isEqualTo("henry");
+  }
+
   @Test
   public void not_read_in_db_on_first_analysis_when_CopyFromPrevious_is_true() throws Exception {
     analysisMetadataHolder.setBaseAnalysis(null);
@@ -243,6 +310,10 @@ public class ScmInfoRepositoryImplTest {
   }
 
   private void addFileSourceInDb(@Nullable String author, @Nullable Long date, @Nullable String revision, String srcHash) {
+    addFileSourceInDb(FILE, author, date, revision, srcHash);
+  }
+
+  private void addFileSourceInDb(Component file, @Nullable String author, @Nullable Long date, @Nullable String revision, String srcHash) {
     DbFileSources.Data.Builder fileDataBuilder = DbFileSources.Data.newBuilder();
     DbFileSources.Line.Builder builder = fileDataBuilder.addLinesBuilder()
       .setLine(1);
@@ -256,7 +327,7 @@ public class ScmInfoRepositoryImplTest {
       builder.setScmRevision(revision);
     }
     dbTester.getDbClient().fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
-      .setFileUuid(FILE.getUuid())
+      .setFileUuid(file.getUuid())
       .setProjectUuid("PROJECT_UUID")
       .setSourceData(fileDataBuilder.build())
       .setSrcHash(srcHash));
@@ -264,8 +335,12 @@ public class ScmInfoRepositoryImplTest {
   }
 
   private void addCopyFromPreviousChangesetInReport() {
+    addCopyFromPreviousChangesetInReport(FILE_REF);
+  }
+
+  private void addCopyFromPreviousChangesetInReport(int ref) {
     reportReader.putChangesets(ScannerReport.Changesets.newBuilder()
-      .setComponentRef(FILE_REF)
+      .setComponentRef(ref)
       .setCopyFromPrevious(true)
       .build());
   }
@@ -275,8 +350,12 @@ public class ScmInfoRepositoryImplTest {
   }
 
   private void addChangesetInReport(String author, Long date, String revision, boolean copyFromPrevious) {
+    addChangesetInReport(FILE_REF, author, date, revision, copyFromPrevious);
+  }
+
+  private void addChangesetInReport(int ref, String author, Long date, String revision, boolean copyFromPrevious) {
     reportReader.putChangesets(ScannerReport.Changesets.newBuilder()
-      .setComponentRef(FILE_REF)
+      .setComponentRef(ref)
       .setCopyFromPrevious(copyFromPrevious)
       .addChangeset(ScannerReport.Changesets.Changeset.newBuilder()
         .setAuthor(author)
@@ -288,9 +367,13 @@ public class ScmInfoRepositoryImplTest {
   }
 
   private void addFileSourceInReport(int lineCount) {
-    reportReader.putFileSourceLines(FILE_REF, generateLines(lineCount));
+    addFileSourceInReport(FILE_REF, lineCount);
+  }
+
+  private void addFileSourceInReport(int ref, int lineCount) {
+    reportReader.putFileSourceLines(ref, generateLines(lineCount));
     reportReader.putComponent(ScannerReport.Component.newBuilder()
-      .setRef(FILE_REF)
+      .setRef(ref)
       .setLines(lineCount)
       .build());
   }
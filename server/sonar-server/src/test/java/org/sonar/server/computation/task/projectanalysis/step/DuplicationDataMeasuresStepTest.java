@@ -21,9 +21,11 @@ package org.sonar.server.computation.task.projectanalysis.step;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.duplication.DuplicationRepositoryRule;
 import org.sonar.server.computation.task.projectanalysis.duplication.TextBlock;
+import org.sonar.server.computation.task.projectanalysis.measure.Measure;
 import org.sonar.server.computation.task.projectanalysis.measure.MeasureRepositoryRule;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepositoryRule;
 import org.sonar.server.computation.task.step.ComputationStep;
@@ -47,6 +49,8 @@ public class DuplicationDataMeasuresStepTest extends BaseStepTest {
   private static final int FILE_2_REF = 3;
   private static final String FILE_2_KEY = "FILE_2_KEY";
 
+  private static final int REUSED_FILE_REF = 4;
+
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule()
     .setRoot(
@@ -55,6 +59,8 @@ public class DuplicationDataMeasuresStepTest extends BaseStepTest {
         builder(FILE, FILE_1_REF).setKey(FILE_1_KEY)
           .build(),
         builder(FILE, FILE_2_REF).setKey(FILE_2_KEY)
+          .build(),
+        builder(FILE, REUSED_FILE_REF).setKey("REUSED_FILE_KEY").setFileAttributes(new FileAttributes(false, null, 1, true))
           .build())
       .build());
 
@@ -83,6 +89,16 @@ public class DuplicationDataMeasuresStepTest extends BaseStepTest {
     assertThat(measureRepository.getAddedRawMeasure(FILE_2_REF, DUPLICATIONS_DATA_KEY)).isAbsent();
   }
 
+  @Test
+  public void keep_duplications_of_last_analysis_on_reused_file() {
+    String duplications = "<duplications><g><b s=\"1\" l=\"5\" r=\"REUSED_FILE_KEY\"/><b s=\"6\" l=\"5\" r=\"REUSED_FILE_KEY\"/></g></duplications>";
+    measureRepository.addBaseMeasure(REUSED_FILE_REF, DUPLICATIONS_DATA_KEY, Measure.newMeasureBuilder().create(duplications));
+
+    underTest.execute();
+
+    assertThat(measureRepository.getAddedRawMeasure(REUSED_FILE_REF, DUPLICATIONS_DATA_KEY).get().getData()).isEqualTo(duplications);
+  }
+
   @Test
   public void compute_duplications_on_same_file() {
     duplicationRepository.addDuplication(FILE_1_REF, new TextBlock(1, 5), new TextBlock(6, 10));
@@ -49,12 +49,14 @@ import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationHashIndex;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
 import org.sonar.server.computation.task.projectanalysis.duplication.IntegrateCrossProjectDuplications;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -101,13 +103,16 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
 
   IntegrateCrossProjectDuplications integrateCrossProjectDuplications = mock(IntegrateCrossProjectDuplications.class);
 
+  CrossProjectDuplicationHashIndex hashIndex = mock(CrossProjectDuplicationHashIndex.class);
+
   Analysis baseProjectAnalysis;
 
   ComputationStep underTest = new LoadCrossProjectDuplicationsRepositoryStep(treeRootHolder, batchReportReader, analysisMetadataHolder, crossProjectDuplicationStatusHolder,
-    integrateCrossProjectDuplications, dbClient);
+    integrateCrossProjectDuplications, hashIndex, dbClient);
 
   @Before
   public void setUp() throws Exception {
+    when(hashIndex.mightContain(anyString(), anyString())).thenReturn(true);
     ComponentDto project = ComponentTesting.newProjectDto(dbTester.organizations().insert());
     dbClient.componentDao().insert(dbSession, project);
     SnapshotDto projectSnapshot = SnapshotTesting.newAnalysis(project);
@@ -153,6 +158,7 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
 
     underTest.execute();
 
+    verify(hashIndex).refresh();
     verify(integrateCrossProjectDuplications).computeCpd(CURRENT_FILE,
       Arrays.asList(
         new Block.Builder()
@@ -291,7 +297,7 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
 
     underTest.execute();
 
-    verifyZeroInteractions(integrateCrossProjectDuplications);
+    verifyZeroInteractions(integrateCrossProjectDuplications, hashIndex);
   }
 
   @Test
@@ -325,6 +331,39 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
     verifyZeroInteractions(integrateCrossProjectDuplications);
   }
 
+  @Test
+  public void nothing_to_do_when_hashes_are_not_in_hash_index() throws Exception {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+
+    String hash = "a8998353e96320ec";
+    dbClient.duplicationDao().insert(dbSession, new DuplicationUnitDto()
+      .setHash(hash)
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid()));
+    dbSession.commit();
+    when(hashIndex.mightContain(XOO_LANGUAGE, hash)).thenReturn(false);
+
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(ScannerReport.CpdTextBlock.newBuilder()
+      .setHash(hash)
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build()));
+
+    underTest.execute();
+
+    verifyZeroInteractions(integrateCrossProjectDuplications);
+  }
+
   private ComponentDto createProject(String projectKey) {
     ComponentDto project = ComponentTesting.newProjectDto(dbTester.organizations().insert()).setKey(projectKey);
     dbClient.componentDao().insert(dbSession, project);
@@ -34,19 +34,26 @@ import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetada
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationHashIndex;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class PersistCrossProjectDuplicationIndexStepTest {
 
   private static final int FILE_REF = 2;
-  private static final Component FILE = ReportComponent.builder(Component.Type.FILE, FILE_REF).build();
+  private static final String LANGUAGE = "xoo";
+  private static final Component FILE = ReportComponent.builder(Component.Type.FILE, FILE_REF)
+    .setFileAttributes(new FileAttributes(false, LANGUAGE, 1))
+    .build();
 
   private static final Component PROJECT = ReportComponent.builder(Component.Type.PROJECT, 1)
     .addChildren(FILE)
@@ -70,9 +77,12 @@ public class PersistCrossProjectDuplicationIndexStepTest {
 
   CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder = mock(CrossProjectDuplicationStatusHolder.class);
 
+  CrossProjectDuplicationHashIndex hashIndex = mock(CrossProjectDuplicationHashIndex.class);
+
   DbClient dbClient = dbTester.getDbClient();
 
-  ComputationStep underTest = new PersistCrossProjectDuplicationIndexStep(crossProjectDuplicationStatusHolder, dbClient, treeRootHolder, analysisMetadataHolder, reportReader);
+  ComputationStep underTest = new PersistCrossProjectDuplicationIndexStep(crossProjectDuplicationStatusHolder, dbClient, treeRootHolder, analysisMetadataHolder, reportReader,
+    hashIndex);
 
   @Before
   public void setUp() throws Exception {
@@ -117,6 +127,16 @@ public class PersistCrossProjectDuplicationIndexStepTest {
     assertThat(dtos).extracting("ANALYSIS_UUID").containsOnly(ANALYSIS_UUID);
   }
 
+  @Test
+  public void add_hashes_to_hash_index() throws Exception {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    reportReader.putDuplicationBlocks(FILE_REF, singletonList(CPD_TEXT_BLOCK));
+
+    underTest.execute();
+
+    verify(hashIndex).add(LANGUAGE, CPD_TEXT_BLOCK.getHash());
+  }
+
   @Test
   public void nothing_to_persist_when_no_cpd_text_blocks_in_report() throws Exception {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
@@ -135,6 +155,7 @@ public class PersistCrossProjectDuplicationIndexStepTest {
     underTest.execute();
 
     assertThat(dbTester.countRowsOfTable("duplications_index")).isEqualTo(0);
+    verifyZeroInteractions(hashIndex);
   }
 
 }
@@ -313,6 +313,43 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
   }
 
+  @Test
+  public void not_update_sources_of_reused_file() {
+    // Existing sources
+    long past = 150000L;
+    dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE_UUID)
+      .setDataType(Type.SOURCE)
+      .setSrcHash("5b4bd9815cdb17b8ceae19eb1810c34c")
+      .setLineHashes("6438c669e0d0de98e6929c2cc0fac474\n")
+      .setDataHash("6cad150e3d065976c230cddc5a09efaa")
+      .setSourceData(DbFileSources.Data.newBuilder()
+        .addLines(DbFileSources.Line.newBuilder()
+          .setLine(1)
+          .setSource("line1")
+          .setHighlighting("2,4,a")
+          .build())
+        .build())
+      .setCreatedAt(past)
+      .setUpdatedAt(past)
+      .setRevision("rev-0"));
+    dbTester.getSession().commit();
+
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(
+      ReportComponent.builder(Component.Type.FILE, FILE_REF).setUuid(FILE_UUID).setKey("MODULE_KEY:src/Foo.java")
+        .setFileAttributes(new FileAttributes(false, null, 1, true)).build())
+      .build());
+    fileSourceRepository.addLine(FILE_REF, "line1");
+
+    underTest.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSourceByFileUuid(session, FILE_UUID);
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
+    assertThat(fileSourceDto.getRevision()).isEqualTo("rev-0");
+    assertThat(fileSourceDto.getSourceData().getLines(0).getHighlighting()).isEqualTo("2,4,a");
+  }
+
   @Test
   public void update_sources_when_source_updated() {
     // Existing sources
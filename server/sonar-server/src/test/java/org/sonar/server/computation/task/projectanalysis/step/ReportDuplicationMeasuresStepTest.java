@@ -21,6 +21,7 @@ package org.sonar.server.computation.task.projectanalysis.step;
 
 import org.junit.Rule;
 import org.junit.Test;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.duplication.DuplicationRepositoryRule;
 import org.sonar.server.computation.task.projectanalysis.duplication.TextBlock;
@@ -63,6 +64,7 @@ public class ReportDuplicationMeasuresStepTest {
   private static final int FILE_2_REF = 12342;
   private static final int FILE_3_REF = 1261;
   private static final int FILE_4_REF = 1262;
+  private static final int REUSED_FILE_REF = 1263;
   private static final String SOME_FILE_KEY = "some file key";
 
   @Rule
@@ -83,7 +85,8 @@ public class ReportDuplicationMeasuresStepTest {
             builder(MODULE, SUB_MODULE_2_REF)
               .addChildren(
                 builder(FILE, FILE_3_REF).build(),
-                builder(FILE, FILE_4_REF).build()
+                builder(FILE, FILE_4_REF).build(),
+                builder(FILE, REUSED_FILE_REF).setFileAttributes(new FileAttributes(false, null, 1, true)).build()
               )
               .build())
           .build())
@@ -442,6 +445,23 @@ public class ReportDuplicationMeasuresStepTest {
     assertRawMeasureValue(ROOT_REF, DUPLICATED_LINES_DENSITY_KEY, 100d);
   }
 
+  @Test
+  public void reuse_duplication_measures_of_last_analysis_on_reused_file() {
+    measureRepository.addBaseMeasure(REUSED_FILE_REF, DUPLICATED_FILES_KEY, newMeasureBuilder().create(1));
+    measureRepository.addBaseMeasure(REUSED_FILE_REF, DUPLICATED_BLOCKS_KEY, newMeasureBuilder().create(3));
+    measureRepository.addBaseMeasure(REUSED_FILE_REF, DUPLICATED_LINES_KEY, newMeasureBuilder().create(20));
+    addDuplicatedBlock(FILE_4_REF, 5);
+
+    underTest.execute();
+
+    assertRawMeasureValue(REUSED_FILE_REF, DUPLICATED_FILES_KEY, 1);
+    assertRawMeasureValue(REUSED_FILE_REF, DUPLICATED_BLOCKS_KEY, 3);
+    assertRawMeasureValue(REUSED_FILE_REF, DUPLICATED_LINES_KEY, 20);
+    assertRawMeasureValue(SUB_MODULE_2_REF, DUPLICATED_FILES_KEY, 2);
+    assertRawMeasureValue(SUB_MODULE_2_REF, DUPLICATED_BLOCKS_KEY, 8);
+    assertRawMeasureValue(SUB_MODULE_2_REF, DUPLICATED_LINES_KEY, 25);
+  }
+
   /**
    * Adds duplication blocks of a single line (each line is specific to its block).
    *
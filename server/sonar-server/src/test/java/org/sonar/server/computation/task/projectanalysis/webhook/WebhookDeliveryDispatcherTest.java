@@ -0,0 +1,198 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.webhook;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class WebhookDeliveryDispatcherTest {
+
+  private static final long NOW = 1_500_000_000_000L;
+  private static final long ONE_HOUR = 3_600_000L;
+  private static final Webhook WEBHOOK = new Webhook("P1_UUID", "TASK_1", "First", "http://url1");
+  private static final WebhookPayload PAYLOAD = new WebhookPayload("P1", "{json}");
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+  @Rule
+  public LogTester logTester = new LogTester().setLevel(LoggerLevel.DEBUG);
+
+  private final TestWebhookCaller caller = new TestWebhookCaller();
+  private final WebhookDeliveryStorage deliveryStorage = mock(WebhookDeliveryStorage.class);
+  private WebhookDeliveryDispatcher underTest;
+
+  @After
+  public void tearDown() {
+    if (underTest != null) {
+      underTest.stop();
+    }
+  }
+
+  @Test
+  public void persist_deliveries_by_batch_when_stopping() {
+    caller.enqueueSuccess(NOW, 200, 1_234);
+    caller.enqueueSuccess(NOW, 204, 10);
+    underTest = newDispatcher(caller, 1, 100, 1, ONE_HOUR);
+    underTest.start();
+
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+    underTest.stop();
+
+    assertThat(caller.countSent()).isEqualTo(2);
+    assertThat(persistedDeliveries()).extracting(delivery -> delivery.getHttpStatus().get()).containsExactly(200, 204);
+    assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Sent webhook 'First' | url=http://url1 | time=1234ms | status=200");
+  }
+
+  @Test
+  public void persist_deliveries_periodically() {
+    caller.enqueueSuccess(NOW, 200, 1_234);
+    underTest = newDispatcher(caller, 1, 100, 1, 10L);
+    underTest.start();
+
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+
+    verify(deliveryStorage, timeout(5_000L)).persist(anyListOf(WebhookDelivery.class));
+  }
+
+  @Test
+  public void retry_on_connectivity_errors() {
+    caller.enqueueFailure(NOW, new IOException("Fail to connect"));
+    caller.enqueueSuccess(NOW, 200, 1_234);
+    underTest = newDispatcher(caller, 1, 100, 3, ONE_HOUR);
+    underTest.start();
+
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+    underTest.stop();
+
+    assertThat(caller.countSent()).isEqualTo(2);
+    assertThat(persistedDeliveries()).extracting(WebhookDelivery::isSuccess).containsExactly(true);
+  }
+
+  @Test
+  public void retry_on_server_errors() {
+    caller.enqueueSuccess(NOW, 503, 10);
+    caller.enqueueSuccess(NOW, 200, 1_234);
+    underTest = newDispatcher(caller, 1, 100, 3, ONE_HOUR);
+    underTest.start();
+
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+    underTest.stop();
+
+    assertThat(caller.countSent()).isEqualTo(2);
+    assertThat(persistedDeliveries()).extracting(delivery -> delivery.getHttpStatus().get()).containsExactly(200);
+  }
+
+  @Test
+  public void do_not_retry_on_client_errors() {
+    caller.enqueueSuccess(NOW, 404, 10);
+    underTest = newDispatcher(caller, 1, 100, 3, ONE_HOUR);
+    underTest.start();
+
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+    underTest.stop();
+
+    assertThat(caller.countSent()).isEqualTo(1);
+    assertThat(persistedDeliveries()).extracting(delivery -> delivery.getHttpStatus().get()).containsExactly(404);
+  }
+
+  @Test
+  public void persist_last_failure_when_all_attempts_fail() {
+    caller.enqueueFailure(NOW, new IOException("Fail to connect 1"));
+    caller.enqueueFailure(NOW, new IOException("Fail to connect 2"));
+    caller.enqueueFailure(NOW, new IOException("Fail to connect 3"));
+    underTest = newDispatcher(caller, 2, 100, 3, ONE_HOUR);
+    underTest.start();
+
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+    underTest.stop();
+
+    assertThat(caller.countSent()).isEqualTo(3);
+    assertThat(persistedDeliveries()).extracting(delivery -> delivery.getErrorMessage().get()).containsExactly("Fail to connect 3");
+    assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Failed to send webhook 'First' | url=http://url1 | message=Fail to connect 3");
+  }
+
+  @Test
+  public void drop_webhooks_when_too_many_deliveries_are_pending() {
+    caller.enqueueSuccess(NOW, 200, 1_234);
+    CountDownLatch slowServer = new CountDownLatch(1);
+    underTest = newDispatcher((webhook, payload) -> {
+      awaitUninterruptibly(slowServer);
+      return caller.call(webhook, payload);
+    }, 1, 1, 1, ONE_HOUR);
+    underTest.start();
+
+    underTest.dispatch(WEBHOOK, PAYLOAD);
+    underTest.dispatch(new Webhook("P1_UUID", "TASK_1", "Second", "http://url2"), PAYLOAD);
+    slowServer.countDown();
+    underTest.stop();
+
+    assertThat(caller.countSent()).isEqualTo(1);
+    assertThat(persistedDeliveries()).extracting(delivery -> delivery.getWebhook().getName()).containsExactly("First");
+    assertThat(logTester.logs(LoggerLevel.WARN)).containsExactly("Webhook 'Second' is not sent, too many deliveries are pending | url=http://url2");
+  }
+
+  @Test
+  public void do_not_persist_if_no_deliveries() {
+    underTest = newDispatcher(caller, 1, 100, 1, ONE_HOUR);
+    underTest.start();
+
+    underTest.stop();
+
+    verifyZeroInteractions(deliveryStorage);
+  }
+
+  @Test
+  public void fail_to_dispatch_if_not_started() {
+    underTest = null;
+    WebhookDeliveryDispatcher dispatcher = newDispatcher(caller, 1, 100, 1, ONE_HOUR);
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Webhook delivery is not started");
+
+    dispatcher.dispatch(WEBHOOK, PAYLOAD);
+  }
+
+  private WebhookDeliveryDispatcher newDispatcher(WebhookCaller caller, int threads, int maxPending, int maxAttempts, long flushDelayMs) {
+    return new WebhookDeliveryDispatcher(caller, deliveryStorage, threads, maxPending, maxAttempts, 1L, flushDelayMs);
+  }
+
+  private List<WebhookDelivery> persistedDeliveries() {
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(deliveryStorage).persist(captor.capture());
+    return captor.getValue();
+  }
+}
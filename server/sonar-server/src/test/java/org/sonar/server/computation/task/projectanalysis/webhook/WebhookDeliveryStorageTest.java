@@ -20,6 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.webhook;
 
 import java.io.IOException;
+import java.util.Arrays;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.System2;
@@ -85,6 +86,23 @@ public class WebhookDeliveryStorageTest {
     assertThat(dto.getErrorStacktrace()).contains("java.io.IOException", "fail to connect");
   }
 
+  @Test
+  public void persist_batch_of_deliveries() {
+    when(uuidFactory.create()).thenReturn("D1", "D2");
+    WebhookDelivery success = newBuilderTemplate().build();
+    WebhookDelivery failure = newBuilderTemplate()
+      .setHttpStatus(null)
+      .setDurationInMs(null)
+      .setError(new IOException("fail to connect"))
+      .build();
+
+    underTest.persist(Arrays.asList(success, failure));
+
+    assertThat(selectAllDeliveryUuids(dbTester, dbSession)).containsOnly("D1", "D2");
+    assertThat(dbClient.webhookDeliveryDao().selectByUuid(dbSession, "D1").get().isSuccess()).isTrue();
+    assertThat(dbClient.webhookDeliveryDao().selectByUuid(dbSession, "D2").get().getErrorStacktrace()).contains("fail to connect");
+  }
+
   @Test
   public void purge_deletes_records_older_than_one_month_on_the_project() {
     when(system.now()).thenReturn(NOW);
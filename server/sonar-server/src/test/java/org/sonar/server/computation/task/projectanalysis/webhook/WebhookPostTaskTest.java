@@ -21,10 +21,13 @@ package org.sonar.server.computation.task.projectanalysis.webhook;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.sonar.api.ce.posttask.CeTask;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester;
 import org.sonar.api.config.MapSettings;
@@ -34,10 +37,9 @@ import org.sonar.server.computation.task.projectanalysis.component.SettingsRepos
 import org.sonar.server.computation.task.projectanalysis.component.TestSettingsRepository;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester.newCeTaskBuilder;
@@ -60,6 +62,7 @@ public class WebhookPostTaskTest {
   private final TestWebhookCaller caller = new TestWebhookCaller();
   private final WebhookPayloadFactory payloadFactory = new TestWebhookPayloadFactory();
   private final WebhookDeliveryStorage deliveryStorage = mock(WebhookDeliveryStorage.class);
+  private final WebhookDeliveryDispatcher dispatcher = new WebhookDeliveryDispatcher(caller, deliveryStorage, 1, 100, 1, 0L, 3_600_000L);
 
   @Test
   public void do_nothing_if_no_webhooks() {
@@ -70,6 +73,31 @@ public class WebhookPostTaskTest {
     verifyZeroInteractions(deliveryStorage);
   }
 
+  @Test
+  public void do_not_wait_for_webhooks_to_be_sent() {
+    settings.setProperty("sonar.webhooks.global", "1");
+    settings.setProperty("sonar.webhooks.global.1.name", "First");
+    settings.setProperty("sonar.webhooks.global.1.url", "http://url1");
+    caller.enqueueSuccess(NOW, 200, 1_234);
+    CountDownLatch slowServer = new CountDownLatch(1);
+    WebhookDeliveryDispatcher slowDispatcher = new WebhookDeliveryDispatcher((webhook, payload) -> {
+      awaitUninterruptibly(slowServer);
+      return caller.call(webhook, payload);
+    }, deliveryStorage, 1, 100, 1, 0L, 3_600_000L);
+
+    slowDispatcher.start();
+    newTaskTester(slowDispatcher).execute();
+
+    // analysis is finished before the webhook is sent
+    assertThat(caller.countSent()).isEqualTo(0);
+    verify(deliveryStorage).purge(PROJECT_UUID);
+
+    slowServer.countDown();
+    slowDispatcher.stop();
+    assertThat(caller.countSent()).isEqualTo(1);
+    assertThat(persistedDeliveries()).hasSize(1);
+  }
+
   @Test
   public void send_global_webhooks() {
     settings.setProperty("sonar.webhooks.global", "1,2");
@@ -85,7 +113,7 @@ public class WebhookPostTaskTest {
     assertThat(caller.countSent()).isEqualTo(2);
     assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Sent webhook 'First' | url=http://url1 | time=1234ms | status=200");
     assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Failed to send webhook 'Second' | url=http://url2 | message=Fail to connect");
-    verify(deliveryStorage, times(2)).persist(any(WebhookDelivery.class));
+    assertThat(persistedDeliveries()).extracting(delivery -> delivery.getWebhook().getName()).containsExactly("First", "Second");
     verify(deliveryStorage).purge(PROJECT_UUID);
   }
 
@@ -100,7 +128,7 @@ public class WebhookPostTaskTest {
 
     assertThat(caller.countSent()).isEqualTo(1);
     assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Sent webhook 'First' | url=http://url1 | time=1234ms | status=200");
-    verify(deliveryStorage).persist(any(WebhookDelivery.class));
+    assertThat(persistedDeliveries()).hasSize(1);
     verify(deliveryStorage).purge(PROJECT_UUID);
   }
 
@@ -129,11 +157,27 @@ public class WebhookPostTaskTest {
     assertThat(logTester.logs(LoggerLevel.DEBUG).stream().filter(log -> log.contains("Sent"))).hasSize(10);
   }
 
+  private List<WebhookDelivery> persistedDeliveries() {
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(deliveryStorage).persist(captor.capture());
+    return captor.getValue();
+  }
+
   private void execute() {
+    dispatcher.start();
+    try {
+      newTaskTester(dispatcher).execute();
+    } finally {
+      // wait for webhooks to be sent
+      dispatcher.stop();
+    }
+  }
+
+  private PostProjectAnalysisTaskTester newTaskTester(WebhookDeliveryDispatcher dispatcher) {
     SettingsRepository settingsRepository = new TestSettingsRepository(settings);
-    WebhookPostTask task = new WebhookPostTask(rootHolder, settingsRepository, payloadFactory, caller, deliveryStorage);
+    WebhookPostTask task = new WebhookPostTask(rootHolder, settingsRepository, payloadFactory, dispatcher, deliveryStorage);
 
-    PostProjectAnalysisTaskTester.of(task)
+    return PostProjectAnalysisTaskTester.of(task)
       .at(new Date())
       .withCeTask(newCeTaskBuilder()
         .setStatus(CeTask.Status.SUCCESS)
@@ -144,7 +188,6 @@ public class WebhookPostTaskTest {
         .setKey("P1")
         .setName("Project One")
         .build())
-      .withScannerContext(newScannerContextBuilder().build())
-      .execute();
+      .withScannerContext(newScannerContextBuilder().build());
   }
 }
@@ -19,8 +19,14 @@
  */
 package org.sonar.server.computation.task.step;
 
+import com.google.common.collect.ImmutableSet;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -32,6 +38,7 @@ import org.sonar.server.computation.task.ChangeLogLevel;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
@@ -152,6 +159,68 @@ public class ComputationStepExecutorTest {
     new ComputationStepExecutor(mockComputationSteps(computationStep1), listener).execute();
   }
 
+  @Test
+  public void execute_runs_non_conflicting_ConcurrentComputationSteps_concurrently() {
+    CountDownLatch latch = new CountDownLatch(2);
+    ConcurrentStep step1 = new ConcurrentStep("step1", ImmutableSet.of(String.class), ImmutableSet.of(Integer.class), latch);
+    ConcurrentStep step2 = new ConcurrentStep("step2", ImmutableSet.of(String.class), ImmutableSet.of(Long.class), latch);
+
+    new ComputationStepExecutor(mockComputationSteps(step1, step2)).execute();
+
+    assertThat(step1.executed).isTrue();
+    assertThat(step2.executed).isTrue();
+    assertThat(step1.threadName).startsWith("ce-step-");
+    assertThat(step2.threadName).startsWith("ce-step-");
+  }
+
+  @Test
+  public void execute_runs_conflicting_ConcurrentComputationSteps_sequentially() {
+    AtomicInteger counter = new AtomicInteger();
+    ConcurrentStep step1 = new ConcurrentStep("step1", ImmutableSet.of(), ImmutableSet.of(String.class), counter);
+    ConcurrentStep step2 = new ConcurrentStep("step2", ImmutableSet.of(String.class), ImmutableSet.of(), counter);
+    ConcurrentStep step3 = new ConcurrentStep("step3", ImmutableSet.of(), ImmutableSet.of(String.class), counter);
+
+    new ComputationStepExecutor(mockComputationSteps(step1, step2, step3)).execute();
+
+    assertThat(step1.order).isEqualTo(1);
+    assertThat(step2.order).isEqualTo(2);
+    assertThat(step3.order).isEqualTo(3);
+  }
+
+  @Test
+  public void execute_does_not_run_ConcurrentComputationSteps_concurrently_with_other_steps() {
+    AtomicInteger counter = new AtomicInteger();
+    ConcurrentStep step1 = new ConcurrentStep("step1", ImmutableSet.of(), ImmutableSet.of(Integer.class), counter);
+    ConcurrentStep step3 = new ConcurrentStep("step3", ImmutableSet.of(), ImmutableSet.of(Long.class), counter);
+    ComputationStep step2 = mockComputationStep("step2");
+    doAnswer(invocation -> {
+      assertThat(counter.incrementAndGet()).isEqualTo(2);
+      return null;
+    }).when(step2).execute();
+
+    new ComputationStepExecutor(mockComputationSteps(step1, step2, step3)).execute();
+
+    assertThat(step1.order).isEqualTo(1);
+    assertThat(step3.order).isEqualTo(3);
+  }
+
+  @Test
+  public void execute_let_exception_thrown_by_ConcurrentComputationStep_go_up_as_is() {
+    RuntimeException toBeThrown = new RuntimeException("simulating failing concurrent step");
+    ConcurrentStep step1 = new ConcurrentStep("step1", ImmutableSet.of(), ImmutableSet.of(Integer.class), new AtomicInteger());
+    ConcurrentStep step2 = new ConcurrentStep("step2", ImmutableSet.of(), ImmutableSet.of(Long.class), new AtomicInteger());
+    step2.failure = toBeThrown;
+
+    try {
+      new ComputationStepExecutor(mockComputationSteps(step1, step2), listener).execute();
+      fail("exception toBeThrown should have been raised");
+    } catch (RuntimeException e) {
+      assertThat(e).isSameAs(toBeThrown);
+      assertThat(step1.executed).isTrue();
+      verify(listener).finished(false);
+    }
+  }
+
   private static ComputationSteps mockComputationSteps(ComputationStep... computationSteps) {
     ComputationSteps steps = mock(ComputationSteps.class);
     when(steps.instances()).thenReturn(Arrays.asList(computationSteps));
@@ -163,4 +232,71 @@ public class ComputationStepExecutorTest {
     when(mock.getDescription()).thenReturn(desc);
     return mock;
   }
+
+  private static class ConcurrentStep implements ConcurrentComputationStep {
+    private final String description;
+    private final Set<Class<?>> readDependencies;
+    private final Set<Class<?>> writeDependencies;
+    @Nullable
+    private final CountDownLatch latch;
+    @Nullable
+    private final AtomicInteger counter;
+    private RuntimeException failure;
+    private volatile boolean executed = false;
+    private volatile String threadName;
+    private volatile int order;
+
+    private ConcurrentStep(String description, Set<Class<?>> readDependencies, Set<Class<?>> writeDependencies, CountDownLatch latch) {
+      this(description, readDependencies, writeDependencies, latch, null);
+    }
+
+    private ConcurrentStep(String description, Set<Class<?>> readDependencies, Set<Class<?>> writeDependencies, AtomicInteger counter) {
+      this(description, readDependencies, writeDependencies, null, counter);
+    }
+
+    private ConcurrentStep(String description, Set<Class<?>> readDependencies, Set<Class<?>> writeDependencies,
+      @Nullable CountDownLatch latch, @Nullable AtomicInteger counter) {
+      this.description = description;
+      this.readDependencies = readDependencies;
+      this.writeDependencies = writeDependencies;
+      this.latch = latch;
+      this.counter = counter;
+    }
+
+    @Override
+    public void execute() {
+      threadName = Thread.currentThread().getName();
+      if (counter != null) {
+        order = counter.incrementAndGet();
+      }
+      if (latch != null) {
+        // fails if the other step is not executed at the same time
+        latch.countDown();
+        try {
+          assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      executed = true;
+      if (failure != null) {
+        throw failure;
+      }
+    }
+
+    @Override
+    public Set<Class<?>> readDependencies() {
+      return readDependencies;
+    }
+
+    @Override
+    public Set<Class<?>> writeDependencies() {
+      return writeDependencies;
+    }
+
+    @Override
+    public String getDescription() {
+      return description;
+    }
+  }
 }
@@ -20,6 +20,12 @@
 package org.sonar.server.es;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
@@ -27,9 +33,11 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.sonar.server.es.BulkIndexer.Size;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.sonar.server.es.FakeIndexDefinition.INDEX;
 import static org.sonar.server.es.FakeIndexDefinition.INDEX_TYPE_FAKE;
 
@@ -37,6 +45,8 @@ public class BulkIndexerTest {
 
   @Rule
   public EsTester esTester = new EsTester(new FakeIndexDefinition().setReplicas(1));
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
 
   @Test
   public void index_nothing() {
@@ -86,6 +96,102 @@ public class BulkIndexerTest {
     assertThat(replicas()).isEqualTo(1);
   }
 
+  @Test
+  public void large_indexing_loads_documents_in_a_dedicated_thread() {
+    AtomicReference<String> loaderThread = new AtomicReference<>();
+    Iterator<Integer> docs = IntStream.range(0, 1_000)
+      .peek(i -> loaderThread.set(Thread.currentThread().getName()))
+      .iterator();
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX)
+      .setSize(Size.LARGE);
+    indexer.start();
+    indexer.addAll(docs, this::newIndexRequest);
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(1_000);
+    assertThat(loaderThread.get()).isEqualTo("BulkIndexer[" + INDEX + "]-loader");
+    assertThat(indexer.getDocsPerSecond()).isPositive();
+    assertThat(indexer.getBytesInFlight()).isEqualTo(0);
+    assertThat(indexer.getRejectedRequests()).isEqualTo(0);
+  }
+
+  @Test
+  public void regular_indexing_loads_documents_in_current_thread() {
+    AtomicReference<String> loaderThread = new AtomicReference<>();
+    Iterator<Integer> docs = IntStream.range(0, 10)
+      .peek(i -> loaderThread.set(Thread.currentThread().getName()))
+      .iterator();
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX);
+    indexer.start();
+    indexer.addAll(docs, this::newIndexRequest);
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(10);
+    assertThat(loaderThread.get()).isEqualTo(Thread.currentThread().getName());
+  }
+
+  @Test
+  public void fail_if_documents_can_not_be_loaded() {
+    Iterator<Integer> docs = IntStream.range(0, 10)
+      .peek(i -> {
+        throw new IllegalStateException("db is down");
+      })
+      .iterator();
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX)
+      .setSize(Size.LARGE);
+    indexer.start();
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("db is down");
+
+    indexer.addAll(docs, this::newIndexRequest);
+  }
+
+  @Test
+  public void failure_to_stop_loader_does_not_hide_failure_of_indexing() {
+    CountDownLatch loaderReleased = new CountDownLatch(1);
+    // the loader is blocked after the first batch and can't be interrupted
+    Iterator<Integer> docs = Stream.concat(
+      IntStream.range(0, 100).boxed(),
+      Stream.of(100).peek(i -> Uninterruptibles.awaitUninterruptibly(loaderReleased)))
+      .iterator();
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX)
+      .setSize(Size.LARGE);
+    indexer.start();
+
+    try {
+      indexer.addAll(docs, doc -> {
+        // waiting for the termination of the loader then fails
+        Thread.currentThread().interrupt();
+        throw new IllegalArgumentException("Fail to convert document");
+      });
+      fail("An exception should be raised");
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Fail to convert document");
+      assertThat(e.getSuppressed()).extracting(Throwable::getMessage).containsExactly("Interrupted while waiting for documents to be loaded");
+    } finally {
+      Thread.interrupted();
+      loaderReleased.countDown();
+    }
+  }
+
+  @Test
+  public void forced_flush_size_does_not_adapt_to_latency() {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX)
+      .setFlushByteSize(500);
+    indexer.start();
+    for (int i = 0; i < 10; i++) {
+      indexer.add(newIndexRequest(i));
+    }
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(10);
+    assertThat(indexer.getFlushByteSize()).isEqualTo(500);
+  }
+
   @Test
   public void bulk_delete() throws Exception {
     int max = 500;
@@ -104,6 +210,61 @@ public class BulkIndexerTest {
     assertThat(count()).isEqualTo(removeFrom);
   }
 
+  @Test
+  public void concurrent_bulk_deletions_are_completed_on_stop() throws Exception {
+    int max = 500;
+    FakeDoc[] docs = new FakeDoc[max];
+    for (int i = 0; i < max; i++) {
+      docs[i] = FakeIndexDefinition.newDoc(i);
+    }
+    esTester.putDocuments(INDEX_TYPE_FAKE, docs);
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX);
+    indexer.start();
+    indexer.addDeletion(esTester.client().prepareSearch(INDEX_TYPE_FAKE)
+      .setQuery(QueryBuilders.rangeQuery(FakeIndexDefinition.INT_FIELD).lt(150)));
+    indexer.addDeletion(esTester.client().prepareSearch(INDEX_TYPE_FAKE)
+      .setQuery(QueryBuilders.rangeQuery(FakeIndexDefinition.INT_FIELD).gte(350)));
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(200);
+  }
+
+  @Test
+  public void requests_added_after_deletion_are_not_deleted() {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX);
+    indexer.start();
+    for (int i = 0; i < 500; i++) {
+      indexer.add(newIndexRequest(i).id(String.valueOf(i)));
+    }
+    indexer.stop();
+
+    // requests are sent as soon as they are added
+    indexer = new BulkIndexer(esTester.client(), INDEX).setFlushByteSize(1);
+    indexer.start();
+    indexer.addDeletion(esTester.client().prepareSearch(INDEX_TYPE_FAKE)
+      .setQuery(QueryBuilders.matchAllQuery()));
+    for (int i = 0; i < 10; i++) {
+      indexer.add(newIndexRequest(1_000 + i).id(String.valueOf(i)));
+    }
+    indexer.stop();
+
+    assertThat(esTester.getIds(INDEX_TYPE_FAKE)).containsOnly("0", "1", "2", "3", "4", "5", "6", "7", "8", "9");
+  }
+
+  @Test
+  public void fail_on_stop_if_deletion_fails() {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), INDEX);
+    indexer.start();
+    indexer.addDeletion(esTester.client().prepareSearch(INDEX_TYPE_FAKE)
+      .setQuery(QueryBuilders.rangeQuery(FakeIndexDefinition.INT_FIELD).lt("not a number")));
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Fail to delete documents of index " + INDEX);
+
+    indexer.stop();
+  }
+
   private long count() {
     return esTester.countDocuments("fakes", "fake");
   }
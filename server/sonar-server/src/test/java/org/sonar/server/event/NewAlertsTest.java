@@ -50,9 +50,9 @@ public class NewAlertsTest {
     Multimap<String, NotificationChannel> recipients = HashMultimap.create();
     recipients.put("user1", emailChannel);
     recipients.put("user2", twitterChannel);
-    when(notificationManager.findSubscribedRecipientsForDispatcher(dispatcher, "uuid_34")).thenReturn(recipients);
+    when(notificationManager.findNotificationSubscribers(dispatcher, "key_34")).thenReturn(recipients);
 
-    Notification notification = new Notification("alerts").setFieldValue("projectUuid", "uuid_34");
+    Notification notification = new Notification("alerts").setFieldValue("projectKey", "key_34");
     dispatcher.performDispatch(notification, context);
 
     verify(context).addUser("user1", emailChannel);
@@ -61,11 +61,11 @@ public class NewAlertsTest {
   }
 
   @Test
-  public void should_not_dispatch_if_missing_project_id() {
+  public void should_not_dispatch_if_missing_project_key() {
     Multimap<String, NotificationChannel> recipients = HashMultimap.create();
     recipients.put("user1", emailChannel);
     recipients.put("user2", twitterChannel);
-    when(notificationManager.findSubscribedRecipientsForDispatcher(dispatcher, "uuid_34")).thenReturn(recipients);
+    when(notificationManager.findNotificationSubscribers(dispatcher, "key_34")).thenReturn(recipients);
 
     Notification notification = new Notification("alerts");
     dispatcher.performDispatch(notification, context);
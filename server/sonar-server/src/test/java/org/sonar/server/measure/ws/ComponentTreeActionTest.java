@@ -52,6 +52,7 @@ import org.sonarqube.ws.WsMeasures;
 import org.sonarqube.ws.WsMeasures.ComponentTreeWsResponse;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.sonar.api.measures.CoreMetrics.NEW_SECURITY_RATING_KEY;
 import static org.sonar.api.measures.Metric.ValueType.DISTRIB;
 import static org.sonar.api.measures.Metric.ValueType.FLOAT;
@@ -295,6 +296,44 @@ public class ComponentTreeActionTest {
     assertThat(response.getPaging().getTotal()).isEqualTo(9);
   }
 
+  @Test
+  public void load_measures_of_the_page_only_when_sorted_by_metric() {
+    ComponentDto projectDto = newProjectDto(db.getDefaultOrganization(), "project-uuid");
+    SnapshotDto projectSnapshot = componentDb.insertProjectAndSnapshot(projectDto);
+    ComponentDto file1 = componentDb.insertComponent(newFileDto(projectDto, null, "file-uuid-1"));
+    ComponentDto file2 = componentDb.insertComponent(newFileDto(projectDto, null, "file-uuid-2"));
+    ComponentDto file3 = componentDb.insertComponent(newFileDto(projectDto, null, "file-uuid-3"));
+    MetricDto coverage = insertCoverageMetric();
+    MetricDto ncloc = dbClient.metricDao().insert(dbSession, newMetricDto()
+      .setKey("ncloc")
+      .setValueType(INT.name())
+      .setOptimizedBestValue(true)
+      .setBestValue(100d));
+    dbClient.measureDao().insert(dbSession,
+      newMeasureDto(coverage, projectDto, projectSnapshot).setValue(50.0d),
+      newMeasureDto(coverage, file1, projectSnapshot).setValue(30.0d),
+      newMeasureDto(coverage, file2, projectSnapshot).setValue(20.0d),
+      newMeasureDto(coverage, file3, projectSnapshot).setValue(10.0d),
+      newMeasureDto(ncloc, projectDto, projectSnapshot).setValue(500.0d),
+      newMeasureDto(ncloc, file2, projectSnapshot).setValue(200.0d));
+    db.commit();
+
+    ComponentTreeWsResponse response = ws.newRequest()
+      .setParam(PARAM_BASE_COMPONENT_ID, "project-uuid")
+      .setParam(Param.SORT, METRIC_SORT)
+      .setParam(PARAM_METRIC_SORT, "coverage")
+      .setParam(PARAM_METRIC_KEYS, "coverage,ncloc")
+      .setParam(Param.PAGE, "1")
+      .setParam(Param.PAGE_SIZE, "2")
+      .executeProtobuf(ComponentTreeWsResponse.class);
+
+    assertThat(response.getBaseComponent().getMeasuresList()).extracting("metric", "value").containsOnly(tuple("coverage", "50.0"), tuple("ncloc", "500"));
+    assertThat(response.getComponentsList()).extracting("id").containsExactly("file-uuid-3", "file-uuid-2");
+    assertThat(response.getComponentsList().get(0).getMeasuresList()).extracting("metric", "value").containsOnly(tuple("coverage", "10.0"), tuple("ncloc", "100"));
+    assertThat(response.getComponentsList().get(1).getMeasuresList()).extracting("metric", "value").containsOnly(tuple("coverage", "20.0"), tuple("ncloc", "200"));
+    assertThat(response.getPaging().getTotal()).isEqualTo(3);
+  }
+
   @Test
   public void sort_by_metric_value() {
     ComponentDto projectDto = newProjectDto(db.getDefaultOrganization(), "project-uuid");
@@ -24,6 +24,7 @@ import com.google.common.collect.Multimap;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import org.junit.Before;
@@ -35,12 +36,17 @@ import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.db.notification.NotificationQueueDao;
 import org.sonar.db.notification.NotificationQueueDto;
+import org.sonar.db.property.NotificationSubscriberDto;
 import org.sonar.db.property.PropertiesDao;
 
+import static com.google.common.collect.Sets.newHashSet;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -121,6 +127,31 @@ public class DefaultNotificationManagerTest {
     verify(manager, times(1)).logDeserializationIssue();
   }
 
+  @Test
+  public void getFromQueue_by_batch() throws Exception {
+    NotificationQueueDto dto1 = NotificationQueueDto.toNotificationQueueDto(new Notification("test1"));
+    NotificationQueueDto dto2 = mock(NotificationQueueDto.class);
+    when(dto2.toNotification()).thenThrow(new InvalidClassException("Pouet"));
+    NotificationQueueDto dto3 = NotificationQueueDto.toNotificationQueueDto(new Notification("test3"));
+    List<NotificationQueueDto> dtos = Arrays.asList(dto1, dto2, dto3);
+    when(notificationQueueDao.selectOldest(10)).thenReturn(dtos);
+
+    // notifications which can't be read are ignored
+    assertThat(manager.getFromQueue(10)).extracting(Notification::getType).containsExactly("test1", "test3");
+
+    InOrder inOrder = inOrder(notificationQueueDao);
+    inOrder.verify(notificationQueueDao).selectOldest(10);
+    inOrder.verify(notificationQueueDao).delete(dtos);
+  }
+
+  @Test
+  public void getFromQueue_by_batch_returns_empty_list_if_queue_is_empty() {
+    when(notificationQueueDao.selectOldest(10)).thenReturn(Collections.emptyList());
+
+    assertThat(manager.getFromQueue(10)).isEmpty();
+    verify(notificationQueueDao, never()).delete(any(List.class));
+  }
+
   @Test
   public void shouldFindNoRecipient() {
     assertThat(manager.findSubscribedRecipientsForDispatcher(dispatcher, "uuid_45").asMap().entrySet()).hasSize(0);
@@ -175,4 +206,40 @@ public class DefaultNotificationManagerTest {
     assertThat(map.get("user2")).containsOnly(emailChannel, twitterChannel);
     assertThat(map.get("other")).isNull();
   }
+
+  @Test
+  public void findNotificationSubscribers_of_a_batch_of_notifications() {
+    when(propertiesDao.selectNotificationSubscribers("NewViolations", "Email", null)).thenReturn(Lists.newArrayList("user1"));
+    when(propertiesDao.selectNotificationSubscribers("NewViolations", "Twitter", null)).thenReturn(Lists.newArrayList());
+    when(propertiesDao.selectNotificationSubscribersOfComponents(eq("NewViolations"), eq("Email"), any(Collection.class))).thenReturn(Arrays.asList(
+      newSubscriber("struts", "user2"), newSubscriber("sonar", "user3")));
+    when(propertiesDao.selectNotificationSubscribersOfComponents(eq("NewViolations"), eq("Twitter"), any(Collection.class))).thenReturn(Arrays.asList(
+      newSubscriber("sonar", "user2")));
+
+    manager.startSubscribersBatch(Arrays.asList(
+      new Notification("test").setFieldValue("projectKey", "struts"),
+      new Notification("test").setFieldValue("projectKey", "sonar"),
+      new Notification("test").setFieldValue("projectKey", "struts")));
+    Multimap<String, NotificationChannel> strutsSubscribers = manager.findNotificationSubscribers(dispatcher, "struts");
+    Multimap<String, NotificationChannel> sonarSubscribers = manager.findNotificationSubscribers(dispatcher, "sonar");
+    manager.stopSubscribersBatch();
+
+    assertThat(strutsSubscribers.asMap()).containsOnlyKeys("user1", "user2");
+    assertThat(strutsSubscribers.get("user2")).containsOnly(emailChannel);
+    assertThat(sonarSubscribers.asMap()).containsOnlyKeys("user1", "user3", "user2");
+    assertThat(sonarSubscribers.get("user2")).containsOnly(twitterChannel);
+    // a single request per dispatcher and channel for all the projects of the batch
+    verify(propertiesDao, times(1)).selectNotificationSubscribersOfComponents("NewViolations", "Email", newHashSet("struts", "sonar"));
+    verify(propertiesDao, times(1)).selectNotificationSubscribersOfComponents("NewViolations", "Twitter", newHashSet("struts", "sonar"));
+    verify(propertiesDao, times(1)).selectNotificationSubscribers("NewViolations", "Email", null);
+    verify(propertiesDao, never()).selectNotificationSubscribers(anyString(), anyString(), eq("struts"));
+
+    // batch is over
+    manager.findNotificationSubscribers(dispatcher, "struts");
+    verify(propertiesDao).selectNotificationSubscribers("NewViolations", "Email", "struts");
+  }
+
+  private static NotificationSubscriberDto newSubscriber(String componentKey, String login) {
+    return new NotificationSubscriberDto().setComponentKey(componentKey).setLogin(login);
+  }
 }
@@ -20,8 +20,17 @@
 package org.sonar.server.notification;
 
 import com.google.common.collect.Sets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.sonar.api.config.Settings;
@@ -31,15 +40,21 @@ import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.db.DbClient;
 import org.sonar.db.property.PropertiesDao;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -68,7 +83,7 @@ public class NotificationDaemonTest {
     when(commentOnIssueCreatedByMe.getType()).thenReturn("issue-changes");
     when(qualityGateChange.getKey()).thenReturn("QGateChange");
     when(qualityGateChange.getType()).thenReturn("qgate-changes");
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(singletonList(notification)).thenReturn(emptyList());
 
     Settings settings = new MapSettings().setProperty("sonar.notifications.delay", 1L);
 
@@ -174,7 +189,7 @@ public class NotificationDaemonTest {
   @Test
   public void shouldNotStopWhenException() {
     setUpMocks();
-    when(manager.getFromQueue()).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(singletonList(notification)).thenReturn(emptyList());
     doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
     doAnswer(addUser(CREATOR_SIMON, emailChannel)).when(commentOnIssueCreatedByMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
 
@@ -197,6 +212,99 @@ public class NotificationDaemonTest {
     verify(gtalkChannel, never()).deliver(any(Notification.class), anyString());
   }
 
+  @Test
+  public void deliver_batch_of_notifications_concurrently() throws InterruptedException {
+    setUpMocks();
+    Notification otherNotification = mock(Notification.class);
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    doAnswer(addUser(CREATOR_EVGENY, gtalkChannel)).when(commentOnIssueCreatedByMe).dispatch(same(otherNotification), any(NotificationDispatcher.Context.class));
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    List<Notification> delivered = new CopyOnWriteArrayList<>();
+
+    try {
+      service.deliver(Arrays.asList(notification, otherNotification), executor, delivered::add);
+    } finally {
+      executor.shutdown();
+    }
+
+    // deliveries are done when method returns
+    verify(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+    verify(emailChannel).deliver(otherNotification, ASSIGNEE_SIMON);
+    verify(gtalkChannel).deliver(otherNotification, CREATOR_EVGENY);
+    verify(gtalkChannel, never()).deliver(notification, CREATOR_EVGENY);
+    assertThat(delivered).containsOnly(notification, otherNotification);
+  }
+
+  @Test
+  public void never_call_a_channel_concurrently() throws InterruptedException {
+    setUpMocks();
+    List<Notification> notifications = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      notifications.add(mock(Notification.class));
+    }
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    AtomicInteger runningDeliveries = new AtomicInteger();
+    AtomicInteger maxRunningDeliveries = new AtomicInteger();
+    doAnswer(invocation -> {
+      maxRunningDeliveries.accumulateAndGet(runningDeliveries.incrementAndGet(), Math::max);
+      Thread.sleep(10);
+      runningDeliveries.decrementAndGet();
+      return null;
+    }).when(emailChannel).deliver(any(Notification.class), anyString());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      service.deliver(notifications, executor, n -> {
+      });
+    } finally {
+      executor.shutdown();
+    }
+
+    verify(emailChannel, times(10)).deliver(any(Notification.class), eq(ASSIGNEE_SIMON));
+    assertThat(maxRunningDeliveries.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void put_back_in_queue_the_notifications_not_delivered_when_stopping() throws InterruptedException {
+    setUpMocks();
+    Notification otherNotification = mock(Notification.class);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(notification, otherNotification)).thenReturn(emptyList());
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+    doAnswer(addUser(CREATOR_EVGENY, gtalkChannel)).when(commentOnIssueCreatedByMe).dispatch(same(otherNotification), any(NotificationDispatcher.Context.class));
+    // delivery by email is blocked until it is interrupted
+    CountDownLatch deliveryStarted = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      deliveryStarted.countDown();
+      Thread.sleep(Long.MAX_VALUE);
+      return null;
+    }).when(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+
+    underTest.start();
+    assertThat(deliveryStarted.await(2, TimeUnit.SECONDS)).isTrue();
+    verify(gtalkChannel, timeout(2000)).deliver(otherNotification, CREATOR_EVGENY);
+    underTest.stop();
+
+    verify(manager).scheduleForSending(singletonList(notification));
+  }
+
+  @Test
+  public void process_queue_by_batch() {
+    setUpMocks();
+    Notification otherNotification = mock(Notification.class);
+    List<Notification> batch = Arrays.asList(notification, otherNotification);
+    when(manager.getFromQueue(anyInt())).thenReturn(batch).thenReturn(emptyList());
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+
+    underTest.start();
+    verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    verify(emailChannel, timeout(2000)).deliver(otherNotification, ASSIGNEE_SIMON);
+    underTest.stop();
+
+    InOrder inOrder = inOrder(manager);
+    inOrder.verify(manager).startSubscribersBatch(batch);
+    inOrder.verify(manager).stopSubscribersBatch();
+  }
+
   @Test
   public void getDispatchers() {
     setUpMocks();
@@ -216,7 +324,7 @@ public class NotificationDaemonTest {
   public void shouldLogEvery10Minutes() {
     setUpMocks();
     // Emulate 2 notifications in DB
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(singletonList(notification)).thenReturn(singletonList(notification)).thenReturn(emptyList());
     when(manager.count()).thenReturn(1L).thenReturn(0L);
     underTest = spy(underTest);
     // Emulate processing of each notification take 10 min to have a log each time
@@ -51,6 +51,7 @@ import org.sonar.server.organization.TestOrganizationFlags;
 import org.sonar.server.qualityprofile.QProfileFactory;
 import org.sonar.server.qualityprofile.index.ActiveRuleIndexer;
 import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.user.AuthorizationCache;
 import org.sonar.server.user.index.UserIndex;
 import org.sonar.server.user.index.UserIndexDefinition;
 import org.sonar.server.user.index.UserIndexer;
@@ -60,6 +61,7 @@ import org.sonar.server.ws.WsActionTester;
 import static com.google.common.collect.ImmutableList.of;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.sonar.db.permission.OrganizationPermission.ADMINISTER;
@@ -84,8 +86,10 @@ public class DeleteActionTest {
   private QProfileFactory qProfileFactory = new QProfileFactory(dbClient, mock(UuidFactory.class), System2.INSTANCE, mock(ActiveRuleIndexer.class));
   private UserIndex userIndex = new UserIndex(es.client());
   private UserIndexer userIndexer = new UserIndexer(dbClient, es.client());
+  private AuthorizationCache authorizationCache = mock(AuthorizationCache.class);
 
-  private DeleteAction underTest = new DeleteAction(userSession, dbClient, defaultOrganizationProvider, componentCleanerService, organizationFlags, userIndexer, qProfileFactory);
+  private DeleteAction underTest = new DeleteAction(userSession, dbClient, defaultOrganizationProvider, componentCleanerService, organizationFlags, userIndexer, qProfileFactory,
+    authorizationCache);
 
   private WsActionTester wsTester = new WsActionTester(underTest);
 
@@ -295,6 +299,18 @@ public class DeleteActionTest {
       .contains("not deleted u1", "not deleted u3", "not deleted u4", "not deleted u5");
   }
 
+  @Test
+  public void request_invalidates_cache_of_permissions() {
+    OrganizationDto org = db.organizations().insert();
+    UserDto user = db.users().insertUser();
+    db.users().insertPermissionOnUser(org, user, "u1");
+    logInAsAdministrator(org);
+
+    sendRequest(org);
+
+    verify(authorizationCache, atLeastOnce()).invalidate();
+  }
+
   @Test
   public void request_also_deletes_members_of_specified_organization() {
     OrganizationDto org = db.organizations().insert();
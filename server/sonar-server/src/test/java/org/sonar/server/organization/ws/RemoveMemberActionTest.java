@@ -45,6 +45,7 @@ import org.sonar.server.exceptions.BadRequestException;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.exceptions.NotFoundException;
 import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.user.AuthorizationCache;
 import org.sonar.server.user.index.UserIndex;
 import org.sonar.server.user.index.UserIndexDefinition;
 import org.sonar.server.user.index.UserIndexer;
@@ -80,7 +81,7 @@ public class RemoveMemberActionTest {
   private UserIndex userIndex = new UserIndex(es.client());
   private UserIndexer userIndexer = new UserIndexer(dbClient, es.client());
 
-  private WsActionTester ws = new WsActionTester(new RemoveMemberAction(dbClient, userSession, userIndexer));
+  private WsActionTester ws = new WsActionTester(new RemoveMemberAction(dbClient, userSession, userIndexer, new AuthorizationCache()));
 
   private OrganizationDto organization;
   private ComponentDto project;
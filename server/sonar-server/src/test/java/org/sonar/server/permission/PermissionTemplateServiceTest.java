@@ -38,10 +38,12 @@ import org.sonar.db.user.UserDto;
 import org.sonar.server.permission.index.PermissionIndexer;
 import org.sonar.server.permission.ws.template.DefaultTemplatesResolverRule;
 import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.user.AuthorizationCache;
 
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.sonar.core.permission.GlobalPermissions.SCAN_EXECUTION;
 
 public class PermissionTemplateServiceTest {
@@ -57,7 +59,9 @@ public class PermissionTemplateServiceTest {
   private PermissionTemplateDbTester templateDb = dbTester.permissionTemplates();
   private DbSession session = dbTester.getSession();
   private PermissionIndexer permissionIndexer = mock(PermissionIndexer.class);
-  private PermissionTemplateService underTest = new PermissionTemplateService(dbTester.getDbClient(), permissionIndexer, userSession, defaultTemplatesResolver);
+  private AuthorizationCache authorizationCache = mock(AuthorizationCache.class);
+  private PermissionTemplateService underTest = new PermissionTemplateService(dbTester.getDbClient(), permissionIndexer, userSession, defaultTemplatesResolver,
+    authorizationCache);
 
   @Test
   public void apply_permission_template() {
@@ -91,6 +95,7 @@ public class PermissionTemplateServiceTest {
     assertThat(selectProjectPermissionsOfUser(user, project)).containsOnly("admin");
 
     checkAuthorizationUpdatedAtIsUpdated(project);
+    verify(authorizationCache).invalidate();
   }
 
   private List<String> selectProjectPermissionsOfGroup(OrganizationDto organizationDto, @Nullable GroupDto groupDto, ComponentDto project) {
@@ -23,11 +23,20 @@ import com.google.common.collect.ImmutableMap;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.System2;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
+import org.sonar.db.property.PropertiesDao;
 import org.sonar.db.property.PropertyDto;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.data.MapEntry.entry;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class DatabaseSettingLoaderTest {
 
@@ -74,6 +83,44 @@ public class DatabaseSettingLoaderTest {
   assertThat(map.build()).containsOnly(entry("foo", "1"), entry("bar", "2"));
  }
 
+  @Test
+  public void changes_in_db_are_visible_immediately() {
+    insertPropertyIntoDb(A_KEY, "foo");
+    assertThat(underTest.load(A_KEY)).isEqualTo("foo");
+
+    insertPropertyIntoDb(A_KEY, "bar");
+    assertThat(underTest.load(A_KEY)).isEqualTo("bar");
+
+    dbTester.getDbClient().propertiesDao().deleteGlobalProperty(A_KEY);
+    assertThat(underTest.load(A_KEY)).isNull();
+  }
+
+  @Test
+  public void do_not_reload_properties_when_they_did_not_change() {
+    insertPropertyIntoDb("foo", "1");
+    insertPropertyIntoDb("bar", "2");
+    PropertiesDao propertiesDao = spy(dbTester.getDbClient().propertiesDao());
+    DbClient dbClient = mock(DbClient.class);
+    when(dbClient.openSession(false)).thenAnswer(invocation -> dbTester.getDbClient().openSession(false));
+    when(dbClient.propertiesDao()).thenReturn(propertiesDao);
+    DatabaseSettingLoader underTest = new DatabaseSettingLoader(dbClient);
+
+    assertThat(underTest.load("foo")).isEqualTo("1");
+    assertThat(underTest.load("bar")).isEqualTo("2");
+    assertThat(underTest.load("missing")).isNull();
+
+    verify(propertiesDao, times(1)).selectGlobalProperties(any(DbSession.class));
+    verify(propertiesDao, times(3)).selectGlobalPropertiesVersion(any(DbSession.class));
+  }
+
+  @Test
+  public void component_and_user_properties_are_ignored() {
+    dbTester.getDbClient().propertiesDao().saveProperty(new PropertyDto().setKey(A_KEY).setValue("component").setResourceId(10L));
+    dbTester.getDbClient().propertiesDao().saveProperty(new PropertyDto().setKey(A_KEY).setValue("user").setUserId(100));
+
+    assertThat(underTest.load(A_KEY)).isNull();
+  }
+
   private void insertPropertyIntoDb(String key, String value) {
     dbTester.getDbClient().propertiesDao().saveProperty(new PropertyDto().setKey(key).setValue(value));
   }
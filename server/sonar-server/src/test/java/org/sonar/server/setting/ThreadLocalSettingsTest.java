@@ -37,7 +37,11 @@ import org.sonar.api.config.PropertyDefinitions;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.data.MapEntry.entry;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 public class ThreadLocalSettingsTest {
 
@@ -213,6 +217,32 @@ public class ThreadLocalSettingsTest {
     underTest.unload();
   }
 
+  @Test
+  public void load_all_db_properties_once_when_cache_is_enabled() {
+    SettingLoader settingLoader = mock(SettingLoader.class);
+    underTest = new ThreadLocalSettings(new PropertyDefinitions(), new Properties(), settingLoader);
+    underTest.load();
+
+    assertThat(underTest.get("foo")).isNotPresent();
+    assertThat(underTest.get("bar")).isNotPresent();
+
+    verify(settingLoader).loadAll(any(ImmutableMap.Builder.class));
+    verify(settingLoader, never()).load(anyString());
+    underTest.unload();
+  }
+
+  @Test
+  public void remove_db_property_from_cache() {
+    insertPropertyIntoDb("foo", "from db");
+    underTest = create(Collections.emptyMap());
+
+    underTest.load();
+    assertThat(underTest.get("foo").get()).isEqualTo("from db");
+    underTest.remove("foo");
+    assertThat(underTest.get("foo")).isNotPresent();
+    underTest.unload();
+  }
+
   @Test
   public void change_setting_loader() {
     underTest = new ThreadLocalSettings(new PropertyDefinitions(), new Properties());
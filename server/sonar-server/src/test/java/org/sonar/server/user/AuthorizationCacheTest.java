@@ -0,0 +1,122 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.user;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.sonar.db.user.GroupDto;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AuthorizationCacheTest {
+
+  private static final AuthorizationCache.Subject USER = AuthorizationCache.Subject.of(10, Collections.emptyList());
+
+  private AuthorizationCache underTest = new AuthorizationCache();
+  private AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void load_project_permissions_once_per_subject_and_project() {
+    assertThat(underTest.getProjectPermissions(USER, "P1", () -> load("user"))).containsOnly("user");
+    assertThat(underTest.getProjectPermissions(USER, "P1", () -> load("admin"))).containsOnly("user");
+    assertThat(underTest.getProjectPermissions(USER, "P2", () -> load("admin"))).containsOnly("admin");
+    assertThat(underTest.getProjectPermissions(AuthorizationCache.Subject.anonymous(), "P1", () -> load("codeviewer"))).containsOnly("codeviewer");
+
+    assertThat(loads.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void project_and_organization_permissions_do_not_share_entries() {
+    underTest.getProjectPermissions(USER, "U1", () -> load("user"));
+
+    assertThat(underTest.getOrganizationPermissions(USER, "U1", Collections::emptySet)).isEmpty();
+  }
+
+  @Test
+  public void subjects_are_equal_when_user_and_groups_are_equal() {
+    GroupDto group1 = new GroupDto().setId(1);
+    GroupDto group2 = new GroupDto().setId(2);
+
+    assertThat(AuthorizationCache.Subject.of(10, asList(group1, group2))).isEqualTo(AuthorizationCache.Subject.of(10, asList(group2, group1)));
+    assertThat(AuthorizationCache.Subject.of(10, asList(group1, group2)).hashCode()).isEqualTo(AuthorizationCache.Subject.of(10, asList(group2, group1)).hashCode());
+    assertThat(AuthorizationCache.Subject.of(10, asList(group1))).isNotEqualTo(AuthorizationCache.Subject.of(10, asList(group1, group2)));
+    assertThat(AuthorizationCache.Subject.of(11, asList(group1))).isNotEqualTo(AuthorizationCache.Subject.of(10, asList(group1)));
+    assertThat(AuthorizationCache.Subject.of(10, Collections.emptyList())).isNotEqualTo(AuthorizationCache.Subject.anonymous());
+  }
+
+  @Test
+  public void invalidate_reloads_permissions() {
+    underTest.getProjectPermissions(USER, "P1", () -> load("user"));
+
+    underTest.invalidate();
+
+    assertThat(underTest.getProjectPermissions(USER, "P1", () -> load("admin"))).containsOnly("admin");
+    assertThat(loads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void permissions_loaded_during_invalidation_are_not_reused() {
+    assertThat(underTest.getProjectPermissions(USER, "P1", () -> {
+      Set<String> loaded = load("user");
+      // permissions are changed while being loaded
+      underTest.invalidate();
+      return loaded;
+    })).containsOnly("user");
+
+    assertThat(underTest.getProjectPermissions(USER, "P1", () -> load("admin"))).containsOnly("admin");
+  }
+
+  @Test
+  public void keep_project_of_components_until_invalidation() {
+    assertThat(underTest.getProjectUuid("FILE", () -> Optional.of("PROJECT"))).contains("PROJECT");
+    assertThat(underTest.getProjectUuid("FILE", () -> Optional.of("OTHER"))).contains("PROJECT");
+
+    underTest.invalidate();
+
+    assertThat(underTest.getProjectUuid("FILE", Optional::empty)).isEmpty();
+  }
+
+  @Test
+  public void do_not_keep_unknown_components() {
+    assertThat(underTest.getProjectUuid("FILE", Optional::empty)).isEmpty();
+
+    assertThat(underTest.getProjectUuid("FILE", () -> Optional.of("PROJECT"))).contains("PROJECT");
+  }
+
+  @Test
+  public void evict_entries_when_max_size_is_reached() {
+    AuthorizationCache underTest = new AuthorizationCache(1);
+    underTest.getProjectPermissions(USER, "P1", () -> load("user"));
+    underTest.getProjectPermissions(USER, "P2", () -> load("user"));
+
+    underTest.getProjectPermissions(USER, "P1", () -> load("user"));
+
+    assertThat(loads.get()).isEqualTo(3);
+  }
+
+  private Set<String> load(String permission) {
+    loads.incrementAndGet();
+    return Collections.singleton(permission);
+  }
+}
@@ -72,6 +72,7 @@ public class ServerUserSessionTest {
   private UserDto userDto = newUserDto().setLogin(LOGIN);
   private TestOrganizationFlags organizationFlags = TestOrganizationFlags.standalone();
   private TestDefaultOrganizationProvider defaultOrganizationProvider = TestDefaultOrganizationProvider.from(db);
+  private AuthorizationCache authorizationCache = new AuthorizationCache();
   private OrganizationDto organization;
   private ComponentDto project;
 
@@ -320,6 +321,43 @@ public class ServerUserSessionTest {
     assertThat(session.hasComponentPermission(UserRole.ADMIN, project)).isFalse();
   }
 
+  @Test
+  public void hasComponentPermission_shares_permissions_between_sessions_until_cache_is_invalidated() {
+    ComponentDto project = db.components().insertProject();
+    db.users().insertProjectPermissionOnUser(userDto, UserRole.USER, project);
+
+    // feed the cache
+    assertThat(newUserSession(userDto).hasComponentPermission(UserRole.USER, project)).isTrue();
+
+    db.users().deletePermissionFromUser(project, userDto, UserRole.USER);
+    assertThat(newUserSession(userDto).hasComponentPermission(UserRole.USER, project)).isTrue();
+
+    authorizationCache.invalidate();
+    assertThat(newUserSession(userDto).hasComponentPermission(UserRole.USER, project)).isFalse();
+  }
+
+  @Test
+  public void hasComponentPermission_does_not_share_permissions_between_sessions_when_group_membership_changes() {
+    ComponentDto project = db.components().insertProject();
+    GroupDto group = db.users().insertGroup();
+    db.users().insertProjectPermissionOnGroup(group, UserRole.CODEVIEWER, project);
+
+    // feed the cache
+    assertThat(newUserSession(userDto).hasComponentPermission(UserRole.CODEVIEWER, project)).isFalse();
+
+    db.users().insertMember(group, userDto);
+    assertThat(newUserSession(userDto).hasComponentPermission(UserRole.CODEVIEWER, project)).isTrue();
+  }
+
+  @Test
+  public void hasPermission_on_organization_does_not_share_permissions_of_anonymous_with_logged_in_user() {
+    OrganizationDto org = db.organizations().insert();
+    db.users().insertPermissionOnUser(org, userDto, PROVISIONING);
+
+    assertThat(newAnonymousSession().hasPermission(PROVISION_PROJECTS, org.getUuid())).isFalse();
+    assertThat(newUserSession(userDto).hasPermission(PROVISION_PROJECTS, org.getUuid())).isTrue();
+  }
+
   @Test
   public void isSystemAdministrator_returns_true_if_org_feature_is_enabled_and_user_is_root() {
     organizationFlags.setEnabled(true);
@@ -406,7 +444,7 @@ public class ServerUserSessionTest {
   }
 
   private ServerUserSession newUserSession(@Nullable UserDto userDto) {
-    return new ServerUserSession(dbClient, organizationFlags, defaultOrganizationProvider, userDto);
+    return new ServerUserSession(dbClient, organizationFlags, defaultOrganizationProvider, authorizationCache, userDto);
   }
 
   private ServerUserSession newAnonymousSession() {
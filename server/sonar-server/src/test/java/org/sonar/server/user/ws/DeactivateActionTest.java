@@ -45,6 +45,7 @@ import org.sonar.server.exceptions.UnauthorizedException;
 import org.sonar.server.organization.DefaultOrganizationProvider;
 import org.sonar.server.organization.TestDefaultOrganizationProvider;
 import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.user.AuthorizationCache;
 import org.sonar.server.user.index.UserIndex;
 import org.sonar.server.user.index.UserIndexDefinition;
 import org.sonar.server.user.index.UserIndexer;
@@ -88,7 +89,7 @@ public class DeactivateActionTest {
   private DbSession dbSession = db.getSession();
 
   private WsActionTester ws = new WsActionTester(new DeactivateAction(
-    dbClient, userIndexer, userSession, new UserJsonWriter(userSession), defaultOrganizationProvider));
+    dbClient, userIndexer, userSession, new UserJsonWriter(userSession), defaultOrganizationProvider, new AuthorizationCache()));
 
   @Test
   public void deactivate_user_and_delete_his_related_data() {
@@ -19,11 +19,14 @@
  */
 package org.sonar.core.issue.tracking;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Objects;
-import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import javax.annotation.Nullable;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.InstantiationStrategy;
@@ -35,215 +38,275 @@ public class Tracker<RAW extends Trackable, BASE extends Trackable> {
 
   public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
     Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+    if (tracking.isComplete()) {
+      return tracking;
+    }
+
+    // rule keys, line hashes and messages are interned once, so that the search keys of all the passes are primitive
+    Interner interner = new Interner();
+    IndexedTrackables<RAW> raws = new IndexedTrackables<>(rawInput.getIssues(), interner);
+    IndexedTrackables<BASE> bases = new IndexedTrackables<>(baseInput.getIssues(), interner);
 
     // 1. match issues with same rule, same line and same line hash, but not necessarily with same message
-    match(tracking, LineAndLineHashKeyFactory.INSTANCE);
+    match(tracking, raws, bases, SearchKeyType.LINE_AND_LINE_HASH);
 
     // 2. detect code moves by comparing blocks of codes
-    detectCodeMoves(rawInput, baseInput, tracking);
+    detectCodeMoves(rawInput, baseInput, tracking, raws, bases);
 
     // 3. match issues with same rule, same message and same line hash
-    match(tracking, LineHashAndMessageKeyFactory.INSTANCE);
+    match(tracking, raws, bases, SearchKeyType.LINE_HASH_AND_MESSAGE);
 
     // 4. match issues with same rule, same line and same message
-    match(tracking, LineAndMessageKeyFactory.INSTANCE);
+    match(tracking, raws, bases, SearchKeyType.LINE_AND_MESSAGE);
 
     // 5. match issues with same rule and same line hash but different line and different message.
     // See SONAR-2812
-    match(tracking, LineHashKeyFactory.INSTANCE);
+    match(tracking, raws, bases, SearchKeyType.LINE_HASH);
 
     return tracking;
   }
 
-  private void detectCodeMoves(Input<RAW> rawInput, Input<BASE> baseInput, Tracking<RAW, BASE> tracking) {
-    if (!tracking.isComplete()) {
+  private void detectCodeMoves(Input<RAW> rawInput, Input<BASE> baseInput, Tracking<RAW, BASE> tracking,
+    IndexedTrackables<RAW> raws, IndexedTrackables<BASE> bases) {
+    if (tracking.isComplete()) {
+      return;
+    }
+    LineHashSequence rawHashes = rawInput.getLineHashSequence();
+    if (rawHashes.getHashes().equals(baseInput.getLineHashSequence().getHashes())) {
+      // unchanged file: no code moved, so blocks do not need to be computed. Issues
+      // on the same line with the same rule are matched, as block recognition does for unmoved lines.
+      int lineCount = rawHashes.length();
+      match(tracking, raws, bases, SearchKeyType.LINE, line -> line > 0 && line <= lineCount);
+    } else {
       new BlockRecognizer<RAW, BASE>().match(rawInput, baseInput, tracking);
     }
   }
 
-  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
+  private void match(Tracking<RAW, BASE> tracking, IndexedTrackables<RAW> raws, IndexedTrackables<BASE> bases, SearchKeyType keyType) {
+    match(tracking, raws, bases, keyType, line -> true);
+  }
+
+  private void match(Tracking<RAW, BASE> tracking, IndexedTrackables<RAW> raws, IndexedTrackables<BASE> bases, SearchKeyType keyType,
+    IntPredicate acceptLine) {
     if (tracking.isComplete()) {
       return;
     }
 
-    Multimap<SearchKey, BASE> baseSearch = ArrayListMultimap.create();
-    for (BASE base : tracking.getUnmatchedBases()) {
-      baseSearch.put(factory.create(base), base);
+    // unmatched bases are chained by search key, in the order of the input
+    LongIntHashMap firstBaseByKey = new LongIntHashMap(bases.size());
+    int[] nextBase = new int[bases.size()];
+    for (int i = bases.size() - 1; i >= 0; i--) {
+      if (tracking.containsUnmatchedBase(bases.get(i)) && acceptLine.test(bases.line(i))) {
+        nextBase[i] = firstBaseByKey.put(bases.searchKey(i, keyType), i);
+      }
     }
 
-    for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = factory.create(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      if (!bases.isEmpty()) {
-        // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
-        // Message could be checked to take the best one.
-        BASE match = bases.iterator().next();
-        tracking.match(raw, match);
-        baseSearch.remove(rawKey, match);
+    for (int i = 0; i < raws.size(); i++) {
+      RAW raw = raws.get(i);
+      if (tracking.containsUnmatchedRaw(raw) && acceptLine.test(raws.line(i))) {
+        long rawKey = raws.searchKey(i, keyType);
+        int baseIndex = firstBaseByKey.get(rawKey);
+        if (baseIndex != LongIntHashMap.NO_VALUE) {
+          // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
+          // Message could be checked to take the best one.
+          tracking.match(raw, bases.get(baseIndex));
+          firstBaseByKey.put(rawKey, nextBase[baseIndex]);
+        }
       }
     }
   }
 
-  private interface SearchKey {
+  private enum SearchKeyType {
+    LINE_AND_LINE_HASH, LINE, LINE_HASH_AND_MESSAGE, LINE_AND_MESSAGE, LINE_HASH
   }
 
-  private interface SearchKeyFactory {
-    SearchKey create(Trackable trackable);
+  private static long pack(int high, int low) {
+    return ((long) high << 32) | (low & 0xFFFFFFFFL);
   }
 
-  private static class LineAndLineHashKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String lineHash;
-    private final Integer line;
-
-    LineAndLineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
-    }
-
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+  /**
+   * Attributes of trackables, interned to ints. Messages are interned only
+   * when needed, as most of the issues are matched by the first pass.
+   */
+  private static class IndexedTrackables<T extends Trackable> {
+    private static final int NO_LINE = Integer.MIN_VALUE;
+    private static final int UNKNOWN = -1;
+
+    private final Interner interner;
+    private final List<T> trackables;
+    private final int[] rules;
+    private final int[] lines;
+    private final int[] lineHashes;
+    private final int[] messages;
+
+    IndexedTrackables(Collection<T> trackables, Interner interner) {
+      this.interner = interner;
+      this.trackables = new ArrayList<>(trackables);
+      int size = this.trackables.size();
+      this.rules = new int[size];
+      this.lines = new int[size];
+      this.lineHashes = new int[size];
+      this.messages = new int[size];
+      Arrays.fill(messages, UNKNOWN);
+      for (int i = 0; i < size; i++) {
+        T trackable = this.trackables.get(i);
+        Integer line = trackable.getLine();
+        rules[i] = interner.rule(trackable.getRuleKey());
+        lines[i] = line == null ? NO_LINE : line;
+        lineHashes[i] = interner.string(StringUtils.defaultString(trackable.getLineHash(), ""));
       }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && lineHash.equals(that.lineHash)
-        && ruleKey.equals(that.ruleKey);
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    int size() {
+      return trackables.size();
     }
-  }
 
-  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndLineHashKey(t);
+    T get(int index) {
+      return trackables.get(index);
     }
-  }
 
-  private static class LineHashAndMessageKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String message;
-    private final String lineHash;
-
-    LineHashAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+    int line(int index) {
+      return lines[index];
     }
 
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+    long searchKey(int index, SearchKeyType keyType) {
+      switch (keyType) {
+        case LINE_AND_LINE_HASH:
+          return pack(interner.pair(rules[index], lineHashes[index]), lines[index]);
+        case LINE:
+          return pack(rules[index], lines[index]);
+        case LINE_HASH_AND_MESSAGE:
+          return pack(interner.pair(rules[index], lineHashes[index]), message(index));
+        case LINE_AND_MESSAGE:
+          return pack(interner.pair(rules[index], message(index)), lines[index]);
+        case LINE_HASH:
+          return pack(rules[index], lineHashes[index]);
+        default:
+          throw new IllegalArgumentException("Unsupported search key: " + keyType);
       }
-      LineHashAndMessageKey that = (LineHashAndMessageKey) o;
-      // start with most discriminant field
-      return lineHash.equals(that.lineHash)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      return result;
+    private int message(int index) {
+      if (messages[index] == UNKNOWN) {
+        messages[index] = interner.string(trackables.get(index).getMessage());
+      }
+      return messages[index];
     }
   }
 
-  private enum LineHashAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashAndMessageKey(t);
+  /**
+   * Attributes are interned in the scope of a single call to {@link #track(Input, Input)}, as
+   * the tracker is shared by all the files.
+   */
+  private static class Interner {
+    private final Map<RuleKey, Integer> rules = new HashMap<>();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final LongIntHashMap pairs = new LongIntHashMap(16);
+
+    int rule(RuleKey ruleKey) {
+      return rules.computeIfAbsent(ruleKey, k -> rules.size());
     }
-  }
-
-  private static class LineAndMessageKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String message;
-    private final Integer line;
 
-    LineAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.line = trackable.getLine();
+    int string(@Nullable String s) {
+      return strings.computeIfAbsent(s, k -> strings.size());
     }
 
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+    int pair(int first, int second) {
+      long key = pack(first, second);
+      int id = pairs.get(key);
+      if (id == LongIntHashMap.NO_VALUE) {
+        id = pairs.size();
+        pairs.put(key, id);
       }
-      LineAndMessageKey that = (LineAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
+      return id;
     }
+  }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+  /**
+   * Open-addressing map of long keys to int values
+   */
+  private static class LongIntHashMap {
+    static final int NO_VALUE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size = 0;
+
+    LongIntHashMap(int expectedSize) {
+      int capacity = 4;
+      while (capacity < 2 * expectedSize) {
+        capacity <<= 1;
+      }
+      allocate(capacity);
     }
-  }
 
-  private enum LineAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndMessageKey(t);
+    private void allocate(int capacity) {
+      keys = new long[capacity];
+      values = new int[capacity];
+      used = new boolean[capacity];
     }
-  }
 
-  private static class LineHashKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String lineHash;
+    int size() {
+      return size;
+    }
 
-    LineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+    int get(long key) {
+      int mask = keys.length - 1;
+      for (int slot = slot(key, mask); used[slot]; slot = (slot + 1) & mask) {
+        if (keys[slot] == key) {
+          return values[slot];
+        }
+      }
+      return NO_VALUE;
     }
 
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+    /**
+     * Returns the previous value, or {@link #NO_VALUE}
+     */
+    int put(long key, int value) {
+      int mask = keys.length - 1;
+      int slot = slot(key, mask);
+      while (used[slot]) {
+        if (keys[slot] == key) {
+          int previous = values[slot];
+          values[slot] = value;
+          return previous;
+        }
+        slot = (slot + 1) & mask;
       }
-      LineHashKey that = (LineHashKey) o;
-      // start with most discriminant field
-      return lineHash.equals(that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      used[slot] = true;
+      keys[slot] = key;
+      values[slot] = value;
+      size++;
+      if (2 * size > keys.length) {
+        rehash();
+      }
+      return NO_VALUE;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      return result;
+    private void rehash() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      boolean[] oldUsed = used;
+      allocate(2 * oldKeys.length);
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldUsed[i]) {
+          int slot = slot(oldKeys[i], mask);
+          while (used[slot]) {
+            slot = (slot + 1) & mask;
+          }
+          used[slot] = true;
+          keys[slot] = oldKeys[i];
+          values[slot] = oldValues[i];
+        }
+      }
     }
-  }
 
-  private enum LineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashKey(t);
+    private static int slot(long key, int mask) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & mask;
     }
   }
 }
@@ -0,0 +1,87 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import javax.annotation.Nullable;
+
+/**
+ * Releases memory-mapped buffers without waiting for them to be garbage collected. As long as a
+ * buffer is mapped, the file it maps can't be deleted on Windows.
+ */
+public final class MappedByteBuffers {
+
+  private MappedByteBuffers() {
+    // only static methods
+  }
+
+  /**
+   * Unmaps the buffer by calling its cleaner. The buffer must not be accessed anymore after this call,
+   * otherwise the JVM may crash.
+   * Does nothing if the cleaner is not accessible on the running JVM. The buffer is then unmapped when it's
+   * garbage collected.
+   */
+  public static void unmap(@Nullable MappedByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    try {
+      if (!invokeUnsafeCleaner(buffer)) {
+        invokeBufferCleaner(buffer);
+      }
+    } catch (Exception e) {
+      // cleaner is not accessible, buffer will be unmapped by garbage collector
+    }
+  }
+
+  /**
+   * Java 9+
+   */
+  private static boolean invokeUnsafeCleaner(MappedByteBuffer buffer) throws ReflectiveOperationException {
+    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+    Method invokeCleaner;
+    try {
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+    Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+    theUnsafe.setAccessible(true);
+    invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    return true;
+  }
+
+  /**
+   * Java 8
+   */
+  private static void invokeBufferCleaner(MappedByteBuffer buffer) throws ReflectiveOperationException {
+    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+    cleanerMethod.setAccessible(true);
+    Object cleaner = cleanerMethod.invoke(buffer);
+    if (cleaner != null) {
+      Method cleanMethod = cleaner.getClass().getMethod("clean");
+      cleanMethod.setAccessible(true);
+      cleanMethod.invoke(cleaner);
+    }
+  }
+}
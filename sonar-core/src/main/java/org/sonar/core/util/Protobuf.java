@@ -19,6 +19,7 @@
  */
 package org.sonar.core.util;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.Parser;
@@ -27,8 +28,10 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.apache.commons.io.IOUtils;
@@ -68,6 +71,18 @@ public class Protobuf {
     }
   }
 
+  /**
+   * Returns the message contained in the remaining bytes of {@code buffer}. The position of
+   * {@code buffer} is not changed. Bytes are not copied if the buffer is backed by an array.
+   */
+  public static <MSG extends Message> MSG read(ByteBuffer buffer, Parser<MSG> parser) {
+    try {
+      return parser.parseFrom(newCodedInput(buffer));
+    } catch (Exception e) {
+      throw ContextException.of("Unable to read message", e);
+    }
+  }
+
   /**
    * Writes a single message to {@code file}. Existing content is replaced, the message is not
    * appended.
@@ -148,6 +163,90 @@ public class Protobuf {
     return new StreamIterator<>(parser, input);
   }
 
+  /**
+   * Reads a stream of messages from the remaining bytes of {@code buffer}, for example a memory-mapped
+   * file. The position of {@code buffer} is not changed.
+   * <p>
+   *   Messages are parsed from the array backing {@code buffer}, without intermediate copy. Direct buffers
+   *   are read through a small decoding window, which is still cheaper than reading the file through a
+   *   {@link BufferedInputStream}.
+   * </p>
+   */
+  public static <MSG extends Message> CloseableIterator<MSG> readStream(ByteBuffer buffer, Parser<MSG> parser) {
+    return new CodedInputIterator<>(parser, newCodedInput(buffer));
+  }
+
+  private static CodedInputStream newCodedInput(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      return CodedInputStream.newInstance(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+    return CodedInputStream.newInstance(new ByteBufferInputStream(buffer.duplicate()));
+  }
+
+  private static class CodedInputIterator<MSG extends Message> extends CloseableIterator<MSG> {
+    private final Parser<MSG> parser;
+    private final CodedInputStream input;
+
+    private CodedInputIterator(Parser<MSG> parser, CodedInputStream input) {
+      this.parser = parser;
+      this.input = input;
+    }
+
+    @Override
+    protected MSG doNext() {
+      try {
+        if (input.isAtEnd()) {
+          return null;
+        }
+        int size = input.readRawVarint32();
+        int previousLimit = input.pushLimit(size);
+        MSG message = parser.parsePartialFrom(input);
+        input.popLimit(previousLimit);
+        // size limit of CodedInputStream applies to each message, not to the whole stream
+        input.resetSizeCounter();
+        return message;
+      } catch (IOException e) {
+        throw ContextException.of(e);
+      }
+    }
+
+    @Override
+    protected void doClose() {
+      // nothing to close, buffer is released by garbage collector
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(bytes, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
   private static class StreamIterator<MSG extends Message> extends CloseableIterator<MSG> {
     private final Parser<MSG> parser;
     private final InputStream input;
@@ -381,6 +381,50 @@ public class TrackerTest {
     assertThat(tracking.baseFor(raw1)).isEqualTo(base1);
   }
 
+  @Test
+  public void match_issues_with_same_key_in_order() {
+    FakeInput baseInput = new FakeInput("H1", "H2");
+    Issue base1 = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue base2 = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+
+    FakeInput rawInput = new FakeInput("H1", "H2");
+    Issue raw1 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue raw2 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue raw3 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.baseFor(raw1)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base2);
+    assertThat(tracking.baseFor(raw3)).isNull();
+  }
+
+  @Test
+  public void do_not_recognize_blocks_when_file_is_unchanged() {
+    FakeInput baseInput = new FakeInput("H1", "H2");
+    Issue base = new Issue(2, "old hash", RULE_SYSTEM_PRINT, "msg1");
+    baseInput.addIssue(base);
+
+    FakeInput rawInput = new FakeInput("H1", "H2");
+    Issue raw = rawInput.createIssueOnLine(2, RULE_SYSTEM_PRINT, "msg2");
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.baseFor(raw)).isSameAs(base);
+    assertThat(baseInput.blockHashSequenceRequests).isZero();
+    assertThat(rawInput.blockHashSequenceRequests).isZero();
+  }
+
+  @Test
+  public void do_not_match_issues_on_other_lines_when_file_is_unchanged() {
+    FakeInput baseInput = new FakeInput("H1", "H2");
+    baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg1");
+
+    FakeInput rawInput = new FakeInput("H1", "H2");
+    Issue raw = rawInput.createIssueOnLine(2, RULE_SYSTEM_PRINT, "msg2");
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.baseFor(raw)).isNull();
+  }
+
   private static class Issue implements Trackable {
     private final RuleKey ruleKey;
     private final Integer line;
@@ -417,6 +461,7 @@ public class TrackerTest {
   private static class FakeInput implements Input<Issue> {
     private final List<Issue> issues = new ArrayList<>();
     private final List<String> lineHashes;
+    private int blockHashSequenceRequests = 0;
 
     FakeInput(String... lineHashes) {
       this.lineHashes = asList(lineHashes);
@@ -457,6 +502,7 @@ public class TrackerTest {
 
     @Override
     public BlockHashSequence getBlockHashSequence() {
+      blockHashSequenceRequests++;
       return new BlockHashSequence(getLineHashSequence(), 2);
     }
 
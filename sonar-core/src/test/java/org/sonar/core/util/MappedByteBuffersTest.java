@@ -0,0 +1,55 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.util;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedByteBuffersTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void unmap_buffer_so_that_file_can_be_deleted() throws Exception {
+    File file = temp.newFile();
+    MappedByteBuffer buffer;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 1024);
+      buffer.putInt(42);
+    }
+
+    MappedByteBuffers.unmap(buffer);
+
+    assertThat(file.delete()).isTrue();
+  }
+
+  @Test
+  public void ignore_null_buffer() {
+    MappedByteBuffers.unmap(null);
+  }
+}
@@ -19,7 +19,9 @@
  */
 package org.sonar.core.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Rule;
@@ -117,6 +119,55 @@ public class ProtobufTest {
     assertThat(it.hasNext()).isFalse();
   }
 
+  @Test
+  public void read_stream_from_heap_buffer() throws Exception {
+    verifyReadStreamFromBuffer(false);
+  }
+
+  @Test
+  public void read_stream_from_direct_buffer() throws Exception {
+    verifyReadStreamFromBuffer(true);
+  }
+
+  private static void verifyReadStreamFromBuffer(boolean direct) throws Exception {
+    Fake item1 = Fake.newBuilder().setLabel("one").setLine(1).build();
+    Fake item2 = Fake.newBuilder().setLabel("two").build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Protobuf.writeStream(asList(item1, item2), out);
+    ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(out.size()) : ByteBuffer.allocate(out.size());
+    buffer.put(out.toByteArray());
+    buffer.flip();
+
+    CloseableIterator<Fake> it = Protobuf.readStream(buffer, Fake.parser());
+    assertThat(it.next()).isEqualTo(item1);
+    assertThat(it.next()).isEqualTo(item2);
+    assertThat(it.hasNext()).isFalse();
+    assertThat(buffer.position()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_empty_stream_from_buffer() throws Exception {
+    CloseableIterator<Fake> it = Protobuf.readStream(ByteBuffer.allocate(0), Fake.parser());
+    assertThat(it.hasNext()).isFalse();
+  }
+
+  @Test
+  public void read_message_from_buffer() throws Exception {
+    Fake item = Fake.newBuilder().setLabel("one").setLine(1).build();
+    ByteBuffer buffer = ByteBuffer.wrap(item.toByteArray());
+
+    assertThat(Protobuf.read(buffer, Fake.parser())).isEqualTo(item);
+  }
+
+  @Test
+  public void fail_to_read_stream_from_corrupted_buffer() throws Exception {
+    thrown.expect(ContextException.class);
+
+    // size of message is bigger than buffer
+    CloseableIterator<Fake> it = Protobuf.readStream(ByteBuffer.wrap(new byte[] {10, 1}), Fake.parser());
+    it.next();
+  }
+
   @Test
   public void setNullable_sets_field_if_value_is_not_null() {
     Fake.Builder builder = Fake.newBuilder();
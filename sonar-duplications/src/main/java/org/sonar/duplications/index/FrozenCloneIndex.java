@@ -0,0 +1,243 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.PackedMemoryCloneIndex.ResourceBlocks;
+import org.sonar.duplications.utils.FastStringComparator;
+
+/**
+ * Immutable index produced by {@link PackedMemoryCloneIndex#freeze()}.
+ * <p>
+ * Blocks are stored in the flat arrays of the frozen {@link PackedMemoryCloneIndex}, which are not copied, but
+ * queries by hash don't use binary search: an open-addressing table maps each distinct hash to the range
+ * of blocks having this hash, so lookup is done in constant time.
+ * </p>
+ * <p>
+ * This class is thread-safe: state is never modified after construction, so any number of threads can query it without locking.
+ * </p>
+ */
+public final class FrozenCloneIndex extends AbstractCloneIndex {
+
+  private final int hashInts;
+  private final int blockInts;
+  private final int size;
+  private final int noResources;
+
+  private final String[] resourceIds;
+  private final int[] blockData;
+  private final int[] resourceIdsIndex;
+
+  /**
+   * Index of the first block of each distinct hash, followed by {@link #size}.
+   */
+  private final int[] rangeStarts;
+
+  /**
+   * Open-addressing table: contains position in {@link #rangeStarts} plus one, or zero for free slots.
+   */
+  private final int[] hashTable;
+  private final int hashTableMask;
+
+  /**
+   * Arrays are not copied, ownership is transferred to this index. They may be larger than {@code size}.
+   *
+   * @param resourceIds resources of blocks, sorted by hash of blocks
+   * @param blockData data of blocks, sorted by hash of blocks
+   * @param resourceIdsIndex positions of blocks, sorted by resource
+   */
+  FrozenCloneIndex(int hashInts, int size, String[] resourceIds, int[] blockData, int[] resourceIdsIndex) {
+    this.hashInts = hashInts;
+    this.blockInts = hashInts + PackedBlocks.BLOCK_INTS;
+    this.size = size;
+    this.resourceIds = resourceIds;
+    this.blockData = blockData;
+    this.resourceIdsIndex = resourceIdsIndex;
+    this.rangeStarts = computeRangeStarts();
+    int distinctHashes = rangeStarts.length - 1;
+    this.hashTable = new int[tableCapacity(distinctHashes)];
+    this.hashTableMask = hashTable.length - 1;
+    for (int range = 0; range < distinctHashes; range++) {
+      int slot = mix(blockData, rangeStarts[range] * blockInts, hashInts) & hashTableMask;
+      while (hashTable[slot] != 0) {
+        slot = (slot + 1) & hashTableMask;
+      }
+      hashTable[slot] = range + 1;
+    }
+    this.noResources = countResources();
+  }
+
+  private int[] computeRangeStarts() {
+    int[] starts = new int[size + 1];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || !sameHash(i - 1, i)) {
+        starts[count] = i;
+        count++;
+      }
+    }
+    starts[count] = size;
+    int[] result = new int[count + 1];
+    System.arraycopy(starts, 0, result, 0, count + 1);
+    return result;
+  }
+
+  private int countResources() {
+    int count = 0;
+    String lastResource = null;
+    for (int i = 0; i < size; i++) {
+      String resource = resourceIds[resourceIdsIndex[i]];
+      if (resource != null && !resource.equals(lastResource)) {
+        count++;
+        lastResource = resource;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Load factor of the table is at most 0.5
+   */
+  private static int tableCapacity(int entries) {
+    int capacity = 2;
+    while (capacity < 2 * entries) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private static int mix(int[] data, int offset, int length) {
+    int h = 1;
+    for (int k = 0; k < length; k++) {
+      h = 31 * h + data[offset + k];
+    }
+    // spread bits, as low bits are used to select the slot
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private boolean sameHash(int i, int j) {
+    int i2 = i * blockInts;
+    int j2 = j * blockInts;
+    for (int k = 0; k < hashInts; k++, i2++, j2++) {
+      if (blockData[i2] != blockData[j2]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean hasHash(int index, int[] hash) {
+    int offset = index * blockInts;
+    for (int k = 0; k < hashInts; k++, offset++) {
+      if (blockData[offset] != hash[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * <strong>Note that this implementation does not guarantee that blocks would be sorted by index.</strong>
+   * </p>
+   */
+  @Override
+  public Collection<Block> getByResourceId(String resourceId) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[mid]], resourceId) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+
+    List<Block> result = new ArrayList<>();
+    Block.Builder blockBuilder = Block.builder();
+    for (int index = lower; index < size && FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[index]], resourceId) == 0; index++) {
+      int realIndex = resourceIdsIndex[index];
+      result.add(PackedBlocks.createBlock(blockBuilder, blockData, hashInts, realIndex, resourceId, null));
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    int[] hash = sequenceHash.toIntArray();
+    if (hash.length != hashInts) {
+      throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
+    }
+
+    int slot = mix(hash, 0, hashInts) & hashTableMask;
+    int entry;
+    while ((entry = hashTable[slot]) != 0) {
+      int start = rangeStarts[entry - 1];
+      if (hasHash(start, hash)) {
+        int end = rangeStarts[entry];
+        List<Block> result = new ArrayList<>(end - start);
+        Block.Builder blockBuilder = Block.builder();
+        for (int index = start; index < end; index++) {
+          // extract block (note that there is no need to extract hash)
+          result.add(PackedBlocks.createBlock(blockBuilder, blockData, hashInts, index, resourceIds[index], sequenceHash));
+        }
+        return result;
+      }
+      slot = (slot + 1) & hashTableMask;
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Always throws {@link UnsupportedOperationException}, as index is immutable.
+   */
+  @Override
+  public void insert(Block block) {
+    throw new UnsupportedOperationException("Index is frozen, blocks can't be inserted anymore");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Iterator<ResourceBlocks> iterator() {
+    return new PackedBlocks.ResourceIterator(resourceIds, blockData, resourceIdsIndex, hashInts, size);
+  }
+
+  /**
+   * Computation is O(1)
+   */
+  @Override
+  public int noResources() {
+    return noResources;
+  }
+}
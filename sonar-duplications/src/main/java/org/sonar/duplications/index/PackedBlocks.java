@@ -0,0 +1,127 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.index;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.PackedMemoryCloneIndex.ResourceBlocks;
+import org.sonar.duplications.utils.FastStringComparator;
+
+/**
+ * Reading of blocks stored in flat arrays, shared by {@link PackedMemoryCloneIndex} and {@link FrozenCloneIndex}.
+ * Each block is stored as its hash followed by {@link #BLOCK_INTS} ints.
+ */
+final class PackedBlocks {
+
+  static final int BLOCK_INTS = 5;
+
+  private PackedBlocks() {
+    // only static methods
+  }
+
+  /**
+   * @param byteHash hash of block, or null if it must be read from the arrays
+   */
+  static Block createBlock(Block.Builder blockBuilder, int[] blockData, int hashInts, int index, String resourceId, @Nullable ByteArray byteHash) {
+    int offset = index * (hashInts + BLOCK_INTS);
+    ByteArray blockHash;
+
+    if (byteHash == null) {
+      int[] hash = new int[hashInts];
+      for (int j = 0; j < hashInts; j++) {
+        hash[j] = blockData[offset++];
+      }
+      blockHash = new ByteArray(hash);
+    } else {
+      blockHash = byteHash;
+      offset += hashInts;
+    }
+
+    int indexInFile = blockData[offset++];
+    int firstLineNumber = blockData[offset++];
+    int lastLineNumber = blockData[offset++];
+    int startUnit = blockData[offset++];
+    int endUnit = blockData[offset];
+
+    return blockBuilder
+      .setResourceId(resourceId)
+      .setBlockHash(blockHash)
+      .setIndexInFile(indexInFile)
+      .setLines(firstLineNumber, lastLineNumber)
+      .setUnit(startUnit, endUnit)
+      .build();
+  }
+
+  /**
+   * Iterates over blocks grouped by resource.
+   *
+   * @param resourceIdsIndex positions of blocks, sorted by resource
+   */
+  static class ResourceIterator implements Iterator<ResourceBlocks> {
+    private final Block.Builder blockBuilder = Block.builder();
+    private final String[] resourceIds;
+    private final int[] blockData;
+    private final int[] resourceIdsIndex;
+    private final int hashInts;
+    private final int size;
+    private int index = 0;
+
+    ResourceIterator(String[] resourceIds, int[] blockData, int[] resourceIdsIndex, int hashInts, int size) {
+      this.resourceIds = resourceIds;
+      this.blockData = blockData;
+      this.resourceIdsIndex = resourceIdsIndex;
+      this.hashInts = hashInts;
+      this.size = size;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index < size;
+    }
+
+    @Override
+    public ResourceBlocks next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      String resourceId = resourceIds[resourceIdsIndex[index]];
+      List<Block> blocks = new ArrayList<>();
+
+      // while we are at the same resource, keep going
+      do {
+        blocks.add(createBlock(blockBuilder, blockData, hashInts, resourceIdsIndex[index], resourceId, null));
+        index++;
+      } while (hasNext() && FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[index]], resourceId) == 0);
+
+      return new ResourceBlocks(resourceId, blocks);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
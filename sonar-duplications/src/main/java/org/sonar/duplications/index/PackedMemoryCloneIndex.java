@@ -23,14 +23,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.NoSuchElementException;
 
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 import org.sonar.duplications.utils.FastStringComparator;
 
-import javax.annotation.Nullable;
-
 /**
  * Provides an index optimized by memory.
  * <p>
@@ -44,13 +41,16 @@ import javax.annotation.Nullable;
  * <p>
  * Note that this implementation currently does not support deletion, however it's possible to implement.
  * </p>
+ * <p>
+ * Once all blocks are inserted, {@link #freeze()} can be called to sort the index, forbid further insertions
+ * and obtain an immutable {@link FrozenCloneIndex}, which can be queried concurrently by several threads.
+ * The frozen index reuses the arrays of this index, so memory is not duplicated.
+ * </p>
  */
 public class PackedMemoryCloneIndex extends AbstractCloneIndex {
 
   private static final int DEFAULT_INITIAL_CAPACITY = 1024;
 
-  private static final int BLOCK_INTS = 5;
-
   private final int hashInts;
 
   private final int blockInts;
@@ -60,6 +60,11 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
    */
   private boolean sorted;
 
+  /**
+   * Immutable copy of this index, not null once index does not accept insertions anymore.
+   */
+  private volatile FrozenCloneIndex frozen;
+
   /**
    * Current number of blocks in index.
    */
@@ -70,8 +75,6 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
 
   private int[] resourceIdsIndex;
 
-  private final Block.Builder blockBuilder = Block.builder();
-
   public PackedMemoryCloneIndex() {
     this(8, DEFAULT_INITIAL_CAPACITY);
   }
@@ -83,7 +86,7 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
   public PackedMemoryCloneIndex(int hashBytes, int initialCapacity) {
     this.sorted = false;
     this.hashInts = hashBytes / 4;
-    this.blockInts = hashInts + BLOCK_INTS;
+    this.blockInts = hashInts + PackedBlocks.BLOCK_INTS;
     this.size = 0;
     this.resourceIds = new String[initialCapacity];
     this.blockData = new int[initialCapacity * blockInts];
@@ -98,89 +101,38 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
    */
   @Override
   public Collection<Block> getByResourceId(String resourceId) {
+    if (frozen != null) {
+      return frozen.getByResourceId(resourceId);
+    }
     ensureSorted();
 
-    // prepare resourceId for binary search
-    resourceIds[size] = resourceId;
-    resourceIdsIndex[size] = size;
-
-    int index = DataUtils.binarySearch(byResourceId);
+    int index = lowerBoundByResourceId(resourceId);
 
     List<Block> result = new ArrayList<>();
-    int realIndex = resourceIdsIndex[index];
-    while (index < size && FastStringComparator.INSTANCE.compare(resourceIds[realIndex], resourceId) == 0) {
-      result.add(getBlock(realIndex, resourceId));
-
+    Block.Builder blockBuilder = Block.builder();
+    while (index < size && FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[index]], resourceId) == 0) {
+      result.add(PackedBlocks.createBlock(blockBuilder, blockData, hashInts, resourceIdsIndex[index], resourceId, null));
       index++;
-      realIndex = resourceIdsIndex[index];
     }
     return result;
   }
 
-  private Block createBlock(int index, String resourceId, @Nullable ByteArray byteHash) {
-    int offset = index * blockInts;
-    ByteArray blockHash;
-
-    if (byteHash == null) {
-      int[] hash = new int[hashInts];
-      for (int j = 0; j < hashInts; j++) {
-        hash[j] = blockData[offset++];
-      }
-      blockHash = new ByteArray(hash);
-    } else {
-      blockHash = byteHash;
-      offset += hashInts;
-    }
-
-    int indexInFile = blockData[offset++];
-    int firstLineNumber = blockData[offset++];
-    int lastLineNumber = blockData[offset++];
-    int startUnit = blockData[offset++];
-    int endUnit = blockData[offset];
-
-    return blockBuilder
-      .setResourceId(resourceId)
-      .setBlockHash(blockHash)
-      .setIndexInFile(indexInFile)
-      .setLines(firstLineNumber, lastLineNumber)
-      .setUnit(startUnit, endUnit)
-      .build();
-  }
-
-  private Block getBlock(int index, String resourceId) {
-    return createBlock(index, resourceId, null);
-  }
-
-  private class ResourceIterator implements Iterator<ResourceBlocks> {
-    private int index = 0;
-
-    @Override
-    public boolean hasNext() {
-      return index < size;
-    }
-
-    @Override
-    public ResourceBlocks next() {
-      if (!hasNext()) {
-        throw new NoSuchElementException();
+  /**
+   * Binary search of the first position in {@link #resourceIdsIndex}, which is not less than specified resource.
+   * Unlike {@link DataUtils#binarySearch(DataUtils.Sortable)}, doesn't require to store searched value in the index.
+   */
+  private int lowerBoundByResourceId(String resourceId) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[mid]], resourceId) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
       }
-
-      String resourceId = resourceIds[resourceIdsIndex[index]];
-      List<Block> blocks = new ArrayList<>();
-
-      // while we are at the same resource, keep going
-      do {
-        blocks.add(getBlock(resourceIdsIndex[index], resourceId));
-        index++;
-      } while (hasNext() && FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[index]], resourceId) == 0);
-
-      return new ResourceBlocks(resourceId, blocks);
-    }
-
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException();
     }
+    return lower;
   }
 
   public static class ResourceBlocks {
@@ -206,8 +158,11 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
    */
   @Override
   public Iterator<ResourceBlocks> iterator() {
+    if (frozen != null) {
+      return frozen.iterator();
+    }
     ensureSorted();
-    return new ResourceIterator();
+    return new PackedBlocks.ResourceIterator(resourceIds, blockData, resourceIdsIndex, hashInts, size);
   }
 
   /**
@@ -215,30 +170,60 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
    */
   @Override
   public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    if (frozen != null) {
+      return frozen.getBySequenceHash(sequenceHash);
+    }
     ensureSorted();
 
-    // prepare hash for binary search
     int[] hash = sequenceHash.toIntArray();
     if (hash.length != hashInts) {
       throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
     }
-    int offset = size * blockInts;
-    for (int i = 0; i < hashInts; i++) {
-      blockData[offset++] = hash[i];
-    }
 
-    int index = DataUtils.binarySearch(byBlockHash);
+    int index = lowerBoundByHash(hash);
 
     List<Block> result = new ArrayList<>();
-    while (index < size && !isLessByHash(size, index)) {
+    Block.Builder blockBuilder = Block.builder();
+    while (index < size && compareHash(index, hash) == 0) {
       // extract block (note that there is no need to extract hash)
       String resourceId = resourceIds[index];
-      result.add(createBlock(index, resourceId, sequenceHash));
+      result.add(PackedBlocks.createBlock(blockBuilder, blockData, hashInts, index, resourceId, sequenceHash));
       index++;
     }
     return result;
   }
 
+  /**
+   * Binary search of the first block, which hash is not less than specified one.
+   * Unlike {@link DataUtils#binarySearch(DataUtils.Sortable)}, doesn't require to store searched value in the index.
+   */
+  private int lowerBoundByHash(int[] hash) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (compareHash(mid, hash) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  private int compareHash(int index, int[] hash) {
+    int offset = index * blockInts;
+    for (int k = 0; k < hashInts; k++, offset++) {
+      if (blockData[offset] < hash[k]) {
+        return -1;
+      }
+      if (blockData[offset] > hash[k]) {
+        return 1;
+      }
+    }
+    return 0;
+  }
+
   /**
    * {@inheritDoc}
    * <p>
@@ -247,6 +232,9 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
    */
   @Override
   public void insert(Block block) {
+    if (frozen != null) {
+      throw new IllegalStateException("Index is frozen, blocks can't be inserted anymore");
+    }
     sorted = false;
     ensureCapacity();
 
@@ -269,6 +257,26 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
     size++;
   }
 
+  /**
+   * Sorts the index, forbids further insertions and returns an immutable index, which can be safely queried by several threads.
+   * Arrays are handed over to the frozen index without being copied, and queries on this index are then delegated to it.
+   * Subsequent calls return the same instance.
+   */
+  public synchronized FrozenCloneIndex freeze() {
+    if (frozen == null) {
+      ensureSorted();
+      frozen = new FrozenCloneIndex(hashInts, size, resourceIds, blockData, resourceIdsIndex);
+      resourceIds = null;
+      blockData = null;
+      resourceIdsIndex = null;
+    }
+    return frozen;
+  }
+
+  public boolean isFrozen() {
+    return frozen != null;
+  }
+
   /**
    * Increases the capacity, if necessary.
    */
@@ -376,6 +384,9 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
    * Computation is O(N)
    */
   public int noResources() {
+    if (frozen != null) {
+      return frozen.noResources();
+    }
     ensureSorted();
     int count = 0;
     String lastResource = null;
@@ -0,0 +1,123 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.index;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+/**
+ * Compares lookups by hash in {@link PackedMemoryCloneIndex} (binary search) and in {@link FrozenCloneIndex} (hash table).
+ * Sizes are of the same order as the index of the JDK sources, which contains around 500K blocks.
+ * <p>
+ * Not executed during build. Run {@link #main(String[])} from the IDE or with test classpath.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CloneIndexBenchmark {
+
+  private static final int QUERIES = 1 << 16;
+
+  @Param({"100000", "500000", "1000000"})
+  public int blocks;
+
+  private PackedMemoryCloneIndex packedIndex;
+  private FrozenCloneIndex frozenIndex;
+  private ByteArray[] queries;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(42);
+    // on real projects most of hashes are unique, but a part of them are duplicated
+    int distinctHashes = blocks / 2;
+    long[] hashes = new long[distinctHashes];
+    for (int i = 0; i < distinctHashes; i++) {
+      hashes[i] = random.nextLong();
+    }
+
+    PackedMemoryCloneIndex frozenSource = new PackedMemoryCloneIndex();
+    packedIndex = new PackedMemoryCloneIndex();
+    Block.Builder builder = Block.builder();
+    for (int i = 0; i < blocks; i++) {
+      Block block = builder
+        .setResourceId("file" + (i / 500))
+        .setBlockHash(new ByteArray(hashes[random.nextInt(distinctHashes)]))
+        .setIndexInFile(i % 500)
+        .setLines(i, i + 10)
+        .setUnit(i, i + 100)
+        .build();
+      packedIndex.insert(block);
+      frozenSource.insert(block);
+    }
+    frozenIndex = frozenSource.freeze();
+    // sort the packed index before measurements
+    packedIndex.noResources();
+
+    queries = new ByteArray[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      // one query out of ten has no match
+      queries[i] = new ByteArray(i % 10 == 0 ? random.nextLong() : hashes[random.nextInt(distinctHashes)]);
+    }
+  }
+
+  private ByteArray nextQuery() {
+    next = (next + 1) & (QUERIES - 1);
+    return queries[next];
+  }
+
+  @Benchmark
+  public void binarySearch(Blackhole blackhole) {
+    blackhole.consume(packedIndex.getBySequenceHash(nextQuery()));
+  }
+
+  @Benchmark
+  public void hashLookup(Blackhole blackhole) {
+    blackhole.consume(frozenIndex.getBySequenceHash(nextQuery()));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(CloneIndexBenchmark.class.getSimpleName())
+      .build()).run();
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.duplications.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.PackedMemoryCloneIndex.ResourceBlocks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FrozenCloneIndexTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private PackedMemoryCloneIndex packedIndex;
+
+  @Before
+  public void setUp() {
+    packedIndex = new PackedMemoryCloneIndex();
+  }
+
+  @Test
+  public void query_by_hash_and_by_resource() {
+    packedIndex.insert(newBlock("a", 1));
+    packedIndex.insert(newBlock("a", 2));
+    packedIndex.insert(newBlock("b", 1));
+    packedIndex.insert(newBlock("c", 1));
+    packedIndex.insert(newBlock("d", 1));
+    packedIndex.insert(newBlock("e", 1));
+    packedIndex.insert(newBlock("e", 2));
+    packedIndex.insert(newBlock("e", 3));
+
+    FrozenCloneIndex index = packedIndex.freeze();
+
+    assertThat(index.noResources()).isEqualTo(5);
+    assertThat(index.getBySequenceHash(new ByteArray(1L))).hasSize(5);
+    assertThat(index.getBySequenceHash(new ByteArray(2L))).hasSize(2);
+    assertThat(index.getBySequenceHash(new ByteArray(3L))).hasSize(1);
+    assertThat(index.getBySequenceHash(new ByteArray(4L))).isEmpty();
+    assertThat(index.getByResourceId("a")).hasSize(2);
+    assertThat(index.getByResourceId("b")).hasSize(1);
+    assertThat(index.getByResourceId("e")).hasSize(3);
+    assertThat(index.getByResourceId("does not exist")).isEmpty();
+  }
+
+  @Test
+  public void should_construct_blocks_with_normalized_hash() {
+    packedIndex.insert(newBlock("a", 1));
+    packedIndex.insert(newBlock("b", 1));
+    packedIndex.insert(newBlock("c", 1));
+    FrozenCloneIndex index = packedIndex.freeze();
+
+    ByteArray requestedHash = new ByteArray(1L);
+    Collection<Block> blocks = index.getBySequenceHash(requestedHash);
+    assertThat(blocks).hasSize(3);
+    for (Block block : blocks) {
+      assertThat(block.getBlockHash()).isSameAs(requestedHash);
+    }
+  }
+
+  @Test
+  public void iterate_by_resource() {
+    packedIndex.insert(newBlock("a", 1));
+    packedIndex.insert(newBlock("c", 1));
+    packedIndex.insert(newBlock("b", 1));
+    packedIndex.insert(newBlock("c", 2));
+    packedIndex.insert(newBlock("a", 2));
+
+    Iterator<ResourceBlocks> it = packedIndex.freeze().iterator();
+    List<ResourceBlocks> resourcesBlocks = new ArrayList<>();
+    while (it.hasNext()) {
+      resourcesBlocks.add(it.next());
+    }
+
+    assertThat(resourcesBlocks).extracting(ResourceBlocks::resourceId).containsExactly("a", "b", "c");
+    assertThat(resourcesBlocks.get(0).blocks()).hasSize(2);
+    assertThat(resourcesBlocks.get(1).blocks()).hasSize(1);
+    assertThat(resourcesBlocks.get(2).blocks()).hasSize(2);
+  }
+
+  @Test
+  public void same_results_as_packed_index_when_many_hashes_collide_in_table() {
+    PackedMemoryCloneIndex referenceIndex = new PackedMemoryCloneIndex();
+    for (int i = 0; i < 1000; i++) {
+      packedIndex.insert(newBlock("r" + (i % 7), i % 300));
+      referenceIndex.insert(newBlock("r" + (i % 7), i % 300));
+    }
+    FrozenCloneIndex index = packedIndex.freeze();
+
+    for (long hash = -1; hash < 301; hash++) {
+      assertThat(index.getBySequenceHash(new ByteArray(hash))).hasSameSizeAs(referenceIndex.getBySequenceHash(new ByteArray(hash)));
+    }
+    for (int i = 0; i < 7; i++) {
+      assertThat(index.getByResourceId("r" + i)).hasSameSizeAs(referenceIndex.getByResourceId("r" + i));
+    }
+    assertThat(index.noResources()).isEqualTo(7);
+  }
+
+  @Test
+  public void empty_index() {
+    FrozenCloneIndex index = packedIndex.freeze();
+
+    assertThat(index.noResources()).isEqualTo(0);
+    assertThat(index.getBySequenceHash(new ByteArray(1L))).isEmpty();
+    assertThat(index.getByResourceId("a")).isEmpty();
+    assertThat(index.iterator().hasNext()).isFalse();
+  }
+
+  @Test
+  public void freeze_always_returns_same_instance() {
+    packedIndex.insert(newBlock("a", 1));
+
+    assertThat(packedIndex.freeze()).isSameAs(packedIndex.freeze());
+    assertThat(packedIndex.isFrozen()).isTrue();
+  }
+
+  @Test
+  public void packed_index_delegates_queries_to_frozen_index() {
+    packedIndex.insert(newBlock("a", 1));
+    packedIndex.insert(newBlock("b", 1));
+    packedIndex.insert(newBlock("b", 2));
+    packedIndex.freeze();
+
+    assertThat(packedIndex.noResources()).isEqualTo(2);
+    assertThat(packedIndex.getBySequenceHash(new ByteArray(1L))).hasSize(2);
+    assertThat(packedIndex.getByResourceId("b")).hasSize(2);
+    assertThat(packedIndex.iterator()).hasSize(2);
+  }
+
+  @Test
+  public void fail_to_insert_in_packed_index_once_frozen() {
+    packedIndex.freeze();
+
+    thrown.expect(IllegalStateException.class);
+    packedIndex.insert(newBlock("a", 1));
+  }
+
+  @Test
+  public void fail_to_insert_in_frozen_index() {
+    FrozenCloneIndex index = packedIndex.freeze();
+
+    thrown.expect(UnsupportedOperationException.class);
+    index.insert(newBlock("a", 1));
+  }
+
+  @Test
+  public void fail_to_find_hash_of_incorrect_size() {
+    FrozenCloneIndex index = new PackedMemoryCloneIndex(4, 1).freeze();
+
+    thrown.expect(IllegalArgumentException.class);
+    index.getBySequenceHash(new ByteArray(1L));
+  }
+
+  private static Block newBlock(String resourceId, long hash) {
+    return Block.builder()
+      .setResourceId(resourceId)
+      .setBlockHash(new ByteArray(hash))
+      .setIndexInFile(1)
+      .setLines(1, 2)
+      .build();
+  }
+
+}
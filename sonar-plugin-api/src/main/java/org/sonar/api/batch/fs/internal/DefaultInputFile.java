@@ -64,7 +64,11 @@ public class DefaultInputFile extends DefaultInputComponent implements InputFile
     this.contents = contents;
   }
 
-  public void checkMetadata() {
+  /**
+   * Lazily computes the metadata of the file. Synchronized so that it is computed only once when the file is
+   * accessed by sensors running concurrently.
+   */
+  public synchronized void checkMetadata() {
     if (metadata == null) {
       metadataGenerator.accept(this);
     }
@@ -19,7 +19,6 @@
  */
 package org.sonar.api.batch.fs.internal;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,8 +32,8 @@ import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.Arrays;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import org.apache.commons.codec.binary.Hex;
@@ -56,6 +55,7 @@ public class FileMetadata {
 
   private static final char LINE_FEED = '\n';
   private static final char CARRIAGE_RETURN = '\r';
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
 
   public abstract static class CharHandler {
 
@@ -72,17 +72,29 @@ public class FileMetadata {
     }
   }
 
-  private static class LineCounter extends CharHandler {
+  /**
+   * Computes in a single pass the number of lines, the offsets of lines and the hash of file.
+   */
+  private static class MetadataComputer extends CharHandler {
+    private final String filePath;
+    private final Charset encoding;
+
     private int lines = 1;
     private int nonBlankLines = 0;
     private boolean blankLine = true;
-    boolean alreadyLoggedInvalidCharacter = false;
-    private final String filePath;
-    private final Charset encoding;
+    private boolean alreadyLoggedInvalidCharacter = false;
+
+    private final MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
+    private final LineDigester lineDigester = new LineDigester();
 
-    LineCounter(String filePath, Charset encoding) {
+    private long currentOriginalOffset = 0;
+    private final IntArrayList originalLineOffsets = new IntArrayList();
+    private long lastValidOffset = 0;
+
+    MetadataComputer(String filePath, Charset encoding) {
       this.filePath = filePath;
       this.encoding = encoding;
+      originalLineOffsets.add(0);
     }
 
     @Override
@@ -92,94 +104,63 @@ public class FileMetadata {
           lines, encoding, CoreProperties.ENCODING_PROPERTY);
         alreadyLoggedInvalidCharacter = true;
       }
-    }
-
-    @Override
-    protected void newLine() {
-      lines++;
-      if (!blankLine) {
-        nonBlankLines++;
-      }
-      blankLine = true;
+      currentOriginalOffset++;
     }
 
     @Override
     protected void handleIgnoreEoL(char c) {
-      if (!Character.isWhitespace(c)) {
+      if (blankLine && !Character.isWhitespace(c)) {
         blankLine = false;
       }
+      lineDigester.append(c);
     }
 
     @Override
-    protected void eof() {
+    protected void newLine() {
+      lines++;
       if (!blankLine) {
         nonBlankLines++;
       }
-    }
-
-    public int lines() {
-      return lines;
-    }
-
-    public int nonBlankLines() {
-      return nonBlankLines;
-    }
-
-  }
-
-  private static class FileHashComputer extends CharHandler {
-    private MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
-    private StringBuilder sb = new StringBuilder();
-    private final CharsetEncoder encoder;
-    private final String filePath;
-
-    public FileHashComputer(String filePath) {
-      encoder = StandardCharsets.UTF_8.newEncoder()
-        .onMalformedInput(CodingErrorAction.REPLACE)
-        .onUnmappableCharacter(CodingErrorAction.REPLACE);
-      this.filePath = filePath;
-    }
+      blankLine = true;
 
-    @Override
-    protected void handleIgnoreEoL(char c) {
-      sb.append(c);
-    }
+      lineDigester.append(LINE_FEED);
+      digestLine();
 
-    @Override
-    protected void newLine() {
-      sb.append(LINE_FEED);
-      processBuffer();
-      sb.setLength(0);
+      if (currentOriginalOffset > Integer.MAX_VALUE) {
+        throw new IllegalStateException("File is too big: " + currentOriginalOffset);
+      }
+      originalLineOffsets.add((int) currentOriginalOffset);
     }
 
     @Override
     protected void eof() {
-      if (sb.length() > 0) {
-        processBuffer();
+      if (!blankLine) {
+        nonBlankLines++;
       }
+      digestLine();
+      lastValidOffset = currentOriginalOffset;
     }
 
-    private void processBuffer() {
+    private void digestLine() {
       try {
-        if (sb.length() > 0) {
-          ByteBuffer encoded = encoder.encode(CharBuffer.wrap(sb));
-          globalMd5Digest.update(encoded.array(), 0, encoded.limit());
-        }
+        lineDigester.digestInto(globalMd5Digest);
       } catch (CharacterCodingException e) {
         throw new IllegalStateException("Error encoding line hash in file: " + filePath, e);
       }
     }
 
-    @CheckForNull
-    public String getHash() {
-      return Hex.encodeHexString(globalMd5Digest.digest());
+    private Metadata toMetadata() {
+      if (lastValidOffset > Integer.MAX_VALUE) {
+        throw new IllegalStateException("File is too big: " + lastValidOffset);
+      }
+      return new Metadata(lines, nonBlankLines, Hex.encodeHexString(globalMd5Digest.digest()), originalLineOffsets.trimAndGet(),
+        (int) lastValidOffset);
     }
   }
 
   private static class LineHashComputer extends CharHandler {
     private final MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
-    private final CharsetEncoder encoder;
-    private final StringBuilder sb = new StringBuilder();
+    private final LineDigester lineDigester = new LineDigester();
     private final LineHashConsumer consumer;
     private final File file;
     private int line = 1;
@@ -187,22 +168,18 @@ public class FileMetadata {
     public LineHashComputer(LineHashConsumer consumer, File f) {
       this.consumer = consumer;
       this.file = f;
-      this.encoder = StandardCharsets.UTF_8.newEncoder()
-        .onMalformedInput(CodingErrorAction.REPLACE)
-        .onUnmappableCharacter(CodingErrorAction.REPLACE);
     }
 
     @Override
     protected void handleIgnoreEoL(char c) {
       if (!Character.isWhitespace(c)) {
-        sb.append(c);
+        lineDigester.append(c);
       }
     }
 
     @Override
     protected void newLine() {
       processBuffer();
-      sb.setLength(0);
       line++;
     }
 
@@ -215,9 +192,8 @@ public class FileMetadata {
 
     private void processBuffer() {
       try {
-        if (sb.length() > 0) {
-          ByteBuffer encoded = encoder.encode(CharBuffer.wrap(sb));
-          lineMd5Digest.update(encoded.array(), 0, encoded.limit());
+        if (!lineDigester.isEmpty()) {
+          lineDigester.digestInto(lineMd5Digest);
           consumer.consume(line, lineMd5Digest.digest());
         }
       } catch (CharacterCodingException e) {
@@ -226,44 +202,57 @@ public class FileMetadata {
     }
   }
 
-  private static class LineOffsetCounter extends CharHandler {
-    private long currentOriginalOffset = 0;
-    private IntArrayList originalLineOffsets = new IntArrayList();
-    private long lastValidOffset = 0;
-
-    public LineOffsetCounter() {
-      originalLineOffsets.add(0);
-    }
-
-    @Override
-    protected void handleAll(char c) {
-      currentOriginalOffset++;
-    }
-
-    @Override
-    protected void newLine() {
-      if (currentOriginalOffset > Integer.MAX_VALUE) {
-        throw new IllegalStateException("File is too big: " + currentOriginalOffset);
+  /**
+   * Accumulates the characters of a line and feeds a digest with their UTF-8 encoding. Lines
+   * made of ASCII characters, which are the vast majority, are converted without {@link CharsetEncoder}.
+   * Buffers are reused from one line to another.
+   */
+  private static class LineDigester {
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private char[] chars = new char[256];
+    private byte[] bytes = new byte[256];
+    private int length = 0;
+    private boolean ascii = true;
+
+    void append(char c) {
+      if (length == chars.length) {
+        chars = Arrays.copyOf(chars, 2 * length);
+      }
+      chars[length] = c;
+      length++;
+      if (c >= 0x80) {
+        ascii = false;
       }
-      originalLineOffsets.add((int) currentOriginalOffset);
-    }
-
-    @Override
-    protected void eof() {
-      lastValidOffset = currentOriginalOffset;
     }
 
-    public int[] getOriginalLineOffsets() {
-      return originalLineOffsets.trimAndGet();
+    boolean isEmpty() {
+      return length == 0;
     }
 
-    public int getLastValidOffset() {
-      if (lastValidOffset > Integer.MAX_VALUE) {
-        throw new IllegalStateException("File is too big: " + lastValidOffset);
+    /**
+     * Updates {@code digest} with the characters appended since last call, then clears them.
+     */
+    void digestInto(MessageDigest digest) throws CharacterCodingException {
+      if (length == 0) {
+        return;
       }
-      return (int) lastValidOffset;
+      if (ascii) {
+        if (bytes.length < length) {
+          bytes = new byte[chars.length];
+        }
+        for (int i = 0; i < length; i++) {
+          bytes[i] = (byte) chars[i];
+        }
+        digest.update(bytes, 0, length);
+      } else {
+        ByteBuffer encoded = encoder.encode(CharBuffer.wrap(chars, 0, length));
+        digest.update(encoded.array(), 0, encoded.limit());
+      }
+      length = 0;
+      ascii = true;
     }
-
   }
 
   /**
@@ -271,19 +260,13 @@ public class FileMetadata {
    * Maximum performance is needed.
    */
   public Metadata readMetadata(InputStream stream, Charset encoding, String filePath, @Nullable CharHandler otherHandler) {
-    LineCounter lineCounter = new LineCounter(filePath, encoding);
-    FileHashComputer fileHashComputer = new FileHashComputer(filePath);
-    LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
-
+    MetadataComputer metadataComputer = new MetadataComputer(filePath, encoding);
     if (otherHandler != null) {
-      CharHandler[] handlers = {lineCounter, fileHashComputer, lineOffsetCounter, otherHandler};
-      readFile(stream, encoding, filePath, handlers);
+      readFile(stream, encoding, filePath, new CharHandler[] {metadataComputer, otherHandler});
     } else {
-      CharHandler[] handlers = {lineCounter, fileHashComputer, lineOffsetCounter};
-      readFile(stream, encoding, filePath, handlers);
+      readFile(stream, encoding, filePath, new CharHandler[] {metadataComputer});
     }
-    return new Metadata(lineCounter.lines(), lineCounter.nonBlankLines(), fileHashComputer.getHash(), lineOffsetCounter.getOriginalLineOffsets(),
-      lineOffsetCounter.getLastValidOffset());
+    return metadataComputer.toMetadata();
   }
 
   public Metadata readMetadata(InputStream stream, Charset encoding, String filePath) {
@@ -294,22 +277,18 @@ public class FileMetadata {
    * For testing purpose
    */
   public Metadata readMetadata(Reader reader) {
-    LineCounter lineCounter = new LineCounter("fromString", StandardCharsets.UTF_16);
-    FileHashComputer fileHashComputer = new FileHashComputer("fromString");
-    LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
-    CharHandler[] handlers = {lineCounter, fileHashComputer, lineOffsetCounter};
-
+    MetadataComputer metadataComputer = new MetadataComputer("fromString", StandardCharsets.UTF_16);
     try {
-      read(reader, handlers);
+      read(reader, new CharHandler[] {metadataComputer});
     } catch (IOException e) {
       throw new IllegalStateException("Should never occur", e);
     }
-    return new Metadata(lineCounter.lines(), lineCounter.nonBlankLines(), fileHashComputer.getHash(), lineOffsetCounter.getOriginalLineOffsets(),
-      lineOffsetCounter.getLastValidOffset());
+    return metadataComputer.toMetadata();
   }
 
   public static void readFile(InputStream stream, Charset encoding, String filePath, CharHandler[] handlers) {
-    try (Reader reader = new BufferedReader(new InputStreamReader(stream, encoding))) {
+    // characters are read in bulk, so the Reader doesn't need to be buffered
+    try (Reader reader = new InputStreamReader(stream, encoding)) {
       read(reader, handlers);
     } catch (IOException e) {
       throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", filePath, encoding), e);
@@ -317,50 +296,61 @@ public class FileMetadata {
   }
 
   private static void read(Reader reader, CharHandler[] handlers) throws IOException {
-    char c;
-    int i = reader.read();
+    char[] buffer = new char[READ_BUFFER_SIZE];
     boolean afterCR = false;
-    while (i != -1) {
-      c = (char) i;
+    int count = reader.read(buffer);
+    while (count != -1) {
+      for (int i = 0; i < count; i++) {
+        afterCR = handle(buffer[i], afterCR, handlers);
+      }
+      count = reader.read(buffer);
+    }
+    for (CharHandler handler : handlers) {
       if (afterCR) {
-        for (CharHandler handler : handlers) {
-          if (c == CARRIAGE_RETURN) {
-            handler.newLine();
-            handler.handleAll(c);
-          } else if (c == LINE_FEED) {
-            handler.handleAll(c);
-            handler.newLine();
-          } else {
-            handler.newLine();
-            handler.handleIgnoreEoL(c);
-            handler.handleAll(c);
-          }
-        }
-        afterCR = c == CARRIAGE_RETURN;
-      } else if (c == LINE_FEED) {
-        for (CharHandler handler : handlers) {
-          handler.handleAll(c);
+        handler.newLine();
+      }
+      handler.eof();
+    }
+  }
+
+  /**
+   * @return whether {@code c} is a carriage return which may be followed by a line feed
+   */
+  private static boolean handle(char c, boolean afterCR, CharHandler[] handlers) {
+    if (afterCR) {
+      for (CharHandler handler : handlers) {
+        if (c == CARRIAGE_RETURN) {
           handler.newLine();
-        }
-      } else if (c == CARRIAGE_RETURN) {
-        afterCR = true;
-        for (CharHandler handler : handlers) {
           handler.handleAll(c);
-        }
-      } else {
-        for (CharHandler handler : handlers) {
+        } else if (c == LINE_FEED) {
+          handler.handleAll(c);
+          handler.newLine();
+        } else {
+          handler.newLine();
           handler.handleIgnoreEoL(c);
           handler.handleAll(c);
         }
       }
-      i = reader.read();
+      return c == CARRIAGE_RETURN;
     }
-    for (CharHandler handler : handlers) {
-      if (afterCR) {
+    if (c == LINE_FEED) {
+      for (CharHandler handler : handlers) {
+        handler.handleAll(c);
         handler.newLine();
       }
-      handler.eof();
+      return false;
+    }
+    if (c == CARRIAGE_RETURN) {
+      for (CharHandler handler : handlers) {
+        handler.handleAll(c);
+      }
+      return true;
+    }
+    for (CharHandler handler : handlers) {
+      handler.handleIgnoreEoL(c);
+      handler.handleAll(c);
     }
+    return false;
   }
 
   @FunctionalInterface
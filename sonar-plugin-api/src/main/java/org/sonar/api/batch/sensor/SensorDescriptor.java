@@ -84,4 +84,12 @@ public interface SensorDescriptor {
    * @since 6.4
    */
   SensorDescriptor global();
+
+  /**
+   * This sensor can be executed concurrently with other sensors supporting it. Its implementation must then be thread-safe
+   * and must not rely on data saved by these other sensors.
+   * Default is to execute sensor alone.
+   * @since 6.4
+   */
+  SensorDescriptor supportsConcurrentExecution();
 }
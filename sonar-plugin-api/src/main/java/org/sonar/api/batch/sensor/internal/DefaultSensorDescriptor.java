@@ -33,6 +33,7 @@ public class DefaultSensorDescriptor implements SensorDescriptor {
   private String[] ruleRepositories = new String[0];
   private String[] properties = new String[0];
   private boolean global = false;
+  private boolean concurrent = false;
 
   public String name() {
     return name;
@@ -59,6 +60,10 @@ public class DefaultSensorDescriptor implements SensorDescriptor {
     return global;
   }
 
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
   @Override
   public DefaultSensorDescriptor name(String name) {
     this.name = name;
@@ -110,4 +115,10 @@ public class DefaultSensorDescriptor implements SensorDescriptor {
     return this;
   }
 
+  @Override
+  public DefaultSensorDescriptor supportsConcurrentExecution() {
+    this.concurrent = true;
+    return this;
+  }
+
 }
@@ -0,0 +1,103 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link FileMetadata} on the file of the "huge-file" performance project (850KB, more than 50K lines).
+ * Content is loaded in memory so that disk accesses are not measured. The "baseline" benchmarks run the
+ * previous implementation, {@link PreviousFileMetadata}, on the same inputs.
+ * <p>
+ * Not executed during build. Run {@link #main(String[])} from the IDE or with test classpath, from the
+ * directory of the module.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileMetadataBenchmark {
+
+  private static final Path HUGE_FILE = Paths.get("../tests/perf/projects/huge-file/src/main/java/huge/HugeFile.java");
+
+  private byte[] content;
+  private DefaultInputFile inputFile;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    content = Files.readAllBytes(HUGE_FILE);
+    File file = HUGE_FILE.toFile().getCanonicalFile();
+    inputFile = new TestInputFileBuilder("huge", file.getName())
+      .setModuleBaseDir(file.getParentFile().toPath())
+      .setCharset(StandardCharsets.UTF_8)
+      .build();
+  }
+
+  @Benchmark
+  public Metadata readMetadata() {
+    return new FileMetadata().readMetadata(new ByteArrayInputStream(content), StandardCharsets.UTF_8, "HugeFile.java");
+  }
+
+  @Benchmark
+  public Metadata baselineReadMetadata() {
+    return new PreviousFileMetadata().readMetadata(new ByteArrayInputStream(content), StandardCharsets.UTF_8, "HugeFile.java");
+  }
+
+  @Benchmark
+  public void computeLineHashesForIssueTracking(Blackhole blackhole) {
+    FileMetadata.computeLineHashesForIssueTracking(inputFile, (line, hash) -> blackhole.consume(hash));
+  }
+
+  @Benchmark
+  public void baselineComputeLineHashesForIssueTracking(Blackhole blackhole) {
+    PreviousFileMetadata.computeLineHashesForIssueTracking(inputFile, (line, hash) -> blackhole.consume(hash));
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(FileMetadataBenchmark.class.getSimpleName())
+      .build()).run();
+  }
+}
@@ -27,6 +27,7 @@ import java.nio.charset.StandardCharsets;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -76,6 +77,23 @@ public class FileMetadataTest {
     assertThat(metadata.lastValidOffset()).isEqualTo(13);
   }
 
+  @Test
+  public void file_bigger_than_read_buffer() throws Exception {
+    // lines are 10 chars long, windows EOL are split between buffers
+    String line = StringUtils.repeat("a", 8) + "\r\n";
+    int lines = 10_000;
+    File tempFile = temp.newFile();
+    FileUtils.write(tempFile, StringUtils.repeat(line, lines), StandardCharsets.UTF_8, true);
+
+    Metadata metadata = new FileMetadata().readMetadata(new FileInputStream(tempFile), StandardCharsets.UTF_8, tempFile.getName());
+    assertThat(metadata.lines()).isEqualTo(lines + 1);
+    assertThat(metadata.nonBlankLines()).isEqualTo(lines);
+    assertThat(metadata.hash()).isEqualTo(md5Hex(StringUtils.repeat(StringUtils.repeat("a", 8) + "\n", lines)));
+    assertThat(metadata.originalLineOffsets()).hasSize(lines + 1);
+    assertThat(metadata.originalLineOffsets()[lines]).isEqualTo(10 * lines);
+    assertThat(metadata.lastValidOffset()).isEqualTo(10 * lines);
+  }
+
   @Test
   public void read_with_wrong_encoding() throws Exception {
     File tempFile = temp.newFile();
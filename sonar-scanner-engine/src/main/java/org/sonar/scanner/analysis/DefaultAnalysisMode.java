@@ -34,17 +34,35 @@ public class DefaultAnalysisMode extends AbstractAnalysisMode {
 
   private static final Logger LOG = LoggerFactory.getLogger(DefaultAnalysisMode.class);
   private static final String KEY_SCAN_ALL = "sonar.scanAllFiles";
+  private static final String KEY_SCAN_CHANGED_FILES_ONLY = "sonar.scanChangedFilesOnly";
+  private static final String KEY_CHANGED_FILES_ISSUES_ONLY = "sonar.issuesMode.changedFilesIssuesOnly";
 
   private boolean scanAllFiles;
+  private boolean changedFilesIssuesOnly;
 
   public DefaultAnalysisMode(GlobalProperties globalProps, AnalysisProperties props) {
     init(globalProps.properties(), props.properties());
   }
 
+  /**
+   * When false, only the files that changed since the last analysis are exposed to sensors. This is the default
+   * in issues mode. In publish mode, it can be enabled with the property {@value #KEY_SCAN_CHANGED_FILES_ONLY}, in which
+   * case the Compute Engine reuses the results of the last analysis for the unchanged files. Their coverage is the one
+   * of the last analysis, even if tests changed, so a full analysis is needed to refresh it.
+   */
   public boolean scanAllFiles() {
     return scanAllFiles;
   }
 
+  /**
+   * Only the server issues of changed files are loaded, so issues of unchanged files are not reported.
+   * Can only be enabled in issues mode, when only changed files are scanned.
+   * @since 6.4
+   */
+  public boolean changedFilesIssuesOnly() {
+    return changedFilesIssuesOnly;
+  }
+
   private void init(Map<String, String> globalProps, Map<String, String> analysisProps) {
     // make sure analysis is consistent with global properties
     boolean globalPreview = isIssues(globalProps);
@@ -63,7 +81,12 @@ public class DefaultAnalysisMode extends AbstractAnalysisMode {
     issues = CoreProperties.ANALYSIS_MODE_ISSUES.equals(mode) || CoreProperties.ANALYSIS_MODE_PREVIEW.equals(mode);
     mediumTestMode = "true".equals(getPropertyWithFallback(analysisProps, globalProps, MEDIUM_TEST_ENABLED));
     String scanAllStr = getPropertyWithFallback(analysisProps, globalProps, KEY_SCAN_ALL);
-    scanAllFiles = !issues || "true".equals(scanAllStr);
+    if (issues) {
+      scanAllFiles = "true".equals(scanAllStr);
+    } else {
+      scanAllFiles = !"true".equals(getPropertyWithFallback(analysisProps, globalProps, KEY_SCAN_CHANGED_FILES_ONLY));
+    }
+    changedFilesIssuesOnly = issues && !scanAllFiles && "true".equals(getPropertyWithFallback(analysisProps, globalProps, KEY_CHANGED_FILES_ISSUES_ONLY));
   }
 
   public void printMode() {
@@ -80,6 +103,9 @@ public class DefaultAnalysisMode extends AbstractAnalysisMode {
     if (!scanAllFiles) {
       LOG.info("Scanning only changed files");
     }
+    if (changedFilesIssuesOnly) {
+      LOG.info("Loading only issues of changed files");
+    }
   }
 
   @CheckForNull
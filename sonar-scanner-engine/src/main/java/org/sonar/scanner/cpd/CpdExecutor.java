@@ -22,7 +22,10 @@ package org.sonar.scanner.cpd;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -30,7 +33,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-
+import javax.annotation.CheckForNull;
 import org.sonar.api.batch.fs.InputComponent;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputComponent;
@@ -56,11 +59,15 @@ import static com.google.common.collect.FluentIterable.from;
  * Runs on the root module, at the end of the project analysis.
  * It executes copy paste detection involving all files of all modules, which were indexed during sensors execution for each module
  * by {@link CpdSensor). The sensor is responsible for handling exclusions and block sizes.
+ * Files are processed concurrently by a bounded pool of threads (see {@link #THREADS_PROPERTY}), but duplications
+ * are saved by the calling thread in the order of the index.
  */
 public class CpdExecutor {
   private static final Logger LOG = Loggers.get(CpdExecutor.class);
-  // timeout for the computation of duplicates in a file (seconds)
+  // timeout for the computation of duplicates in a file (milliseconds)
   private static final int TIMEOUT = 5 * 60 * 1000;
+  // number of threads used to detect duplications. Default is the number of available processors.
+  static final String THREADS_PROPERTY = "sonar.cpd.threads";
   static final int MAX_CLONE_GROUP_PER_FILE = 100;
   static final int MAX_CLONE_PART_PER_GROUP = 100;
 
@@ -86,27 +93,45 @@ public class CpdExecutor {
 
   @VisibleForTesting
   void execute(long timeout) {
+    index.freeze();
     total = index.noResources();
     int filesWithoutBlocks = index.noIndexedFiles() - total;
     if (filesWithoutBlocks > 0) {
       LOG.info("{} {} had no CPD blocks", filesWithoutBlocks, pluralize(filesWithoutBlocks));
     }
+    int threads = getThreads();
     progressReport.start(String.format("Calculating CPD for %d %s", total, pluralize(total)));
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    LOG.debug("Detection of duplications is executed by {} {}", threads, threads == 1 ? "thread" : "threads");
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+      .setNameFormat("cpd-%d")
+      .setDaemon(true)
+      .build());
     try {
+      // at most one pending detection per thread, so that each detection starts as soon as it's submitted and
+      // duplications are saved in the same order as the files of the index
+      Deque<PendingDetection> pendingDetections = new ArrayDeque<>(threads);
       Iterator<ResourceBlocks> it = index.iterator();
 
       while (it.hasNext()) {
         ResourceBlocks resourceBlocks = it.next();
-        runCpdAnalysis(executorService, resourceBlocks.resourceId(), resourceBlocks.blocks(), timeout);
+        PendingDetection detection = submitCpdAnalysis(executorService, resourceBlocks.resourceId(), resourceBlocks.blocks());
+        if (detection != null) {
+          pendingDetections.add(detection);
+        }
+        if (pendingDetections.size() >= threads) {
+          completeCpdAnalysis(pendingDetections.poll(), timeout);
+        }
         count++;
       }
+      while (!pendingDetections.isEmpty()) {
+        completeCpdAnalysis(pendingDetections.poll(), timeout);
+      }
       progressReport.stop("CPD calculation finished");
     } catch (Exception e) {
       progressReport.stop("");
       throw e;
     } finally {
-      executorService.shutdown();
+      executorService.shutdownNow();
     }
   }
 
@@ -114,25 +139,49 @@ public class CpdExecutor {
     return files == 1 ? "file" : "files";
   }
 
+  @VisibleForTesting
+  int getThreads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads <= 0) {
+      threads = Runtime.getRuntime().availableProcessors();
+    }
+    return threads;
+  }
+
   @VisibleForTesting
   void runCpdAnalysis(ExecutorService executorService, String componentKey, final Collection<Block> fileBlocks, long timeout) {
+    PendingDetection detection = submitCpdAnalysis(executorService, componentKey, fileBlocks);
+    if (detection != null) {
+      completeCpdAnalysis(detection, timeout);
+    }
+  }
+
+  @CheckForNull
+  private PendingDetection submitCpdAnalysis(ExecutorService executorService, String componentKey, final Collection<Block> fileBlocks) {
     DefaultInputComponent component = (DefaultInputComponent) componentStore.getByKey(componentKey);
     if (component == null) {
       LOG.error("Resource not found in component store: {}. Skipping CPD computation for it", componentKey);
-      return;
+      return null;
     }
 
     InputFile inputFile = (InputFile) component;
     LOG.debug("Detection of duplications for {}", inputFile.absolutePath());
     progressReport.message(String.format("%d/%d - current file: %s", count, total, inputFile.absolutePath()));
 
-    List<CloneGroup> duplications;
     Future<List<CloneGroup>> futureResult = executorService.submit(() -> SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks));
+    return new PendingDetection(component, futureResult, System.currentTimeMillis());
+  }
+
+  private void completeCpdAnalysis(PendingDetection detection, long timeout) {
+    InputFile inputFile = (InputFile) detection.component;
+    long remainingTimeout = Math.max(0L, timeout - (System.currentTimeMillis() - detection.submittedAt));
+
+    List<CloneGroup> duplications;
     try {
-      duplications = futureResult.get(timeout, TimeUnit.MILLISECONDS);
+      duplications = detection.futureResult.get(remainingTimeout, TimeUnit.MILLISECONDS);
     } catch (TimeoutException e) {
       LOG.warn("Timeout during detection of duplications for " + inputFile.absolutePath());
-      futureResult.cancel(true);
+      detection.futureResult.cancel(true);
       return;
     } catch (Exception e) {
       throw new IllegalStateException("Fail during detection of duplication for " + inputFile.absolutePath(), e);
@@ -146,7 +195,19 @@ public class CpdExecutor {
       filtered = duplications;
     }
 
-    saveDuplications(component, filtered);
+    saveDuplications(detection.component, filtered);
+  }
+
+  private static class PendingDetection {
+    private final DefaultInputComponent component;
+    private final Future<List<CloneGroup>> futureResult;
+    private final long submittedAt;
+
+    PendingDetection(DefaultInputComponent component, Future<List<CloneGroup>> futureResult, long submittedAt) {
+      this.component = component;
+      this.futureResult = futureResult;
+      this.submittedAt = submittedAt;
+    }
   }
 
   @VisibleForTesting
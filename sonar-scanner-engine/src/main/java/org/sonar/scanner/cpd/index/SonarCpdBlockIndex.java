@@ -43,7 +43,9 @@ import org.sonar.scanner.report.ReportPublisher;
 
 public class SonarCpdBlockIndex extends AbstractCloneIndex {
   private static final Logger LOG = Loggers.get(SonarCpdBlockIndex.class);
-  private final CloneIndex mem = new PackedMemoryCloneIndex();
+  private final PackedMemoryCloneIndex mem = new PackedMemoryCloneIndex();
+  // mem once frozen, used for queries once all files are indexed. It takes over the arrays of mem, which are not copied.
+  private CloneIndex frozen;
   private final ReportPublisher publisher;
   private final Settings settings;
   // Files already tokenized
@@ -80,6 +82,17 @@ public class SonarCpdBlockIndex extends AbstractCloneIndex {
     indexedFiles.add(inputFile);
   }
 
+  /**
+   * Forbids further insertions. Once frozen, the index can be queried concurrently by several threads.
+   */
+  public void freeze() {
+    frozen = mem.freeze();
+  }
+
+  private CloneIndex queryIndex() {
+    return frozen != null ? frozen : mem;
+  }
+
   public int noIndexedFiles() {
     return indexedFiles.size();
   }
@@ -95,12 +108,12 @@ public class SonarCpdBlockIndex extends AbstractCloneIndex {
   }
 
   public Collection<Block> getByInputFile(String resourceKey) {
-    return mem.getByResourceId(resourceKey);
+    return queryIndex().getByResourceId(resourceKey);
   }
 
   @Override
   public Collection<Block> getBySequenceHash(ByteArray hash) {
-    return mem.getBySequenceHash(hash);
+    return queryIndex().getBySequenceHash(hash);
   }
 
   @Override
@@ -115,12 +128,12 @@ public class SonarCpdBlockIndex extends AbstractCloneIndex {
 
   @Override
   public Iterator<ResourceBlocks> iterator() {
-    return mem.iterator();
+    return queryIndex().iterator();
   }
 
   @Override
   public int noResources() {
-    return mem.noResources();
+    return queryIndex().noResources();
   }
 
 }
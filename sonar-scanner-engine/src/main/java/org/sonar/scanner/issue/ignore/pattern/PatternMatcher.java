@@ -22,8 +22,10 @@ package org.sonar.scanner.issue.ignore.pattern;
 import org.sonar.api.rule.RuleKey;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
 
 import java.util.Collection;
 import java.util.Set;
@@ -31,9 +33,12 @@ import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
+/**
+ * Patterns are added while metadata of files is computed, which may happen concurrently, so the multimap is synchronized.
+ */
 public class PatternMatcher {
 
-  private Multimap<String, IssuePattern> excludePatternByComponent = LinkedHashMultimap.create();
+  private final Multimap<String, IssuePattern> excludePatternByComponent = Multimaps.synchronizedSetMultimap(LinkedHashMultimap.create());
 
   @CheckForNull
   public IssuePattern getMatchingPattern(String componentKey, RuleKey ruleKey, @Nullable Integer line) {
@@ -47,7 +52,9 @@ public class PatternMatcher {
 
   @VisibleForTesting
   public Collection<IssuePattern> getPatternsForComponent(String componentKey) {
-    return excludePatternByComponent.get(componentKey);
+    synchronized (excludePatternByComponent) {
+      return ImmutableList.copyOf(excludePatternByComponent.get(componentKey));
+    }
   }
 
   public void addPatternForComponent(String componentKey, IssuePattern pattern) {
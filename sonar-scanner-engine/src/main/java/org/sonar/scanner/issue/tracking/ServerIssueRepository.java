@@ -19,17 +19,23 @@
  */
 package org.sonar.scanner.issue.tracking;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputComponent;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputModule;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
 import org.sonar.core.component.ComponentKeys;
+import org.sonar.scanner.analysis.DefaultAnalysisMode;
 import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
 import org.sonar.scanner.repository.ServerIssuesLoader;
 import org.sonar.scanner.scan.ImmutableProjectReactor;
@@ -49,22 +55,45 @@ public class ServerIssueRepository {
   private final ServerIssuesLoader previousIssuesLoader;
   private final ImmutableProjectReactor reactor;
   private final InputComponentStore resourceCache;
+  private final DefaultAnalysisMode mode;
 
-  public ServerIssueRepository(Storages caches, ServerIssuesLoader previousIssuesLoader, ImmutableProjectReactor reactor, InputComponentStore resourceCache) {
+  public ServerIssueRepository(Storages caches, ServerIssuesLoader previousIssuesLoader, ImmutableProjectReactor reactor, InputComponentStore resourceCache,
+    DefaultAnalysisMode mode) {
     this.caches = caches;
     this.previousIssuesLoader = previousIssuesLoader;
     this.reactor = reactor;
     this.resourceCache = resourceCache;
+    this.mode = mode;
   }
 
   public void load() {
     Profiler profiler = Profiler.create(LOG).startInfo(LOG_MSG);
     this.issuesCache = caches.createCache("previousIssues");
     caches.registerValueCoder(ServerIssue.class, new ServerIssueValueCoder());
-    previousIssuesLoader.load(reactor.getRoot().getKeyWithBranch(), new SaveIssueConsumer());
+    if (mode.changedFilesIssuesOnly()) {
+      // issues of project, modules and directories are always loaded, even if no files changed
+      previousIssuesLoader.load(reactor.getRoot().getKeyWithBranch(), changedFileKeys(), new SaveIssueConsumer());
+    } else {
+      previousIssuesLoader.load(reactor.getRoot().getKeyWithBranch(), new SaveIssueConsumer());
+    }
     profiler.stopInfo();
   }
 
+  /**
+   * Keys on server side of the files which content differs from the last analysis. Added files
+   * are ignored as they don't have any issue yet.
+   */
+  private List<String> changedFileKeys() {
+    List<String> keys = new ArrayList<>();
+    for (InputFile inputFile : resourceCache.allFiles()) {
+      if (inputFile.status() == InputFile.Status.CHANGED) {
+        DefaultInputModule module = (DefaultInputModule) resourceCache.getModule(((DefaultInputFile) inputFile).moduleKey());
+        keys.add(ComponentKeys.createEffectiveKey(module.definition().getKeyWithBranch(), inputFile.relativePath()));
+      }
+    }
+    return keys;
+  }
+
   public Iterable<ServerIssue> byComponent(InputComponent component) {
     return issuesCache.values(((DefaultInputComponent) component).batchId());
   }
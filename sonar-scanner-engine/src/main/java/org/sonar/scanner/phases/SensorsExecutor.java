@@ -19,32 +19,51 @@
  */
 package org.sonar.scanner.phases;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.internal.DefaultInputModule;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.scanner.bootstrap.ScannerExtensionDictionnary;
 import org.sonar.scanner.events.EventBus;
 import org.sonar.scanner.sensor.SensorStrategy;
+import org.sonar.scanner.sensor.SensorWrapper;
 
+/**
+ * Executes the sensors of a module, in the order given by {@link ScannerExtensionDictionnary}. Consecutive sensors
+ * supporting concurrent execution (see {@link org.sonar.api.batch.sensor.SensorDescriptor#supportsConcurrentExecution()})
+ * are executed by a bounded pool of threads (see {@link #THREADS_PROPERTY}). Other sensors are executed alone by the calling thread.
+ */
 @ScannerSide
 public class SensorsExecutor {
+  // number of threads used to execute concurrent sensors. Default is the number of available processors.
+  static final String THREADS_PROPERTY = "sonar.sensors.threads";
+
   private final ScannerExtensionDictionnary selector;
   private final DefaultInputModule module;
   private final EventBus eventBus;
   private final SensorStrategy strategy;
+  private final Settings settings;
   private final boolean isRoot;
 
-  public SensorsExecutor(ScannerExtensionDictionnary selector, DefaultInputModule module, EventBus eventBus, SensorStrategy strategy) {
+  public SensorsExecutor(ScannerExtensionDictionnary selector, DefaultInputModule module, EventBus eventBus, SensorStrategy strategy, Settings settings) {
     this.selector = selector;
     this.module = module;
     this.eventBus = eventBus;
     this.strategy = strategy;
+    this.settings = settings;
     this.isRoot = module.definition().getParent() == null;
   }
 
@@ -77,9 +96,56 @@ public class SensorsExecutor {
   }
 
   private void execute(SensorContext context, Collection<Sensor> sensors) {
+    List<Sensor> concurrentSensors = new ArrayList<>();
     for (Sensor sensor : sensors) {
-      executeSensor(context, sensor);
+      if (isConcurrent(sensor)) {
+        concurrentSensors.add(sensor);
+      } else {
+        executeConcurrently(context, concurrentSensors);
+        concurrentSensors.clear();
+        executeSensor(context, sensor);
+      }
+    }
+    executeConcurrently(context, concurrentSensors);
+  }
+
+  private static boolean isConcurrent(Sensor sensor) {
+    return sensor instanceof SensorWrapper && ((SensorWrapper) sensor).isConcurrent();
+  }
+
+  private void executeConcurrently(SensorContext context, List<Sensor> sensors) {
+    if (sensors.size() <= 1) {
+      sensors.forEach(sensor -> executeSensor(context, sensor));
+      return;
+    }
+    int threads = Math.min(getThreads(), sensors.size());
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("Sensor-%d").build());
+    try {
+      List<Future<?>> tasks = new ArrayList<>(sensors.size());
+      for (Sensor sensor : sensors) {
+        tasks.add(executorService.submit(() -> executeSensor(context, sensor)));
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (ExecutionException e) {
+      // Unwrap ExecutionException
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @VisibleForTesting
+  int getThreads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads <= 0) {
+      threads = Runtime.getRuntime().availableProcessors();
     }
+    return threads;
   }
 
   private void executeSensor(SensorContext context, Sensor sensor) {
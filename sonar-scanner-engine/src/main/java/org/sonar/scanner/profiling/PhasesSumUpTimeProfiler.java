@@ -154,7 +154,7 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   }
 
   @Override
-  public void onSensorExecution(SensorExecutionEvent event) {
+  public synchronized void onSensorExecution(SensorExecutionEvent event) {
     PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phase.SENSOR);
     if (event.isStart()) {
       profiling.newItemProfiling(event.getSensor());
@@ -37,6 +37,7 @@ import org.sonar.api.batch.fs.internal.DefaultInputModule;
 import org.sonar.api.batch.fs.internal.InputComponentTree;
 import org.sonar.api.batch.fs.internal.InputModuleHierarchy;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.scanner.analysis.DefaultAnalysisMode;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.scanner.protocol.output.ScannerReportReader;
 import org.sonar.scanner.protocol.output.ScannerReport.Component.ComponentType;
@@ -52,12 +53,14 @@ public class ComponentsPublisher implements ReportPublisherStep {
 
   private InputComponentTree componentTree;
   private InputModuleHierarchy moduleHierarchy;
+  private DefaultAnalysisMode mode;
   private ScannerReportReader reader;
   private ScannerReportWriter writer;
 
-  public ComponentsPublisher(InputModuleHierarchy moduleHierarchy, InputComponentTree inputComponentTree) {
+  public ComponentsPublisher(InputModuleHierarchy moduleHierarchy, InputComponentTree inputComponentTree, DefaultAnalysisMode mode) {
     this.moduleHierarchy = moduleHierarchy;
     this.componentTree = inputComponentTree;
+    this.mode = mode;
   }
 
   @Override
@@ -109,6 +112,10 @@ public class ComponentsPublisher implements ReportPublisherStep {
       DefaultInputFile file = (DefaultInputFile) component;
       builder.setIsTest(file.type() == InputFile.Type.TEST);
       builder.setLines(file.lines());
+      // unchanged files are not exposed to sensors, so Compute Engine must reuse the results of the last analysis
+      if (!mode.scanAllFiles() && file.status() == InputFile.Status.SAME) {
+        builder.setIsReused(true);
+      }
 
       String lang = getLanguageKey(file);
       if (lang != null) {
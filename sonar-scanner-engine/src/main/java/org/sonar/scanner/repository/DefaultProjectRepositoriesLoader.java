@@ -22,16 +22,25 @@ package org.sonar.scanner.repository;
 import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Date;
 import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.utils.MessageException;
 import org.sonar.scanner.bootstrap.ScannerWsClient;
+import org.sonar.home.cache.FileCache;
 import org.sonar.scanner.util.ScannerUtils;
 import org.sonarqube.ws.WsBatch;
 import org.sonarqube.ws.WsBatch.WsProjectResponse;
@@ -44,18 +53,32 @@ import org.sonarqube.ws.client.WsResponse;
 public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoader {
   private static final Logger LOG = LoggerFactory.getLogger(DefaultProjectRepositoriesLoader.class);
   private static final String BATCH_PROJECT_URL = "/batch/project.protobuf";
+  private static final String CACHE_DIR = "_project_repositories";
   private ScannerWsClient wsClient;
+  private FileCache fileCache;
 
-  public DefaultProjectRepositoriesLoader(ScannerWsClient wsClient) {
+  public DefaultProjectRepositoriesLoader(ScannerWsClient wsClient, FileCache fileCache) {
     this.wsClient = wsClient;
+    this.fileCache = fileCache;
   }
 
   @Override
   public ProjectRepositories load(String projectKey, boolean issuesMode) {
-    GetRequest request = new GetRequest(getUrl(projectKey, issuesMode));
+    Path cacheFile = cacheFile(projectKey);
+    WsProjectResponse cachedResponse = readCache(cacheFile);
+    String cachedFileDataVersion = cachedResponse == null ? null : cachedResponse.getFileDataVersion();
+    GetRequest request = new GetRequest(getUrl(projectKey, issuesMode, cachedFileDataVersion));
     try (WsResponse response = wsClient.call(request)) {
       InputStream is = response.contentStream();
-      return processStream(is, projectKey);
+      WsProjectResponse projectResponse = parseStream(is, projectKey);
+      if (projectResponse.getFileDataUnchanged() && cachedResponse != null) {
+        LOG.debug("File data of project is up-to-date in cache");
+        return toProjectRepositories(projectResponse, cachedResponse);
+      }
+      if (projectResponse.hasFileDataVersion()) {
+        writeCache(cacheFile, projectResponse);
+      }
+      return toProjectRepositories(projectResponse, projectResponse);
     } catch (RuntimeException e) {
       if (shouldThrow(e)) {
         throw e;
@@ -66,7 +89,7 @@ public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoad
     }
   }
 
-  private static String getUrl(String projectKey, boolean issuesMode) {
+  private static String getUrl(String projectKey, boolean issuesMode, @Nullable String fileDataVersion) {
     StringBuilder builder = new StringBuilder();
 
     builder.append(BATCH_PROJECT_URL)
@@ -74,6 +97,9 @@ public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoad
     if (issuesMode) {
       builder.append("&issues_mode=true");
     }
+    if (fileDataVersion != null && !fileDataVersion.isEmpty()) {
+      builder.append("&file_data_version=").append(ScannerUtils.encodeForUrl(fileDataVersion));
+    }
     return builder.toString();
   }
 
@@ -91,33 +117,76 @@ public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoad
     return false;
   }
 
-  private static ProjectRepositories processStream(InputStream is, String projectKey) {
-    try {
-      WsProjectResponse response = WsProjectResponse.parseFrom(is);
-
-      Table<String, String, FileData> fileDataTable = HashBasedTable.create();
-      Table<String, String, String> settings = HashBasedTable.create();
+  /**
+   * The file data of the last response of the server is kept in the user cache, so that it is downloaded
+   * again only after a new analysis. Cache is specific to server and project.
+   */
+  private Path cacheFile(String projectKey) {
+    String name = DigestUtils.md5Hex(wsClient.baseUrl() + "|" + projectKey);
+    return new File(new File(fileCache.getDir(), CACHE_DIR), name).toPath();
+  }
 
-      Map<String, Settings> settingsByModule = response.getSettingsByModule();
-      for (Map.Entry<String, Settings> e1 : settingsByModule.entrySet()) {
-        for (Map.Entry<String, String> e2 : e1.getValue().getSettings().entrySet()) {
-          settings.put(e1.getKey(), e2.getKey(), e2.getValue());
-        }
-      }
+  @CheckForNull
+  private static WsProjectResponse readCache(Path cacheFile) {
+    if (!cacheFile.toFile().exists()) {
+      return null;
+    }
+    try (InputStream is = Files.newInputStream(cacheFile)) {
+      return WsProjectResponse.parseFrom(is);
+    } catch (IOException e) {
+      LOG.debug("Fail to read project repository from cache: " + cacheFile, e);
+      return null;
+    }
+  }
 
-      Map<String, FileDataByPath> fileDataByModuleAndPath = response.getFileDataByModuleAndPath();
-      for (Map.Entry<String, FileDataByPath> e1 : fileDataByModuleAndPath.entrySet()) {
-        for (Map.Entry<String, WsBatch.WsProjectResponse.FileData> e2 : e1.getValue().getFileDataByPath().entrySet()) {
-          FileData fd = new FileData(e2.getValue().getHash(), e2.getValue().getRevision());
-          fileDataTable.put(e1.getKey(), e2.getKey(), fd);
-        }
+  /**
+   * Only file data and its version are persisted. Settings, including secured properties, are never
+   * written to disk.
+   */
+  private static void writeCache(Path cacheFile, WsProjectResponse response) {
+    WsProjectResponse.Builder fileData = WsProjectResponse.newBuilder().setFileDataVersion(response.getFileDataVersion());
+    fileData.getMutableFileDataByModuleAndPath().putAll(response.getFileDataByModuleAndPath());
+    try {
+      Files.createDirectories(cacheFile.getParent());
+      Path tempFile = Files.createTempFile(cacheFile.getParent(), "project", ".tmp");
+      try (OutputStream os = Files.newOutputStream(tempFile)) {
+        fileData.build().writeTo(os);
       }
+      Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.debug("Fail to write project repository to cache: " + cacheFile, e);
+    }
+  }
 
-      return new ProjectRepositories(settings, fileDataTable, new Date(response.getLastAnalysisDate()));
+  private static WsProjectResponse parseStream(InputStream is, String projectKey) {
+    try {
+      return WsProjectResponse.parseFrom(is);
     } catch (IOException e) {
       throw new IllegalStateException("Couldn't load project repository for " + projectKey, e);
     } finally {
       IOUtils.closeQuietly(is);
     }
   }
+
+  private static ProjectRepositories toProjectRepositories(WsProjectResponse response, WsProjectResponse fileDataResponse) {
+    Table<String, String, FileData> fileDataTable = HashBasedTable.create();
+    Table<String, String, String> settings = HashBasedTable.create();
+
+    Map<String, Settings> settingsByModule = response.getSettingsByModule();
+    for (Map.Entry<String, Settings> e1 : settingsByModule.entrySet()) {
+      for (Map.Entry<String, String> e2 : e1.getValue().getSettings().entrySet()) {
+        settings.put(e1.getKey(), e2.getKey(), e2.getValue());
+      }
+    }
+
+    Map<String, FileDataByPath> fileDataByModuleAndPath = fileDataResponse.getFileDataByModuleAndPath();
+    for (Map.Entry<String, FileDataByPath> e1 : fileDataByModuleAndPath.entrySet()) {
+      for (Map.Entry<String, WsBatch.WsProjectResponse.FileData> e2 : e1.getValue().getFileDataByPath().entrySet()) {
+        FileData fd = new FileData(e2.getValue().getHash(), e2.getValue().getRevision());
+        fileDataTable.put(e1.getKey(), e2.getKey(), fd);
+      }
+    }
+
+    return new ProjectRepositories(settings, fileDataTable, new Date(response.getLastAnalysisDate()));
+  }
 }
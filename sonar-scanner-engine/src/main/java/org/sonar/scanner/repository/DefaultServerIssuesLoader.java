@@ -21,6 +21,9 @@ package org.sonar.scanner.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Function;
 
 import org.apache.commons.io.IOUtils;
@@ -29,8 +32,16 @@ import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
 import org.sonar.scanner.util.ScannerUtils;
 import org.sonarqube.ws.client.GetRequest;
 
+import static com.google.common.collect.Iterables.partition;
+import static java.util.stream.Collectors.joining;
+
 public class DefaultServerIssuesLoader implements ServerIssuesLoader {
 
+  /**
+   * Maximum number of files requested at once, as accepted by the web service
+   */
+  static final int FILES_PER_REQUEST = 100;
+
   private final ScannerWsClient wsClient;
 
   public DefaultServerIssuesLoader(ScannerWsClient wsClient) {
@@ -44,6 +55,28 @@ public class DefaultServerIssuesLoader implements ServerIssuesLoader {
     parseIssues(is, consumer);
   }
 
+  @Override
+  public void load(String componentKey, Collection<String> fileKeys, Function<ServerIssue, Void> consumer) {
+    if (fileKeys.isEmpty()) {
+      loadFiles(componentKey, Collections.emptyList(), consumer);
+      return;
+    }
+    for (List<String> keys : partition(fileKeys, FILES_PER_REQUEST)) {
+      loadFiles(componentKey, keys, consumer);
+    }
+  }
+
+  /**
+   * Issues of components which are not files are returned by each request. They are identified
+   * by their key, so loading them several times is harmless.
+   */
+  private void loadFiles(String componentKey, List<String> fileKeys, Function<ServerIssue, Void> consumer) {
+    String files = fileKeys.stream().map(ScannerUtils::encodeForUrl).collect(joining(","));
+    GetRequest getRequest = new GetRequest("/batch/issues.protobuf?key=" + ScannerUtils.encodeForUrl(componentKey) + "&files=" + files);
+    InputStream is = wsClient.call(getRequest).contentStream();
+    parseIssues(is, consumer);
+  }
+
   private static void parseIssues(InputStream is, Function<ServerIssue, Void> consumer) {
     try {
       ServerIssue previousIssue = ServerIssue.parseDelimitedFrom(is);
@@ -19,6 +19,7 @@
  */
 package org.sonar.scanner.repository;
 
+import java.util.Collection;
 import java.util.function.Function;
 
 import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
@@ -27,4 +28,10 @@ public interface ServerIssuesLoader {
 
   void load(String componentKey, Function<ServerIssue, Void> consumer);
 
+  /**
+   * Load only the issues of the given files of the component, and the issues of the components which
+   * are not files (project, modules and directories). {@code fileKeys} can be empty.
+   */
+  void load(String componentKey, Collection<String> fileKeys, Function<ServerIssue, Void> consumer);
+
 }
@@ -47,6 +47,7 @@ import org.sonar.api.scan.filesystem.PathResolver;
 /**
  * Store of all files and dirs. This cache is shared amongst all project modules. Inclusion and
  * exclusion patterns are already applied.
+ * Lookups and updates are synchronized, as sensors supporting concurrent execution may access the store at the same time.
  */
 @ScannerSide
 public class InputComponentStore {
@@ -86,7 +87,7 @@ public class InputComponentStore {
     return inputDirCache.values();
   }
 
-  public InputComponent getByKey(String key) {
+  public synchronized InputComponent getByKey(String key) {
     return inputComponents.get(key);
   }
 
@@ -103,25 +104,25 @@ public class InputComponentStore {
     return inputDirCache.row(moduleKey).values();
   }
 
-  public InputComponentStore removeModule(String moduleKey) {
+  public synchronized InputComponentStore removeModule(String moduleKey) {
     inputFileCache.row(moduleKey).clear();
     inputDirCache.row(moduleKey).clear();
     return this;
   }
 
-  public InputComponentStore remove(InputFile inputFile) {
+  public synchronized InputComponentStore remove(InputFile inputFile) {
     DefaultInputFile file = (DefaultInputFile) inputFile;
     inputFileCache.remove(file.moduleKey(), inputFile.relativePath());
     return this;
   }
 
-  public InputComponentStore remove(InputDir inputDir) {
+  public synchronized InputComponentStore remove(InputDir inputDir) {
     DefaultInputDir dir = (DefaultInputDir) inputDir;
     inputDirCache.remove(dir.moduleKey(), inputDir.relativePath());
     return this;
   }
 
-  public InputComponentStore put(InputFile inputFile) {
+  public synchronized InputComponentStore put(InputFile inputFile) {
     DefaultInputFile file = (DefaultInputFile) inputFile;
     addToLanguageCache(file);
     inputFileCache.put(file.moduleKey(), inputFile.relativePath(), inputFile);
@@ -140,7 +141,7 @@ public class InputComponentStore {
     }
   }
 
-  public InputComponentStore put(InputDir inputDir) {
+  public synchronized InputComponentStore put(InputDir inputDir) {
     DefaultInputDir dir = (DefaultInputDir) inputDir;
     inputDirCache.put(dir.moduleKey(), inputDir.relativePath(), inputDir);
     globalInputDirCache.put(getProjectRelativePath(dir), inputDir);
@@ -161,31 +162,31 @@ public class InputComponentStore {
   }
 
   @CheckForNull
-  public InputFile getFile(String moduleKey, String relativePath) {
+  public synchronized InputFile getFile(String moduleKey, String relativePath) {
     return inputFileCache.get(moduleKey, relativePath);
   }
 
   @CheckForNull
-  public InputFile getFile(String relativePath) {
+  public synchronized InputFile getFile(String relativePath) {
     return globalInputFileCache.get(relativePath);
   }
 
   @CheckForNull
-  public InputDir getDir(String moduleKey, String relativePath) {
+  public synchronized InputDir getDir(String moduleKey, String relativePath) {
     return inputDirCache.get(moduleKey, relativePath);
   }
 
   @CheckForNull
-  public InputDir getDir(String relativePath) {
+  public synchronized InputDir getDir(String relativePath) {
     return globalInputDirCache.get(relativePath);
   }
 
   @CheckForNull
-  public InputModule getModule(String moduleKey) {
+  public synchronized InputModule getModule(String moduleKey) {
     return inputModuleCache.get(moduleKey);
   }
 
-  public void put(DefaultInputModule inputModule) {
+  public synchronized void put(DefaultInputModule inputModule) {
     String key = inputModule.key();
     Preconditions.checkState(!inputComponents.containsKey(key), "Module '%s' already indexed", key);
     Preconditions.checkState(!inputModuleCache.containsKey(key), "Module '%s' already indexed", key);
@@ -20,6 +20,7 @@
 package org.sonar.scanner.scan.measure;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import javax.annotation.CheckForNull;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.measure.MetricFinder;
@@ -30,6 +31,8 @@ import org.sonar.scanner.storage.Storage.Entry;
 
 /**
  * Cache of all measures. This cache is shared amongst all project modules.
+ * The underlying {@link Storage} is not thread-safe, so every access is synchronized and iterables are copied,
+ * as measures may be read and saved by sensors running concurrently.
  */
 @ScannerSide
 public class MeasureCache {
@@ -41,31 +44,31 @@ public class MeasureCache {
     cache = caches.createCache("measures");
   }
 
-  public Iterable<Entry<DefaultMeasure<?>>> entries() {
-    return cache.entries();
+  public synchronized Iterable<Entry<DefaultMeasure<?>>> entries() {
+    return ImmutableList.copyOf(cache.entries());
   }
 
-  public Iterable<DefaultMeasure<?>> all() {
-    return cache.values();
+  public synchronized Iterable<DefaultMeasure<?>> all() {
+    return ImmutableList.copyOf(cache.values());
   }
 
-  public Iterable<DefaultMeasure<?>> byComponentKey(String effectiveKey) {
-    return cache.values(effectiveKey);
+  public synchronized Iterable<DefaultMeasure<?>> byComponentKey(String effectiveKey) {
+    return ImmutableList.copyOf(cache.values(effectiveKey));
   }
 
   @CheckForNull
-  public DefaultMeasure<?> byMetric(String componentKey, String metricKey) {
+  public synchronized DefaultMeasure<?> byMetric(String componentKey, String metricKey) {
     return cache.get(componentKey, metricKey);
   }
 
-  public MeasureCache put(String componentKey, String metricKey, DefaultMeasure<?> measure) {
+  public synchronized MeasureCache put(String componentKey, String metricKey, DefaultMeasure<?> measure) {
     Preconditions.checkNotNull(componentKey);
     Preconditions.checkNotNull(metricKey);
     cache.put(componentKey, metricKey, measure);
     return this;
   }
 
-  public boolean contains(String componentKey, String metricKey) {
+  public synchronized boolean contains(String componentKey, String metricKey) {
     Preconditions.checkNotNull(componentKey);
     Preconditions.checkNotNull(metricKey);
     return cache.containsKey(componentKey, metricKey);
@@ -19,14 +19,26 @@
  */
 package org.sonar.scanner.scan.measure;
 
-import com.persistit.Value;
-import com.persistit.encoding.CoderContext;
-import com.persistit.encoding.ValueCoder;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import org.apache.commons.lang.SerializationUtils;
 import org.sonar.api.batch.measure.MetricFinder;
 import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.scanner.storage.ValueCoder;
 
-class MeasureValueCoder implements ValueCoder {
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+class MeasureValueCoder implements ValueCoder<DefaultMeasure<?>> {
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INTEGER = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte BOOLEAN = 5;
+  private static final byte SERIALIZED = 6;
 
   private final MetricFinder metricFinder;
 
@@ -35,22 +47,74 @@ class MeasureValueCoder implements ValueCoder {
   }
 
   @Override
-  public void put(Value value, Object object, CoderContext context) {
-    DefaultMeasure<?> m = (DefaultMeasure<?>) object;
-    org.sonar.api.batch.measure.Metric<?> metric = m.metric();
-    value.putString(metric.key());
-    value.put(m.value());
+  public void put(DataOutput out, DefaultMeasure<?> m) throws IOException {
+    out.writeUTF(m.metric().key());
+    Serializable value = m.value();
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeBytes(out, ((String) value).getBytes(UTF_8));
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else {
+      out.writeByte(SERIALIZED);
+      writeBytes(out, SerializationUtils.serialize(value));
+    }
   }
 
   @Override
-  public Object get(Value value, Class clazz, CoderContext context) {
-    String metricKey = value.getString();
+  public DefaultMeasure<?> get(DataInput in) throws IOException {
+    String metricKey = in.readUTF();
     org.sonar.api.batch.measure.Metric<?> metric = metricFinder.findByKey(metricKey);
     if (metric == null) {
       throw new IllegalStateException("Unknow metric with key " + metricKey);
     }
     return new DefaultMeasure()
       .forMetric(metric)
-      .withValue((Serializable) value.get());
+      .withValue(readValue(in));
+  }
+
+  private static Serializable readValue(DataInput in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case NULL:
+        return null;
+      case STRING:
+        return new String(readBytes(in), UTF_8);
+      case INTEGER:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      case DOUBLE:
+        return in.readDouble();
+      case BOOLEAN:
+        return in.readBoolean();
+      case SERIALIZED:
+        return (Serializable) SerializationUtils.deserialize(readBytes(in));
+      default:
+        throw new IllegalStateException("Unknown type of measure value: " + type);
+    }
+  }
+
+  private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
   }
 }
@@ -112,6 +112,9 @@ import static org.sonar.api.measures.CoreMetrics.TEST_SUCCESS_DENSITY_KEY;
 import static org.sonar.api.measures.CoreMetrics.UNCOVERED_CONDITIONS;
 import static org.sonar.api.measures.CoreMetrics.UNCOVERED_LINES;
 
+/**
+ * Write methods are synchronized, as sensors supporting concurrent execution may store data at the same time.
+ */
 public class DefaultSensorStorage implements SensorStorage {
 
   private static final Logger LOG = Loggers.get(DefaultSensorStorage.class);
@@ -203,7 +206,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(Measure newMeasure) {
+  public synchronized void store(Measure newMeasure) {
     if (newMeasure.inputComponent() instanceof DefaultInputFile) {
       ((DefaultInputFile) newMeasure.inputComponent()).setPublish(true);
     }
@@ -217,7 +220,7 @@ public class DefaultSensorStorage implements SensorStorage {
     }
   }
 
-  public void saveMeasure(InputComponent component, DefaultMeasure<?> measure) {
+  public synchronized void saveMeasure(InputComponent component, DefaultMeasure<?> measure) {
     if (component.isFile()) {
       ((DefaultInputFile) component).setPublish(true);
     }
@@ -350,7 +353,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(Issue issue) {
+  public synchronized void store(Issue issue) {
     if (issue.primaryLocation().inputComponent() instanceof DefaultInputFile) {
       ((DefaultInputFile) issue.primaryLocation().inputComponent()).setPublish(true);
     }
@@ -358,7 +361,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(DefaultHighlighting highlighting) {
+  public synchronized void store(DefaultHighlighting highlighting) {
     ScannerReportWriter writer = reportPublisher.getWriter();
     DefaultInputFile inputFile = (DefaultInputFile) highlighting.inputFile();
     inputFile.setPublish(true);
@@ -383,7 +386,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(DefaultSymbolTable symbolTable) {
+  public synchronized void store(DefaultSymbolTable symbolTable) {
     ScannerReportWriter writer = reportPublisher.getWriter();
     DefaultInputFile inputFile = (DefaultInputFile) symbolTable.inputFile();
     inputFile.setPublish(true);
@@ -416,7 +419,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(DefaultCoverage defaultCoverage) {
+  public synchronized void store(DefaultCoverage defaultCoverage) {
     DefaultInputFile inputFile = (DefaultInputFile) defaultCoverage.inputFile();
     inputFile.setPublish(true);
     if (coverageExclusions.isExcluded(inputFile)) {
@@ -442,7 +445,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(DefaultCpdTokens defaultCpdTokens) {
+  public synchronized void store(DefaultCpdTokens defaultCpdTokens) {
     DefaultInputFile inputFile = (DefaultInputFile) defaultCpdTokens.inputFile();
     inputFile.setPublish(true);
     PmdBlockChunker blockChunker = new PmdBlockChunker(getBlockSize(inputFile.language()));
@@ -460,13 +463,13 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(AnalysisError analysisError) {
+  public synchronized void store(AnalysisError analysisError) {
     ((DefaultInputFile) analysisError.inputFile()).setPublish(true);
     // no op
   }
 
   @Override
-  public void storeProperty(String key, String value) {
+  public synchronized void storeProperty(String key, String value) {
     contextPropertiesCache.put(key, value);
   }
 }
@@ -0,0 +1,184 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.storage;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.CheckForNull;
+import org.sonar.core.util.MappedByteBuffers;
+
+import static org.sonar.core.util.FileUtils.deleteQuietly;
+
+/**
+ * File of variable-length records, mapped in memory by segments. A record is
+ * addressed by a handle made of the index of its segment (high 32 bits) and of its offset
+ * in the segment (low 32 bits). Records which are not used anymore are released with {@link #free(long)}
+ * and their space is reused by the next appended records which fit in it. Segments are unmapped
+ * when the file is closed.
+ */
+class SpillFile implements Closeable {
+
+  static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+  // capacity and length of record
+  static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+  private final List<MappedByteBuffer> segments = new ArrayList<>();
+  private MappedByteBuffer current;
+  private long length = 0L;
+  // handles of free records, by capacity
+  private final TreeMap<Integer, Deque<Long>> freeRecords = new TreeMap<>();
+
+  SpillFile(File file) throws IOException {
+    this.file = file;
+    this.randomAccessFile = new RandomAccessFile(file, "rw");
+    this.channel = randomAccessFile.getChannel();
+  }
+
+  long append(byte[] bytes, int len) throws IOException {
+    Long freeHandle = pollFreeRecord(len);
+    if (freeHandle != null) {
+      ByteBuffer buffer = bufferAt(freeHandle);
+      // capacity of record is unchanged
+      buffer.position(buffer.position() + Integer.BYTES);
+      buffer.putInt(len);
+      buffer.put(bytes, 0, len);
+      return freeHandle;
+    }
+    int recordSize = HEADER_SIZE + len;
+    if (current == null || current.remaining() < recordSize) {
+      int segmentSize = Math.max(SEGMENT_SIZE, recordSize);
+      current = channel.map(FileChannel.MapMode.READ_WRITE, length, segmentSize);
+      segments.add(current);
+      length += segmentSize;
+    }
+    long handle = ((long) (segments.size() - 1) << 32) | current.position();
+    current.putInt(len);
+    current.putInt(len);
+    current.put(bytes, 0, len);
+    return handle;
+  }
+
+  /**
+   * Best fit among free records. Records more than twice bigger than needed are not reused,
+   * so that they remain available for big values.
+   */
+  @CheckForNull
+  private Long pollFreeRecord(int len) {
+    Map.Entry<Integer, Deque<Long>> entry = freeRecords.ceilingEntry(len);
+    if (entry == null || entry.getKey() / 2 > len) {
+      return null;
+    }
+    Deque<Long> handles = entry.getValue();
+    Long handle = handles.poll();
+    if (handles.isEmpty()) {
+      freeRecords.remove(entry.getKey());
+    }
+    return handle;
+  }
+
+  /**
+   * The record must not be read anymore. Its space is reused by next appends.
+   */
+  void free(long handle) {
+    int capacity = bufferAt(handle).getInt();
+    freeRecords.computeIfAbsent(capacity, k -> new ArrayDeque<>()).add(handle);
+  }
+
+  DataInput read(long handle) {
+    ByteBuffer buffer = bufferAt(handle);
+    buffer.position(buffer.position() + Integer.BYTES);
+    int len = buffer.getInt();
+    buffer.limit(buffer.position() + len);
+    return new DataInputStream(new ByteBufferInputStream(buffer));
+  }
+
+  private ByteBuffer bufferAt(long handle) {
+    ByteBuffer buffer = segments.get((int) (handle >>> 32)).duplicate();
+    buffer.position((int) handle);
+    return buffer;
+  }
+
+  long length() {
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // file can't be deleted on Windows as long as segments are mapped
+    segments.forEach(MappedByteBuffers::unmap);
+    segments.clear();
+    freeRecords.clear();
+    current = null;
+    try {
+      channel.close();
+      randomAccessFile.close();
+    } finally {
+      deleteQuietly(file);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(bytes, off, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -20,55 +20,75 @@
 package org.sonar.scanner.storage;
 
 import com.google.common.collect.Sets;
-import com.persistit.Exchange;
-import com.persistit.Key;
-import com.persistit.KeyFilter;
-import com.persistit.exception.PersistitException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeMap;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.apache.commons.lang.builder.ToStringBuilder;
 
+import static org.sonar.scanner.storage.Storages.NOT_SPILLED;
+
 /**
  * <p>
- * This storage is not thread-safe, due to direct usage of {@link com.persistit.Exchange}
+ * In-memory tree of values, indexed by keys made of one or more parts. Parts of keys are sorted
+ * by their natural order, so keys, values and entries are iterated in key order.
+ * Values having a {@link ValueCoder} registered in {@link Storages} are spilled out of the heap. Space of
+ * spilled values is reused once they are overwritten or removed.
+ * </p>
+ * <p>
+ * This storage is not thread-safe. Iterators support the update and the removal of existing keys,
+ * but not the addition of keys nor the clearing of groups.
  * </p>
  */
 public class Storage<V> {
 
+  private static final Comparator<Object> KEY_PART_ORDER = Storage::compareKeyParts;
+
   private final String name;
-  private final Exchange exchange;
+  private final Storages storages;
+  private final Node root = new Node(null, null);
 
-  Storage(String name, Exchange exchange) {
+  Storage(String name, Storages storages) {
     this.name = name;
-    this.exchange = exchange;
+    this.storages = storages;
   }
 
   public Storage<V> put(Object key, V value) {
-    resetKey(key);
-    return doPut(value);
+    return doPut(child(root, key), value);
   }
 
   public Storage<V> put(Object firstKey, Object secondKey, V value) {
-    resetKey(firstKey, secondKey);
-    return doPut(value);
+    return doPut(child(child(root, firstKey), secondKey), value);
   }
 
   public Storage<V> put(Object firstKey, Object secondKey, Object thirdKey, V value) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doPut(value);
+    return doPut(child(child(child(root, firstKey), secondKey), thirdKey), value);
   }
 
   public Storage<V> put(Object[] key, V value) {
-    resetKey(key);
-    return doPut(value);
+    Node node = root;
+    for (Object o : key) {
+      node = child(node, o);
+    }
+    return doPut(node, value);
   }
 
-  private Storage<V> doPut(V value) {
+  private Storage<V> doPut(Node node, V value) {
     try {
-      exchange.getValue().put(value);
-      exchange.store();
+      long handle = storages.spill(value);
+      if (!node.defined) {
+        node.defined = true;
+        node.addToSize(1);
+      }
+      storages.release(node.handle);
+      node.value = handle == NOT_SPILLED ? value : null;
+      node.handle = handle;
       return this;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to put element in the storage '" + name + "'", e);
@@ -79,8 +99,7 @@ public class Storage<V> {
    * Returns the value object associated with keys, or null if not found.
    */
   public V get(Object key) {
-    resetKey(key);
-    return doGet();
+    return doGet(find(root, key));
   }
 
   /**
@@ -88,8 +107,7 @@ public class Storage<V> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doGet();
+    return doGet(find(find(root, firstKey), secondKey));
   }
 
   /**
@@ -97,8 +115,7 @@ public class Storage<V> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doGet();
+    return doGet(find(find(find(root, firstKey), secondKey), thirdKey));
   }
 
   /**
@@ -106,19 +123,24 @@ public class Storage<V> {
    */
   @CheckForNull
   public V get(Object[] key) {
-    resetKey(key);
-    return doGet();
+    return doGet(find(key));
   }
 
-  @SuppressWarnings("unchecked")
   @CheckForNull
-  private V doGet() {
+  private V doGet(@Nullable Node node) {
+    if (node == null || !node.defined) {
+      return null;
+    }
+    return valueOf(node);
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueOf(Node node) {
+    if (node.handle == NOT_SPILLED) {
+      return (V) node.value;
+    }
     try {
-      exchange.fetch();
-      if (!exchange.getValue().isDefined()) {
-        return null;
-      }
-      return (V) exchange.getValue().get();
+      return (V) storages.unspill(node.handle);
     } catch (Exception e) {
       // TODO add parameters to message
       throw new IllegalStateException("Fail to get element from cache " + name, e);
@@ -126,62 +148,54 @@ public class Storage<V> {
   }
 
   public boolean containsKey(Object key) {
-    resetKey(key);
-    return doContainsKey();
+    return isDefined(find(root, key));
   }
 
   public boolean containsKey(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doContainsKey();
+    return isDefined(find(find(root, firstKey), secondKey));
   }
 
   public boolean containsKey(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doContainsKey();
+    return isDefined(find(find(find(root, firstKey), secondKey), thirdKey));
   }
 
   public boolean containsKey(Object[] key) {
-    resetKey(key);
-    return doContainsKey();
+    return isDefined(find(key));
   }
 
-  private boolean doContainsKey() {
-    try {
-      exchange.fetch();
-      return exchange.isValueDefined();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to check if element is in cache " + name, e);
-    }
+  private static boolean isDefined(@Nullable Node node) {
+    return node != null && node.defined;
   }
 
   public boolean remove(Object key) {
-    resetKey(key);
-    return doRemove();
+    return doRemove(find(root, key));
   }
 
   public boolean remove(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doRemove();
+    return doRemove(find(find(root, firstKey), secondKey));
   }
 
   public boolean remove(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doRemove();
+    return doRemove(find(find(find(root, firstKey), secondKey), thirdKey));
   }
 
   public boolean remove(Object[] key) {
-    resetKey(key);
-    return doRemove();
+    return doRemove(find(key));
   }
 
-  private boolean doRemove() {
-    try {
-      return exchange.remove();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to get element from cache " + name, e);
+  /**
+   * The node is kept in the tree, so that removing the current element of an iterator is supported.
+   */
+  private boolean doRemove(@Nullable Node node) {
+    if (node == null || !node.defined) {
+      return false;
     }
+    storages.release(node.handle);
+    node.defined = false;
+    node.value = null;
+    node.handle = NOT_SPILLED;
+    node.addToSize(-1);
+    return true;
   }
 
   /**
@@ -190,45 +204,46 @@ public class Storage<V> {
    * @param group The group name.
    */
   public Storage<V> clear(Object key) {
-    resetKey(key);
-    return doClear();
+    return doClear(find(root, key));
   }
 
   public Storage<V> clear(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doClear();
+    return doClear(find(find(root, firstKey), secondKey));
   }
 
   public Storage<V> clear(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doClear();
+    return doClear(find(find(find(root, firstKey), secondKey), thirdKey));
   }
 
   public Storage<V> clear(Object[] key) {
-    resetKey(key);
-    return doClear();
+    return doClear(find(key));
   }
 
-  private Storage<V> doClear() {
-    try {
-      Key to = new Key(exchange.getKey());
-      to.append(Key.AFTER);
-      exchange.removeKeyRange(exchange.getKey(), to);
-      return this;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to clear values from cache " + name, e);
+  private Storage<V> doClear(@Nullable Node node) {
+    if (node != null) {
+      release(node);
+      node.addToSize(-node.size);
+      node.parent.children.remove(node.key);
     }
+    return this;
   }
 
   /**
    * Clears the default as well as all group caches.
    */
   public void clear() {
-    try {
-      exchange.clear();
-      exchange.removeAll();
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to clear cache", e);
+    release(root);
+    root.children = null;
+    root.size = 0;
+  }
+
+  /**
+   * Releases the spilled values of the node and of its descendants
+   */
+  private void release(Node node) {
+    storages.release(node.handle);
+    if (node.children != null) {
+      node.children.values().forEach(this::release);
     }
   }
 
@@ -241,37 +256,12 @@ public class Storage<V> {
    */
   @SuppressWarnings("rawtypes")
   public Set keySet(Object key) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(key);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
+    return keysOf(find(root, key));
   }
 
   @SuppressWarnings("rawtypes")
   public Set keySet(Object firstKey, Object secondKey) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(firstKey);
-      iteratorExchange.append(secondKey);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
+    return keysOf(find(find(root, firstKey), secondKey));
   }
 
   /**
@@ -280,200 +270,215 @@ public class Storage<V> {
    * @return The set containing the keys for this cache.
    */
   public Set<Object> keySet() {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
+    return keysOf(root);
+  }
+
+  private static Set<Object> keysOf(@Nullable Node node) {
+    Set<Object> keys = Sets.newLinkedHashSet();
+    if (node != null && node.children != null) {
+      for (Map.Entry<Object, Node> child : node.children.entrySet()) {
+        if (child.getValue().size > 0) {
+          keys.add(child.getKey());
+        }
       }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
     }
+    return keys;
   }
 
   /**
    * Lazy-loading values for given keys
    */
   public Iterable<V> values(Object firstKey, Object secondKey) {
-    return new ValueIterable<>(exchange, firstKey, secondKey);
+    return () -> new ValueIterator(find(find(root, firstKey), secondKey));
   }
 
   /**
    * Lazy-loading values for a given key
    */
   public Iterable<V> values(Object firstKey) {
-    return new ValueIterable<>(exchange, firstKey);
+    return () -> new ValueIterator(find(root, firstKey));
   }
 
   /**
    * Lazy-loading values
    */
   public Iterable<V> values() {
-    return new ValueIterable<>(exchange);
+    return () -> new ValueIterator(root);
   }
 
   public Iterable<Entry<V>> entries() {
-    return new EntryIterable<>(exchange);
+    return () -> new EntryIterator(root);
   }
 
   public Iterable<Entry<V>> entries(Object firstKey) {
-    return new EntryIterable<>(exchange, firstKey);
-  }
-
-  private void resetKey(Object key) {
-    exchange.clear();
-    exchange.append(key);
+    return () -> new EntryIterator(find(root, firstKey));
   }
 
-  private void resetKey(Object first, Object second) {
-    exchange.clear();
-    exchange.append(first).append(second);
+  private static Node child(Node parent, Object key) {
+    if (parent.children == null) {
+      parent.children = new TreeMap<>(KEY_PART_ORDER);
+    }
+    Node node = parent.children.get(key);
+    if (node == null) {
+      node = new Node(parent, key);
+      parent.children.put(key, node);
+    }
+    return node;
   }
 
-  private void resetKey(Object first, Object second, Object third) {
-    exchange.clear();
-    exchange.append(first).append(second).append(third);
+  @CheckForNull
+  private static Node find(@Nullable Node parent, Object key) {
+    if (parent == null || parent.children == null) {
+      return null;
+    }
+    return parent.children.get(key);
   }
 
-  private void resetKey(Object[] keys) {
-    exchange.clear();
-    for (Object o : keys) {
-      exchange.append(o);
+  @CheckForNull
+  private Node find(Object[] key) {
+    Node node = root;
+    for (Object o : key) {
+      node = find(node, o);
     }
+    return node;
   }
 
-  //
-  // LAZY ITERATORS AND ITERABLES
-  //
-
-  private static class ValueIterable<T> implements Iterable<T> {
-    private final Exchange originExchange;
-    private final Object[] keys;
+  /**
+   * Parts of different types are sorted by class name, so that each type is grouped
+   * in the key space, as it was with the former Persistit storage.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compareKeyParts(Object o1, Object o2) {
+    if (!(o1 instanceof Comparable) || !(o2 instanceof Comparable)) {
+      throw new IllegalArgumentException("Key parts must be comparable: " + o1 + ", " + o2);
+    }
+    if (o1.getClass() == o2.getClass()) {
+      return ((Comparable) o1).compareTo(o2);
+    }
+    return o1.getClass().getName().compareTo(o2.getClass().getName());
+  }
+
+  private static final class Node {
+    @Nullable
+    private final Node parent;
+    @Nullable
+    private final Object key;
+    private TreeMap<Object, Node> children;
+    private boolean defined;
+    private Object value;
+    private long handle = NOT_SPILLED;
+    // number of values defined in this node and its descendants
+    private int size;
+
+    private Node(@Nullable Node parent, @Nullable Object key) {
+      this.parent = parent;
+      this.key = key;
+    }
 
-    private ValueIterable(Exchange originExchange, Object... keys) {
-      this.originExchange = originExchange;
-      this.keys = keys;
+    private void addToSize(int delta) {
+      for (Node node = this; node != null; node = node.parent) {
+        node.size += delta;
+      }
     }
 
-    @Override
-    public Iterator<T> iterator() {
-      originExchange.clear();
-      KeyFilter filter = new KeyFilter();
-      for (Object key : keys) {
-        originExchange.append(key);
-        filter = filter.append(KeyFilter.simpleTerm(key));
+    private Object[] path() {
+      int depth = 0;
+      for (Node node = this; node.parent != null; node = node.parent) {
+        depth++;
+      }
+      Object[] path = new Object[depth];
+      for (Node node = this; node.parent != null; node = node.parent) {
+        depth--;
+        path[depth] = node.key;
       }
-      originExchange.append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(originExchange);
-      return new ValueIterator<>(iteratorExchange, filter);
+      return path;
     }
   }
 
-  private static class ValueIterator<T> implements Iterator<T> {
-    private final Exchange exchange;
-    private final KeyFilter keyFilter;
+  //
+  // LAZY ITERATORS
+  //
 
-    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
-      this.exchange = exchange;
-      this.keyFilter = keyFilter;
+  /**
+   * Depth-first traversal of the values strictly under a node, in key order.
+   */
+  private abstract class NodeIterator<T> implements Iterator<T> {
+    private final Deque<Iterator<Node>> stack = new ArrayDeque<>();
+    private Node next;
+
+    private NodeIterator(@Nullable Node from) {
+      if (from != null && from.children != null) {
+        stack.push(from.children.values().iterator());
+      }
     }
 
     @Override
     public boolean hasNext() {
-      try {
-        return exchange.hasNext(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
+      if (next == null) {
+        next = advance();
       }
+      return next != null;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public T next() {
-      try {
-        exchange.next(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
+      if (!hasNext()) {
+        throw new NoSuchElementException();
       }
-      if (exchange.getValue().isDefined()) {
-        return (T) exchange.getValue().get();
+      Node node = next;
+      next = null;
+      return toElement(node);
+    }
+
+    @CheckForNull
+    private Node advance() {
+      while (!stack.isEmpty()) {
+        Iterator<Node> it = stack.peek();
+        if (!it.hasNext()) {
+          stack.pop();
+          continue;
+        }
+        Node node = it.next();
+        if (node.size == 0) {
+          continue;
+        }
+        if (node.children != null) {
+          stack.push(node.children.values().iterator());
+        }
+        if (node.defined) {
+          return node;
+        }
       }
-      throw new NoSuchElementException();
+      return null;
     }
 
+    abstract T toElement(Node node);
+
     @Override
     public void remove() {
       throw new UnsupportedOperationException("Removing an item is not supported");
     }
   }
 
-  private static class EntryIterable<T> implements Iterable<Entry<T>> {
-    private final Exchange originExchange;
-    private final Object[] keys;
-
-    private EntryIterable(Exchange originExchange, Object... keys) {
-      this.originExchange = originExchange;
-      this.keys = keys;
+  private class ValueIterator extends NodeIterator<V> {
+    private ValueIterator(@Nullable Node from) {
+      super(from);
     }
 
     @Override
-    public Iterator<Entry<T>> iterator() {
-      originExchange.clear();
-      KeyFilter filter = new KeyFilter();
-      for (Object key : keys) {
-        originExchange.append(key);
-        filter = filter.append(KeyFilter.simpleTerm(key));
-      }
-      originExchange.append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(originExchange);
-      return new EntryIterator<>(iteratorExchange, filter);
+    V toElement(Node node) {
+      return valueOf(node);
     }
   }
 
-  private static class EntryIterator<T> implements Iterator<Entry<T>> {
-    private final Exchange exchange;
-    private final KeyFilter keyFilter;
-
-    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
-      this.exchange = exchange;
-      this.keyFilter = keyFilter;
+  private class EntryIterator extends NodeIterator<Entry<V>> {
+    private EntryIterator(@Nullable Node from) {
+      super(from);
     }
 
     @Override
-    public boolean hasNext() {
-      try {
-        return exchange.hasNext(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-    }
-
-    @SuppressWarnings("unchecked")
-    @Override
-    public Entry<T> next() {
-      try {
-        exchange.next(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-      if (exchange.getValue().isDefined()) {
-        T value = (T) exchange.getValue().get();
-        Key key = exchange.getKey();
-        Object[] array = new Object[key.getDepth()];
-        for (int i = 0; i < key.getDepth(); i++) {
-          array[i] = key.indexTo(i - key.getDepth()).decode();
-        }
-        return new Entry<>(array, value);
-      }
-      throw new NoSuchElementException();
-    }
-
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException("Removing an item is not supported");
+    Entry<V> toElement(Node node) {
+      return new Entry<>(node.path(), valueOf(node));
     }
   }
 
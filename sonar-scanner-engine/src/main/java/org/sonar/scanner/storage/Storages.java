@@ -20,29 +20,37 @@
 package org.sonar.scanner.storage;
 
 import com.google.common.base.Preconditions;
-import com.persistit.Exchange;
-import com.persistit.Persistit;
-import com.persistit.Value;
-import com.persistit.Volume;
-import com.persistit.encoding.CoderManager;
-import com.persistit.encoding.ValueCoder;
-import com.persistit.exception.PersistitException;
-
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import javax.annotation.CheckForNull;
 import org.picocontainer.Startable;
 import org.sonar.api.batch.ScannerSide;
 
 @ScannerSide
 public class Storages implements Startable {
-  private final Map<String, Exchange> cacheMap = new HashMap<>();
-  private Persistit persistit;
-  private Volume volume;
+
+  static final long NOT_SPILLED = -1L;
+  static final int MAXIMUM_VALUE_SIZE = 64 * 1024 * 1024;
+
+  private final Map<String, Storage<?>> cacheMap = new HashMap<>();
+  private final Map<Class<?>, Integer> coderIndexByClass = new HashMap<>();
+  private final List<ValueCoder<Object>> coders = new ArrayList<>();
+  private final File tempDir;
+  private SpillBuffer spillBuffer = new SpillBuffer();
+  private DataOutputStream spillOutput = new DataOutputStream(spillBuffer);
+  private SpillFile spillFile;
+  private boolean initialized;
 
   public Storages(StoragesManager storagesManager) {
-    persistit = storagesManager.persistit();
-    doStart();
+    tempDir = storagesManager.tempDir();
+    initialized = tempDir != null;
   }
 
   @Override
@@ -50,50 +58,100 @@ public class Storages implements Startable {
     // done in constructor
   }
 
-  private void doStart() {
+  /**
+   * Values of the given class are encoded with {@code coder} and moved out of the heap, into
+   * the memory-mapped storage file. Other values are kept as references.
+   */
+  @SuppressWarnings("unchecked")
+  public void registerValueCoder(Class<?> clazz, ValueCoder<?> coder) {
+    coderIndexByClass.put(clazz, coders.size());
+    coders.add((ValueCoder<Object>) coder);
+  }
+
+  public <V> Storage<V> createCache(String cacheName) {
+    Preconditions.checkState(initialized, "Caches are not initialized");
+    Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: %s", cacheName);
+    Storage<V> cache = new Storage<>(cacheName, this);
+    cacheMap.put(cacheName, cache);
+    return cache;
+  }
+
+  /**
+   * @return the handle of the spilled value, or {@link #NOT_SPILLED} if no coder is registered for its class
+   */
+  synchronized long spill(@CheckForNull Object value) throws IOException {
+    Integer coderIndex = value == null ? null : coderIndexByClass.get(value.getClass());
+    if (coderIndex == null) {
+      return NOT_SPILLED;
+    }
     try {
-      persistit.flush();
-      volume = persistit.createTemporaryVolume();
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to create a cache volume", e);
+      spillOutput.writeInt(coderIndex);
+      coders.get(coderIndex).put(spillOutput, value);
+      spillOutput.flush();
+      Preconditions.checkState(spillBuffer.size() <= MAXIMUM_VALUE_SIZE, "Value is too big: %s bytes", spillBuffer.size());
+      return spillFile().append(spillBuffer.bytes(), spillBuffer.size());
+    } finally {
+      resetSpillBuffer();
     }
   }
 
-  public void registerValueCoder(Class<?> clazz, ValueCoder coder) {
-    CoderManager cm = persistit.getCoderManager();
-    cm.registerValueCoder(clazz, coder);
+  /**
+   * Space of the spilled value is reused by next spilled values
+   */
+  synchronized void release(long handle) {
+    if (handle != NOT_SPILLED && spillFile != null) {
+      spillFile.free(handle);
+    }
   }
 
-  public <V> Storage<V> createCache(String cacheName) {
-    Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
-    Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: %s", cacheName);
-    try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Storage<V> cache = new Storage<>(cacheName, exchange);
-      cacheMap.put(cacheName, exchange);
-      return cache;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to create cache: " + cacheName, e);
+  synchronized Object unspill(long handle) throws IOException {
+    DataInput in = spillFile.read(handle);
+    return coders.get(in.readInt()).get(in);
+  }
+
+  private SpillFile spillFile() throws IOException {
+    if (spillFile == null) {
+      spillFile = new SpillFile(File.createTempFile("storage", ".dat", tempDir));
     }
+    return spillFile;
   }
 
-  @Override
-  public void stop() {
-    for (Entry<String, Exchange> e : cacheMap.entrySet()) {
-      persistit.releaseExchange(e.getValue());
+  private void resetSpillBuffer() {
+    if (spillBuffer.capacity() > SpillFile.SEGMENT_SIZE) {
+      // do not retain the buffer of an unusually big value
+      spillBuffer = new SpillBuffer();
+      spillOutput = new DataOutputStream(spillBuffer);
+    } else {
+      spillBuffer.reset();
     }
+  }
 
+  @Override
+  public void stop() {
     cacheMap.clear();
+    initialized = false;
 
-    if (volume != null) {
+    if (spillFile != null) {
       try {
-        volume.close();
-        volume.delete();
-      } catch (PersistitException e) {
+        spillFile.close();
+      } catch (IOException e) {
         throw new IllegalStateException("Fail to close caches", e);
       }
-      volume = null;
+      spillFile = null;
+    }
+  }
+
+  private static class SpillBuffer extends ByteArrayOutputStream {
+    private SpillBuffer() {
+      super(8 * 1024);
+    }
+
+    private byte[] bytes() {
+      return buf;
+    }
+
+    private int capacity() {
+      return buf.length;
     }
   }
 }
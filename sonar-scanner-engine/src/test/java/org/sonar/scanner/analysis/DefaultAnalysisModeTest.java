@@ -103,6 +103,44 @@ public class DefaultAnalysisModeTest {
     assertThat(mode.scanAllFiles()).isTrue();
   }
 
+  @Test
+  public void scan_changed_files_only_in_publish_mode() {
+    Map<String, String> props = new HashMap<>();
+    props.put(CoreProperties.ANALYSIS_MODE, CoreProperties.ANALYSIS_MODE_PUBLISH);
+    GlobalProperties globalProps = new GlobalProperties(props);
+
+    props.put("sonar.scanChangedFilesOnly", "true");
+    DefaultAnalysisMode mode = new DefaultAnalysisMode(globalProps, new AnalysisProperties(props));
+
+    assertThat(mode.isPublish()).isTrue();
+    assertThat(mode.scanAllFiles()).isFalse();
+    assertThat(mode.changedFilesIssuesOnly()).isFalse();
+  }
+
+  @Test
+  public void changed_files_issues_only() {
+    Map<String, String> props = new HashMap<>();
+    props.put(CoreProperties.ANALYSIS_MODE, CoreProperties.ANALYSIS_MODE_ISSUES);
+    GlobalProperties globalProps = new GlobalProperties(props);
+
+    AnalysisProperties analysisProps = new AnalysisProperties(new HashMap<String, String>());
+    DefaultAnalysisMode mode = new DefaultAnalysisMode(globalProps, analysisProps);
+    assertThat(mode.changedFilesIssuesOnly()).isFalse();
+
+    props.put("sonar.issuesMode.changedFilesIssuesOnly", "true");
+    analysisProps = new AnalysisProperties(props);
+
+    mode = new DefaultAnalysisMode(globalProps, analysisProps);
+    assertThat(mode.changedFilesIssuesOnly()).isTrue();
+
+    // all files are scanned, so issues of unchanged files are needed
+    props.put("sonar.scanAllFiles", "true");
+    analysisProps = new AnalysisProperties(props);
+
+    mode = new DefaultAnalysisMode(globalProps, analysisProps);
+    assertThat(mode.changedFilesIssuesOnly()).isFalse();
+  }
+
   @Test
   public void default_publish_mode() {
     DefaultAnalysisMode mode = createMode(null);
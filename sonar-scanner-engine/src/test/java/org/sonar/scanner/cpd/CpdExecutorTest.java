@@ -122,6 +122,74 @@ public class CpdExecutorTest {
     assertThat(executor.getMinimumTokens("php")).isEqualTo(33);
   }
 
+  @Test
+  public void threads_default_to_available_processors() {
+    assertThat(executor.getThreads()).isEqualTo(Runtime.getRuntime().availableProcessors());
+  }
+
+  @Test
+  public void configured_threads() {
+    settings.setProperty(CpdExecutor.THREADS_PROPERTY, "3");
+    assertThat(executor.getThreads()).isEqualTo(3);
+  }
+
+  @Test
+  public void detect_duplications_with_several_threads() {
+    settings.setProperty(CpdExecutor.THREADS_PROPERTY, "2");
+    List<DefaultInputFile> files = new ArrayList<>();
+    for (int i = 1; i <= 4; i++) {
+      DefaultInputFile file = new TestInputFileBuilder("foo", "src/Bar" + i + ".java")
+        .setModuleBaseDir(baseDir.toPath())
+        .setLanguage("java")
+        .setLines(10)
+        .build();
+      componentStore.put(file);
+      List<Block> blocks = new ArrayList<>();
+      for (int j = 1; j <= 3; j++) {
+        blocks.add(Block.builder()
+          .setResourceId(file.key())
+          .setIndexInFile(j)
+          .setLines(j, j + 1)
+          .setUnit(j, j + 1)
+          // files 1 and 2 are identical, files 3 and 4 are identical
+          .setBlockHash(new ByteArray((i <= 2 ? 10L : 20L) + j))
+          .build());
+      }
+      index.insert((InputFile) file, blocks);
+      files.add(file);
+    }
+
+    executor.execute();
+
+    assertThat(index.getByInputFile(files.get(0).key())).hasSize(3);
+    assertSingleDuplicationWith(files.get(0), files.get(1));
+    assertSingleDuplicationWith(files.get(1), files.get(0));
+    assertSingleDuplicationWith(files.get(2), files.get(3));
+    assertSingleDuplicationWith(files.get(3), files.get(2));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void index_is_frozen_after_execution() {
+    executor.execute();
+
+    index.insert(batchComponent1, Collections.singletonList(Block.builder()
+      .setResourceId(batchComponent1.key())
+      .setBlockHash(new ByteArray(1L))
+      .build()));
+  }
+
+  private void assertSingleDuplicationWith(DefaultInputFile file, DefaultInputFile other) {
+    try (CloseableIterator<Duplication> dups = reader.readComponentDuplications(file.batchId())) {
+      assertThat(dups.hasNext()).isTrue();
+      Duplication duplication = dups.next();
+      assertThat(duplication.getOriginPosition().getStartLine()).isEqualTo(1);
+      assertThat(duplication.getOriginPosition().getEndLine()).isEqualTo(4);
+      assertThat(duplication.getDuplicateList()).hasSize(1);
+      assertThat(duplication.getDuplicate(0).getOtherFileRef()).isEqualTo(other.batchId());
+      assertThat(dups.hasNext()).isFalse();
+    }
+  }
+
   @Test
   public void testNothingToSave() {
     executor.saveDuplications(batchComponent1, Collections.<CloneGroup>emptyList());
@@ -29,6 +29,7 @@ import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -53,6 +54,7 @@ import org.sonar.batch.bootstrapper.Batch;
 import org.sonar.batch.bootstrapper.EnvironmentInformation;
 import org.sonar.batch.bootstrapper.IssueListener;
 import org.sonar.batch.bootstrapper.LogOutput;
+import org.sonar.core.component.ComponentKeys;
 import org.sonar.scanner.bootstrap.GlobalMode;
 import org.sonar.scanner.issue.tracking.ServerLineHashesLoader;
 import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
@@ -461,6 +463,15 @@ public class ScannerMediumTester {
         consumer.apply(serverIssue);
       }
     }
+
+    @Override
+    public void load(String componentKey, Collection<String> fileKeys, Function<ServerIssue, Void> consumer) {
+      for (ServerIssue serverIssue : serverIssues) {
+        if (!serverIssue.hasPath() || fileKeys.contains(ComponentKeys.createEffectiveKey(serverIssue.getModuleKey(), serverIssue.getPath()))) {
+          consumer.apply(serverIssue);
+        }
+      }
+    }
   }
 
   private static class FakeSettingsLoader implements SettingsLoader {
@@ -176,6 +176,27 @@ public class IssueModeAndReportsMediumTest {
     });
   }
 
+  @Test
+  public void track_issues_of_modules_when_loading_issues_of_changed_files_only() throws Exception {
+    File projectDir = copyProject("/mediumtest/xoo/sample");
+
+    TaskResult result = tester
+      .newScanTask(new File(projectDir, "sonar-project.properties"))
+      .property("sonar.issuesMode.changedFilesIssuesOnly", "true")
+      .start();
+
+    // issue on project is matched, even if no file changed
+    assertThat(result.trackedIssues()).haveExactly(1, new Condition<TrackedIssue>() {
+      @Override
+      public boolean matches(TrackedIssue value) {
+        return !value.isNew()
+          && "resolved-on-project".equals(value.key())
+          && "OPEN".equals(value.status());
+      }
+    });
+    assertThat(result.trackedIssues()).filteredOn(issue -> "OneIssuePerModule".equals(issue.getRuleKey().rule()) && issue.isNew()).isEmpty();
+  }
+
   @Test
   public void testConsoleReport() throws Exception {
     File projectDir = copyProject("/mediumtest/xoo/sample");
@@ -20,17 +20,30 @@
 package org.sonar.scanner.phases;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.*;
+import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultIndexedFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputModule;
+import org.sonar.api.batch.fs.internal.Metadata;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.sensor.SensorDescriptor;
+import org.sonar.api.config.MapSettings;
 import org.sonar.api.resources.Project;
 import org.sonar.scanner.bootstrap.ScannerExtensionDictionnary;
 import org.sonar.scanner.events.EventBus;
+import org.sonar.scanner.sensor.SensorOptimizer;
 import org.sonar.scanner.sensor.SensorStrategy;
+import org.sonar.scanner.sensor.SensorWrapper;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -38,10 +51,15 @@ import static org.mockito.Mockito.*;
 public class SensorsExecutorTest {
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
 
   private SensorsExecutor rootModuleExecutor;
   private SensorsExecutor subModuleExecutor;
   private SensorContext context;
+  private ScannerExtensionDictionnary selector;
+  private DefaultInputModule rootModule;
+  private MapSettings settings = new MapSettings();
 
   private SensorStrategy strategy = new SensorStrategy();
 
@@ -70,20 +88,63 @@ public class SensorsExecutorTest {
     }
   }
 
+  static class ConcurrentSensor implements org.sonar.api.batch.sensor.Sensor {
+    final CountDownLatch latch;
+
+    boolean concurrentlyExecuted;
+
+    ConcurrentSensor(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public void describe(SensorDescriptor descriptor) {
+      descriptor.name("Concurrent").supportsConcurrentExecution();
+    }
+
+    @Override
+    public void execute(org.sonar.api.batch.sensor.SensorContext context) {
+      latch.countDown();
+      try {
+        // both sensors must be running at the same time to release the latch
+        concurrentlyExecuted = latch.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  static class SameFileSensor extends ConcurrentSensor {
+    final InputFile file;
+
+    int lines;
+
+    SameFileSensor(CountDownLatch latch, InputFile file) {
+      super(latch);
+      this.file = file;
+    }
+
+    @Override
+    public void execute(org.sonar.api.batch.sensor.SensorContext context) {
+      super.execute(context);
+      lines = file.lines();
+    }
+  }
+
   @Before
   public void setUp() throws IOException {
     context = mock(SensorContext.class);
 
-    ScannerExtensionDictionnary selector = mock(ScannerExtensionDictionnary.class);
+    selector = mock(ScannerExtensionDictionnary.class);
     when(selector.selectSensors(any(DefaultInputModule.class), eq(false))).thenReturn(Collections.singleton(perModuleSensor));
     when(selector.selectSensors(any(DefaultInputModule.class), eq(true))).thenReturn(Collections.singleton(globalSensor));
 
-    DefaultInputModule rootModule = TestInputFileBuilder.newDefaultInputModule("root", temp.newFolder());
-    rootModuleExecutor = new SensorsExecutor(selector, rootModule, mock(EventBus.class), strategy);
+    rootModule = TestInputFileBuilder.newDefaultInputModule("root", temp.newFolder());
+    rootModuleExecutor = new SensorsExecutor(selector, rootModule, mock(EventBus.class), strategy, settings);
 
     DefaultInputModule subModule = TestInputFileBuilder.newDefaultInputModule("sub", temp.newFolder());
     rootModule.definition().addSubProject(subModule.definition());
-    subModuleExecutor = new SensorsExecutor(selector, subModule, mock(EventBus.class), strategy);
+    subModuleExecutor = new SensorsExecutor(selector, subModule, mock(EventBus.class), strategy, settings);
   }
 
   @Test
@@ -104,4 +165,72 @@ public class SensorsExecutorTest {
     assertThat(globalSensor.called).isTrue();
     assertThat(globalSensor.global).isTrue();
   }
+
+  @Test
+  public void should_execute_concurrent_sensors_at_the_same_time() {
+    CountDownLatch latch = new CountDownLatch(2);
+    ConcurrentSensor sensor1 = new ConcurrentSensor(latch);
+    ConcurrentSensor sensor2 = new ConcurrentSensor(latch);
+    when(selector.selectSensors(any(DefaultInputModule.class), eq(false))).thenReturn(Arrays.asList(perModuleSensor, wrap(sensor1), wrap(sensor2)));
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 2);
+
+    rootModuleExecutor.execute(context);
+
+    assertThat(perModuleSensor.called).isTrue();
+    assertThat(sensor1.concurrentlyExecuted).isTrue();
+    assertThat(sensor2.concurrentlyExecuted).isTrue();
+  }
+
+  @Test
+  public void should_compute_metadata_once_when_concurrent_sensors_access_the_same_file() {
+    AtomicInteger metadataComputations = new AtomicInteger();
+    DefaultInputFile file = new DefaultInputFile(new DefaultIndexedFile("root", temp.getRoot().toPath(), "src/Foo.java"), f -> {
+      metadataComputations.incrementAndGet();
+      try {
+        // leave time to the other sensor to access the file while metadata is being computed
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      f.setMetadata(new Metadata(3, 3, "hash", new int[] {0, 10, 20}, 30));
+    });
+    CountDownLatch latch = new CountDownLatch(2);
+    SameFileSensor sensor1 = new SameFileSensor(latch, file);
+    SameFileSensor sensor2 = new SameFileSensor(latch, file);
+    when(selector.selectSensors(any(DefaultInputModule.class), eq(false))).thenReturn(Arrays.asList(wrap(sensor1), wrap(sensor2)));
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 2);
+
+    rootModuleExecutor.execute(context);
+
+    assertThat(sensor1.concurrentlyExecuted).isTrue();
+    assertThat(sensor2.concurrentlyExecuted).isTrue();
+    assertThat(sensor1.lines).isEqualTo(3);
+    assertThat(sensor2.lines).isEqualTo(3);
+    assertThat(metadataComputations.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_fail_if_concurrent_sensor_fails() {
+    SensorWrapper failingSensor = mock(SensorWrapper.class);
+    when(failingSensor.isConcurrent()).thenReturn(true);
+    doThrow(new IllegalStateException("Sensor failure")).when(failingSensor).analyse(any(Project.class), any(SensorContext.class));
+    when(selector.selectSensors(any(DefaultInputModule.class), eq(false))).thenReturn(Arrays.asList(failingSensor, wrap(new ConcurrentSensor(new CountDownLatch(0)))));
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Sensor failure");
+
+    rootModuleExecutor.execute(context);
+  }
+
+  @Test
+  public void threads_default_to_number_of_processors() {
+    assertThat(rootModuleExecutor.getThreads()).isEqualTo(Runtime.getRuntime().availableProcessors());
+
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 3);
+    assertThat(rootModuleExecutor.getThreads()).isEqualTo(3);
+  }
+
+  private static Sensor wrap(org.sonar.api.batch.sensor.Sensor sensor) {
+    return new SensorWrapper(sensor, mock(org.sonar.api.batch.sensor.SensorContext.class), mock(SensorOptimizer.class));
+  }
 }
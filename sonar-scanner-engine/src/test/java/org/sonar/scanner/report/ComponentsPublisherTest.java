@@ -29,6 +29,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.fs.InputFile.Status;
 import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.internal.DefaultInputDir;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
@@ -37,6 +38,7 @@ import org.sonar.api.batch.fs.internal.InputModuleHierarchy;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
 import org.sonar.api.utils.DateUtils;
 import org.sonar.scanner.ProjectAnalysisInfo;
+import org.sonar.scanner.analysis.DefaultAnalysisMode;
 import org.sonar.scanner.protocol.output.FileStructure;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.scanner.protocol.output.ScannerReport.Component;
@@ -58,9 +60,11 @@ public class ComponentsPublisherTest {
   private InputModuleHierarchy moduleHierarchy;
   private File outputDir;
   private ScannerReportWriter writer;
+  private DefaultAnalysisMode mode = mock(DefaultAnalysisMode.class);
 
   @Before
   public void setUp() throws IOException {
+    when(mode.scanAllFiles()).thenReturn(true);
     tree = new DefaultComponentTree();
     outputDir = temp.newFolder();
     writer = new ScannerReportWriter(outputDir);
@@ -110,7 +114,7 @@ public class ComponentsPublisherTest {
     DefaultInputFile testFile = new TestInputFileBuilder("module1", "test/FooTest.java", 7).setType(Type.TEST).setLines(4).build();
     tree.index(testFile, dir);
 
-    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree);
+    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree, mode);
     publisher.publish(writer);
 
     assertThat(writer.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isTrue();
@@ -138,6 +142,34 @@ public class ComponentsPublisherTest {
     assertThat(module1Protobuf.getVersion()).isEqualTo("1.0");
   }
 
+  @Test
+  public void mark_unchanged_files_as_reused_when_only_changed_files_are_scanned() {
+    when(mode.scanAllFiles()).thenReturn(false);
+
+    ProjectDefinition rootDef = ProjectDefinition.create().setKey("foo");
+    DefaultInputModule root = new DefaultInputModule(rootDef, 1);
+
+    moduleHierarchy = mock(InputModuleHierarchy.class);
+    when(moduleHierarchy.root()).thenReturn(root);
+    when(moduleHierarchy.children(root)).thenReturn(Collections.emptyList());
+
+    DefaultInputDir dir = new DefaultInputDir("foo", "src", 2);
+    tree.index(dir, root);
+
+    DefaultInputFile sameFile = new TestInputFileBuilder("foo", "src/Same.java", 3).setStatus(Status.SAME).setLines(2).build();
+    tree.index(sameFile, dir);
+
+    DefaultInputFile changedFile = new TestInputFileBuilder("foo", "src/Changed.java", 4).setStatus(Status.CHANGED).setLines(2).build();
+    tree.index(changedFile, dir);
+
+    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree, mode);
+    publisher.publish(writer);
+
+    ScannerReportReader reader = new ScannerReportReader(outputDir);
+    assertThat(reader.readComponent(3).getIsReused()).isTrue();
+    assertThat(reader.readComponent(4).getIsReused()).isFalse();
+  }
+
   @Test
   public void should_skip_dir_without_published_files() {
     ProjectAnalysisInfo projectAnalysisInfo = mock(ProjectAnalysisInfo.class);
@@ -176,7 +208,7 @@ public class ComponentsPublisherTest {
     DefaultInputFile file3 = new TestInputFileBuilder("module1", "src2/Foo3.java", 7).setPublish(false).setLines(2).build();
     tree.index(file3, dir3);
 
-    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree);
+    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree, mode);
     publisher.publish(writer);
 
     assertThat(writer.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isTrue();
@@ -224,7 +256,7 @@ public class ComponentsPublisherTest {
     DefaultInputFile testFile = new TestInputFileBuilder("module1", "test/FooTest.java", 6).setType(Type.TEST).setLines(4).build();
     tree.index(testFile, dir);
 
-    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree);
+    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree, mode);
     publisher.publish(writer);
 
     assertThat(writer.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isTrue();
@@ -285,7 +317,7 @@ public class ComponentsPublisherTest {
     DefaultInputFile file = new TestInputFileBuilder("module1", "src/Foo.java", 4).setLines(2).build();
     tree.index(file, dir);
 
-    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree);
+    ComponentsPublisher publisher = new ComponentsPublisher(moduleHierarchy, tree, mode);
     publisher.publish(writer);
 
     ScannerReportReader reader = new ScannerReportReader(outputDir);
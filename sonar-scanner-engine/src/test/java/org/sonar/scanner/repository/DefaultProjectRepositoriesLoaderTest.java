@@ -22,13 +22,17 @@ package org.sonar.scanner.repository;
 import com.google.common.io.Resources;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.utils.MessageException;
+import org.sonar.home.cache.FileCache;
 import org.sonar.scanner.WsTestUtil;
 import org.sonar.scanner.bootstrap.ScannerWsClient;
 import org.sonarqube.ws.WsBatch.WsProjectResponse;
@@ -44,16 +48,23 @@ public class DefaultProjectRepositoriesLoaderTest {
   private final static String PROJECT_KEY = "foo?";
   @Rule
   public ExpectedException thrown = ExpectedException.none();
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
 
   private DefaultProjectRepositoriesLoader loader;
   private ScannerWsClient wsClient;
+  private File cacheDir;
 
   @Before
   public void prepare() throws IOException {
     wsClient = mock(ScannerWsClient.class);
+    when(wsClient.baseUrl()).thenReturn("http://localhost:9000");
     InputStream is = mockData();
     WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F", is);
-    loader = new DefaultProjectRepositoriesLoader(wsClient);
+    FileCache fileCache = mock(FileCache.class);
+    cacheDir = temp.newFolder();
+    when(fileCache.getDir()).thenReturn(cacheDir);
+    loader = new DefaultProjectRepositoriesLoader(wsClient, fileCache);
   }
 
   @Test
@@ -110,6 +121,70 @@ public class DefaultProjectRepositoriesLoaderTest {
     WsTestUtil.verifyCall(wsClient, "/batch/project.protobuf?key=foo%3F");
   }
 
+  @Test
+  public void download_file_data_only_if_changed_since_previous_load() throws IOException {
+    WsProjectResponse.Builder firstResponse = WsProjectResponse.newBuilder().setFileDataVersion("ANALYSIS_1");
+    firstResponse.getMutableFileDataByModuleAndPath().put(PROJECT_KEY, fileDataByPath("src/Foo.java", "hash1"));
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F", toStream(firstResponse.build()));
+    assertThat(loader.load(PROJECT_KEY, false).fileData(PROJECT_KEY, "src/Foo.java").hash()).isEqualTo("hash1");
+
+    // file data is not returned by server
+    WsProjectResponse.Builder secondResponse = WsProjectResponse.newBuilder().setFileDataVersion("ANALYSIS_1").setFileDataUnchanged(true);
+    secondResponse.getMutableSettingsByModule().put(PROJECT_KEY, settings("sonar.foo", "bar"));
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F&file_data_version=ANALYSIS_1", toStream(secondResponse.build()));
+    ProjectRepositories proj = loader.load(PROJECT_KEY, false);
+    assertThat(proj.fileData(PROJECT_KEY, "src/Foo.java").hash()).isEqualTo("hash1");
+    assertThat(proj.settings(PROJECT_KEY)).containsEntry("sonar.foo", "bar");
+
+    // new analysis
+    WsProjectResponse.Builder thirdResponse = WsProjectResponse.newBuilder().setFileDataVersion("ANALYSIS_2");
+    thirdResponse.getMutableFileDataByModuleAndPath().put(PROJECT_KEY, fileDataByPath("src/Foo.java", "hash2"));
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F&file_data_version=ANALYSIS_1", toStream(thirdResponse.build()));
+    assertThat(loader.load(PROJECT_KEY, false).fileData(PROJECT_KEY, "src/Foo.java").hash()).isEqualTo("hash2");
+
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F&file_data_version=ANALYSIS_2", mockData());
+    loader.load(PROJECT_KEY, false);
+    WsTestUtil.verifyCall(wsClient, "/batch/project.protobuf?key=foo%3F&file_data_version=ANALYSIS_2");
+  }
+
+  @Test
+  public void settings_are_not_written_in_cache() throws IOException {
+    WsProjectResponse.Builder response = WsProjectResponse.newBuilder().setFileDataVersion("ANALYSIS_1");
+    response.getMutableFileDataByModuleAndPath().put(PROJECT_KEY, fileDataByPath("src/Foo.java", "hash1"));
+    response.getMutableSettingsByModule().put(PROJECT_KEY, settings("sonar.foo.secured", "secret"));
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F", toStream(response.build()));
+
+    ProjectRepositories proj = loader.load(PROJECT_KEY, false);
+    assertThat(proj.settings(PROJECT_KEY)).containsEntry("sonar.foo.secured", "secret");
+
+    File[] cacheFiles = new File(cacheDir, "_project_repositories").listFiles();
+    assertThat(cacheFiles).hasSize(1);
+    try (InputStream is = new FileInputStream(cacheFiles[0])) {
+      WsProjectResponse cached = WsProjectResponse.parseFrom(is);
+      assertThat(cached.getFileDataVersion()).isEqualTo("ANALYSIS_1");
+      assertThat(cached.getFileDataByModuleAndPath()).containsKey(PROJECT_KEY);
+      assertThat(cached.getSettingsByModule()).isEmpty();
+    }
+  }
+
+  private static WsProjectResponse.Settings settings(String key, String value) {
+    WsProjectResponse.Settings.Builder settings = WsProjectResponse.Settings.newBuilder();
+    settings.getMutableSettings().put(key, value);
+    return settings.build();
+  }
+
+  private static WsProjectResponse.FileDataByPath fileDataByPath(String path, String hash) {
+    WsProjectResponse.FileDataByPath.Builder fileDataByPath = WsProjectResponse.FileDataByPath.newBuilder();
+    fileDataByPath.getMutableFileDataByPath().put(path, WsProjectResponse.FileData.newBuilder().setHash(hash).build());
+    return fileDataByPath.build();
+  }
+
+  private static InputStream toStream(WsProjectResponse response) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    response.writeTo(os);
+    return new ByteArrayInputStream(os.toByteArray());
+  }
+
   private InputStream mockData() throws IOException {
     ByteArrayOutputStream os = new ByteArrayOutputStream();
     WsProjectResponse.Builder projectResponseBuilder = WsProjectResponse.newBuilder();
@@ -23,6 +23,8 @@ import org.sonar.scanner.WsTestUtil;
 import org.sonar.scanner.bootstrap.ScannerWsClient;
 import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
 import org.sonar.scanner.repository.DefaultServerIssuesLoader;
+import org.sonarqube.ws.client.WsRequest;
+import org.sonarqube.ws.client.WsResponse;
 import org.junit.Before;
 import org.junit.Test;
 import java.io.ByteArrayInputStream;
@@ -30,11 +32,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DefaultServerIssuesLoaderTest {
@@ -68,6 +75,57 @@ public class DefaultServerIssuesLoaderTest {
     assertThat(result).extracting("key").containsExactly("ab1", "ab2");
   }
 
+  @Test
+  public void loadIssuesOfFilesFromWs() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ServerIssue.newBuilder().setKey("ab1").build()
+      .writeDelimitedTo(bos);
+
+    InputStream is = new ByteArrayInputStream(bos.toByteArray());
+    WsTestUtil.mockStream(wsClient, "/batch/issues.protobuf?key=foo&files=foo%3Asrc%2FA.java,foo%3Asrc%2FB.java", is);
+
+    final List<ServerIssue> result = new ArrayList<>();
+    loader.load("foo", Arrays.asList("foo:src/A.java", "foo:src/B.java"), issue -> {
+      result.add(issue);
+      return null;
+    });
+
+    assertThat(result).extracting("key").containsExactly("ab1");
+  }
+
+  @Test
+  public void loadIssuesOfComponentsWhichAreNotFilesWhenNoFiles() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ServerIssue.newBuilder().setKey("ab1").setModuleKey("foo").build()
+      .writeDelimitedTo(bos);
+
+    InputStream is = new ByteArrayInputStream(bos.toByteArray());
+    WsTestUtil.mockStream(wsClient, "/batch/issues.protobuf?key=foo&files=", is);
+
+    final List<ServerIssue> result = new ArrayList<>();
+    loader.load("foo", Collections.emptyList(), issue -> {
+      result.add(issue);
+      return null;
+    });
+
+    assertThat(result).extracting("key").containsExactly("ab1");
+  }
+
+  @Test
+  public void loadIssuesOfFilesByBatches() throws Exception {
+    WsResponse response = mock(WsResponse.class);
+    when(response.contentStream()).thenReturn(new ByteArrayInputStream(new byte[0]), new ByteArrayInputStream(new byte[0]));
+    when(wsClient.call(any(WsRequest.class))).thenReturn(response);
+
+    List<String> fileKeys = new ArrayList<>();
+    for (int i = 0; i < DefaultServerIssuesLoader.FILES_PER_REQUEST + 1; i++) {
+      fileKeys.add("foo:src/File" + i + ".java");
+    }
+    loader.load("foo", fileKeys, mock(Function.class));
+
+    verify(wsClient, times(2)).call(any(WsRequest.class));
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testError() throws IOException {
     InputStream is = mock(InputStream.class);
@@ -0,0 +1,96 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.storage;
+
+import java.io.DataInput;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpillFileTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void read_appended_records() throws IOException {
+    File file = temp.newFile();
+    SpillFile spillFile = new SpillFile(file);
+
+    long first = spillFile.append(new byte[] {1, 2, 3}, 2);
+    long second = spillFile.append(new byte[] {4}, 1);
+
+    assertThat(readAll(spillFile.read(first), 2)).isEqualTo(new byte[] {1, 2});
+    assertThat(readAll(spillFile.read(second), 1)).isEqualTo(new byte[] {4});
+    assertThat(spillFile.length()).isEqualTo(SpillFile.SEGMENT_SIZE);
+
+    spillFile.close();
+    assertThat(file).doesNotExist();
+  }
+
+  @Test
+  public void map_new_segment_when_record_does_not_fit() throws IOException {
+    SpillFile spillFile = new SpillFile(temp.newFile());
+
+    long small = spillFile.append(new byte[] {1}, 1);
+    byte[] big = new byte[SpillFile.SEGMENT_SIZE];
+    big[big.length - 1] = 42;
+    long bigHandle = spillFile.append(big, big.length);
+
+    assertThat(spillFile.length()).isEqualTo(2L * SpillFile.SEGMENT_SIZE + SpillFile.HEADER_SIZE);
+    assertThat(readAll(spillFile.read(small), 1)).isEqualTo(new byte[] {1});
+    assertThat(readAll(spillFile.read(bigHandle), big.length)[big.length - 1]).isEqualTo((byte) 42);
+
+    spillFile.close();
+  }
+
+  @Test
+  public void reuse_space_of_freed_records() throws IOException {
+    SpillFile spillFile = new SpillFile(temp.newFile());
+
+    long first = spillFile.append(new byte[] {1, 2, 3, 4}, 4);
+    long second = spillFile.append(new byte[] {5}, 1);
+    spillFile.free(first);
+
+    // too small to reuse the free record
+    long third = spillFile.append(new byte[] {6}, 1);
+    assertThat(third).isNotEqualTo(first);
+
+    long fourth = spillFile.append(new byte[] {7, 8, 9}, 3);
+    assertThat(fourth).isEqualTo(first);
+    assertThat(readAll(spillFile.read(fourth), 3)).isEqualTo(new byte[] {7, 8, 9});
+    assertThat(readAll(spillFile.read(second), 1)).isEqualTo(new byte[] {5});
+
+    // free record was reused, so it is not available anymore
+    assertThat(spillFile.append(new byte[] {10, 11, 12}, 3)).isNotEqualTo(first);
+
+    spillFile.close();
+  }
+
+  private static byte[] readAll(DataInput in, int len) throws IOException {
+    byte[] bytes = new byte[len];
+    in.readFully(bytes);
+    return bytes;
+  }
+}
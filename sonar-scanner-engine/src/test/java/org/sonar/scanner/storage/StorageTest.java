@@ -249,4 +249,31 @@ public class StorageTest extends AbstractCachesTest {
     cache.clear("foo", "bar", "baz");
     cache.clear();
   }
+
+  @Test
+  public void keys_are_sorted_by_natural_order() {
+    Storage<String> cache = caches.createCache("numbers");
+    cache.put(10, "ten");
+    cache.put(2, "two");
+    cache.put(1, 3, "one-three");
+
+    assertThat(cache.keySet()).containsExactly(1, 2, 10);
+    assertThat(cache.values()).containsExactly("one-three", "two", "ten");
+  }
+
+  @Test
+  public void remove_while_iterating() {
+    Storage<String> cache = caches.createCache("capitals");
+    cache.put("europe", "france", "paris");
+    cache.put("europe", "italy", "rome");
+    cache.put("europe", "spain", "madrid");
+
+    for (Entry<String> entry : cache.entries()) {
+      cache.remove(entry.key());
+    }
+
+    assertThat(cache.values()).isEmpty();
+    assertThat(cache.keySet()).isEmpty();
+    assertThat(cache.keySet("europe")).isEmpty();
+  }
 }
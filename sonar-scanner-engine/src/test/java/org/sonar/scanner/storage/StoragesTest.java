@@ -19,9 +19,13 @@
  */
 package org.sonar.scanner.storage;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 
-import com.persistit.exception.PersistitException;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Test;
 import org.sonar.scanner.index.AbstractCachesTest;
 import org.sonar.scanner.storage.Storage;
@@ -58,7 +62,7 @@ public class StoragesTest extends AbstractCachesTest {
     caches.stop();
 
     // manager continues up
-    assertThat(cachesManager.persistit().isInitialized()).isTrue();
+    assertThat(cachesManager.tempDir()).isDirectory();
 
     caches = new Storages(cachesManager);
     caches.start();
@@ -66,7 +70,7 @@ public class StoragesTest extends AbstractCachesTest {
   }
 
   @Test
-  public void leak_test() throws PersistitException {
+  public void leak_test() {
     caches.stop();
 
     int len = 1 * 1024 * 1024;
@@ -80,14 +84,75 @@ public class StoragesTest extends AbstractCachesTest {
       caches.start();
       Storage<String> c = caches.<String>createCache("test" + i);
       c.put("key" + i, sb.toString());
-      cachesManager.persistit().flush();
 
       caches.stop();
     }
   }
 
+  @Test
+  public void should_spill_values_having_a_coder() {
+    caches.registerValueCoder(Element.class, new ElementCoder());
+    Storage<Element> cache = caches.createCache("foo");
+
+    cache.put("a", new Element("first"));
+    cache.put("b", new Element("second"));
+
+    assertThat(cachesManager.tempDir().list()).hasSize(1);
+    assertThat(cache.get("a").name).isEqualTo("first");
+    assertThat(cache.values()).extracting("name").containsExactly("first", "second");
+
+    caches.stop();
+
+    assertThat(cachesManager.tempDir().list()).isEmpty();
+  }
+
+  @Test
+  public void should_reuse_space_of_overwritten_values() {
+    caches.registerValueCoder(Element.class, new ElementCoder());
+    Storage<Element> cache = caches.createCache("foo");
+    String name = StringUtils.repeat("a", 10_000);
+
+    // without reuse, 20MB of values would be spilled
+    for (int i = 0; i < 2_000; i++) {
+      cache.put("a", new Element(name + i));
+    }
+
+    File[] spillFiles = cachesManager.tempDir().listFiles();
+    assertThat(spillFiles).hasSize(1);
+    assertThat(spillFiles[0].length()).isEqualTo(SpillFile.SEGMENT_SIZE);
+    assertThat(cache.get("a").name).isEqualTo(name + 1999);
+  }
+
+  @Test
+  public void should_not_create_cache_after_stop() {
+    caches.stop();
+    try {
+      caches.<Element>createCache("foo");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Caches are not initialized");
+    }
+  }
+
+  private static class ElementCoder implements ValueCoder<Element> {
+    @Override
+    public void put(DataOutput out, Element value) throws IOException {
+      out.writeUTF(value.name);
+    }
+
+    @Override
+    public Element get(DataInput in) throws IOException {
+      return new Element(in.readUTF());
+    }
+  }
+
   private static class Element implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    private final String name;
+
+    private Element(String name) {
+      this.name = name;
+    }
   }
 }
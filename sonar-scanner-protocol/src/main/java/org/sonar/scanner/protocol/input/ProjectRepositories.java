@@ -38,6 +38,8 @@ public class ProjectRepositories {
   private Map<String, Map<String, String>> settingsByModule = new HashMap<>();
   private Map<String, Map<String, FileData>> fileDataByModuleAndPath = new HashMap<>();
   private Date lastAnalysisDate;
+  private String fileDataVersion;
+  private boolean fileDataUnchanged;
 
   public Map<String, String> settings(String moduleKey) {
     return settingsByModule.containsKey(moduleKey) ? settingsByModule.get(moduleKey) : Collections.<String, String>emptyMap();
@@ -105,6 +107,31 @@ public class ProjectRepositories {
     this.lastAnalysisDate = lastAnalysisDate;
   }
 
+  /**
+   * Version of the file data, which changes with each analysis of the project. {@code null} if project has never been analyzed.
+   */
+  @CheckForNull
+  public String fileDataVersion() {
+    return fileDataVersion;
+  }
+
+  public ProjectRepositories setFileDataVersion(@Nullable String fileDataVersion) {
+    this.fileDataVersion = fileDataVersion;
+    return this;
+  }
+
+  /**
+   * File data is not loaded when the version already known by client is still the current one.
+   */
+  public boolean isFileDataUnchanged() {
+    return fileDataUnchanged;
+  }
+
+  public ProjectRepositories setFileDataUnchanged(boolean fileDataUnchanged) {
+    this.fileDataUnchanged = fileDataUnchanged;
+    return this;
+  }
+
   public String toJson() {
     return GsonHelper.create().toJson(this);
   }
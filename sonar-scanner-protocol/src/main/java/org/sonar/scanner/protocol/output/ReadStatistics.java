@@ -0,0 +1,80 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.sonar.scanner.protocol.output.FileStructure.Domain;
+
+/**
+ * Number of files and bytes read by {@link ScannerReportReader} for each {@link Domain}, and time
+ * spent to load and parse them. Can be updated and read concurrently.
+ */
+public class ReadStatistics {
+
+  private final Map<Domain, DomainStatistics> byDomain = new EnumMap<>(Domain.class);
+
+  ReadStatistics() {
+    for (Domain domain : Domain.values()) {
+      byDomain.put(domain, new DomainStatistics());
+    }
+  }
+
+  void addFile(Domain domain, long bytes) {
+    DomainStatistics statistics = byDomain.get(domain);
+    statistics.files.increment();
+    statistics.bytes.add(bytes);
+  }
+
+  void addTime(Domain domain, long nanos) {
+    byDomain.get(domain).nanos.add(nanos);
+  }
+
+  public long getFiles(Domain domain) {
+    return byDomain.get(domain).files.sum();
+  }
+
+  public long getBytes(Domain domain) {
+    return byDomain.get(domain).bytes.sum();
+  }
+
+  public long getTimeMs(Domain domain) {
+    return TimeUnit.NANOSECONDS.toMillis(byDomain.get(domain).nanos.sum());
+  }
+
+  /**
+   * Read throughput in bytes per second, or 0 if no time was spent reading the domain.
+   */
+  public long getThroughput(Domain domain) {
+    long nanos = byDomain.get(domain).nanos.sum();
+    if (nanos == 0L) {
+      return 0L;
+    }
+    return (long) (getBytes(domain) * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+  }
+
+  private static class DomainStatistics {
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+  }
+}
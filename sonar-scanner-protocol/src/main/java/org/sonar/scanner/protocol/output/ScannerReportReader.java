@@ -19,16 +19,37 @@
  */
 package org.sonar.scanner.protocol.output;
 
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import javax.annotation.CheckForNull;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.core.util.ContextException;
+import org.sonar.core.util.MappedByteBuffers;
 import org.sonar.core.util.Protobuf;
 
 import static org.sonar.core.util.CloseableIterator.emptyCloseableIterator;
 
+/**
+ * Reads the files of an extracted report. Files of components bigger than {@link #MIN_MAPPED_FILE_SIZE} are
+ * memory-mapped, smaller ones are loaded in a single read. Messages are then parsed from memory.
+ * Mapped files are unmapped once the message is read, or once the iterator of messages is closed.
+ */
 public class ScannerReportReader {
 
+  /**
+   * Mapping a file has a fixed cost which is higher than reading a small file at once
+   */
+  static final long MIN_MAPPED_FILE_SIZE = 1024L * 1024L;
+
   private final FileStructure fileStructure;
+  private final ReadStatistics readStatistics = new ReadStatistics();
 
   public ScannerReportReader(File dir) {
     this.fileStructure = new FileStructure(dir);
@@ -53,7 +74,7 @@ public class ScannerReportReader {
   public CloseableIterator<ScannerReport.Measure> readComponentMeasures(int componentRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Measure.parser());
+      return readStream(FileStructure.Domain.MEASURES, file, ScannerReport.Measure.parser());
     }
     return emptyCloseableIterator();
   }
@@ -62,7 +83,7 @@ public class ScannerReportReader {
   public ScannerReport.Changesets readChangesets(int componentRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.read(file, ScannerReport.Changesets.parser());
+      return read(FileStructure.Domain.CHANGESETS, file, ScannerReport.Changesets.parser());
     }
     return null;
   }
@@ -72,13 +93,13 @@ public class ScannerReportReader {
     if (!fileExists(file)) {
       throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + file);
     }
-    return Protobuf.read(file, ScannerReport.Component.parser());
+    return read(FileStructure.Domain.COMPONENT, file, ScannerReport.Component.parser());
   }
 
   public CloseableIterator<ScannerReport.Issue> readComponentIssues(int componentRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Issue.parser());
+      return readStream(FileStructure.Domain.ISSUES, file, ScannerReport.Issue.parser());
     }
     return emptyCloseableIterator();
   }
@@ -86,7 +107,7 @@ public class ScannerReportReader {
   public CloseableIterator<ScannerReport.Duplication> readComponentDuplications(int componentRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Duplication.parser());
+      return readStream(FileStructure.Domain.DUPLICATIONS, file, ScannerReport.Duplication.parser());
     }
     return emptyCloseableIterator();
   }
@@ -94,7 +115,7 @@ public class ScannerReportReader {
   public CloseableIterator<ScannerReport.CpdTextBlock> readCpdTextBlocks(int componentRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.CpdTextBlock.parser());
+      return readStream(FileStructure.Domain.CPD_TEXT_BLOCKS, file, ScannerReport.CpdTextBlock.parser());
     }
     return emptyCloseableIterator();
   }
@@ -102,7 +123,7 @@ public class ScannerReportReader {
   public CloseableIterator<ScannerReport.Symbol> readComponentSymbols(int componentRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Symbol.parser());
+      return readStream(FileStructure.Domain.SYMBOLS, file, ScannerReport.Symbol.parser());
     }
     return emptyCloseableIterator();
   }
@@ -115,7 +136,7 @@ public class ScannerReportReader {
   public CloseableIterator<ScannerReport.SyntaxHighlightingRule> readComponentSyntaxHighlighting(int fileRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.SyntaxHighlightingRule.parser());
+      return readStream(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, file, ScannerReport.SyntaxHighlightingRule.parser());
     }
     return emptyCloseableIterator();
   }
@@ -128,7 +149,7 @@ public class ScannerReportReader {
   public CloseableIterator<ScannerReport.LineCoverage> readComponentCoverage(int fileRef) {
     File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, fileRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.LineCoverage.parser());
+      return readStream(FileStructure.Domain.COVERAGES, file, ScannerReport.LineCoverage.parser());
     }
     return emptyCloseableIterator();
   }
@@ -162,6 +183,22 @@ public class ScannerReportReader {
     return null;
   }
 
+  public CloseableIterator<ScannerReport.Test> readComponentTests(int testFileRef) {
+    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef);
+    if (fileExists(file)) {
+      return readStream(FileStructure.Domain.TESTS, file, ScannerReport.Test.parser());
+    }
+    return emptyCloseableIterator();
+  }
+
+  public CloseableIterator<ScannerReport.CoverageDetail> readComponentCoverageDetails(int testFileRef) {
+    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
+    if (fileExists(file)) {
+      return readStream(FileStructure.Domain.COVERAGE_DETAILS, file, ScannerReport.CoverageDetail.parser());
+    }
+    return emptyCloseableIterator();
+  }
+
   public CloseableIterator<ScannerReport.ContextProperty> readContextProperties() {
     File file = fileStructure.contextProperties();
     if (!fileExists(file)) {
@@ -170,6 +207,52 @@ public class ScannerReportReader {
     return Protobuf.readStream(file, ScannerReport.ContextProperty.parser());
   }
 
+  private <MSG extends Message> MSG read(FileStructure.Domain domain, File file, Parser<MSG> parser) {
+    ByteBuffer buffer = load(domain, file);
+    long start = System.nanoTime();
+    try {
+      return Protobuf.read(buffer, parser);
+    } finally {
+      readStatistics.addTime(domain, System.nanoTime() - start);
+      unmap(buffer);
+    }
+  }
+
+  private <MSG extends Message> CloseableIterator<MSG> readStream(FileStructure.Domain domain, File file, Parser<MSG> parser) {
+    ByteBuffer buffer = load(domain, file);
+    return new MeasuredIterator<>(domain, buffer, Protobuf.readStream(buffer, parser));
+  }
+
+  /**
+   * Parsed messages don't reference the buffer, so it can be released as soon as parsing is done
+   */
+  private static void unmap(ByteBuffer buffer) {
+    if (buffer instanceof MappedByteBuffer) {
+      MappedByteBuffers.unmap((MappedByteBuffer) buffer);
+    }
+  }
+
+  private ByteBuffer load(FileStructure.Domain domain, File file) {
+    long start = System.nanoTime();
+    try {
+      ByteBuffer buffer;
+      if (file.length() < MIN_MAPPED_FILE_SIZE) {
+        buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      } else {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+          // mapping remains valid after channel is closed
+          buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+      }
+      readStatistics.addFile(domain, buffer.remaining());
+      return buffer;
+    } catch (IOException e) {
+      throw ContextException.of("Unable to read messages", e).addContext("file", file);
+    } finally {
+      readStatistics.addTime(domain, System.nanoTime() - start);
+    }
+  }
+
   private static boolean fileExists(File file) {
     return file.exists() && file.isFile();
   }
@@ -177,4 +260,42 @@ public class ScannerReportReader {
   public FileStructure getFileStructure() {
     return fileStructure;
   }
+
+  public ReadStatistics getReadStatistics() {
+    return readStatistics;
+  }
+
+  /**
+   * Adds the time spent to parse messages to {@link #readStatistics} and releases the buffer when closed
+   */
+  private class MeasuredIterator<MSG> extends CloseableIterator<MSG> {
+    private final FileStructure.Domain domain;
+    private final ByteBuffer buffer;
+    private final CloseableIterator<MSG> delegate;
+
+    private MeasuredIterator(FileStructure.Domain domain, ByteBuffer buffer, CloseableIterator<MSG> delegate) {
+      this.domain = domain;
+      this.buffer = buffer;
+      this.delegate = delegate;
+    }
+
+    @Override
+    protected MSG doNext() {
+      long start = System.nanoTime();
+      try {
+        return delegate.hasNext() ? delegate.next() : null;
+      } finally {
+        readStatistics.addTime(domain, System.nanoTime() - start);
+      }
+    }
+
+    @Override
+    protected void doClose() {
+      try {
+        delegate.close();
+      } finally {
+        unmap(buffer);
+      }
+    }
+  }
 }
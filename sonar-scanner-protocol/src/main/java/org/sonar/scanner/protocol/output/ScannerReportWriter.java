@@ -26,6 +26,9 @@ import java.io.OutputStream;
 import org.sonar.core.util.ContextException;
 import org.sonar.core.util.Protobuf;
 
+/**
+ * Writes the files of the report. Methods are synchronized as components may be written concurrently by sensors.
+ */
 public class ScannerReportWriter {
 
   private final FileStructure fileStructure;
@@ -41,7 +44,7 @@ public class ScannerReportWriter {
     return fileStructure;
   }
 
-  public boolean hasComponentData(FileStructure.Domain domain, int componentRef) {
+  public synchronized boolean hasComponentData(FileStructure.Domain domain, int componentRef) {
     File file = fileStructure.fileFor(domain, componentRef);
     return file.exists() && file.isFile();
   }
@@ -49,29 +52,29 @@ public class ScannerReportWriter {
   /**
    * Metadata is mandatory
    */
-  public File writeMetadata(ScannerReport.Metadata metadata) {
+  public synchronized File writeMetadata(ScannerReport.Metadata metadata) {
     Protobuf.write(metadata, fileStructure.metadataFile());
     return fileStructure.metadataFile();
   }
 
-  public File writeActiveRules(Iterable<ScannerReport.ActiveRule> activeRules) {
+  public synchronized File writeActiveRules(Iterable<ScannerReport.ActiveRule> activeRules) {
     Protobuf.writeStream(activeRules, fileStructure.activeRules(), false);
     return fileStructure.metadataFile();
   }
 
-  public File writeComponent(ScannerReport.Component component) {
+  public synchronized File writeComponent(ScannerReport.Component component) {
     File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, component.getRef());
     Protobuf.write(component, file);
     return file;
   }
 
-  public File writeComponentIssues(int componentRef, Iterable<ScannerReport.Issue> issues) {
+  public synchronized File writeComponentIssues(int componentRef, Iterable<ScannerReport.Issue> issues) {
     File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
     Protobuf.writeStream(issues, file, false);
     return file;
   }
 
-  public void appendComponentIssue(int componentRef, ScannerReport.Issue issue) {
+  public synchronized void appendComponentIssue(int componentRef, ScannerReport.Issue issue) {
     File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
     try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
       issue.writeDelimitedTo(out);
@@ -80,61 +83,61 @@ public class ScannerReportWriter {
     }
   }
 
-  public File writeComponentMeasures(int componentRef, Iterable<ScannerReport.Measure> measures) {
+  public synchronized File writeComponentMeasures(int componentRef, Iterable<ScannerReport.Measure> measures) {
     File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
     Protobuf.writeStream(measures, file, false);
     return file;
   }
 
-  public File writeComponentChangesets(ScannerReport.Changesets changesets) {
+  public synchronized File writeComponentChangesets(ScannerReport.Changesets changesets) {
     File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, changesets.getComponentRef());
     Protobuf.write(changesets, file);
     return file;
   }
 
-  public File writeComponentDuplications(int componentRef, Iterable<ScannerReport.Duplication> duplications) {
+  public synchronized File writeComponentDuplications(int componentRef, Iterable<ScannerReport.Duplication> duplications) {
     File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
     Protobuf.writeStream(duplications, file, false);
     return file;
   }
 
-  public File writeCpdTextBlocks(int componentRef, Iterable<ScannerReport.CpdTextBlock> blocks) {
+  public synchronized File writeCpdTextBlocks(int componentRef, Iterable<ScannerReport.CpdTextBlock> blocks) {
     File file = fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
     Protobuf.writeStream(blocks, file, false);
     return file;
   }
 
-  public File writeComponentSymbols(int componentRef, Iterable<ScannerReport.Symbol> symbols) {
+  public synchronized File writeComponentSymbols(int componentRef, Iterable<ScannerReport.Symbol> symbols) {
     File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
     Protobuf.writeStream(symbols, file, false);
     return file;
   }
 
-  public File writeComponentSyntaxHighlighting(int componentRef, Iterable<ScannerReport.SyntaxHighlightingRule> syntaxHighlightingRules) {
+  public synchronized File writeComponentSyntaxHighlighting(int componentRef, Iterable<ScannerReport.SyntaxHighlightingRule> syntaxHighlightingRules) {
     File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
     Protobuf.writeStream(syntaxHighlightingRules, file, false);
     return file;
   }
 
-  public File writeComponentCoverage(int componentRef, Iterable<ScannerReport.LineCoverage> coverageList) {
+  public synchronized File writeComponentCoverage(int componentRef, Iterable<ScannerReport.LineCoverage> coverageList) {
     File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
     Protobuf.writeStream(coverageList, file, false);
     return file;
   }
 
-  public File writeTests(int componentRef, Iterable<ScannerReport.Test> tests) {
+  public synchronized File writeTests(int componentRef, Iterable<ScannerReport.Test> tests) {
     File file = fileStructure.fileFor(FileStructure.Domain.TESTS, componentRef);
     Protobuf.writeStream(tests, file, false);
     return file;
   }
 
-  public File writeCoverageDetails(int componentRef, Iterable<ScannerReport.CoverageDetail> tests) {
+  public synchronized File writeCoverageDetails(int componentRef, Iterable<ScannerReport.CoverageDetail> tests) {
     File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, componentRef);
     Protobuf.writeStream(tests, file, false);
     return file;
   }
 
-  public File writeContextProperties(Iterable<ScannerReport.ContextProperty> properties) {
+  public synchronized File writeContextProperties(Iterable<ScannerReport.ContextProperty> properties) {
     File file = fileStructure.contextProperties();
     Protobuf.writeStream(properties, file, false);
     return file;
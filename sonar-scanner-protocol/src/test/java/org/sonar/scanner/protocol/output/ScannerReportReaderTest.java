@@ -23,8 +23,11 @@ import com.google.common.collect.Lists;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -104,6 +107,38 @@ public class ScannerReportReaderTest {
     assertThat(underTest.readComponentIssues(200)).isEmpty();
   }
 
+  @Test
+  public void read_issues_of_memory_mapped_file() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir);
+    List<ScannerReport.Issue> issues = new ArrayList<>();
+    String msg = StringUtils.repeat("x", 1000);
+    for (int i = 0; i < 2000; i++) {
+      issues.add(ScannerReport.Issue.newBuilder().setMsg(msg + i).build());
+    }
+    File file = writer.writeComponentIssues(1, issues);
+    assertThat(file.length()).isGreaterThan(ScannerReportReader.MIN_MAPPED_FILE_SIZE);
+
+    assertThat(underTest.readComponentIssues(1)).containsExactlyElementsOf(issues);
+  }
+
+  @Test
+  public void read_statistics_are_recorded_by_domain() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir);
+    File issuesFile = writer.writeComponentIssues(1, asList(ScannerReport.Issue.newBuilder().setMsg("msg").build()));
+    File componentFile = writer.writeComponent(ScannerReport.Component.newBuilder().setRef(1).build());
+
+    assertThat(underTest.readComponentIssues(1)).hasSize(1);
+    underTest.readComponent(1);
+
+    ReadStatistics statistics = underTest.getReadStatistics();
+    assertThat(statistics.getFiles(FileStructure.Domain.ISSUES)).isEqualTo(1);
+    assertThat(statistics.getBytes(FileStructure.Domain.ISSUES)).isEqualTo(issuesFile.length());
+    assertThat(statistics.getFiles(FileStructure.Domain.COMPONENT)).isEqualTo(1);
+    assertThat(statistics.getBytes(FileStructure.Domain.COMPONENT)).isEqualTo(componentFile.length());
+    assertThat(statistics.getFiles(FileStructure.Domain.MEASURES)).isEqualTo(0);
+    assertThat(statistics.getThroughput(FileStructure.Domain.MEASURES)).isEqualTo(0);
+  }
+
   @Test
   public void empty_list_if_no_issue_found() {
     assertThat(underTest.readComponentIssues(UNKNOWN_COMPONENT_REF)).isEmpty();
@@ -332,6 +367,16 @@ public class ScannerReportReaderTest {
     }
   }
 
+  @Test
+  public void read_component_tests() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir);
+    ScannerReport.Test test = ScannerReport.Test.newBuilder().setDurationInMs(60_000).setMsg("message").build();
+    writer.writeTests(1, asList(test));
+
+    assertThat(underTest.readComponentTests(1)).containsExactly(test);
+    assertThat(underTest.readComponentTests(UNKNOWN_COMPONENT_REF)).isEmpty();
+  }
+
   @Test
   public void null_if_no_test_found() {
     assertThat(underTest.readTests(UNKNOWN_COMPONENT_REF)).isNull();
@@ -356,6 +401,16 @@ public class ScannerReportReaderTest {
     }
   }
 
+  @Test
+  public void read_component_coverage_details() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir);
+    ScannerReport.CoverageDetail coverageDetail = ScannerReport.CoverageDetail.newBuilder().setTestName("test-name").build();
+    writer.writeCoverageDetails(1, asList(coverageDetail));
+
+    assertThat(underTest.readComponentCoverageDetails(1)).containsExactly(coverageDetail);
+    assertThat(underTest.readComponentCoverageDetails(UNKNOWN_COMPONENT_REF)).isEmpty();
+  }
+
   @Test
   public void null_if_no_coverage_detail_found() {
     assertThat(underTest.readCoverageDetails(UNKNOWN_COMPONENT_REF)).isNull();